@@ -0,0 +1,132 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.contrib.perf;
+
+import java.util.Iterator;
+
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+import org.jdom2.filter.ElementFilter;
+
+/**
+ * Compare the name-indexed child lookups of Element (getChild, getChildren)
+ * against the equivalent linear scan through an ElementFilter view, which
+ * is how those lookups were done before the child index was introduced.
+ * <p>
+ * The first argument (optional) is the number of children to test with.
+ */
+@SuppressWarnings("javadoc")
+public class PerfChildIndex {
+
+	private static final int LOOKUPS = 100000;
+
+	public static void main(String[] args) throws Exception {
+		final int width = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		final Element root = new Element("root");
+		final String[] names = new String[width];
+		for (int i = 0; i < width; i++) {
+			names[i] = "child" + i;
+			root.addContent(new Element(names[i]).setText("value" + i));
+			root.addContent("\n  ");
+		}
+
+		System.out.printf("Children %d, lookups per run %d\n", width, LOOKUPS);
+
+		for (int loop = 0; loop < 3; loop++) {
+			final long scan = PerfTest.timeRun(new TimeRunnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < LOOKUPS; i++) {
+						final String name = names[(i * 7919) % names.length];
+						final Iterator<Element> it = root.getContent(
+								new ElementFilter(name, Namespace.NO_NAMESPACE)).iterator();
+						if (!it.hasNext() || it.next() == null) {
+							throw new IllegalStateException("Missing " + name);
+						}
+					}
+				}
+			});
+
+			final long indexed = PerfTest.timeRun(new TimeRunnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < LOOKUPS; i++) {
+						final String name = names[(i * 7919) % names.length];
+						if (root.getChild(name) == null) {
+							throw new IllegalStateException("Missing " + name);
+						}
+					}
+				}
+			});
+
+			final long children = PerfTest.timeRun(new TimeRunnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < LOOKUPS; i++) {
+						final String name = names[(i * 7919) % names.length];
+						if (root.getChildren(name).size() != 1) {
+							throw new IllegalStateException("Missing " + name);
+						}
+					}
+				}
+			});
+
+			System.out.printf("   Scan %.3fms  getChild %.3fms  getChildren %.3fms  (%.1fx)\n",
+					scan / 1000000.0, indexed / 1000000.0, children / 1000000.0,
+					scan / (double)indexed);
+		}
+	}
+
+}
@@ -0,0 +1,151 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.contrib.perf;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.input.DeferredBuilder;
+import org.jdom2.input.SAXBuilder;
+
+/**
+ * Compare the time to build a large XML file and read one record from the
+ * middle of it with a {@link SAXBuilder} and a {@link DeferredBuilder}, and
+ * the heap each Document holds after the query.
+ * <p>
+ * The first argument (optional) is the approximate size of the generated
+ * file in megabytes.
+ */
+@SuppressWarnings("javadoc")
+public class PerfDeferredBuild {
+
+	private static final File createFile(final int megabytes) throws Exception {
+		final File file = File.createTempFile("perfdeferred", ".xml");
+		file.deleteOnExit();
+		final long limit = megabytes * 1024L * 1024L;
+		final FileWriter fw = new FileWriter(file);
+		try {
+			fw.write("<records>\n");
+			int id = 0;
+			while (file.length() < limit) {
+				for (int i = 0; i < 1000; i++) {
+					fw.write("  <record id=\"");
+					fw.write(Integer.toString(id++));
+					fw.write("\"><name>Name</name><value>Some value text</value></record>\n");
+				}
+				fw.flush();
+			}
+			fw.write("</records>\n");
+		} finally {
+			fw.close();
+		}
+		return file;
+	}
+
+	private static final String query(final Document doc) {
+		final Element root = doc.getRootElement();
+		final Element record = root.getChildren().get(root.getContentSize() / 4);
+		return record.getChildText("value");
+	}
+
+	private static final long heap() {
+		final Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	public static void main(String[] args) throws Exception {
+		final int size = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		final File file = createFile(size);
+		final SAXBuilder sax = new SAXBuilder();
+		final DeferredBuilder deferred = new DeferredBuilder();
+
+		final long eager = PerfTest.timeRun(new TimeRunnable() {
+			@Override
+			public void run() throws Exception {
+				query(sax.build(file));
+			}
+		});
+		final long lazy = PerfTest.timeRun(new TimeRunnable() {
+			@Override
+			public void run() throws Exception {
+				query(deferred.build(file));
+			}
+		});
+
+		final long base = heap();
+		Document doc = sax.build(file);
+		query(doc);
+		final long eagerheap = heap() - base;
+		doc = null;
+		heap();
+		doc = deferred.build(file);
+		query(doc);
+		final long lazyheap = heap() - base;
+		if (doc.getRootElement() == null) {
+			throw new IllegalStateException("keep the document reachable");
+		}
+
+		System.out.printf("File %.1fMB: SAXBuilder %.3fms %.1fMB  DeferredBuilder %.3fms %.1fMB\n",
+				file.length() / (1024.0 * 1024.0),
+				eager / 1000000.0, eagerheap / (1024.0 * 1024.0),
+				lazy / 1000000.0, lazyheap / (1024.0 * 1024.0));
+	}
+
+}
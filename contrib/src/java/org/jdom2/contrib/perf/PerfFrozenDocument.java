@@ -0,0 +1,170 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.contrib.perf;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.FrozenDocument;
+import org.jdom2.Namespace;
+
+/**
+ * Measure how reads of a frozen Document scale across threads. Each thread
+ * walks the shared Document, reading text, values, qualified names,
+ * attributes and in-scope Namespaces, without any synchronization. The
+ * same work is also timed on a regular (not frozen) copy from one thread,
+ * to show the effect of the cached derived values.
+ * <p>
+ * The first argument (optional) is the maximum number of threads.
+ */
+@SuppressWarnings("javadoc")
+public class PerfFrozenDocument {
+
+	private static final int PASSES = 20;
+
+	private static final Document buildDocument() {
+		final Namespace ns = Namespace.getNamespace("p", "urn:perf");
+		final Element root = new Element("catalog", ns);
+		root.addNamespaceDeclaration(Namespace.getNamespace("x", "urn:x"));
+		for (int i = 0; i < 2000; i++) {
+			final Element item = new Element("item", ns);
+			item.setAttribute("id", "i" + i);
+			item.addContent(new Element("name", ns).setText("Item " + i));
+			item.addContent(new Element("description").addContent("Some ")
+					.addContent("text ").addContent("for " + i));
+			item.addContent(new Element("price", ns).setText(String.valueOf(i * 3)));
+			root.addContent(item);
+		}
+		return new Document(root);
+	}
+
+	private static final long read(final Document doc) {
+		long sum = 0;
+		final Element root = doc.getRootElement();
+		for (int pass = 0; pass < PASSES; pass++) {
+			for (Element item : root.getChildren()) {
+				sum += item.getQualifiedName().length();
+				sum += item.getAttributeValue("id").length();
+				sum += item.getNamespacesInScope().size();
+				for (Element kid : item.getChildren()) {
+					sum += kid.getText().length();
+					sum += kid.getQualifiedName().length();
+					sum += kid.getNamespace("x").getURI().length();
+				}
+				sum += item.getValue().length();
+			}
+		}
+		return sum;
+	}
+
+	private static final long timeThreads(final FrozenDocument handle,
+			final int threads) throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						read(handle.getDocument());
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						done.countDown();
+					}
+				}
+			}).start();
+		}
+		final long begin = System.nanoTime();
+		start.countDown();
+		done.await();
+		return System.nanoTime() - begin;
+	}
+
+	public static void main(String[] args) throws Exception {
+		final int maxthreads = args.length > 0 ? Integer.parseInt(args[0]) 
+				: Runtime.getRuntime().availableProcessors();
+		final Document plain = buildDocument();
+		final FrozenDocument handle = buildDocument().freeze();
+
+		for (int loop = 0; loop < 3; loop++) {
+			final long ptime = PerfTest.timeRun(new TimeRunnable() {
+				@Override
+				public void run() {
+					read(plain);
+				}
+			});
+			final long ftime = PerfTest.timeRun(new TimeRunnable() {
+				@Override
+				public void run() {
+					read(handle.getDocument());
+				}
+			});
+			System.out.printf("Single thread: plain %.3fms  frozen %.3fms\n",
+					ptime / 1000000.0, ftime / 1000000.0);
+		}
+
+		final long base = timeThreads(handle, 1);
+		for (int threads = 1; threads <= maxthreads; threads <<= 1) {
+			final long time = timeThreads(handle, threads);
+			System.out.printf("Threads %2d: %.3fms for %d reads (throughput %.2fx)\n",
+					threads, time / 1000000.0, threads, 
+					(threads * (double)base) / time);
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.contrib.perf;
+
+import java.io.StringReader;
+
+import org.jdom2.Document;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.located.LocatedJDOMFactory;
+
+/**
+ * Compare the build time and memory of a record-oriented Document built
+ * without locations, with the LocatedJDOMFactory, and with the locations
+ * recorded in a LocationTable.
+ * <p>
+ * The first argument (optional) is the number of records to build.
+ */
+@SuppressWarnings("javadoc")
+public class PerfLocationTable {
+
+	private static final String buildXML(final int records) {
+		final StringBuilder sb = new StringBuilder(records * 160);
+		sb.append("<feed>\n");
+		for (int i = 0; i < records; i++) {
+			sb.append("  <entry id=\"").append(i).append("\">");
+			sb.append("<title>Title ").append(i).append("</title>");
+			sb.append("<author>Author ").append(i % 100).append("</author>");
+			sb.append("<updated>2014-01-01T00:00:00Z</updated>");
+			sb.append("<summary>Summary of entry ").append(i).append("</summary>");
+			sb.append("<link/>");
+			sb.append("</entry>\n");
+		}
+		sb.append("</feed>");
+		return sb.toString();
+	}
+
+	private static final void measure(final String name, final SAXBuilder builder,
+			final String xml) throws Exception {
+		long start = PerfTest.usedMem();
+		Document doc = builder.build(new StringReader(xml));
+		final long mem = PerfTest.usedMem() - start;
+		doc = null;
+		final long time = PerfTest.timeRun(new TimeRunnable() {
+			@Override
+			public void run() throws Exception {
+				builder.build(new StringReader(xml));
+			}
+		});
+		System.out.printf("%-8s build %.3fms, memory %.3fMB%n", name,
+				time / 1000000.0, mem / (1024.0 * 1024.0));
+	}
+
+	public static void main(String[] args) throws Exception {
+		final int records = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		final String xml = buildXML(records);
+		final SAXBuilder plain = new SAXBuilder();
+		final SAXBuilder located = new SAXBuilder();
+		located.setJDOMFactory(new LocatedJDOMFactory());
+		final SAXBuilder table = new SAXBuilder();
+		table.setRecordLocations(true);
+		measure("Plain", plain, xml);
+		measure("Located", located, xml);
+		measure("Table", table, xml);
+	}
+
+}
@@ -0,0 +1,131 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.contrib.perf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+
+import org.jdom2.input.SAXBuilder;
+
+/**
+ * Compare building a large XML file through the regular
+ * {@link SAXBuilder#build(File)} path against a memory-mapped
+ * {@link SAXBuilder#buildMapped(File)} and a FileChannel build.
+ * <p>
+ * The first argument (optional) is the approximate size of the generated
+ * file in megabytes.
+ */
+@SuppressWarnings("javadoc")
+public class PerfMappedBuild {
+
+	private static final File createFile(final int megabytes) throws Exception {
+		final File file = File.createTempFile("perfmapped", ".xml");
+		file.deleteOnExit();
+		final long limit = megabytes * 1024L * 1024L;
+		final FileWriter fw = new FileWriter(file);
+		try {
+			fw.write("<records>\n");
+			int id = 0;
+			while (file.length() < limit) {
+				for (int i = 0; i < 1000; i++) {
+					fw.write("  <record id=\"");
+					fw.write(Integer.toString(id++));
+					fw.write("\"><name>Name</name><value>Some value text</value></record>\n");
+				}
+				fw.flush();
+			}
+			fw.write("</records>\n");
+		} finally {
+			fw.close();
+		}
+		return file;
+	}
+
+	public static void main(String[] args) throws Exception {
+		final int size = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		final File file = createFile(size);
+		final SAXBuilder builder = new SAXBuilder();
+
+		final long plain = PerfTest.timeRun(new TimeRunnable() {
+			@Override
+			public void run() throws Exception {
+				builder.build(file);
+			}
+		});
+		final long mapped = PerfTest.timeRun(new TimeRunnable() {
+			@Override
+			public void run() throws Exception {
+				builder.buildMapped(file);
+			}
+		});
+		final long channel = PerfTest.timeRun(new TimeRunnable() {
+			@Override
+			public void run() throws Exception {
+				final FileInputStream fis = new FileInputStream(file);
+				try {
+					builder.build(fis.getChannel());
+				} finally {
+					fis.close();
+				}
+			}
+		});
+
+		System.out.printf("File %.1fMB: build(File) %.3fms  buildMapped(File) %.3fms  build(FileChannel) %.3fms\n",
+				file.length() / (1024.0 * 1024.0),
+				plain / 1000000.0, mapped / 1000000.0, channel / 1000000.0);
+	}
+
+}
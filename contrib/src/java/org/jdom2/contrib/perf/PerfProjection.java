@@ -0,0 +1,149 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.contrib.perf;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.Iterator;
+
+import org.jdom2.Document;
+import org.jdom2.filter.ElementFilter;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.input.sax.Projection;
+
+/**
+ * Compare the build time and the bytes allocated when SAXBuilder builds a
+ * whole document of orders and when it builds a Projection with three
+ * fields of each order.
+ * <p>
+ * The allocation counts need a JVM that supports
+ * <code>com.sun.management.ThreadMXBean.getThreadAllocatedBytes</code>.
+ * The first argument (optional) is the number of orders.
+ */
+@SuppressWarnings("javadoc")
+public class PerfProjection {
+
+	private static final byte[] orders(final int count) throws Exception {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("<orders xmlns='urn:example:orders'>\n");
+		for (int i = 0; i < count; i++) {
+			sb.append("  <order id='").append(i).append("' status='open'>\n");
+			sb.append("    <customer><name>Customer ").append(i).append("</name>");
+			sb.append("<address><street>1 Main St</street><city>Town</city>");
+			sb.append("<zip>12345</zip><country>XX</country></address>");
+			sb.append("<phone>555-0100</phone><email>c").append(i).append("@example.com</email></customer>\n");
+			sb.append("    <items>");
+			for (int j = 0; j < 5; j++) {
+				sb.append("<item sku='S").append(j).append("' qty='1'><desc>Item ").append(j);
+				sb.append("</desc><price>9.99</price><tax>0.99</tax></item>");
+			}
+			sb.append("</items>\n    <total>54.95</total>\n  </order>\n");
+		}
+		sb.append("</orders>\n");
+		return sb.toString().getBytes("UTF-8");
+	}
+
+	private static final long allocated() throws Exception {
+		final Object bean = ManagementFactory.getThreadMXBean();
+		final Class<?> iface = Class.forName("com.sun.management.ThreadMXBean");
+		final Method m = iface.getMethod("getThreadAllocatedBytes", long.class);
+		return ((Long)m.invoke(bean, Long.valueOf(Thread.currentThread().getId())))
+				.longValue();
+	}
+
+	private static final void measure(final String name, final SAXBuilder builder,
+			final byte[] data) throws Exception {
+		for (int i = 0; i < 5; i++) {
+			builder.build(new ByteArrayInputStream(data));
+		}
+		final long time = PerfTest.timeRun(new TimeRunnable() {
+			@Override
+			public void run() throws Exception {
+				builder.build(new ByteArrayInputStream(data));
+			}
+		});
+		final long before = allocated();
+		final Document doc = builder.build(new ByteArrayInputStream(data));
+		final long bytes = allocated() - before;
+		System.out.printf("%-10s %.3fms, %.1fMB allocated, %d Elements%n", name,
+				time / 1000000.0, bytes / (1024.0 * 1024.0),
+				Integer.valueOf(count(doc)));
+	}
+
+	private static final int count(final Document doc) {
+		int cnt = 0;
+		final Iterator<?> it = doc.getDescendants(
+				new ElementFilter());
+		while (it.hasNext()) {
+			it.next();
+			cnt++;
+		}
+		return cnt;
+	}
+
+	public static void main(String[] args) throws Exception {
+		final int count = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		final byte[] data = orders(count);
+		measure("Full", new SAXBuilder(), data);
+		final SAXBuilder projected = new SAXBuilder();
+		projected.setProjection(new Projection()
+				.addPath("/orders/order/customer/name")
+				.addPath("/orders/order/total")
+				.addAttribute("id"));
+		measure("Projected", projected, data);
+	}
+
+}
@@ -0,0 +1,205 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.contrib.perf;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.helpers.AttributesImpl;
+
+import org.jdom2.input.sax.SAXHandler;
+
+/**
+ * Measure the time and the bytes allocated by {@link SAXHandler} per
+ * element for a namespace-heavy document. The SAX events are recorded once
+ * (with interned names, as a parser's symbol table supplies them) and
+ * replayed to the handler, so the parser's own cost is not measured.
+ * <p>
+ * The allocation counts need a JVM that supports
+ * <code>com.sun.management.ThreadMXBean.getThreadAllocatedBytes</code>.
+ * The first argument (optional) is the number of records.
+ */
+@SuppressWarnings("javadoc")
+public class PerfSAXHandlerAlloc {
+
+	private static final String[][] NAMESPACES = {
+		{"f", "urn:example:feed"},
+		{"a", "urn:example:atom"},
+		{"b", "urn:example:base"},
+		{"c", "urn:example:core"},
+		{"d", "urn:example:data"},
+	};
+
+	/** One recorded start tag, or an end tag if atts is null */
+	private static final class Event {
+		private final String uri;
+		private final String local;
+		private final String qname;
+		private final AttributesImpl atts;
+
+		private Event(final String prefix, final int ns, final String local,
+				final AttributesImpl atts) {
+			this.uri = NAMESPACES[ns][1].intern();
+			this.local = local.intern();
+			this.qname = (prefix + ":" + local).intern();
+			this.atts = atts;
+		}
+	}
+
+	private static final AttributesImpl atts(final String... spec) {
+		final AttributesImpl atts = new AttributesImpl();
+		for (int i = 0; i < spec.length; i += 3) {
+			final int ns = Integer.parseInt(spec[i]);
+			final String prefix = NAMESPACES[ns][0];
+			atts.addAttribute(NAMESPACES[ns][1].intern(), spec[i + 1].intern(),
+					(prefix + ":" + spec[i + 1]).intern(), "CDATA", spec[i + 2]);
+		}
+		return atts;
+	}
+
+	private static final List<Event> record() {
+		final AttributesImpl none = new AttributesImpl();
+		final List<Event> events = new ArrayList<Event>();
+		events.add(new Event("a", 1, "entry", atts("1", "id", "e1", "2", "ref", "r")));
+		events.add(new Event("b", 2, "title", atts("3", "lang", "en")));
+		events.add(null);
+		events.add(new Event("c", 3, "meta", atts("3", "k", "v", "4", "x", "y")));
+		for (int i = 0; i < 3; i++) {
+			events.add(new Event("d", 4, "item", atts("4", "n", "1")));
+			events.add(new Event("b", 2, "value", none));
+			events.add(null);
+			events.add(null);
+		}
+		events.add(null);
+		events.add(null);
+		return events;
+	}
+
+	private static final char[] TEXT = "some text".toCharArray();
+
+	private static final int replay(final SAXHandler handler,
+			final List<Event> record, final int records) throws Exception {
+		final Event root = new Event("f", 0, "feed", new AttributesImpl());
+		final Event[] stack = new Event[16];
+		int elements = 1;
+		handler.startDocument();
+		for (String[] ns : NAMESPACES) {
+			handler.startPrefixMapping(ns[0], ns[1]);
+		}
+		handler.startElement(root.uri, root.local, root.qname, root.atts);
+		for (int r = 0; r < records; r++) {
+			int depth = 0;
+			for (Event e : record) {
+				if (e == null) {
+					final Event s = stack[--depth];
+					handler.characters(TEXT, 0, TEXT.length);
+					handler.endElement(s.uri, s.local, s.qname);
+				} else {
+					stack[depth++] = e;
+					handler.startElement(e.uri, e.local, e.qname, e.atts);
+					elements++;
+				}
+			}
+		}
+		handler.endElement(root.uri, root.local, root.qname);
+		for (String[] ns : NAMESPACES) {
+			handler.endPrefixMapping(ns[0]);
+		}
+		handler.endDocument();
+		return elements;
+	}
+
+	private static final long allocated() throws Exception {
+		final Object bean = ManagementFactory.getThreadMXBean();
+		final Class<?> iface = Class.forName("com.sun.management.ThreadMXBean");
+		final Method m = iface.getMethod("getThreadAllocatedBytes", long.class);
+		return ((Long)m.invoke(bean, Long.valueOf(Thread.currentThread().getId())))
+				.longValue();
+	}
+
+	public static void main(String[] args) throws Exception {
+		final int records = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		final List<Event> record = record();
+		final SAXHandler handler = new SAXHandler();
+		// warm up.
+		for (int i = 0; i < 5; i++) {
+			handler.reset();
+			replay(handler, record, records);
+		}
+
+		final long time = PerfTest.timeRun(new TimeRunnable() {
+			@Override
+			public void run() throws Exception {
+				handler.reset();
+				replay(handler, record, records);
+			}
+		});
+
+		handler.reset();
+		final long before = allocated();
+		final int elements = replay(handler, record, records);
+		final long bytes = allocated() - before;
+		if (handler.getDocument().getRootElement() == null) {
+			throw new IllegalStateException("No document");
+		}
+
+		System.out.printf("Elements %d: %.3fms, %.1f bytes allocated per element " +
+				"(%.1fns per element)\n", elements, time / 1000000.0,
+				(double)bytes / elements, (double)time / elements);
+	}
+
+}
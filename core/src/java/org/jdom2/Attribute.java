@@ -149,6 +149,11 @@ public class Attribute extends CloneBase
 	 */
 	protected transient Element parent;
 
+	/**
+	 * Set when the Document this Attribute is part of is frozen.
+	 */
+	transient boolean frozen = false;
+
 	/**
 	 * Default, no-args constructor for implementations to use if needed.
 	 */
@@ -345,6 +350,8 @@ public class Attribute extends CloneBase
 	 *         attribute name.
 	 */
 	public Attribute setName(final String name) {
+		checkFrozen();
+		markModified();
 		if (name == null) {
 			throw new NullPointerException(
 					"Can not set a null name for an Attribute.");
@@ -355,6 +362,7 @@ public class Attribute extends CloneBase
 		}
 		this.name = name;
 		specified = true;
+		keyChanged();
 		return this;
 	}
 
@@ -440,6 +448,8 @@ public class Attribute extends CloneBase
 	 *         namespace. Attributes cannot be in a default namespace.
 	 */
 	public Attribute setNamespace(Namespace namespace) {
+		checkFrozen();
+		markModified();
 		if (namespace == null) {
 			namespace = Namespace.NO_NAMESPACE;
 		}
@@ -454,9 +464,45 @@ public class Attribute extends CloneBase
 		}
 		this.namespace = namespace;
 		specified = true;
+		keyChanged();
+		if (parent != null) {
+			parent.scopeChanged();
+		}
 		return this;
 	}
 
+	/**
+	 * Fail fast if this Attribute is part of a frozen Document.
+	 * 
+	 * @throws UnsupportedOperationException if the Document is frozen.
+	 * @see Document#freeze()
+	 */
+	private final void checkFrozen() {
+		if (frozen) {
+			throw Document.frozenException();
+		}
+	}
+
+	/**
+	 * This Attribute is about to change, which discards the source span of
+	 * the parent Element.
+	 */
+	private final void markModified() {
+		if (parent != null && parent.span != null) {
+			parent.sourceModified();
+		}
+	}
+
+	/**
+	 * The name or Namespace URI of this Attribute changed, the parent's
+	 * Attribute lookup index needs to be refreshed.
+	 */
+	private final void keyChanged() {
+		if (parent != null && parent.attributes != null) {
+			parent.attributes.invalidateIndex();
+		}
+	}
+
 	/**
 	 * This will return the actual textual value of this
 	 * <code>Attribute</code>.  This will include all text
@@ -478,6 +524,8 @@ public class Attribute extends CloneBase
 	 *         {@link org.jdom2.Verifier#checkCharacterData}).
 	 */
 	public Attribute setValue(final String value) {
+		checkFrozen();
+		markModified();
 		if (value == null) {
 			throw new NullPointerException(
 					"Can not set a null value for an Attribute");
@@ -509,6 +557,8 @@ public class Attribute extends CloneBase
 	 *         not one of the supported types.
 	 */
 	public Attribute setAttributeType(final AttributeType type) {
+		checkFrozen();
+		markModified();
 		this.type = type == null ? AttributeType.UNDECLARED : type;
 		specified = true;
 		return this;
@@ -546,6 +596,8 @@ public class Attribute extends CloneBase
 	 * @since JDOM2
 	 */
 	public void setSpecified(boolean specified) {
+		checkFrozen();
+		markModified();
 		this.specified = specified;
 	}
 	
@@ -572,6 +624,7 @@ public class Attribute extends CloneBase
 	public Attribute clone() {
 		final Attribute clone = (Attribute) super.clone();
 		clone.parent = null;
+		clone.frozen = false;
 		return clone;
 	}
 
@@ -593,6 +646,13 @@ public class Attribute extends CloneBase
 	 * this has been included in the Element's list yet).
 	 */
 	protected Attribute setParent(Element parent) {
+		// Attribute Namespaces are part of the Element's Namespace scope.
+		if (this.parent != null) {
+			this.parent.scopeChanged();
+		}
+		if (parent != null) {
+			parent.scopeChanged();
+		}
 		this.parent = parent;
 		return this;
 	}
@@ -57,6 +57,7 @@ package org.jdom2;
 import java.util.*;
 
 import org.jdom2.internal.ArrayCopy;
+import org.jdom2.internal.SystemProperty;
 
 /**
  * <code>AttributeList</code> represents legal JDOM
@@ -78,14 +79,38 @@ final class AttributeList extends AbstractList<Attribute>
 	/** The initial size to start the backing array. */
 	private static final int INITIAL_ARRAY_SIZE = 4;
 
+	/**
+	 * The number of Attributes at which lookups switch from a linear scan to
+	 * the hash index. Small lists (the common case) never build the index.
+	 */
+	static final int INDEX_THRESHOLD = getIndexThreshold();
+
 	/** The backing array */
 	private Attribute attributeData[];
 
 	/** The current size */
 	private int size;
 
+	/**
+	 * Open-addressing hash index of attribute positions keyed on name and
+	 * Namespace URI. Each slot holds <code>position + 1</code>, with 0 being
+	 * an empty slot. Null until a lookup is done on a list that is at least
+	 * INDEX_THRESHOLD in size, and discarded whenever positions shift.
+	 */
+	private transient int[] hashIndex = null;
+
+	/**
+	 * The Namespace URI of each (non-empty) prefix the Attributes use, for
+	 * the Namespace collision checks. A prefix that is used with more than
+	 * one URI maps to null. Built and discarded with the hash index.
+	 */
+	private transient HashMap<String, String> prefixIndex = null;
+
 	/** The parent Element */
 	private final Element parent;
+
+	/** Set when the Document this list is part of is frozen */
+	private boolean frozen = false;
 	
 	private static final Comparator<Attribute> ATTRIBUTE_NATURAL = new Comparator<Attribute>() {
 
@@ -111,6 +136,217 @@ final class AttributeList extends AbstractList<Attribute>
 		this.parent = parent;
 	}
 
+	private static final int getIndexThreshold() {
+		final String prop = SystemProperty.get(
+				JDOMConstants.JDOM2_PROPERTY_ATTRIBUTE_INDEX_THRESHOLD, null);
+		if (prop != null) {
+			try {
+				final int val = Integer.parseInt(prop.trim());
+				if (val > 0) {
+					return val;
+				}
+			} catch (NumberFormatException nfe) {
+				// fall through to the default.
+			}
+		}
+		return 8;
+	}
+
+	/**
+	 * Compute the hash slot key for an attribute name and Namespace URI.
+	 */
+	private static final int hash(final String name, final String uri) {
+		final int h = name.hashCode() * 31 + uri.hashCode();
+		// spread the high bits in to the low bits used by the mask.
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Add the Attribute at the given position to the hash index, unless an
+	 * equivalent Attribute is already indexed (the lower position wins).
+	 * The index must have room for the new entry.
+	 */
+	private final void indexAttribute(final int[] index, final int pos) {
+		final Attribute att = attributeData[pos];
+		final String name = att.getName();
+		final String uri = att.getNamespaceURI();
+		final int mask = index.length - 1;
+		int slot = hash(name, uri) & mask;
+		while (index[slot] != 0) {
+			final Attribute got = attributeData[index[slot] - 1];
+			if (got.getName().equals(name) && got.getNamespaceURI().equals(uri)) {
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		index[slot] = pos + 1;
+	}
+
+	/**
+	 * Get the hash index, building it if needed.
+	 * @return the index, or null if the list is too small to need one.
+	 */
+	private final int[] getHashIndex() {
+		if (size < INDEX_THRESHOLD) {
+			return null;
+		}
+		if (hashIndex == null) {
+			int cap = INITIAL_ARRAY_SIZE;
+			// keep the load factor at or below 0.5
+			while (cap < (size << 1)) {
+				cap <<= 1;
+			}
+			final int[] index = new int[cap];
+			for (int i = 0; i < size; i++) {
+				indexAttribute(index, i);
+			}
+			hashIndex = index;
+		}
+		return hashIndex;
+	}
+
+	/**
+	 * Add the prefix of an Attribute to the prefix index.
+	 */
+	private static final void indexPrefix(final HashMap<String, String> index,
+			final Attribute att) {
+		final Namespace ns = att.getNamespace();
+		final String prefix = ns.getPrefix();
+		if ("".equals(prefix)) {
+			return;
+		}
+		final String uri = index.get(prefix);
+		if (uri == null) {
+			if (!index.containsKey(prefix)) {
+				index.put(prefix, ns.getURI());
+			}
+		} else if (!uri.equals(ns.getURI())) {
+			// only possible for unchecked adds.
+			index.put(prefix, null);
+		}
+	}
+
+	/**
+	 * Get the prefix index, building it if needed.
+	 * @return the index, or null if the list is too small to need one.
+	 */
+	private final HashMap<String, String> getPrefixIndex() {
+		if (size < INDEX_THRESHOLD) {
+			return null;
+		}
+		if (prefixIndex == null) {
+			final HashMap<String, String> index = new HashMap<String, String>();
+			for (int i = 0; i < size; i++) {
+				indexPrefix(index, attributeData[i]);
+			}
+			prefixIndex = index;
+		}
+		return prefixIndex;
+	}
+
+	/**
+	 * Keep the indexes (if there are any) in sync with an Attribute that
+	 * was just appended to the end of the list.
+	 */
+	private final void appended() {
+		if (hashIndex != null) {
+			if ((size << 1) > hashIndex.length) {
+				// rebuild larger on the next lookup.
+				hashIndex = null;
+			} else {
+				indexAttribute(hashIndex, size - 1);
+			}
+		}
+		if (prefixIndex != null) {
+			indexPrefix(prefixIndex, attributeData[size - 1]);
+		}
+	}
+
+	/**
+	 * Positions have shifted, or a key has changed. Discard the indexes
+	 * and let the next lookup rebuild them.
+	 */
+	final void invalidateIndex() {
+		hashIndex = null;
+		prefixIndex = null;
+	}
+
+	/**
+	 * Check whether the Namespace of an Attribute collides with the
+	 * Namespaces of the parent Element, like
+	 * {@link Verifier#checkNamespaceCollision(Attribute, Element, int)}, but
+	 * checking the other Attributes with the prefix index on large lists.
+	 * 
+	 * @param attribute
+	 *        The Attribute to check.
+	 * @param ignoreatt
+	 *        The position of an Attribute that is being replaced, or -1.
+	 * @return the reason for the collision, or null if there is none.
+	 */
+	private final String checkNamespaceCollision(final Attribute attribute,
+			final int ignoreatt) {
+		final Namespace namespace = attribute.getNamespace();
+		final String prefix = namespace.getPrefix();
+		if ("".equals(prefix)) {
+			return null;
+		}
+		final HashMap<String, String> prefixes = getPrefixIndex();
+		if (prefixes == null) {
+			return Verifier.checkNamespaceCollision(attribute, parent, ignoreatt);
+		}
+		final String uri = prefixes.get(prefix);
+		if ((uri == null && !prefixes.containsKey(prefix)) ||
+				namespace.getURI().equals(uri)) {
+			// no Attribute has the prefix with a different URI.
+			String reason = Verifier.checkNamespaceCollision(namespace,
+					parent.getNamespace());
+			if (reason != null) {
+				return reason + " with the element namespace prefix";
+			}
+			if (parent.hasAdditionalNamespaces()) {
+				reason = Verifier.checkNamespaceCollision(namespace,
+						parent.getAdditionalNamespaces());
+			}
+			return reason;
+		}
+		// a collision, unless it is with the ignored Attribute only.
+		return Verifier.checkNamespaceCollision(attribute, parent, ignoreatt);
+	}
+
+	/**
+	 * Make this list read-only. This is called when the Document it is part
+	 * of is frozen, and is not reversible. The hash index (if the list is
+	 * large enough to need one) is built now, so that concurrent readers of
+	 * the frozen list never modify it.
+	 */
+	final void freeze() {
+		frozen = true;
+		for (int i = 0; i < size; i++) {
+			attributeData[i].frozen = true;
+		}
+		getHashIndex();
+	}
+
+	/**
+	 * Fail fast if this list is part of a frozen Document.
+	 * @throws UnsupportedOperationException if the list is frozen.
+	 */
+	private final void checkFrozen() {
+		if (frozen) {
+			throw Document.frozenException();
+		}
+	}
+
+	/**
+	 * The attributes are about to change, which discards the source span of
+	 * the parent Element.
+	 */
+	private final void markModified() {
+		if (parent.span != null) {
+			parent.sourceModified();
+		}
+	}
+
 	/**
 	 * Package internal method to support building from sources that are 100%
 	 * trusted.
@@ -119,9 +355,13 @@ final class AttributeList extends AbstractList<Attribute>
 	 *        an Attribute to add without any checks
 	 */
 	final void uncheckedAddAttribute(final Attribute a) {
+		checkFrozen();
+		markModified();
 		a.parent = parent;
+		parent.scopeChanged();
 		ensureCapacity(size + 1);
 		attributeData[size++] = a;
+		appended();
 		modCount++;
 	}
 
@@ -138,15 +378,17 @@ final class AttributeList extends AbstractList<Attribute>
 	 */
 	@Override
 	public boolean add(final Attribute attribute) {
+		checkFrozen();
+		markModified();
 		if (attribute.getParent() != null) {
 			throw new IllegalAddException(
 					"The attribute already has an existing parent \""
 							+ attribute.getParent().getQualifiedName() + "\"");
 		}
 
-		if (Verifier.checkNamespaceCollision(attribute, parent) != null) {
-			throw new IllegalAddException(parent, attribute,
-					Verifier.checkNamespaceCollision(attribute, parent));
+		final String reason = checkNamespaceCollision(attribute, -1);
+		if (reason != null) {
+			throw new IllegalAddException(parent, attribute, reason);
 		}
 
 		// returns -1 if not exist
@@ -155,12 +397,18 @@ final class AttributeList extends AbstractList<Attribute>
 			attribute.setParent(parent);
 			ensureCapacity(size + 1);
 			attributeData[size++] = attribute;
+			appended();
 			modCount++;
 		} else {
+			// same name and URI, so the hash index is unaffected, but the
+			// prefix may differ (a stale prefix only costs a full check).
 			final Attribute old = attributeData[duplicate];
 			old.setParent(null);
 			attributeData[duplicate] = attribute;
 			attribute.setParent(parent);
+			if (prefixIndex != null) {
+				indexPrefix(prefixIndex, attribute);
+			}
 		}
 		return true;
 	}
@@ -177,6 +425,8 @@ final class AttributeList extends AbstractList<Attribute>
 	 */
 	@Override
 	public void add(final int index, final Attribute attribute) {
+		checkFrozen();
+		markModified();
 		if (index < 0 || index > size) {
 			throw new IndexOutOfBoundsException("Index: " + index +
 					" Size: " + size());
@@ -192,7 +442,7 @@ final class AttributeList extends AbstractList<Attribute>
 			throw new IllegalAddException("Cannot add duplicate attribute");
 		}
 
-		final String reason = Verifier.checkNamespaceCollision(attribute, parent);
+		final String reason = checkNamespaceCollision(attribute, -1);
 		if (reason != null) {
 			throw new IllegalAddException(parent, attribute, reason);
 		}
@@ -202,11 +452,13 @@ final class AttributeList extends AbstractList<Attribute>
 		ensureCapacity(size + 1);
 		if (index == size) {
 			attributeData[size++] = attribute;
+			appended();
 		} else {
 			System.arraycopy(attributeData, index, attributeData, index + 1, 
 					size - index);
 			attributeData[index] = attribute;
 			size++;
+			invalidateIndex();
 		}
 		modCount++;
 	}
@@ -292,6 +544,9 @@ final class AttributeList extends AbstractList<Attribute>
 	 */
 	@Override
 	public void clear() {
+		checkFrozen();
+		markModified();
+		invalidateIndex();
 		if (attributeData != null) {
 			while (size > 0) {
 				size--;
@@ -311,6 +566,8 @@ final class AttributeList extends AbstractList<Attribute>
 	 *         if validation rules prevent the addAll
 	 */
 	void clearAndSet(final Collection<? extends Attribute> collection) {
+		checkFrozen();
+		markModified();
 		if (collection == null || collection.isEmpty()) {
 			clear();
 			return;
@@ -330,6 +587,7 @@ final class AttributeList extends AbstractList<Attribute>
 		}
 		size = 0;
 		attributeData = null;
+		invalidateIndex();
 
 		boolean ok = false;
 		try {
@@ -344,6 +602,7 @@ final class AttributeList extends AbstractList<Attribute>
 				while (size < oldSize) {
 					attributeData[size++].setParent(parent);
 				}
+				invalidateIndex();
 				modCount = oldModCount;
 			}
 		}
@@ -358,7 +617,7 @@ final class AttributeList extends AbstractList<Attribute>
 	 * @param minCapacity
 	 *        the desired minimum capacity.
 	 */
-	private void ensureCapacity(final int minCapacity) {
+	void ensureCapacity(final int minCapacity) {
 		if (attributeData == null) {
 			attributeData = 
 					new Attribute[Math.max(minCapacity, INITIAL_ARRAY_SIZE)];
@@ -425,6 +684,20 @@ final class AttributeList extends AbstractList<Attribute>
 				return indexOf(name, Namespace.NO_NAMESPACE);
 			}
 			final String uri = namespace.getURI();
+			final int[] index = getHashIndex();
+			if (index != null) {
+				final int mask = index.length - 1;
+				int slot = hash(name, uri) & mask;
+				while (index[slot] != 0) {
+					final Attribute att = attributeData[index[slot] - 1];
+					if (att.getName().equals(name) &&
+							att.getNamespaceURI().equals(uri)) {
+						return index[slot] - 1;
+					}
+					slot = (slot + 1) & mask;
+				}
+				return -1;
+			}
 			for (int i = 0; i < size; i++) {
 				final Attribute att = attributeData[i];
 				if (att.getNamespaceURI().equals(uri) &&
@@ -445,6 +718,8 @@ final class AttributeList extends AbstractList<Attribute>
 	 */
 	@Override
 	public Attribute remove(final int index) {
+		checkFrozen();
+		markModified();
 		if (index < 0 || index >= size)
 			throw new IndexOutOfBoundsException("Index: " + index +
 					" Size: " + size());
@@ -454,6 +729,7 @@ final class AttributeList extends AbstractList<Attribute>
 		System.arraycopy(attributeData, index + 1, attributeData, index,
 				size - index - 1);
 		attributeData[--size] = null; // Let gc do its work
+		invalidateIndex();
 		modCount++;
 		return old;
 	}
@@ -491,6 +767,8 @@ final class AttributeList extends AbstractList<Attribute>
 	 */
 	@Override
 	public Attribute set(final int index, final Attribute attribute) {
+		checkFrozen();
+		markModified();
 		if (index < 0 || index >= size)
 			throw new IndexOutOfBoundsException("Index: " + index +
 					" Size: " + size());
@@ -506,7 +784,7 @@ final class AttributeList extends AbstractList<Attribute>
 			throw new IllegalAddException("Cannot set duplicate attribute");
 		}
 
-		final String reason = Verifier.checkNamespaceCollision(attribute, parent, index);
+		final String reason = checkNamespaceCollision(attribute, index);
 		if (reason != null) {
 			throw new IllegalAddException(parent, attribute, reason);
 		}
@@ -516,6 +794,7 @@ final class AttributeList extends AbstractList<Attribute>
 
 		attributeData[index] = attribute;
 		attribute.setParent(parent);
+		invalidateIndex();
 		return old;
 	}
 
@@ -594,6 +873,8 @@ final class AttributeList extends AbstractList<Attribute>
 	}
 	
 	private void sortInPlace(final int[] indexes) {
+		checkFrozen();
+		markModified();
 		// the indexes are a discrete set of values that have no duplicates,
 		// and describe the relative order of each of them.
 		// as a result, we can do some tricks....
@@ -607,6 +888,7 @@ final class AttributeList extends AbstractList<Attribute>
 		for (int i = 0; i < indexes.length; i ++) {
 			attributeData[unsorted[i]] = usc[i];
 		}
+		invalidateIndex();
 	}
 
 	/**
@@ -119,6 +119,8 @@ public class Comment extends Content {
 	 *         Comment.
 	 */
 	public Comment setText(String text) {
+		checkFrozen();
+		markModified();
 		String reason;
 		if ((reason = Verifier.checkCommentData(text)) != null) {
 			throw new IllegalDataException(text, "comment", reason);
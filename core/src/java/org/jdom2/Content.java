@@ -134,6 +134,11 @@ public abstract class Content extends CloneBase
 	 * instances are 'detached'
 	 */
 	protected transient Parent parent = null;
+
+	/**
+	 * Set when the Document this Content is part of is frozen.
+	 */
+	transient boolean frozen = false;
 	/**
 	 * The content type enumerate value for this Content
 	 * @serialField This is an Enum, and cannot be null.
@@ -204,6 +209,29 @@ public abstract class Content extends CloneBase
 		return (Element) ((pnt instanceof Element) ? pnt : null);
 	}
 
+	/**
+	 * Fail fast if this Content is part of a frozen Document.
+	 * 
+	 * @throws UnsupportedOperationException if the Document is frozen.
+	 * @see Document#freeze()
+	 */
+	final void checkFrozen() {
+		if (frozen) {
+			throw Document.frozenException();
+		}
+	}
+
+	/**
+	 * This Content is about to change, which discards the source span of the
+	 * Element it is in (or of this Element), see {@link SourceSpan}.
+	 */
+	final void markModified() {
+		final Parent p = ctype == CType.Element ? (Element)this : parent;
+		if (p instanceof Element && ((Element)p).span != null) {
+			((Element)p).sourceModified();
+		}
+	}
+
 	/**
 	 * Sets the parent of this Content. The caller is responsible for removing
 	 * any pre-existing parentage.
@@ -243,6 +271,7 @@ public abstract class Content extends CloneBase
 	public Content clone() {
 		Content c = (Content)super.clone();
 		c.parent = null;
+		c.frozen = false;
 		return c;
 	}
 
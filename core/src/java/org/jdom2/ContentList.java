@@ -81,6 +81,12 @@ final class ContentList extends AbstractList<Content>
 
 	private static final int INITIAL_ARRAY_SIZE = 4;
 
+	/**
+	 * The number of children a list must hold before name-based child
+	 * lookups will use a {@link ChildIndex} instead of a linear scan.
+	 */
+	static final int CHILD_INDEX_THRESHOLD = 16;
+
 	/** Our backing list */
 	private Content elementData[] = null;
 	
@@ -106,6 +112,23 @@ final class ContentList extends AbstractList<Content>
 	/** Document or Element this list belongs to */
 	private final Parent parent;
 
+	/**
+	 * Lazily built (name, namespace-URI) index of child Elements. It is only
+	 * valid while its stamp matches the current dataModCount.
+	 */
+	private transient ChildIndex childIndex = null;
+
+	/**
+	 * The dataModCount at the time of the most recent name-based lookup.
+	 * The index is only built when a second lookup happens with no
+	 * intervening change, so that code which alternates between modifying
+	 * and querying the list does not rebuild the index every time.
+	 */
+	private transient int indexRequest = Integer.MAX_VALUE;
+
+	/** Set when the Document this list is part of is frozen */
+	private boolean frozen = false;
+
 	/**
 	 * Force either a Document or Element parent
 	 * 
@@ -124,6 +147,26 @@ final class ContentList extends AbstractList<Content>
 	 *        content to add without any checks
 	 */
 	final void uncheckedAddContent(final Content c) {
+		checkFrozen();
+		markModified();
+		if (c instanceof Element) {
+			((Element)c).scopeChanged();
+		}
+		c.parent = parent;
+		ensureCapacity(size + 1);
+		elementData[size++] = c;
+		incModCount();
+	}
+
+	/**
+	 * Add the only child of a compact Element to the new ContentList of the
+	 * Element. The content of the Element does not change, so this is not
+	 * a modification (of the source span, for example).
+	 * 
+	 * @param c
+	 *        the Text child of the compact Element.
+	 */
+	final void addLeaf(final Content c) {
 		c.parent = parent;
 		ensureCapacity(size + 1);
 		elementData[size++] = c;
@@ -164,6 +207,39 @@ final class ContentList extends AbstractList<Content>
 	 * (set/get/inc)ModCount() is the only thing you should see in the remainder
 	 * of this code.
 	 */
+	/**
+	 * Make this list read-only. This is called when the Document it is part
+	 * of is frozen, and is not reversible. The ChildIndex (if the list is
+	 * large enough to need one) is built now, so that concurrent readers of
+	 * the frozen list never modify it.
+	 */
+	final void freeze() {
+		frozen = true;
+		if (size >= CHILD_INDEX_THRESHOLD) {
+			childIndex = new ChildIndex(elementData, size, getDataModCount());
+		}
+	}
+
+	/**
+	 * Fail fast if this list is part of a frozen Document.
+	 * @throws UnsupportedOperationException if the list is frozen.
+	 */
+	private final void checkFrozen() {
+		if (frozen) {
+			throw Document.frozenException();
+		}
+	}
+
+	/**
+	 * The content is about to change, which discards the source span of the
+	 * parent (if it is an Element).
+	 */
+	private final void markModified() {
+		if (parent instanceof Element && ((Element)parent).span != null) {
+			((Element)parent).sourceModified();
+		}
+	}
+
 	private final void incModCount() {
 		// indicate there's a change to data
 		dataModiCount++;
@@ -219,7 +295,10 @@ final class ContentList extends AbstractList<Content>
 		}
 
 		// Detect if we have <a><b><c/></b></a> and c.add(a)
+		// An Element with no content can not be an ancestor, which is always
+		// the case for Elements that are being built, so skip the walk.
 		if ((parent instanceof Element && child instanceof Element) &&
+				((Element) child).getContentSize() > 0 &&
 				((Element) child).isAncestor((Element) parent)) {
 			throw new IllegalAddException(
 					"The Element cannot be added as a descendent of itself");
@@ -240,6 +319,8 @@ final class ContentList extends AbstractList<Content>
 	 */
 	@Override
 	public void add(final int index, final Content child) {
+		checkFrozen();
+		markModified();
 		// Confirm basic sanity of child.
 		checkPreConditions(child, index, false);
 		// Check to see whether this parent believes it can contain this content
@@ -259,6 +340,40 @@ final class ContentList extends AbstractList<Content>
 		incModCount();
 	}
 
+	/**
+	 * Append Content that a builder has just created. Builders only ever
+	 * append new Content to the end of the Element they are building, so
+	 * there is no index to check, nothing to shift, and the child can not
+	 * contain the parent. The full pre-condition checks are only run if the
+	 * child does not look new (it has a parent, or content of its own).
+	 * <p>
+	 * Builders typically append many children in a row, so the backing array
+	 * doubles in size when it is full, rather than growing by half.
+	 * 
+	 * @param child
+	 *        the newly created <code>Content</code> to append.
+	 */
+	final void appendBuilt(final Content child) {
+		checkFrozen();
+		markModified();
+		if (child == null || child.parent != null || child == parent ||
+				(child instanceof Element &&
+						((Element) child).getContentSize() > 0)) {
+			checkPreConditions(child, size, false);
+		}
+		parent.canContainContent(child, size, false);
+
+		child.setParent(parent);
+
+		if (elementData == null) {
+			elementData = new Content[INITIAL_ARRAY_SIZE];
+		} else if (size == elementData.length) {
+			elementData = ArrayCopy.copyOf(elementData, size << 1);
+		}
+		elementData[size++] = child;
+		incModCount();
+	}
+
 	/**
 	 * Add the specified collection to the end of this list.
 	 * 
@@ -340,6 +455,8 @@ final class ContentList extends AbstractList<Content>
 	 */
 	@Override
 	public void clear() {
+		checkFrozen();
+		markModified();
 		if (elementData != null) {
 			for (int i = 0; i < size; i++) {
 				Content obj = elementData[i];
@@ -359,6 +476,8 @@ final class ContentList extends AbstractList<Content>
 	 *        The collection to use.
 	 */
 	void clearAndSet(final Collection<? extends Content> collection) {
+		checkFrozen();
+		markModified();
 		if (collection == null || collection.isEmpty()) {
 			clear();
 			return;
@@ -487,6 +606,147 @@ final class ContentList extends AbstractList<Content>
 		return -1;
 	}
 
+	/**
+	 * Called when a child Element of this list changes its name or
+	 * Namespace. Any name-based views of this list need to be refreshed.
+	 */
+	void childRenamed() {
+		incDataModOnly();
+	}
+
+	/**
+	 * Get the ChildIndex for the current state of this list, if it is worth
+	 * having one.
+	 * 
+	 * @return the current ChildIndex, or null if the caller should scan.
+	 */
+	private ChildIndex getChildIndex() {
+		if (size < CHILD_INDEX_THRESHOLD) {
+			return null;
+		}
+		if (frozen) {
+			// built by freeze(), frozen lists are read by concurrent threads.
+			return childIndex;
+		}
+		final int stamp = getDataModCount();
+		final ChildIndex current = childIndex;
+		if (current != null && current.stamp == stamp) {
+			return current;
+		}
+		if (indexRequest != stamp) {
+			// first lookup since the last change... scan this time.
+			indexRequest = stamp;
+			childIndex = null;
+			return null;
+		}
+		final ChildIndex index = new ChildIndex(elementData, size, stamp);
+		childIndex = index;
+		return index;
+	}
+
+	/**
+	 * Test whether the content at the given index is an Element with the
+	 * given name and Namespace URI.
+	 */
+	private final boolean isChild(final int index, final String name,
+			final String uri) {
+		final Content c = elementData[index];
+		if (c instanceof Element) {
+			final Element e = (Element)c;
+			return name.equals(e.getName()) && uri.equals(e.getNamespaceURI());
+		}
+		return false;
+	}
+
+	/**
+	 * Return the index of the first child Element with the given name and the
+	 * same Namespace URI as <i>ns</i>.
+	 * 
+	 * @param name
+	 *        The Element name to match (not null).
+	 * @param ns
+	 *        The Namespace to match (not null).
+	 * @return the index of the first matching Element, or -1 if none.
+	 */
+	int indexOfChild(final String name, final Namespace ns) {
+		final String uri = ns.getURI();
+		final ChildIndex ci = getChildIndex();
+		if (ci != null) {
+			final int slot = ci.find(name, uri);
+			return slot < 0 ? -1 : ci.positions[slot][0];
+		}
+		for (int i = 0; i < size; i++) {
+			if (isChild(i, name, uri)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the first child Element with the given name and the same
+	 * Namespace URI as <i>ns</i>.
+	 * 
+	 * @param name
+	 *        The Element name to match (not null).
+	 * @param ns
+	 *        The Namespace to match (not null).
+	 * @return the first matching Element, or null if none.
+	 */
+	Element getChild(final String name, final Namespace ns) {
+		final int index = indexOfChild(name, ns);
+		return index < 0 ? null : (Element)elementData[index];
+	}
+
+	/**
+	 * Return a live view of the child Elements with the given name and the
+	 * same Namespace URI as <i>ns</i>. The view is populated from the
+	 * ChildIndex when there is one.
+	 * 
+	 * @param name
+	 *        The Element name to match (not null).
+	 * @param ns
+	 *        The Namespace to match (not null).
+	 * @return a FilterList of the matching child Elements.
+	 */
+	List<Element> getChildren(final String name, final Namespace ns) {
+		return new ChildFilterList(name, ns);
+	}
+
+	/**
+	 * Remove all child Elements with the given name and the same Namespace
+	 * URI as <i>ns</i>. The remaining content is compacted in a single pass.
+	 * 
+	 * @param name
+	 *        The Element name to match (not null).
+	 * @param ns
+	 *        The Namespace to match (not null).
+	 * @return true if anything was removed.
+	 */
+	boolean removeChildren(final String name, final Namespace ns) {
+		checkFrozen();
+		final int first = indexOfChild(name, ns);
+		if (first < 0) {
+			return false;
+		}
+		markModified();
+		final String uri = ns.getURI();
+		int dest = first;
+		for (int i = first; i < size; i++) {
+			if (isChild(i, name, uri)) {
+				removeParent(elementData[i]);
+			} else {
+				elementData[dest++] = elementData[i];
+			}
+		}
+		for (int i = dest; i < size; i++) {
+			elementData[i] = null;
+		}
+		size = dest;
+		incModCount();
+		return true;
+	}
+
 	/**
 	 * Remove the object at the specified offset.
 	 * 
@@ -496,6 +756,8 @@ final class ContentList extends AbstractList<Content>
 	 */
 	@Override
 	public Content remove(final int index) {
+		checkFrozen();
+		markModified();
 		checkIndex(index, true);
 
 		final Content old = elementData[index];
@@ -523,6 +785,8 @@ final class ContentList extends AbstractList<Content>
 	 */
 	@Override
 	public Content set(final int index, final Content child) {
+		checkFrozen();
+		markModified();
 		// Confirm basic sanity of child.
 		checkPreConditions(child, index, true);
 
@@ -581,6 +845,8 @@ final class ContentList extends AbstractList<Content>
 	}
 	
 	private void sortInPlace(final int[] indexes) {
+		checkFrozen();
+		markModified();
 		// the indexes are a discrete set of values that have no duplicates,
 		// and describe the relative order of each of them.
 		// as a result, we can do some tricks....
@@ -594,6 +860,8 @@ final class ContentList extends AbstractList<Content>
 		for (int i = 0; i < indexes.length; i ++) {
 			elementData[unsorted[i]] = usc[i];
 		}
+		// positions have changed, views and the child index are stale.
+		incDataModOnly();
 	}
 
 	/**
@@ -926,10 +1194,12 @@ final class ContentList extends AbstractList<Content>
 		final Filter<F> filter;
 		// correlate the position in the filtered list to the index in the
 		// backing ContentList.
-		int[] backingpos = new int[size + INITIAL_ARRAY_SIZE];
+		int[] backingpos;
 		int backingsize = 0;
 		// track data modifications in the backing ContentList.
 		int xdata = -1;
+		// true if backingpos holds every match, and no scan is needed.
+		boolean complete = false;
 
 		/**
 		 * Create a new instance of the FilterList with the specified Filter.
@@ -938,7 +1208,21 @@ final class ContentList extends AbstractList<Content>
 		 *        The underlying Filter to use for filtering the content.
 		 */
 		FilterList(final Filter<F> filter) {
+			this(filter, size + INITIAL_ARRAY_SIZE);
+		}
+
+		/**
+		 * Create a new instance of the FilterList with the specified Filter,
+		 * and an initial capacity for the backing positions.
+		 * 
+		 * @param filter
+		 *        The underlying Filter to use for filtering the content.
+		 * @param capacity
+		 *        The initial capacity of the backing positions.
+		 */
+		FilterList(final Filter<F> filter, final int capacity) {
 			this.filter = filter;
+			this.backingpos = new int[capacity];
 		}
 		
 		/**
@@ -973,7 +1257,8 @@ final class ContentList extends AbstractList<Content>
 				// we need to invalidate our research...
 				xdata = getDataModCount();
 				backingsize = 0;
-				if (size >= backingpos.length) {
+				complete = prime();
+				if (!complete && size >= backingpos.length) {
 					backingpos = new int[size + 1];
 				}
 			}
@@ -984,6 +1269,10 @@ final class ContentList extends AbstractList<Content>
 				return backingpos[index];
 			}
 
+			if (complete) {
+				return size;
+			}
+
 			// the index in the backing list of the next value to check.
 			int bpi = 0;
 			if (backingsize > 0) {
@@ -993,6 +1282,10 @@ final class ContentList extends AbstractList<Content>
 			while (bpi < size) {
 				final F gotit = filter.filter(elementData[bpi]);
 				if (gotit != null) {
+					if (backingsize == backingpos.length) {
+						// only happens after a prime() from a small array.
+						backingpos = ArrayCopy.copyOf(backingpos, size + 1);
+					}
 					backingpos[backingsize] = bpi;
 					if (backingsize++ == index) {
 						return bpi;
@@ -1003,6 +1296,17 @@ final class ContentList extends AbstractList<Content>
 			return size;
 		}
 
+		/**
+		 * Give subclasses the opportunity to populate backingpos in bulk
+		 * after the backing list has been modified.
+		 * 
+		 * @return true if backingpos now holds every match (and backingsize
+		 *         has been set accordingly), false if resync should scan.
+		 */
+		boolean prime() {
+			return false;
+		}
+
 		/**
 		 * Inserts the specified object at the specified position in this list.
 		 * Shifts the object currently at that position (if any) and any
@@ -1035,6 +1339,7 @@ final class ContentList extends AbstractList<Content>
 				backingpos[index] = adj;
 				backingsize = index + 1;
 				xdata = getDataModCount();
+				complete = false;
 
 			} else {
 				throw new IllegalAddException("Filter won't allow the " +
@@ -1091,6 +1396,7 @@ final class ContentList extends AbstractList<Content>
 						backingpos[index + count] = adj + count;
 						backingsize = index + count + 1;
 						xdata = getDataModCount();
+						complete = false;
 
 						count++;
 					} else {
@@ -1113,6 +1419,7 @@ final class ContentList extends AbstractList<Content>
 					// call maybe....
 					backingsize = index;
 					xdata = tmpmodcount;
+					complete = false;
 				}
 			}
 
@@ -1173,6 +1480,7 @@ final class ContentList extends AbstractList<Content>
 			// optimise the backing cache.
 			backingsize = index;
 			xdata = getDataModCount();
+			complete = false;
 			// use Filter to ensure the cast is right.
 			return filter.filter(oldc);
 		}
@@ -1282,6 +1590,130 @@ final class ContentList extends AbstractList<Content>
 		
 	}
 
+	/* * * * * * * * * * * * * ChildFilterList * * * * * * * * * * * * * * */
+	/* * * * * * * * * * * * * ChildFilterList * * * * * * * * * * * * * * */
+
+	/**
+	 * A FilterList of the child Elements with a specific name and Namespace
+	 * URI. When the backing ContentList has a ChildIndex the view is primed
+	 * directly from the index rather than by filtering every child.
+	 */
+	final class ChildFilterList extends FilterList<Element> {
+
+		private final String name;
+		private final String uri;
+
+		ChildFilterList(final String name, final Namespace ns) {
+			// prime() sizes the positions, typically there are few.
+			super(new ElementFilter(name, ns), INITIAL_ARRAY_SIZE);
+			this.name = name;
+			this.uri = ns.getURI();
+		}
+
+		@Override
+		boolean prime() {
+			final ChildIndex ci = getChildIndex();
+			if (ci == null) {
+				return false;
+			}
+			final int slot = ci.find(name, uri);
+			if (slot >= 0) {
+				final int cnt = ci.counts[slot];
+				if (cnt > backingpos.length) {
+					backingpos = new int[cnt + INITIAL_ARRAY_SIZE];
+				}
+				System.arraycopy(ci.positions[slot], 0, backingpos, 0, cnt);
+				backingsize = cnt;
+			}
+			return true;
+		}
+
+	}
+
+	/* * * * * * * * * * * * * ChildIndex * * * * * * * * * * * * * * * * */
+	/* * * * * * * * * * * * * ChildIndex * * * * * * * * * * * * * * * * */
+
+	/**
+	 * An immutable snapshot of where the child Elements of a ContentList are,
+	 * keyed by Element name and Namespace URI. The index uses open addressing
+	 * so that lookups do not need to allocate a composite key.
+	 * <p>
+	 * The snapshot is only valid while the ContentList's dataModCount matches
+	 * the stamp it was built with.
+	 */
+	private static final class ChildIndex {
+		/** The dataModCount this index was built at */
+		private final int stamp;
+		private final int mask;
+		private final String[] names;
+		private final String[] uris;
+		/** The ascending content positions for each (name, uri) slot */
+		private final int[][] positions;
+		/** The number of valid positions in each slot */
+		private final int[] counts;
+
+		ChildIndex(final Content[] data, final int size, final int stamp) {
+			this.stamp = stamp;
+			int cap = INITIAL_ARRAY_SIZE;
+			while (cap < size) {
+				cap <<= 1;
+			}
+			// keep the load factor at or below 0.5
+			cap <<= 1;
+			mask = cap - 1;
+			names = new String[cap];
+			uris = new String[cap];
+			positions = new int[cap][];
+			counts = new int[cap];
+
+			for (int i = 0; i < size; i++) {
+				if (!(data[i] instanceof Element)) {
+					continue;
+				}
+				final Element e = (Element)data[i];
+				final String name = e.getName();
+				final String uri = e.getNamespaceURI();
+				int slot = hash(name, uri) & mask;
+				while (names[slot] != null &&
+						!(names[slot].equals(name) && uris[slot].equals(uri))) {
+					slot = (slot + 1) & mask;
+				}
+				if (names[slot] == null) {
+					names[slot] = name;
+					uris[slot] = uri;
+					positions[slot] = new int[INITIAL_ARRAY_SIZE];
+				} else if (counts[slot] == positions[slot].length) {
+					positions[slot] = ArrayCopy.copyOf(positions[slot],
+							counts[slot] << 1);
+				}
+				positions[slot][counts[slot]++] = i;
+			}
+		}
+
+		private static final int hash(final String name, final String uri) {
+			final int h = name.hashCode() * 31 + uri.hashCode();
+			// spread the high bits in to the low bits used by the mask.
+			return h ^ (h >>> 16);
+		}
+
+		/**
+		 * Locate the slot for the given name and Namespace URI.
+		 * @param name The Element name
+		 * @param uri The Namespace URI
+		 * @return the slot, or -1 if there are no such Elements.
+		 */
+		int find(final String name, final String uri) {
+			int slot = hash(name, uri) & mask;
+			while (names[slot] != null) {
+				if (names[slot].equals(name) && uris[slot].equals(uri)) {
+					return slot;
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+	}
+
 	/* * * * * * * * * * * * * FilterListIterator * * * * * * * * * * * */
 	/* * * * * * * * * * * * * FilterListIterator * * * * * * * * * * * */
 
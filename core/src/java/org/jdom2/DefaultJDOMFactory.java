@@ -130,6 +130,17 @@ public class DefaultJDOMFactory implements JDOMFactory {
 	public Text text(final int line, final int col, final String text) {
 		return new Text(text);
 	}
+
+	@Override
+	public final SpilledText spilledText(final SpilledText text) {
+		return spilledText(-1, -1, text);
+	}
+
+	@Override
+	public SpilledText spilledText(final int line, final int col,
+			final SpilledText text) {
+		return text;
+	}
 	
 	@Override
 	public final Comment comment(String text) {
@@ -304,12 +315,18 @@ public class DefaultJDOMFactory implements JDOMFactory {
 	// List manipulation
 	// =====================================================================
 
+	/**
+	 * Builders only use this method to add Content that they have just
+	 * created, so Content added to an Element goes through a trusted append
+	 * that skips the checks that only matter for Content that is already
+	 * part of a tree (it still refuses Content that has a parent).
+	 */
 	@Override
 	public void addContent(Parent parent, Content child) {
 		if (parent instanceof Document) {
 			((Document) parent).addContent(child);
 		} else {
-			((Element) parent).addContent(child);
+			((Element) parent).addBuiltContent(child);
 		}
 	}
 
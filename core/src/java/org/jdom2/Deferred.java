@@ -0,0 +1,118 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2;
+
+/**
+ * The source of the attributes and content of an Element that has not been
+ * expanded yet. Builders that index a document before building it (see
+ * {@link org.jdom2.input.DeferredBuilder}) create Elements with just their
+ * name and Namespace declarations, and attach a Deferred to each one. The
+ * first time anything reads or changes the attributes or content of the
+ * Element, {@link #expand(Element)} is called to populate them.
+ * <p>
+ * Expansion is invisible through the Element API, but it is a change to the
+ * Element. Elements with deferred content can not be read concurrently until
+ * they have been expanded. Freezing a Document expands all of it.
+ * <p>
+ * Deferred Elements are expanded before they are cloned or serialized, so
+ * the copies are complete, ordinary Elements.
+ */
+public abstract class Deferred {
+
+	/**
+	 * Attach a Deferred to an Element. The Element must not have any
+	 * attributes or content yet.
+	 * 
+	 * @param element the Element to defer.
+	 * @param deferred the source of the Element's attributes and content.
+	 * @throws IllegalStateException if the Element already has attributes,
+	 *         content, or a Deferred, or is frozen.
+	 * @throws NullPointerException if either argument is null.
+	 */
+	public static final void defer(final Element element,
+			final Deferred deferred) {
+		if (deferred == null) {
+			throw new NullPointerException("Can not defer to a null Deferred");
+		}
+		if (element.deferred != null || element.frozen
+				|| element.attributes != null
+				|| element.getContentSize() != 0) {
+			throw new IllegalStateException("Only an empty Element can be deferred");
+		}
+		element.deferred = deferred;
+	}
+
+	/**
+	 * Test whether an Element still has a Deferred that has not been
+	 * expanded. This does not expand the Element.
+	 * 
+	 * @param element the Element to check.
+	 * @return true if the attributes and content of the Element have not
+	 *         been populated yet.
+	 */
+	public static final boolean isDeferred(final Element element) {
+		return element.deferred != null;
+	}
+
+	/**
+	 * Populate the attributes and content of the Element. This is called at
+	 * most once for each Element, and the Element is no longer deferred when
+	 * it is called, so the normal Element methods can be used to add to it.
+	 * 
+	 * @param element the Element to populate.
+	 */
+	protected abstract void expand(Element element);
+
+}
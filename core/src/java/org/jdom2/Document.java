@@ -57,9 +57,11 @@ package org.jdom2;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
 import java.util.*;
 
 import org.jdom2.filter.*;
+import org.jdom2.internal.ArrayCopy;
 import org.jdom2.util.IteratorIterable;
 
 /**
@@ -90,6 +92,9 @@ public class Document extends CloneBase implements Parent {
 	// Supports the setProperty/getProperty calls
 	private transient HashMap<String,Object> propertyMap = null;
 
+	// Set once this Document has been frozen.
+	private transient FrozenDocument frozen = null;
+
 	/**
 	 * Creates a new empty document.  A document must have a root element,
 	 * so this document will not be well-formed and accessor methods will
@@ -515,9 +520,105 @@ public class Document extends CloneBase implements Parent {
 	 * @param uri the base URI of this document
 	 */
 	public final void setBaseURI(String uri) {
+		checkFrozen();
 		this.baseURI = uri;  // XXX We don't check the URI
 	}
 
+	/**
+	 * Freeze this Document, making the whole tree read-only, and return a
+	 * handle that can be used to share the frozen Document between threads.
+	 * <p>
+	 * Once frozen, every method that modifies the Document, or any of the
+	 * Content or Attributes in it, fails with an
+	 * {@link UnsupportedOperationException}. This includes methods on the
+	 * 'live' Lists returned from methods like {@link Element#getChildren()}.
+	 * Freezing can not be undone, but a clone of a frozen Document (or of
+	 * any Content in it) is a regular, modifiable copy.
+	 * <p>
+	 * A frozen Document can be read by any number of threads concurrently
+	 * without synchronization. The Namespace scopes and child indexes are
+	 * built when the Document is frozen, and values that are otherwise
+	 * recomputed on each call, like {@link Element#getText()},
+	 * {@link Element#getValue()} and {@link Element#getQualifiedName()}, are
+	 * cached as they are read. Those cached Strings are the only state
+	 * written by readers of a frozen Document: they are immutable, so a
+	 * race between readers at worst computes a value twice.
+	 * <p>
+	 * The returned {@link FrozenDocument} holds the Document in a final
+	 * field, so any thread that is given the handle, even through a data
+	 * race, is guaranteed to see the complete, frozen Document. Calling
+	 * this method again returns the same handle.
+	 * 
+	 * @return the handle to the frozen Document.
+	 * @since JDOM2
+	 */
+	public FrozenDocument freeze() {
+		if (frozen != null) {
+			return frozen;
+		}
+		content.freeze();
+		Element[] stack = new Element[16];
+		int sp = 0;
+		final int csize = content.size();
+		for (int i = 0; i < csize; i++) {
+			final Content c = content.get(i);
+			if (c instanceof Element) {
+				// deferred content has to be built before it is read-only.
+				((Element)c).expand();
+				stack[sp++] = (Element)c;
+			}
+			c.frozen = true;
+		}
+		while (sp > 0) {
+			final Element emt = stack[--sp];
+			stack[sp] = null;
+			emt.freeze();
+			final int esize = emt.getContentSize();
+			for (int i = 0; i < esize; i++) {
+				final Content c = emt.getContent(i);
+				if (c instanceof Element) {
+					((Element)c).expand();
+					if (sp == stack.length) {
+						stack = ArrayCopy.copyOf(stack, sp << 1);
+					}
+					stack[sp++] = (Element)c;
+				}
+				c.frozen = true;
+			}
+		}
+		frozen = new FrozenDocument(this);
+		return frozen;
+	}
+
+	/**
+	 * Indicate whether this Document has been frozen.
+	 * 
+	 * @return true if {@link #freeze()} has been called.
+	 * @since JDOM2
+	 */
+	public boolean isFrozen() {
+		return frozen != null;
+	}
+
+	/**
+	 * Fail fast if this Document is frozen.
+	 */
+	private final void checkFrozen() {
+		if (frozen != null) {
+			throw frozenException();
+		}
+	}
+
+	/**
+	 * Create the exception thrown when a frozen Document is modified.
+	 * 
+	 * @return the exception to throw.
+	 */
+	static final UnsupportedOperationException frozenException() {
+		return new UnsupportedOperationException(
+				"The Document is frozen and can not be modified.");
+	}
+
 	/**
 	 * <p>
 	 *   Returns the URI from which this document was loaded,
@@ -682,30 +783,24 @@ public class Document extends CloneBase implements Parent {
 	@Override
 	public Document clone() {
 		final Document doc = (Document) super.clone();
+		doc.frozen = null;
 
 		// The clone has a reference to this object's content list, so
 		// owerwrite with a empty list
 		doc.content = new ContentList(doc);
 
 		// Add the cloned content to clone
+		// The content is already legal for a Document, so it is added
+		// without re-checking it. Element.clone() is not recursive.
 
-		for (int i = 0; i < content.size(); i++) {
-			Object obj = content.get(i);
-			if (obj instanceof Element) {
-				Element element = ((Element)obj).clone();
-				doc.content.add(element);
-			}
-			else if (obj instanceof Comment) {
-				Comment comment = ((Comment)obj).clone();
-				doc.content.add(comment);
-			}
-			else if (obj instanceof ProcessingInstruction) {
-				ProcessingInstruction pi = ((ProcessingInstruction)obj).clone();
-				doc.content.add(pi);
-			}
-			else if (obj instanceof DocType) {
-				DocType dt = ((DocType)obj).clone();
-				doc.content.add(dt);
+		final int size = content.size();
+		doc.content.ensureCapacity(size);
+		for (int i = 0; i < size; i++) {
+			final Content obj = content.get(i);
+			if (obj instanceof Element || obj instanceof Comment ||
+					obj instanceof ProcessingInstruction ||
+					obj instanceof DocType) {
+				doc.content.uncheckedAddContent(obj.clone());
 			}
 		}
 
@@ -767,6 +862,7 @@ public class Document extends CloneBase implements Parent {
 	 * @param value  the <code>Object</code> to store
 	 */
 	public void setProperty(String id, Object value) {
+		checkFrozen();
 		if (propertyMap == null) {
 			propertyMap = new HashMap<String, Object>();
 		}
@@ -873,6 +969,21 @@ public class Document extends CloneBase implements Parent {
 	 */
 	private static final long serialVersionUID = 200L;
 
+	/**
+	 * Plain Document instances are serialized in a compact form that does not
+	 * recurse through the tree (see {@link TreeSerializationProxy}).
+	 * Subclasses of Document continue to use the {@link #writeObject} mechanism.
+	 * 
+	 * @return the object to serialize in place of this Document.
+	 * @throws ObjectStreamException never.
+	 */
+	private Object writeReplace() throws ObjectStreamException {
+		if (getClass() == Document.class) {
+			return new TreeSerializationProxy(this);
+		}
+		return this;
+	}
+
 	/**
 	 * Serialize out the Element.
 	 * 
@@ -60,8 +60,10 @@ import static org.jdom2.JDOMConstants.NS_PREFIX_XML;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -69,11 +71,13 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.TreeMap;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jdom2.ContentList.FilterList;
 import org.jdom2.filter.ElementFilter;
 import org.jdom2.filter.Filter;
+import org.jdom2.internal.ArrayCopy;
 import org.jdom2.util.IteratorIterable;
 
 /**
@@ -125,8 +129,60 @@ public class Element extends Content implements Parent {
 	/**
 	 * The content of the element.  Subclassers have to
 	 * track content using their own mechanism.
+	 * <p>
+	 * This is null while the Element is compact (see {@link #leaf}), use
+	 * {@link #content()} to get the list, creating it if needed.
+	 */
+	transient ContentList content = null;
+
+	/**
+	 * The content of a compact Element. Most Elements are leaves with either
+	 * no content, or a single Text child. Those Elements do not need a
+	 * ContentList until something else is added, or the content is changed
+	 * or filtered as a List. While {@link #content} is null this holds the only child,
+	 * and is one of:
+	 * <ul>
+	 * <li>null - there is no content.
+	 * <li>a String - the value of the single Text child, which has not been
+	 *     needed as a Text instance yet.
+	 * <li>a Text - the single (plain {@link Text}) child.
+	 * </ul>
+	 */
+	private transient Object leaf = null;
+
+	/**
+	 * The cached Namespace scope of this Element, built on demand and
+	 * discarded when anything that affects the scope changes.
+	 */
+	private transient NamespaceScope scope = null;
+
+	/**
+	 * Values derived from the content of a frozen Element, computed on
+	 * demand. Always null for Elements that are not frozen.
+	 * <p>
+	 * This is the only field that is written while a frozen Element is read.
+	 * Concurrent readers may each create a holder, or each compute a value,
+	 * and the last write wins. That is harmless: the values are immutable
+	 * Strings (safely published through their final fields), and a reader
+	 * that sees null (or a lost holder) just computes the value again.
+	 */
+	private transient Derived derived = null;
+
+	/**
+	 * The source of the attributes and content of this Element while they
+	 * have not been built yet, see {@link Deferred}. Every method that uses
+	 * {@link #attributes}, {@link #content} or {@link #leaf} has to call
+	 * {@link #expand()} first.
+	 */
+	transient Deferred deferred = null;
+
+	/**
+	 * The text of this Element in the document it was built from. null when
+	 * the source is not tracked, {@link SourceSpan#NONE} when it is tracked
+	 * but not known, and {@link SourceSpan#MODIFIED} once this Element (or
+	 * anything in it) has changed.
 	 */
-	transient ContentList content = new ContentList(this);
+	transient SourceSpan span = null;
 
 	/**
 	 * This protected constructor is provided in order to support an Element
@@ -222,11 +278,14 @@ public class Element extends Content implements Parent {
 	 *                              name
 	 */
 	public Element setName(final String name) {
+		checkFrozen();
+		markModified();
 		final String reason = Verifier.checkElementName(name);
 		if (reason != null) {
 			throw new IllegalNameException(name, "element", reason);
 		}
 		this.name = name;
+		childRenamed();
 		return this;
 	}
 
@@ -248,6 +307,8 @@ public class Element extends Content implements Parent {
 	 * @throws IllegalAddException if there is a Namespace conflict
 	 */
 	public Element setNamespace(Namespace namespace) {
+		checkFrozen();
+		markModified();
 		if (namespace == null) {
 			namespace = Namespace.NO_NAMESPACE;
 		}
@@ -270,9 +331,24 @@ public class Element extends Content implements Parent {
 		}
 		
 		this.namespace = namespace;
+		scopeChanged();
+		childRenamed();
 		return this;
 	}
 
+	/**
+	 * Let our parent Element know that our name or Namespace changed, so
+	 * that any name-based lookups it has cached can be refreshed.
+	 */
+	private final void childRenamed() {
+		if (parent instanceof Element) {
+			final ContentList pcl = ((Element)parent).content;
+			if (pcl != null) {
+				pcl.childRenamed();
+			}
+		}
+	}
+
 	/**
 	 * Returns the namespace prefix of the element or an empty string if none
 	 * exists.
@@ -320,30 +396,137 @@ public class Element extends Content implements Parent {
 			return getNamespace();
 		}
 
-		// Scan the additional namespaces
-		if (additionalNamespaces != null) {
-			for (int i = 0; i < additionalNamespaces.size(); i++) {
-				final Namespace ns = additionalNamespaces.get(i);
-				if (prefix.equals(ns.getPrefix())) {
-					return ns;
-				}
+		// The scope has the declarations of this element and its ancestors.
+		return getNamespaceScope().getNamespace(prefix);
+	}
+
+	/**
+	 * Get the (cached) Namespace scope of this Element. If there is no cached
+	 * scope, the closest ancestor with one is located and the scopes are
+	 * built from there down to this Element.
+	 * 
+	 * @return the current Namespace scope.
+	 */
+	final NamespaceScope getNamespaceScope() {
+		final NamespaceScope current = scope;
+		if (current != null) {
+			// cached scopes are discarded as soon as they change.
+			return current;
+		}
+
+		Element[] chain = new Element[8];
+		int size = 0;
+		NamespaceScope pscope = null;
+		Element emt = this;
+		while (true) {
+			if (size == chain.length) {
+				chain = ArrayCopy.copyOf(chain, size << 1);
+			}
+			chain[size++] = emt;
+			if (!(emt.parent instanceof Element)) {
+				break;
+			}
+			emt = (Element)emt.parent;
+			final NamespaceScope ps = emt.scope;
+			if (ps != null) {
+				pscope = ps;
+				break;
 			}
 		}
 
+		while (--size >= 0) {
+			emt = chain[size];
+			pscope = new NamespaceScope(emt, pscope);
+			emt.scope = pscope;
+		}
+		return pscope;
+	}
+
+	/**
+	 * Make this Element, its Attributes, and its content lists read-only.
+	 * This is called for every Element when the Document is frozen, parents
+	 * before their children. The Namespace scope is built now (on the
+	 * frozen scope of the parent) if it is not cached, because concurrent
+	 * readers of a frozen Element must not build it.
+	 */
+	final void freeze() {
+		frozen = true;
+		derived = null;
+		// frozen Elements are read concurrently, and can not inflate lazily.
+		expand();
+		content().freeze();
 		if (attributes != null) {
-			for (final Attribute a : attributes) {
-				if (prefix.equals(a.getNamespacePrefix())) {
-					return a.getNamespace();
-				}
-			}
+			attributes.freeze();
 		}
+		getNamespaceScope();
+	}
 
-		// If we still don't have a match, ask the parent
-		if (parent instanceof Element) {
-			return ((Element)parent).getNamespace(prefix);
+	/**
+	 * Get the holder of the derived values of a frozen Element, creating it
+	 * if needed. Concurrent readers may race to create it, see
+	 * {@link #derived}.
+	 * 
+	 * @return the derived values holder.
+	 */
+	private final Derived getDerived() {
+		Derived d = derived;
+		if (d == null) {
+			d = new Derived();
+			derived = d;
 		}
+		return d;
+	}
 
-		return null;
+	/**
+	 * The cached values derived from a frozen Element.
+	 */
+	private static final class Derived {
+		/** The getText() value */
+		String text = null;
+		/** The getValue() value */
+		String value = null;
+		/** The getQualifiedName() value */
+		String qname = null;
+	}
+
+	/**
+	 * Something that affects the Namespace scope of this Element (and its
+	 * descendants) has changed. If a scope has been cached it is discarded,
+	 * with the scopes of the descendants that were built on it. Only
+	 * Elements whose parent Element has a scope can have one, so the search
+	 * stops at the Elements without one.
+	 */
+	final void scopeChanged() {
+		if (scope == null) {
+			return;
+		}
+		scope = null;
+		if (content == null) {
+			// a compact or deferred Element has no child Elements.
+			return;
+		}
+		Element[] stack = new Element[8];
+		int sp = 0;
+		ContentList cl = content;
+		while (true) {
+			for (int i = cl.size() - 1; i >= 0; i--) {
+				final Content c = cl.get(i);
+				if (c instanceof Element && ((Element)c).scope != null) {
+					final Element kid = (Element)c;
+					kid.scope = null;
+					if (kid.content != null) {
+						if (sp == stack.length) {
+							stack = ArrayCopy.copyOf(stack, sp << 1);
+						}
+						stack[sp++] = kid;
+					}
+				}
+			}
+			if (sp == 0) {
+				return;
+			}
+			cl = stack[--sp].content;
+		}
 	}
 
 	/**
@@ -361,6 +544,16 @@ public class Element extends Content implements Parent {
 			return getName();
 		}
 
+		if (frozen) {
+			final Derived d = getDerived();
+			String qname = d.qname;
+			if (qname == null) {
+				qname = namespace.getPrefix() + ':' + name;
+				d.qname = qname;
+			}
+			return qname;
+		}
+
 		return new StringBuilder(namespace.getPrefix())
 		.append(':')
 		.append(name)
@@ -381,6 +574,8 @@ public class Element extends Content implements Parent {
 	 *                             namespace prefix on the element
 	 */
 	public boolean addNamespaceDeclaration(final Namespace additionalNamespace) {
+		checkFrozen();
+		markModified();
 
 		if (additionalNamespaces == null) {
 			additionalNamespaces = new ArrayList<Namespace>(INITIAL_ARRAY_SIZE);
@@ -399,6 +594,7 @@ public class Element extends Content implements Parent {
 			throw new IllegalAddException(this, additionalNamespace, reason);
 		}
 
+		scopeChanged();
 		return additionalNamespaces.add(additionalNamespace);
 	}
 
@@ -413,10 +609,14 @@ public class Element extends Content implements Parent {
 	 * @param additionalNamespace namespace to remove. A null Namespace does nothing.
 	 */
 	public void removeNamespaceDeclaration(final Namespace additionalNamespace) {
+		checkFrozen();
+		markModified();
 		if (additionalNamespaces == null) {
 			return;
 		}
-		additionalNamespaces.remove(additionalNamespace);
+		if (additionalNamespaces.remove(additionalNamespace)) {
+			scopeChanged();
+		}
 	}
 
 	/**
@@ -449,14 +649,100 @@ public class Element extends Content implements Parent {
 	 */
 	@Override
 	public String getValue() {
+		if (frozen) {
+			final Derived d = getDerived();
+			String value = d.value;
+			if (value == null) {
+				final StringBuilder buffer = new StringBuilder();
+				appendValue(buffer);
+				value = buffer.toString();
+				d.value = value;
+			}
+			return value;
+		}
 		final StringBuilder buffer = new StringBuilder();
+		appendValue(buffer);
+		return buffer.toString();
+	}
 
+	/**
+	 * Append the XPath string value of this Element's content to a buffer.
+	 * Child Elements that use this implementation of getValue() append
+	 * directly to the same buffer (and do not cache their own values).
+	 * 
+	 * @param buffer The buffer to append to.
+	 */
+	private void appendValue(final StringBuilder buffer) {
+		expand();
+		if (content == null) {
+			if (leaf != null) {
+				buffer.append(getText());
+			}
+			return;
+		}
 		for (Content child : getContent()) {
-			if (child instanceof Element || child instanceof Text) {
+			if (child instanceof Element) {
+				final Element emt = (Element)child;
+				if (!isPlain(PLAINVALUE, emt.getClass(), "getValue")) {
+					buffer.append(emt.getValue());
+				} else if (emt.derived != null && emt.derived.value != null) {
+					buffer.append(emt.derived.value);
+				} else {
+					emt.appendValue(buffer);
+				}
+			} else if (child instanceof Text) {
 				buffer.append(child.getValue());
 			}
 		}
-		return buffer.toString();
+	}
+
+	/**
+	 * Get the text of this Element in the document it was built from. This
+	 * is only available for Elements built by a SAXBuilder with
+	 * {@link org.jdom2.input.SAXBuilder#setSourceSpans(boolean) source spans}
+	 * set, and only while neither this Element nor anything in it (its name,
+	 * Namespace declarations, Attributes, and all its content) has changed.
+	 * 
+	 * @return the SourceSpan, or null if the source text is not known, or no
+	 *         longer matches this Element.
+	 */
+	public SourceSpan getSourceSpan() {
+		final SourceSpan s = span;
+		return s == SourceSpan.NONE || s == SourceSpan.MODIFIED ? null : s;
+	}
+
+	/**
+	 * Record the text of this Element in the document it was built from.
+	 * Builders call this for each Element they build when they track the
+	 * source (see {@link org.jdom2.input.SAXBuilder#setSourceSpans(boolean)}).
+	 * A null span records that the source text of this Element is not known;
+	 * changes to it are still tracked, so that the spans of its ancestors
+	 * are discarded when it changes.
+	 * 
+	 * @param span
+	 *        The source text of this Element, or null if it is not known.
+	 */
+	public void setSourceSpan(final SourceSpan span) {
+		checkFrozen();
+		this.span = span == null ? SourceSpan.NONE : span;
+	}
+
+	/**
+	 * This Element, or something in it, changed: discard the source span of
+	 * this Element and of its ancestors. The walk stops at an Element that
+	 * does not track its source, or that has changed already (its ancestors
+	 * changed at the same time).
+	 */
+	final void sourceModified() {
+		Parent p = this;
+		while (p instanceof Element) {
+			final Element e = (Element)p;
+			if (e.span == null || e.span == SourceSpan.MODIFIED) {
+				return;
+			}
+			e.span = SourceSpan.MODIFIED;
+			p = e.parent;
+		}
 	}
 
 	/**
@@ -474,13 +760,190 @@ public class Element extends Content implements Parent {
 		return parent instanceof Document;
 	}
 
+	/**
+	 * Get the ContentList of this Element, inflating a compact Element to a
+	 * full ContentList if needed.
+	 * 
+	 * @return the ContentList for this Element.
+	 */
+	final ContentList content() {
+		final ContentList cl = content;
+		return cl != null ? cl : inflate();
+	}
+
+	/**
+	 * Populate the attributes and content of a deferred Element. This does
+	 * nothing if the Element is not deferred, or has already been expanded.
+	 */
+	final void expand() {
+		final Deferred d = deferred;
+		if (d != null) {
+			// cleared first, the Deferred populates us using our own methods.
+			deferred = null;
+			d.expand(this);
+		}
+	}
+
+	/**
+	 * Convert a compact Element in to one with a full ContentList. The only
+	 * child (if any) becomes the first entry in the list.
+	 * 
+	 * @return the new ContentList.
+	 */
+	private final ContentList inflate() {
+		expand();
+		if (content != null) {
+			// the expansion inflated the content.
+			return content;
+		}
+		final ContentList cl = new ContentList(this);
+		if (leaf != null) {
+			cl.addLeaf(leafText());
+			leaf = null;
+		}
+		content = cl;
+		return cl;
+	}
+
+	/**
+	 * Get the single Text child of a compact Element, creating the Text
+	 * instance if only its value was stored.
+	 * 
+	 * @return the single Text child.
+	 */
+	private final Text leafText() {
+		if (leaf instanceof Text) {
+			return (Text)leaf;
+		}
+		final Text text = new Text();
+		text.value = (String)leaf;
+		text.parent = this;
+		leaf = text;
+		return text;
+	}
+
+	/**
+	 * The List that {@link Element#getContent()} returns for a compact
+	 * Element: a live view of the content that reads the compact form
+	 * directly, and only inflates the Element when the content is changed
+	 * through it. Outputters and iterators that read the content of leaves
+	 * keep them compact.
+	 */
+	private final class LeafList extends AbstractList<Content>
+			implements RandomAccess {
+
+		@Override
+		public int size() {
+			return getContentSize();
+		}
+
+		@Override
+		public Content get(final int index) {
+			expand();
+			final ContentList cl = content;
+			if (cl != null) {
+				return cl.get(index);
+			}
+			if (index != 0 || leaf == null) {
+				throw new IndexOutOfBoundsException("Index: " + index +
+						" Size: " + size());
+			}
+			return leafText();
+		}
+
+		@Override
+		public Iterator<Content> iterator() {
+			expand();
+			final ContentList cl = content;
+			return cl != null ? cl.iterator() : super.iterator();
+		}
+
+		@Override
+		public Content set(final int index, final Content child) {
+			return content().set(index, child);
+		}
+
+		@Override
+		public void add(final int index, final Content child) {
+			modCount++;
+			content().add(index, child);
+		}
+
+		@Override
+		public Content remove(final int index) {
+			modCount++;
+			return content().remove(index);
+		}
+
+		@Override
+		public boolean addAll(final Collection<? extends Content> c) {
+			// all or nothing, as ContentList does.
+			modCount++;
+			return content().addAll(c);
+		}
+
+		@Override
+		public boolean addAll(final int index, final Collection<? extends Content> c) {
+			modCount++;
+			return content().addAll(index, c);
+		}
+
+		@Override
+		public void clear() {
+			modCount++;
+			content().clear();
+		}
+	}
+
+	/**
+	 * Add content through the trusted builder paths (clone, serialization,
+	 * and the unchecked factory). A plain Text added to an Element without
+	 * content keeps the Element compact.
+	 * 
+	 * @param child the content to add, without any checks.
+	 */
+	final void uncheckedAddContent(final Content child) {
+		expand();
+		if (content == null) {
+			if (leaf == null && child.getClass() == Text.class) {
+				child.parent = this;
+				leaf = child;
+				return;
+			}
+			inflate();
+		}
+		content.uncheckedAddContent(child);
+	}
+
+	/**
+	 * Check whether a child can be stored as the only child of a compact
+	 * Element.
+	 * 
+	 * @param child the child to check.
+	 * @return true if this Element is compact, has no content, and the child
+	 *         is a plain Text with no parent.
+	 */
+	private final boolean isCompactText(final Content child) {
+		expand();
+		return content == null && leaf == null && child != null &&
+				child.getClass() == Text.class && child.parent == null;
+	}
+
 	@Override
 	public int getContentSize() {
+		expand();
+		if (content == null) {
+			return leaf == null ? 0 : 1;
+		}
 		return content.size();
 	}
 
 	@Override
 	public int indexOf(final Content child) {
+		expand();
+		if (content == null) {
+			return child != null && child == leaf ? 0 : -1;
+		}
 		return content.indexOf(child);
 	}
 
@@ -507,6 +970,13 @@ public class Element extends Content implements Parent {
 	 *                             string if none
 	 */
 	public String getText() {
+		expand();
+		if (content == null) {
+			if (leaf == null) {
+				return "";
+			}
+			return leaf instanceof Text ? ((Text)leaf).getText() : (String)leaf;
+		}
 		if (content.size() == 0) {
 			return "";
 		}
@@ -520,7 +990,23 @@ public class Element extends Content implements Parent {
 			return "";
 		}
 
-		// Else build String up
+		if (frozen) {
+			final Derived d = getDerived();
+			String text = d.text;
+			if (text == null) {
+				text = buildText();
+				d.text = text;
+			}
+			return text;
+		}
+		return buildText();
+	}
+
+	/**
+	 * Concatenate the text of all the Text and CDATA children.
+	 * @return the text content.
+	 */
+	private String buildText() {
 		final StringBuilder textContent = new StringBuilder();
 		boolean hasText = false;
 
@@ -685,7 +1171,28 @@ public class Element extends Content implements Parent {
 	 *                              org.jdom2.Verifier#checkCharacterData})
 	 */
 	public Element setText(final String text) {
-		content.clear();
+		expand();
+		if (content == null && 
+				isPlain(PLAINADD, getClass(), "addContent", Content.class)) {
+			// stay compact, there is no Text instance until one is needed.
+			if (text != null) {
+				final String reason = Verifier.checkCharacterData(text);
+				if (reason != null) {
+					throw new IllegalDataException(text, "character content",
+							reason);
+				}
+			}
+			if (leaf instanceof Text) {
+				((Text)leaf).setParent(null);
+			}
+			leaf = text;
+			if (span != null) {
+				sourceModified();
+			}
+			return this;
+		}
+
+		content().clear();
 
 		if (text != null) {
 			addContent(new Text(text));
@@ -705,7 +1212,7 @@ public class Element extends Content implements Parent {
 	 */
 	public boolean coalesceText(boolean recursively) {
 		final Iterator<Content> it = recursively ? getDescendants()
-				: content.iterator();
+				: content().iterator();
 		Text tfirst = null;
 		boolean changed = false;
 		while (it.hasNext()) {
@@ -760,7 +1267,9 @@ public class Element extends Content implements Parent {
 	 */
 	@Override
 	public List<Content> getContent() {
-		return content;
+		expand();
+		final ContentList cl = content;
+		return cl != null ? cl : new LeafList();
 	}
 
 	/**
@@ -777,7 +1286,7 @@ public class Element extends Content implements Parent {
 	 */
 	@Override
 	public <E extends Content> List<E> getContent(final Filter<E> filter) {
-		return content.getView(filter);
+		return content().getView(filter);
 	}
 
 	/**
@@ -787,8 +1296,8 @@ public class Element extends Content implements Parent {
 	 */
 	@Override
 	public List<Content> removeContent() {
-		final List<Content> old = new ArrayList<Content>(content);
-		content.clear();
+		final List<Content> old = new ArrayList<Content>(content());
+		content().clear();
 		return old;
 	}
 
@@ -801,7 +1310,7 @@ public class Element extends Content implements Parent {
 	@Override
 	public <F extends Content> List<F> removeContent(final Filter<F> filter) {
 		final List<F> old = new ArrayList<F>();
-		final Iterator<F> iter = content.getView(filter).iterator();
+		final Iterator<F> iter = content().getView(filter).iterator();
 		while (iter.hasNext()) {
 			final F child = iter.next();
 			old.add(child);
@@ -846,7 +1355,7 @@ public class Element extends Content implements Parent {
 	 *         illegal types or with existing parentage.
 	 */
 	public Element setContent(final Collection<? extends Content> newContent) {
-		content.clearAndSet(newContent);
+		content().clearAndSet(newContent);
 		return this;
 	}
 
@@ -866,7 +1375,7 @@ public class Element extends Content implements Parent {
 	 *         than the current number of children.
 	 */
 	public Element setContent(final int index, final Content child) {
-		content.set(index, child);
+		content().set(index, child);
 		return this;
 	}
 
@@ -887,8 +1396,8 @@ public class Element extends Content implements Parent {
 	 *         than the current number of children.
 	 */
 	public Parent setContent(final int index, final Collection<? extends Content> newContent) {
-		content.remove(index);
-		content.addAll(index, newContent);
+		content().remove(index);
+		content().addAll(index, newContent);
 		return this;
 	}
 
@@ -914,10 +1423,40 @@ public class Element extends Content implements Parent {
 	 * @throws IllegalAddException if the given child already has a parent.     */
 	@Override
 	public Element addContent(final Content child) {
-		content.add(child);
+		if (isCompactText(child)) {
+			child.setParent(this);
+			leaf = child;
+			if (span != null) {
+				sourceModified();
+			}
+			return this;
+		}
+		content().add(child);
 		return this;
 	}
 
+	/**
+	 * Append content that a builder has just created. This is the path used
+	 * by {@link DefaultJDOMFactory#addContent(Parent, Content)}. Subclasses
+	 * that override {@link #addContent(Content)} have that method called
+	 * instead, so they still see all content added to them.
+	 * 
+	 * @param child the newly created child to append.
+	 * @throws IllegalAddException if the given child already has a parent.
+	 */
+	final void addBuiltContent(final Content child) {
+		if (isPlain(PLAINADD, getClass(), "addContent", Content.class)) {
+			if (isCompactText(child)) {
+				child.setParent(this);
+				leaf = child;
+				return;
+			}
+			content().appendBuilt(child);
+		} else {
+			addContent(child);
+		}
+	}
+
 	/**
 	 * Appends all children in the given collection to the end of
 	 * the content list.  In event of an exception during add the
@@ -931,7 +1470,7 @@ public class Element extends Content implements Parent {
 	 */
 	@Override
 	public Element addContent(final Collection<? extends Content> newContent) {
-		content.addAll(newContent);
+		content().addAll(newContent);
 		return this;
 	}
 
@@ -947,7 +1486,7 @@ public class Element extends Content implements Parent {
 	 */
 	@Override
 	public Element addContent(final int index, final Content child) {
-		content.add(index, child);
+		content().add(index, child);
 		return this;
 	}
 
@@ -967,7 +1506,7 @@ public class Element extends Content implements Parent {
 	 */
 	@Override
 	public Element addContent(final int index, final Collection<? extends Content> newContent) {
-		content.addAll(index, newContent);
+		content().addAll(index, newContent);
 		return this;
 	}
 
@@ -984,7 +1523,11 @@ public class Element extends Content implements Parent {
 
 	@Override
 	public Content getContent(final int index) {
-		return content.get(index);
+		expand();
+		if (content == null && leaf != null && index == 0) {
+			return leafText();
+		}
+		return content().get(index);
 	}
 
 	//    public Content getChild(Filter filter) {
@@ -994,12 +1537,12 @@ public class Element extends Content implements Parent {
 
 	@Override
 	public boolean removeContent(final Content child) {
-		return content.remove(child);
+		return content().remove(child);
 	}
 
 	@Override
 	public Content removeContent(final int index) {
-		return content.remove(index);
+		return content().remove(index);
 	}
 
 	/**
@@ -1030,8 +1573,8 @@ public class Element extends Content implements Parent {
 	 *                             or not legal content for an Element
 	 */
 	public Element setContent(final Content child) {
-		content.clear();
-		content.add(child);
+		content().clear();
+		content().add(child);
 		return this;
 	}
 
@@ -1063,6 +1606,7 @@ public class Element extends Content implements Parent {
 	 * @return true if this Element has attributes.
 	 */
 	public boolean hasAttributes() {
+		expand();
 		return attributes != null && !attributes.isEmpty();
 	}
 	
@@ -1084,7 +1628,15 @@ public class Element extends Content implements Parent {
 	 * @return this Element's Attribute List (creating it if necessary).
 	 */
 	AttributeList getAttributeList() {
+		expand();
 		if (attributes == null) {
+			if (frozen) {
+				// frozen Elements are read concurrently, and can not change,
+				// so each caller gets an empty read-only list of its own.
+				final AttributeList empty = new AttributeList(this);
+				empty.freeze();
+				return empty;
+			}
 			attributes = new AttributeList(this);
 		}
 		return attributes;
@@ -1115,6 +1667,7 @@ public class Element extends Content implements Parent {
 	 * @return the number of Attributes attached.
 	 */
 	public int getAttributesSize() {
+		expand();
 		return attributes == null ? 0 : attributes.size();
 	}
 
@@ -1142,6 +1695,7 @@ public class Element extends Content implements Parent {
 	 * @return attribute for the element
 	 */
 	public Attribute getAttribute(final String attname, final Namespace ns) {
+		expand();
 		if (attributes == null) {
 			return null;
 		}
@@ -1159,6 +1713,7 @@ public class Element extends Content implements Parent {
 	 * @return the named attribute's value, or null if no such attribute
 	 */
 	public String getAttributeValue(final String attname) {
+		expand();
 		if (attributes == null) {
 			return null;
 		}
@@ -1177,6 +1732,7 @@ public class Element extends Content implements Parent {
 	 * @return the named attribute's value, or the default if no such attribute
 	 */
 	public String getAttributeValue(final String attname, final String def) {
+		expand();
 		if (attributes == null) {
 			return def;
 		}
@@ -1195,6 +1751,7 @@ public class Element extends Content implements Parent {
 	 * @return the named attribute's value, or null if no such attribute
 	 */
 	public String getAttributeValue(final String attname, final Namespace ns) {
+		expand();
 		if (attributes == null) {
 			return null;
 		}
@@ -1214,6 +1771,7 @@ public class Element extends Content implements Parent {
 	 * @return the named attribute's value, or the default if no such attribute
 	 */
 	public String getAttributeValue(final String attname, final Namespace ns, final String def) {
+		expand();
 		if (attributes == null) {
 			return def;
 		}
@@ -1373,6 +1931,7 @@ public class Element extends Content implements Parent {
 	 * @return whether the attribute was removed
 	 */
 	public boolean removeAttribute(final String attname, final Namespace ns) {
+		expand();
 		if (attributes == null) {
 			return false;
 		}
@@ -1388,6 +1947,7 @@ public class Element extends Content implements Parent {
 	 * @return whether the attribute was removed
 	 */
 	public boolean removeAttribute(final Attribute attribute) {
+		expand();
 		if (attributes == null) {
 			return false;
 		}
@@ -1438,7 +1998,85 @@ public class Element extends Content implements Parent {
 
 		// Ken Rune Helland <kenh@csc.no> is our local clone() guru
 
+		// The clone is done without recursion so that very deep trees do
+		// not overflow the stack. Descendant Elements are copied shallowly,
+		// and then a stack of (original, copy) pairs is processed to fill
+		// in the attributes and content of each copy. The content is known
+		// to be legal, so it is added to the copies using the unchecked
+		// (trusted) mechanisms.
+
+		final Element element = shallowClone();
+
+		Element[] stack = new Element[16];
+		int sp = 0;
+		stack[sp++] = this;
+		stack[sp++] = element;
+
+		while (sp > 0) {
+			final Element copy = stack[--sp];
+			final Element orig = stack[--sp];
+			orig.expand();
+
+			// Cloning attributes
+			if (orig.attributes != null) {
+				final AttributeList oatts = orig.attributes;
+				final int asize = oatts.size();
+				final AttributeList catts = new AttributeList(copy);
+				if (asize > 0) {
+					catts.ensureCapacity(asize);
+				}
+				for (int i = 0; i < asize; i++) {
+					catts.uncheckedAddAttribute(oatts.get(i).clone());
+				}
+				copy.attributes = catts;
+			}
+
+			// Cloning content
+			final ContentList ocontent = orig.content;
+			if (ocontent == null) {
+				// compact, the copy shares the text value, not the Text.
+				copy.leaf = orig.leaf instanceof Text 
+						? ((Text)orig.leaf).getText() : orig.leaf;
+				continue;
+			}
+			final int csize = ocontent.size();
+			if (csize == 0) {
+				continue;
+			}
+			final ContentList ccontent = copy.content();
+			ccontent.ensureCapacity(csize);
+			for (int i = 0; i < csize; i++) {
+				final Content c = ocontent.get(i);
+				if (c instanceof Element && isPlainClone(c.getClass())) {
+					final Element ce = ((Element)c).shallowClone();
+					ccontent.uncheckedAddContent(ce);
+					if (sp == stack.length) {
+						stack = ArrayCopy.copyOf(stack, sp << 1);
+					}
+					stack[sp++] = (Element)c;
+					stack[sp++] = ce;
+				} else {
+					// Elements with their own clone() will recurse in to it.
+					ccontent.uncheckedAddContent(c.clone());
+				}
+			}
+		}
+
+		return element;
+	}
+
+	/**
+	 * Create a copy of this Element without any attributes or content. This
+	 * copies only the fields (including those of any subclass), and it is
+	 * the starting point of the non-recursive {@link #clone()}.
+	 * 
+	 * @return a detached copy of this Element with no attributes or content.
+	 */
+	private final Element shallowClone() {
 		final Element element = (Element) super.clone();
+		element.scope = null;
+		element.derived = null;
+		element.deferred = null;
 
 		// name and namespace are references to immutable objects
 		// so super.clone() handles them ok
@@ -1450,30 +2088,83 @@ public class Element extends Content implements Parent {
 		// element.parent = null;
 
 		// Reference to content list and attribute lists are copyed by
-		// super.clone() so we set it new lists if the original had lists
-		element.content = new ContentList(element);
-		element.attributes = attributes == null ? null : new AttributeList(element);
-
-		// Cloning attributes
-		if (attributes != null) {
-			for(int i = 0; i < attributes.size(); i++) {
-				final Attribute attribute = attributes.get(i);
-				element.attributes.add(attribute.clone());
-			}
-		}
+		// super.clone() so we set new lists, the attributes are only
+		// created if the original has them.
+		element.content = null;
+		element.leaf = null;
+		element.attributes = null;
+		// the copy was not built from a source document.
+		element.span = null;
 
 		// Cloning additional namespaces
 		if (additionalNamespaces != null) {
 			element.additionalNamespaces = new ArrayList<Namespace>(additionalNamespaces);
 		}
+		return element;
+	}
 
-		// Cloning content
-		for(int i = 0; i < content.size(); i++) {
-			final Content c = content.get(i);
-			element.content.add(c.clone());
-		}
+	/**
+	 * Cache of whether Element classes use the clone() implementation of
+	 * Element itself.
+	 */
+	private static final ConcurrentHashMap<Class<?>, Boolean> PLAINCLONE =
+			new ConcurrentHashMap<Class<?>, Boolean>();
 
-		return element;
+	/**
+	 * Cache of whether Element classes use the getValue() implementation of
+	 * Element itself.
+	 */
+	private static final ConcurrentHashMap<Class<?>, Boolean> PLAINVALUE =
+			new ConcurrentHashMap<Class<?>, Boolean>();
+
+	/**
+	 * Cache of whether Element classes use the addContent(Content)
+	 * implementation of Element itself.
+	 */
+	private static final ConcurrentHashMap<Class<?>, Boolean> PLAINADD =
+			new ConcurrentHashMap<Class<?>, Boolean>();
+
+	/**
+	 * Subclasses of Element may override clone() to copy their own state.
+	 * Those subclasses have to be cloned by calling their clone() method,
+	 * all others can be cloned in the non-recursive clone engine.
+	 * 
+	 * @param clazz The Element class to check.
+	 * @return true if the class does not override clone().
+	 */
+	private static final boolean isPlainClone(final Class<?> clazz) {
+		return isPlain(PLAINCLONE, clazz, "clone");
+	}
+
+	/**
+	 * Check whether an Element class uses Element's own implementation of a
+	 * public method, or whether it overrides it.
+	 * 
+	 * @param cache The cache of previous results for the method.
+	 * @param clazz The Element class to check.
+	 * @param method The name of the method.
+	 * @param params The parameter types of the method.
+	 * @return true if the class does not override the method.
+	 */
+	private static final boolean isPlain(
+			final ConcurrentHashMap<Class<?>, Boolean> cache,
+			final Class<?> clazz, final String method,
+			final Class<?>... params) {
+		if (clazz == Element.class) {
+			return true;
+		}
+		Boolean plain = cache.get(clazz);
+		if (plain == null) {
+			try {
+				plain = Boolean.valueOf(Element.class == 
+						clazz.getMethod(method, params).getDeclaringClass());
+			} catch (Exception e) {
+				// SecurityException or NoSuchMethodException... be safe.
+				plain = Boolean.FALSE;
+			}
+			cache.put(clazz, plain);
+		}
+		return plain.booleanValue();
 	}
 
 
@@ -1533,7 +2224,7 @@ public class Element extends Content implements Parent {
 	 * @return list of child <code>Element</code> objects for this element
 	 */
 	public List<Element> getChildren() {
-		return content.getView(new ElementFilter());
+		return content().getView(new ElementFilter());
 	}
 
 	/**
@@ -1574,7 +2265,11 @@ public class Element extends Content implements Parent {
 	 * @return all matching child elements
 	 */
 	public List<Element> getChildren(final String cname, final Namespace ns) {
-		return content.getView(new ElementFilter(cname, ns));
+		if (cname == null || ns == null) {
+			// ElementFilter treats null as a wild-card.
+			return content().getView(new ElementFilter(cname, ns));
+		}
+		return content().getChildren(cname, ns);
 	}
 
 	/**
@@ -1588,7 +2283,16 @@ public class Element extends Content implements Parent {
 	 * @return the first matching child element, or null if not found
 	 */
 	public Element getChild(final String cname, final Namespace ns) {
-		final List<Element> elements = content.getView(new ElementFilter(cname, ns));
+		expand();
+		if (content == null) {
+			// compact Elements have no child Elements.
+			return null;
+		}
+		if (cname != null && ns != null) {
+			return content.getChild(cname, ns);
+		}
+		// ElementFilter treats null as a wild-card.
+		final List<Element> elements = content().getView(new ElementFilter(cname, ns));
 		final Iterator<Element> iter = elements.iterator();
 		if (iter.hasNext()) {
 			return iter.next();
@@ -1635,8 +2339,21 @@ public class Element extends Content implements Parent {
 	 * @return whether deletion occurred
 	 */
 	public boolean removeChild(final String cname, final Namespace ns) {
+		expand();
+		if (content == null) {
+			return false;
+		}
+		if (cname != null && ns != null) {
+			final int index = content().indexOfChild(cname, ns);
+			if (index < 0) {
+				return false;
+			}
+			content().remove(index);
+			return true;
+		}
+		// ElementFilter treats null as a wild-card.
 		final ElementFilter filter = new ElementFilter(cname, ns);
-		final List<Element> old = content.getView(filter);
+		final List<Element> old = content().getView(filter);
 		final Iterator<Element> iter = old.iterator();
 		if (iter.hasNext()) {
 			iter.next();
@@ -1673,10 +2390,18 @@ public class Element extends Content implements Parent {
 	 * @return whether deletion occurred
 	 */
 	public boolean removeChildren(final String cname, final Namespace ns) {
+		expand();
+		if (content == null) {
+			return false;
+		}
+		if (cname != null && ns != null) {
+			return content().removeChildren(cname, ns);
+		}
+		// ElementFilter treats null as a wild-card.
 		boolean deletedSome = false;
 
 		final ElementFilter filter = new ElementFilter(cname, ns);
-		final List<Element> old = content.getView(filter);
+		final List<Element> old = content().getView(filter);
 		final Iterator<Element> iter = old.iterator();
 		while (iter.hasNext()) {
 			iter.next();
@@ -1726,50 +2451,10 @@ public class Element extends Content implements Parent {
 		// The assumption here is that all namespaces are valid,
 		// that there are no namespace collisions on this element
 
-		// This method is also the 'anchor' of the three getNamespaces*() methods
-		// It does not make reference to this Element instance's other
-		// getNamespace*() methods
-
-		TreeMap<String,Namespace> namespaces = new TreeMap<String, Namespace>();
-		namespaces.put(Namespace.XML_NAMESPACE.getPrefix(), Namespace.XML_NAMESPACE);
-		namespaces.put(getNamespacePrefix(), getNamespace());
-		if (additionalNamespaces != null) {
-			for (Namespace ns : getAdditionalNamespaces()) {
-				if (!namespaces.containsKey(ns.getPrefix())) {
-					namespaces.put(ns.getPrefix(), ns);
-				}
-			}
-		}
-		if (attributes != null) {
-			for (Attribute att : getAttributes()) {
-				Namespace ns = att.getNamespace();
-				if (!namespaces.containsKey(ns.getPrefix())) {
-					namespaces.put(ns.getPrefix(), ns);
-				}
-			}
-		}
-		// Right, we now have all the namespaces that are current on this ELement.
-		// Include any other namespaces that are inherited.
-		final Element pnt = getParentElement();
-		if (pnt != null) {
-			for (Namespace ns : pnt.getNamespacesInScope()) {
-				if (!namespaces.containsKey(ns.getPrefix())) {
-					namespaces.put(ns.getPrefix(), ns);
-				}
-			}
-		}
-
-		if (pnt == null && !namespaces.containsKey("")) {
-			// we are the root element, and there is no 'default' namespace.
-			namespaces.put(Namespace.NO_NAMESPACE.getPrefix(), Namespace.NO_NAMESPACE);
-		}
-
-		ArrayList<Namespace> al = new ArrayList<Namespace>(namespaces.size());
-		al.add(getNamespace());
-		namespaces.remove(getNamespacePrefix());
-		al.addAll(namespaces.values());
-
-		return Collections.unmodifiableList(al);
+		// This method is also the 'anchor' of the three getNamespace*() methods
+		// The scope is built from this Element's declarations and the
+		// (cached) scope of the parent, see NamespaceScope.
+		return getNamespaceScope().getNamespacesInScope();
 	}
 
 	@Override
@@ -1841,6 +2526,13 @@ public class Element extends Content implements Parent {
 		return (Element)super.detach();
 	}
 
+	@Override
+	protected Content setParent(final Parent parent) {
+		// the inherited Namespace scope changes with the parent.
+		scopeChanged();
+		return super.setParent(parent);
+	}
+
 	@Override
 	public void canContainContent(Content child, int index, boolean replace) throws IllegalAddException {
 		if (child instanceof DocType) {
@@ -1866,7 +2558,7 @@ public class Element extends Content implements Parent {
 	 * @param comparator The Comparator to use for the sorting.
 	 */
 	public void sortContent(Comparator<? super Content> comparator) {
-		content.sort(comparator);
+		content().sort(comparator);
 	}
 	
 	/**
@@ -1909,6 +2601,7 @@ public class Element extends Content implements Parent {
 	 * @param comparator The Comparator to use for the sorting.
 	 */
 	public void sortAttributes(Comparator <? super Attribute> comparator) {
+		expand();
 		if (attributes != null) {
 			attributes.sort(comparator);
 		}
@@ -2018,6 +2711,21 @@ public class Element extends Content implements Parent {
 	 */
 	private static final long serialVersionUID = 200L;
 
+	/**
+	 * Plain Element instances are serialized in a compact form that does not
+	 * recurse through the tree (see {@link TreeSerializationProxy}).
+	 * Subclasses of Element continue to use the {@link #writeObject} mechanism.
+	 * 
+	 * @return the object to serialize in place of this Element.
+	 * @throws ObjectStreamException never.
+	 */
+	private Object writeReplace() throws ObjectStreamException {
+		if (getClass() == Element.class) {
+			return new TreeSerializationProxy(this);
+		}
+		return this;
+	}
+
 	/**
 	 * Serialize out the Element.
 	 * 
@@ -2058,10 +2766,10 @@ public class Element extends Content implements Parent {
 			out.writeInt(0);
 		}
 		
-		final int cs = content.size();
+		final int cs = content().size();
 		out.writeInt(cs);
 		for (int i = 0; i < cs; i++) {
-			out.writeObject(content.get(i));
+			out.writeObject(content().get(i));
 		}
 
 	}
@@ -2079,7 +2787,8 @@ public class Element extends Content implements Parent {
 
 		in.defaultReadObject();
 		
-		content = new ContentList(this);
+		content = null;
+		leaf = null;
 
 		int nss = in.readInt();
 		
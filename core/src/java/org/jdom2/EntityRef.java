@@ -180,6 +180,8 @@ public class EntityRef extends Content {
 	 *         XML name.
 	 */
 	public EntityRef setName(String name) {
+		checkFrozen();
+		markModified();
 		// This can contain a colon so we use checkXMLName()
 		// instead of checkElementName()
 		String reason = Verifier.checkXMLName(name);
@@ -199,6 +201,8 @@ public class EntityRef extends Content {
 	 *         public ID.
 	 */
 	public EntityRef setPublicID(String publicID) {
+		checkFrozen();
+		markModified();
 		String reason = Verifier.checkPublicID(publicID);
 		if (reason != null) {
 			throw new IllegalDataException(publicID, "EntityRef", reason);
@@ -216,6 +220,8 @@ public class EntityRef extends Content {
 	 * @return this <code>EntityRef</code> modified.
 	 */
 	public EntityRef setSystemID(String systemID) {
+		checkFrozen();
+		markModified();
 		String reason = Verifier.checkSystemLiteral(systemID);
 		if (reason != null) {
 			throw new IllegalDataException(systemID, "EntityRef", reason);
@@ -0,0 +1,109 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2;
+
+/**
+ * A handle to a {@link Document} that has been frozen with
+ * {@link Document#freeze()}.
+ * <p>
+ * A frozen Document is read-only, and can be read by many threads at once.
+ * The handle exists to make sharing it safe: the Document is held in a
+ * final field, so a thread that gets the handle, even through a data race
+ * (for example a non-volatile field, or a non-concurrent collection), sees
+ * the frozen Document completely. Share the handle, not the Document, when
+ * handing a frozen Document to other threads.
+ * <p>
+ * The handle is cheap: it is created once per Document, and repeated
+ * calls to {@link Document#freeze()} return the same instance.
+ * 
+ * @since JDOM2
+ */
+public final class FrozenDocument {
+
+	private final Document document;
+
+	/**
+	 * Create the handle for a Document that has been frozen.
+	 * @param document The frozen Document.
+	 */
+	FrozenDocument(final Document document) {
+		this.document = document;
+	}
+
+	/**
+	 * Get the frozen Document.
+	 * 
+	 * @return The frozen Document.
+	 */
+	public Document getDocument() {
+		return document;
+	}
+
+	/**
+	 * Get the root Element of the frozen Document.
+	 * 
+	 * @return The root Element.
+	 * @throws IllegalStateException if the Document has no root Element.
+	 */
+	public Element getRootElement() {
+		return document.getRootElement();
+	}
+
+	@Override
+	public String toString() {
+		return "[FrozenDocument: " + document + "]";
+	}
+
+}
@@ -173,4 +173,15 @@ public final class JDOMConstants {
 	public static final String JDOM2_PROPERTY_LINE_SEPARATOR =
 			"org.jdom2.output.LineSeparator";
 	
+	/**
+	 * System Property queried to obtain the number of Attributes an Element
+	 * must have before Attribute lookups use a hash index instead of a
+	 * linear scan. The value must be a positive integer.
+	 * <p>
+	 * Defined as {@value}
+	 * @see Element#getAttribute(String, Namespace)
+	 */
+	public static final String JDOM2_PROPERTY_ATTRIBUTE_INDEX_THRESHOLD =
+			"org.jdom2.AttributeList.IndexThreshold";
+	
 }
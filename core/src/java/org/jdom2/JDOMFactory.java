@@ -211,6 +211,32 @@ public interface JDOMFactory {
 	 */
 	public Text text(String str);
 
+	/**
+	 * This returns the Text for text content that was spilled to a
+	 * temporary file by the builder. The result is either the SpilledText
+	 * itself, or a new SpilledText that shares its content (see
+	 * {@link SpilledText#SpilledText(SpilledText)}), in which case the
+	 * builder disposes the one it passed in.
+	 *
+	 * @param line The line on which this content begins. 
+	 * @param col  The column on the line at which this content begins.
+	 * @param text The SpilledText with the content.
+	 * @return the Text instance to use
+	 * @since JDOM2
+	 */
+	public SpilledText spilledText(int line, int col, SpilledText text);
+
+	/**
+	 * This returns the Text for text content that was spilled to a
+	 * temporary file by the builder.
+	 *
+	 * @param text The SpilledText with the content.
+	 * @return the Text instance to use
+	 * @see #spilledText(int, int, SpilledText)
+	 * @since JDOM2
+	 */
+	public SpilledText spilledText(SpilledText text);
+
 	// **** constructing Comment ****
 
 	/**
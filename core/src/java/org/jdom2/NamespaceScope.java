@@ -0,0 +1,218 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jdom2.internal.ArrayCopy;
+
+/**
+ * The cached, immutable set of Namespaces that are in scope for an
+ * {@link Element}.
+ * <p>
+ * Each scope is built from the Element's own Namespace declarations (its
+ * Namespace, additional Namespaces, and Attribute Namespaces) and the scope
+ * of the parent Element, so computing a scope never re-inspects the rest of
+ * the ancestry. The Namespaces are held sorted by prefix, which allows a
+ * prefix to be resolved with a binary search.
+ * <p>
+ * A cached scope is always valid. Scopes are only built on the (cached)
+ * scope of the parent Element, so an Element only has a scope if its parent
+ * Element has one. Any change to an Element that has a cached scope
+ * (Namespace, declarations, Attributes, or its parent) discards that scope
+ * and the cached scopes of its descendants, which are found by following
+ * the Elements that have one. Changes elsewhere, in this Document or any
+ * other, do not affect the scope. Elements that never have their scope
+ * queried pay nothing but a null check on modification.
+ */
+final class NamespaceScope {
+
+	/**
+	 * The Namespaces in the base scope (above the root Element).
+	 */
+	private static final Namespace[] BASE = {Namespace.XML_NAMESPACE};
+
+	/** All bound Namespaces in scope, sorted by prefix */
+	private final Namespace[] sorted;
+
+	/** The public view of the scope (Element Namespace first) */
+	private final List<Namespace> inscope;
+
+	/**
+	 * Build the scope for an Element.
+	 * @param emt The Element to build the scope for.
+	 * @param parentScope The (valid) scope of the Element's parent Element,
+	 *        or null if there is no parent Element.
+	 */
+	NamespaceScope(final Element emt, final NamespaceScope parentScope) {
+		// Gather this Element's own declarations, first declaration wins.
+		emt.expand();
+		final int nss = emt.additionalNamespaces == null ? 0
+				: emt.additionalNamespaces.size();
+		final int ats = emt.attributes == null ? 0 : emt.attributes.size();
+		Namespace[] local = new Namespace[1 + nss + ats];
+		int lsize = 0;
+		local[lsize++] = emt.getNamespace();
+		for (int i = 0; i < nss; i++) {
+			lsize = addLocal(local, lsize, emt.additionalNamespaces.get(i));
+		}
+		for (int i = 0; i < ats; i++) {
+			lsize = addLocal(local, lsize,
+					emt.attributes.get(i).getNamespace());
+		}
+		// insertion sort, there are typically only one or two.
+		for (int i = 1; i < lsize; i++) {
+			final Namespace ns = local[i];
+			int j = i;
+			while (j > 0 && local[j - 1].getPrefix().compareTo(ns.getPrefix()) > 0) {
+				local[j] = local[j - 1];
+				j--;
+			}
+			local[j] = ns;
+		}
+
+		// merge the local declarations over the inherited ones.
+		final Namespace[] inherited = parentScope == null ? BASE
+				: parentScope.sorted;
+		final Namespace[] merged = new Namespace[lsize + inherited.length];
+		int m = 0;
+		int l = 0;
+		int p = 0;
+		while (l < lsize && p < inherited.length) {
+			final int cmp = local[l].getPrefix().compareTo(
+					inherited[p].getPrefix());
+			if (cmp < 0) {
+				merged[m++] = local[l++];
+			} else if (cmp > 0) {
+				merged[m++] = inherited[p++];
+			} else {
+				merged[m++] = local[l++];
+				p++;
+			}
+		}
+		while (l < lsize) {
+			merged[m++] = local[l++];
+		}
+		while (p < inherited.length) {
+			merged[m++] = inherited[p++];
+		}
+		sorted = m == merged.length ? merged : 
+			ArrayCopy.copyOf(merged, m);
+
+		// The public view has the Element's Namespace first, then the rest
+		// in prefix order. If the default prefix is not bound anywhere it is
+		// reported as NO_NAMESPACE.
+		final Namespace ens = emt.getNamespace();
+		final boolean implicit = !"".equals(sorted[0].getPrefix());
+		final Namespace[] view = new Namespace[m + (implicit ? 1 : 0)];
+		int v = 0;
+		view[v++] = ens;
+		if (implicit) {
+			view[v++] = Namespace.NO_NAMESPACE;
+		}
+		for (int i = 0; i < m; i++) {
+			if (!sorted[i].getPrefix().equals(ens.getPrefix())) {
+				view[v++] = sorted[i];
+			}
+		}
+		inscope = Collections.unmodifiableList(Arrays.asList(view));
+	}
+
+	private static final int addLocal(final Namespace[] local, final int lsize,
+			final Namespace ns) {
+		final String prefix = ns.getPrefix();
+		for (int i = 0; i < lsize; i++) {
+			if (local[i].getPrefix().equals(prefix)) {
+				return lsize;
+			}
+		}
+		local[lsize] = ns;
+		return lsize + 1;
+	}
+
+	/**
+	 * Get the Namespaces in scope, in the order specified by
+	 * {@link Element#getNamespacesInScope()}.
+	 * @return an unmodifiable list of the Namespaces in scope.
+	 */
+	List<Namespace> getNamespacesInScope() {
+		return inscope;
+	}
+
+	/**
+	 * Find the Namespace bound to a prefix in this scope.
+	 * @param prefix The prefix to look up.
+	 * @return The bound Namespace, or null if the prefix is not bound.
+	 */
+	Namespace getNamespace(final String prefix) {
+		int lo = 0;
+		int hi = sorted.length - 1;
+		while (lo <= hi) {
+			final int mid = (lo + hi) >>> 1;
+			final int cmp = sorted[mid].getPrefix().compareTo(prefix);
+			if (cmp < 0) {
+				lo = mid + 1;
+			} else if (cmp > 0) {
+				hi = mid - 1;
+			} else {
+				return sorted[mid];
+			}
+		}
+		return null;
+	}
+
+}
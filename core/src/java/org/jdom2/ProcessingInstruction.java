@@ -141,6 +141,8 @@ public class ProcessingInstruction extends Content {
 	 * @return <code>ProcessingInstruction</code> - this PI modified.
 	 */
 	public ProcessingInstruction setTarget(String newTarget) {
+		checkFrozen();
+		markModified();
 		String reason;
 		if ((reason = Verifier.checkProcessingInstructionTarget(newTarget))
 				!= null) {
@@ -199,6 +201,8 @@ public class ProcessingInstruction extends Content {
 	 * @return <code>ProcessingInstruction</code> - this PI modified.
 	 */
 	public ProcessingInstruction setData(String data) {
+		checkFrozen();
+		markModified();
 		String reason = Verifier.checkProcessingInstructionData(data);
 		if (reason != null) {
 			throw new IllegalDataException(data, reason);
@@ -219,6 +223,8 @@ public class ProcessingInstruction extends Content {
 	 * @return <code>ProcessingInstruction</code> - modified PI.
 	 */
 	public ProcessingInstruction setData(Map<String,String> data) {
+		checkFrozen();
+		markModified();
 		String temp = toString(data);
 
 		String reason = Verifier.checkProcessingInstructionData(temp);
@@ -255,6 +261,8 @@ public class ProcessingInstruction extends Content {
 	 * @return <code>ProcessingInstruction</code> this PI modified.
 	 */
 	public ProcessingInstruction setPseudoAttribute(String name, String value) {
+		checkFrozen();
+		markModified();
 		String reason = Verifier.checkProcessingInstructionData(name);
 		if (reason != null) {
 			throw new IllegalDataException(name, reason);
@@ -279,6 +287,8 @@ public class ProcessingInstruction extends Content {
 	 *         instruction was removed.
 	 */
 	public boolean removePseudoAttribute(String name) {
+		checkFrozen();
+		markModified();
 		if ((mapData.remove(name)) != null) {
 			rawData = toString(mapData);
 			return true;
@@ -0,0 +1,508 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * A thread-safe version of the {@link StringBin} String cache. A single
+ * instance can be shared by many {@link SlimJDOMFactory} instances (or one
+ * SlimJDOMFactory can be shared by many builders), on many threads, so that
+ * the element names, attribute names, and repeated values are stored once
+ * for all the documents that are parsed.
+ * <p>
+ * Unlike StringBin, this cache is bounded. When the number of cached values
+ * reaches the capacity, the least-recently-used values are evicted. The
+ * values can optionally be weakly referenced, in which case values that are
+ * not used anywhere else can be garbage-collected (and are then removed
+ * from the cache).
+ * <p>
+ * The cache is split in to independently-locked segments to reduce
+ * contention between threads. It also keeps statistics on how effective it
+ * is: {@link #getHitRatio()} and {@link #getBytesSaved()} can be used to
+ * tune the capacity.
+ * 
+ * @see SlimJDOMFactory#SlimJDOMFactory(SharedStringBin, boolean)
+ */
+public final class SharedStringBin {
+
+	/** The default maximum number of cached values */
+	public static final int DEFAULTCAPACITY = 65536;
+
+	/** Number of segments (must be a power of 2) */
+	private static final int SEGMENTS = 16;
+
+	/** Initial table size in each segment (must be a power of 2) */
+	private static final int INITIALTABLE = 16;
+
+	/**
+	 * Approximate memory used by a String with no characters: a String
+	 * object, and the header of its char[] array.
+	 */
+	private static final int STRINGOVERHEAD = 40;
+
+	/**
+	 * The position of a cached value in both the hash chain, and the
+	 * least-recently-used list.
+	 */
+	private static abstract class Entry {
+		private final int hash;
+		private Entry next;
+		private Entry before, after;
+
+		Entry(final int hash) {
+			this.hash = hash;
+		}
+
+		/**
+		 * @return the cached value, or null if it was garbage-collected.
+		 */
+		abstract String value();
+	}
+
+	/**
+	 * An Entry that holds its value strongly.
+	 */
+	private static final class StrongEntry extends Entry {
+		private final String value;
+
+		StrongEntry(final String value, final int hash) {
+			super(hash);
+			this.value = value;
+		}
+
+		@Override
+		String value() {
+			return value;
+		}
+	}
+
+	/**
+	 * An Entry of a weak cache, only its WeakValue refers to the value.
+	 */
+	private static final class WeakEntry extends Entry {
+		private final WeakValue ref;
+
+		WeakEntry(final String value, final int hash,
+				final ReferenceQueue<String> queue) {
+			super(hash);
+			this.ref = new WeakValue(value, this, queue);
+		}
+
+		@Override
+		String value() {
+			return ref.get();
+		}
+	}
+
+	/**
+	 * The weak reference to the value of a WeakEntry, which is queued (and
+	 * identifies the Entry to remove) when the value is garbage-collected.
+	 */
+	private static final class WeakValue extends WeakReference<String> {
+		private final WeakEntry entry;
+
+		WeakValue(final String value, final WeakEntry entry,
+				final ReferenceQueue<String> queue) {
+			super(value, queue);
+			this.entry = entry;
+		}
+	}
+
+	/**
+	 * A separately-locked hash table with its own LRU list and statistics.
+	 * All access is synchronized on the Segment.
+	 */
+	private static final class Segment {
+		private final int maxsize;
+		private final boolean weak;
+		private final ReferenceQueue<String> queue;
+		/** sentinel for the circular LRU list, header.after is the oldest */
+		private final Entry header = new StrongEntry(null, 0);
+		private Entry[] table = new Entry[INITIALTABLE];
+		private int count = 0;
+		private long hits = 0L;
+		private long misses = 0L;
+		private long evictions = 0L;
+		private long saved = 0L;
+
+		Segment(final int maxsize, final boolean weak) {
+			this.maxsize = maxsize;
+			this.weak = weak;
+			this.queue = weak ? new ReferenceQueue<String>() : null;
+			header.before = header;
+			header.after = header;
+		}
+
+		synchronized String reuse(final String value, final int hash) {
+			if (weak) {
+				expunge();
+			}
+			final Entry[] tab = table;
+			final int index = hash & (tab.length - 1);
+			for (Entry e = tab[index]; e != null; e = e.next) {
+				if (e.hash == hash) {
+					final String v = e.value();
+					if (value.equals(v)) {
+						hits++;
+						saved += STRINGOVERHEAD + (value.length() << 1);
+						// move to most-recently-used.
+						unlink(e);
+						link(e);
+						return v;
+					}
+				}
+			}
+			misses++;
+			if (count >= maxsize) {
+				evictions++;
+				remove(header.after);
+			}
+			if (count >= (table.length >> 1) + (table.length >> 2)) {
+				resize();
+			}
+			final String v = compact(value);
+			final Entry e = weak ? new WeakEntry(v, hash, queue)
+					: new StrongEntry(v, hash);
+			final int idx = hash & (table.length - 1);
+			e.next = table[idx];
+			table[idx] = e;
+			link(e);
+			count++;
+			return v;
+		}
+
+		private void link(final Entry e) {
+			e.after = header;
+			e.before = header.before;
+			header.before.after = e;
+			header.before = e;
+		}
+
+		private void unlink(final Entry e) {
+			e.before.after = e.after;
+			e.after.before = e.before;
+			e.before = null;
+			e.after = null;
+		}
+
+		private void remove(final Entry e) {
+			final int idx = e.hash & (table.length - 1);
+			Entry prev = null;
+			for (Entry c = table[idx]; c != null; c = c.next) {
+				if (c == e) {
+					if (prev == null) {
+						table[idx] = c.next;
+					} else {
+						prev.next = c.next;
+					}
+					unlink(c);
+					count--;
+					return;
+				}
+				prev = c;
+			}
+		}
+
+		/**
+		 * Remove all the entries whose value has been garbage-collected.
+		 */
+		private void expunge() {
+			Object ref = null;
+			while ((ref = queue.poll()) != null) {
+				final Entry e = ((WeakValue)ref).entry;
+				// an evicted entry may already be unlinked.
+				if (e.before != null) {
+					remove(e);
+				}
+			}
+		}
+
+		private void resize() {
+			final Entry[] old = table;
+			final Entry[] tab = new Entry[old.length << 1];
+			final int mask = tab.length - 1;
+			for (int i = 0; i < old.length; i++) {
+				Entry e = old[i];
+				while (e != null) {
+					final Entry next = e.next;
+					final int idx = e.hash & mask;
+					e.next = tab[idx];
+					tab[idx] = e;
+					e = next;
+				}
+			}
+			table = tab;
+		}
+
+		synchronized int size() {
+			if (weak) {
+				expunge();
+			}
+			return count;
+		}
+
+		synchronized void clear() {
+			table = new Entry[INITIALTABLE];
+			count = 0;
+			header.before = header;
+			header.after = header;
+			if (weak) {
+				// entries still in the queue are no longer in the table.
+				while (queue.poll() != null) {
+					// discard
+				}
+			}
+		}
+
+		synchronized void addStats(final long[] stats) {
+			stats[0] += hits;
+			stats[1] += misses;
+			stats[2] += evictions;
+			stats[3] += saved;
+		}
+	}
+
+	private final Segment[] segments;
+	private final int capacity;
+	private final boolean weak;
+
+	/**
+	 * Create a SharedStringBin with the {@link #DEFAULTCAPACITY} and
+	 * strongly-referenced values.
+	 */
+	public SharedStringBin() {
+		this(DEFAULTCAPACITY, false);
+	}
+
+	/**
+	 * Create a SharedStringBin with the given capacity.
+	 * 
+	 * @param capacity
+	 *        The maximum number of values to cache. When the cache is full
+	 *        the least-recently-used values are evicted.
+	 * @param weak
+	 *        If true the cached values are weakly referenced and values that
+	 *        are no longer used outside the cache are discarded when they
+	 *        are garbage-collected.
+	 */
+	public SharedStringBin(final int capacity, final boolean weak) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException(
+					"Capacity must be at least 1, not " + capacity);
+		}
+		this.capacity = capacity;
+		this.weak = weak;
+		// small caches use fewer segments so the bound is still honoured.
+		int segs = SEGMENTS;
+		while (segs > 1 && capacity / segs < INITIALTABLE) {
+			segs >>>= 1;
+		}
+		segments = new Segment[segs];
+		final int base = capacity / segs;
+		final int extra = capacity % segs;
+		for (int i = 0; i < segs; i++) {
+			segments[i] = new Segment(base + (i < extra ? 1 : 0), weak);
+		}
+	}
+
+	/**
+	 * Get a String instance that is equal to the input value. This may or may
+	 * not be the same instance as the input value. Null input values will
+	 * reuse() as null.
+	 * 
+	 * @param value
+	 *        The value to check.
+	 * @return a String that is equals() to the input value, or null if the
+	 *         input was null
+	 */
+	public String reuse(final String value) {
+		if (value == null) {
+			return null;
+		}
+		final int h = value.hashCode();
+		// spread the bits, the low bits select the bucket in the segment.
+		final int hash = (h >>> 16) ^ h;
+		// the segment is selected from the high bits of a scrambled hash,
+		// String hash codes of short values have few significant high bits.
+		final int seg = ((hash * 0x9E3779B9) >>> 28) & (segments.length - 1);
+		return segments[seg].reuse(value, hash);
+	}
+
+	/**
+	 * Compact a Java String to its smallest char[] backing array.
+	 * 
+	 * @param input The String to compact
+	 * @return a Compacted version of the String.
+	 */
+	private static final String compact(final String input) {
+		return new String(input.toCharArray());
+	}
+
+	/**
+	 * Discard all cached values. The statistics are not reset.
+	 */
+	public void clear() {
+		for (Segment s : segments) {
+			s.clear();
+		}
+	}
+
+	/**
+	 * Number of cached Strings.
+	 * 
+	 * @return the number of cached String values.
+	 */
+	public int size() {
+		int sum = 0;
+		for (Segment s : segments) {
+			sum += s.size();
+		}
+		return sum;
+	}
+
+	/**
+	 * The maximum number of values this cache will hold.
+	 * 
+	 * @return the capacity.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Whether the cached values are weakly referenced.
+	 * 
+	 * @return true if values can be garbage-collected from the cache.
+	 */
+	public boolean isWeak() {
+		return weak;
+	}
+
+	private long[] stats() {
+		final long[] stats = new long[4];
+		for (Segment s : segments) {
+			s.addStats(stats);
+		}
+		return stats;
+	}
+
+	/**
+	 * The number of times {@link #reuse(String)} returned a previously-cached
+	 * value.
+	 * 
+	 * @return the number of cache hits.
+	 */
+	public long getHits() {
+		return stats()[0];
+	}
+
+	/**
+	 * The number of times {@link #reuse(String)} had to add a new value.
+	 * 
+	 * @return the number of cache misses.
+	 */
+	public long getMisses() {
+		return stats()[1];
+	}
+
+	/**
+	 * The number of values that were evicted to keep the cache within its
+	 * capacity (values that were garbage-collected from a weak cache are not
+	 * counted).
+	 * 
+	 * @return the number of evicted values.
+	 */
+	public long getEvictions() {
+		return stats()[2];
+	}
+
+	/**
+	 * The fraction of (non-null) {@link #reuse(String)} calls that returned a
+	 * cached value.
+	 * 
+	 * @return the hit ratio, between 0.0 and 1.0.
+	 */
+	public double getHitRatio() {
+		final long[] stats = stats();
+		final long total = stats[0] + stats[1];
+		return total == 0 ? 0.0 : (double)stats[0] / total;
+	}
+
+	/**
+	 * An estimate of the memory saved by reusing cached values. Every hit
+	 * saves one duplicate String: this is counted as an approximate
+	 * per-String overhead plus two bytes per character. The actual number
+	 * depends on the JVM.
+	 * 
+	 * @return the approximate number of bytes saved.
+	 */
+	public long getBytesSaved() {
+		return stats()[3];
+	}
+
+	@Override
+	public String toString() {
+		final long[] stats = stats();
+		final long total = stats[0] + stats[1];
+		return String.format(
+				"SharedStringBin[size=%d, capacity=%d, weak=%s, hits=%d, " +
+				"misses=%d, evictions=%d, hitRatio=%.3f, bytesSaved=%d]",
+				size(), capacity, weak, stats[0], stats[1], stats[2],
+				total == 0 ? 0.0 : (double)stats[0] / total, stats[3]);
+	}
+
+}
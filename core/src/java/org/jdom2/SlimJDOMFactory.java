@@ -61,14 +61,21 @@ import java.util.Map;
  * This JDOMFactory instance reduces the amount of memory used by JDOM content.
  * It does this by reusing String instances instead of using new (but equals())
  * instances. It uses the {@link StringBin} class to provide a String cache.
+ * <p>
+ * A SlimJDOMFactory with its own StringBin is not thread-safe. Use a
+ * {@link SharedStringBin} to have a factory that can be used by many builders
+ * on many threads at once, and to share the cached Strings between
+ * factories.
  * 
  * @see StringBin
+ * @see SharedStringBin
  * @author Rolf Lear
  *
  */
 public class SlimJDOMFactory extends DefaultJDOMFactory {
 	
-	private StringBin cache = new StringBin();
+	private StringBin cache = null;
+	private final SharedStringBin shared;
 	private final boolean cachetext;
 	
 	/**
@@ -88,20 +95,72 @@ public class SlimJDOMFactory extends DefaultJDOMFactory {
 	public SlimJDOMFactory(final boolean cachetext) {
 		super();
 		this.cachetext = cachetext;
+		this.shared = null;
+		this.cache = new StringBin();
 	}
 
+	/**
+	 * Construct a thread-safe SlimJDOMFactory which caches String values in
+	 * a {@link SharedStringBin}, which may also be used by other factories.
+	 * Text/CDATA/Comment/Attribute values are cached too.
+	 * @param shared the String cache to use.
+	 */
+	public SlimJDOMFactory(final SharedStringBin shared) {
+		this(shared, true);
+	}
+
+	/**
+	 * Construct a thread-safe SlimJDOMFactory which caches String values in
+	 * a {@link SharedStringBin}, which may also be used by other factories.
+	 * @param shared the String cache to use.
+	 * @param cachetext should be true if you want the content of CDATA, Text,
+	 * Comment and Attribute values cached as well.
+	 */
+	public SlimJDOMFactory(final SharedStringBin shared, final boolean cachetext) {
+		super();
+		if (shared == null) {
+			throw new NullPointerException("Cannot use a null SharedStringBin");
+		}
+		this.cachetext = cachetext;
+		this.shared = shared;
+	}
+
+	/**
+	 * Get the SharedStringBin this factory uses, if any. The bin reports the
+	 * cache statistics.
+	 * @return the shared String cache, or null if this factory has its own
+	 * (unshared) cache.
+	 */
+	public SharedStringBin getSharedStringBin() {
+		return shared;
+	}
 
 	/**
 	 * Reset any Cached String instance data from this SlimJDOMFaxctory cache.
+	 * If the cache is a {@link SharedStringBin} it is cleared for all the
+	 * factories that use it.
 	 */
 	public void clearCache() {
-		cache = new StringBin();
+		if (shared != null) {
+			shared.clear();
+		} else {
+			cache = new StringBin();
+		}
+	}
+
+	/**
+	 * Get the cached instance of a String value.
+	 * @param value the value to reuse.
+	 * @return an equal (cached) String.
+	 */
+	private final String reuse(final String value) {
+		return shared != null ? shared.reuse(value) : cache.reuse(value);
 	}
 
 	@Override
 	public Attribute attribute(final String name, final String value, final Namespace namespace) {
-		return super.attribute(cache.reuse(name), 
-				(cachetext ? cache.reuse(value) : value), 
+		return super.attribute(reuse(name), 
+				(cachetext ? reuse(value) : value), 
 				namespace);
 	}
 
@@ -109,120 +168,120 @@ public class SlimJDOMFactory extends DefaultJDOMFactory {
 	@Deprecated
 	public Attribute attribute(final String name, final String value, final int type,
 			final Namespace namespace) {
-		return super.attribute(cache.reuse(name),
-				(cachetext ? cache.reuse(value) : value), 
+		return super.attribute(reuse(name),
+				(cachetext ? reuse(value) : value), 
 				type, namespace);
 	}
 
 	@Override
 	public Attribute attribute(final String name, final String value, final AttributeType type,
 			Namespace namespace) {
-		return super.attribute(cache.reuse(name),
-				(cachetext ? cache.reuse(value) : value),
+		return super.attribute(reuse(name),
+				(cachetext ? reuse(value) : value),
 				type, namespace);
 	}
 
 	@Override
 	public Attribute attribute(final String name, final String value) {
-		return super.attribute(cache.reuse(name), 
-				(cachetext ? cache.reuse(value) : value));
+		return super.attribute(reuse(name), 
+				(cachetext ? reuse(value) : value));
 	}
 
 	@Override
 	@Deprecated
 	public Attribute attribute(final String name, final String value, final int type) {
-		return super.attribute(cache.reuse(name),
-				(cachetext ? cache.reuse(value) : value), 
+		return super.attribute(reuse(name),
+				(cachetext ? reuse(value) : value), 
 				type);
 	}
 
 	@Override
 	public Attribute attribute(final String name, final String value, final AttributeType type) {
-		return super.attribute(cache.reuse(name),
-				(cachetext ? cache.reuse(value) : value), 
+		return super.attribute(reuse(name),
+				(cachetext ? reuse(value) : value), 
 				type);
 	}
 
 	@Override
 	public CDATA cdata(final int line, final int col, final String str) {
-		return super.cdata(line, col, (cachetext ? cache.reuse(str) : str));
+		return super.cdata(line, col, (cachetext ? reuse(str) : str));
 	}
 
 	@Override
 	public Text text(final int line, final int col, final String str) {
-		return super.text(line, col, (cachetext ? cache.reuse(str) : str));
+		return super.text(line, col, (cachetext ? reuse(str) : str));
 	}
 
 	@Override
 	public Comment comment(final int line, final int col, final String text) {
-		return super.comment(line, col, (cachetext ? cache.reuse(text) : text));
+		return super.comment(line, col, (cachetext ? reuse(text) : text));
 	}
 
 	@Override
 	public DocType docType(final int line, final int col, final String elementName, final String publicID, final String systemID) {
-		return super.docType(line, col, cache.reuse(elementName), publicID, systemID);
+		return super.docType(line, col, reuse(elementName), publicID, systemID);
 	}
 
 	@Override
 	public DocType docType(final int line, final int col, final String elementName, final String systemID) {
-		return super.docType(line, col, cache.reuse(elementName), systemID);
+		return super.docType(line, col, reuse(elementName), systemID);
 	}
 
 	@Override
 	public DocType docType(final int line, final int col, final String elementName) {
-		return super.docType(line, col, cache.reuse(elementName));
+		return super.docType(line, col, reuse(elementName));
 	}
 
 	@Override
 	public Element element(final int line, final int col, final String name, final Namespace namespace) {
-		return super.element(line, col, cache.reuse(name), namespace);
+		return super.element(line, col, reuse(name), namespace);
 	}
 
 	@Override
 	public Element element(final int line, final int col, final String name) {
-		return super.element(line, col, cache.reuse(name));
+		return super.element(line, col, reuse(name));
 	}
 
 	@Override
 	public Element element(final int line, final int col, final String name, final String uri) {
-		return super.element(line, col, cache.reuse(name), uri);
+		return super.element(line, col, reuse(name), uri);
 	}
 
 	@Override
 	public Element element(final int line, final int col, final String name, final String prefix, final String uri) {
-		return super.element(line, col, cache.reuse(name), prefix, uri);
+		return super.element(line, col, reuse(name), prefix, uri);
 	}
 
 	@Override
 	public ProcessingInstruction processingInstruction(final int line, final int col, final String target,
 			final Map<String, String> data) {
-		return super.processingInstruction(line, col, cache.reuse(target), data);
+		return super.processingInstruction(line, col, reuse(target), data);
 	}
 
 	@Override
 	public ProcessingInstruction processingInstruction(final int line, final int col, final String target,
 			final String data) {
-		return super.processingInstruction(line, col, cache.reuse(target), data);
+		return super.processingInstruction(line, col, reuse(target), data);
 	}
 
 	@Override
 	public ProcessingInstruction processingInstruction(final int line, final int col, final String target) {
-		return super.processingInstruction(line, col, cache.reuse(target));
+		return super.processingInstruction(line, col, reuse(target));
 	}
 
 	@Override
 	public EntityRef entityRef(final int line, final int col, final String name) {
-		return super.entityRef(line, col, cache.reuse(name));
+		return super.entityRef(line, col, reuse(name));
 	}
 
 	@Override
 	public EntityRef entityRef(final int line, final int col, final String name, final String publicID, final String systemID) {
-		return super.entityRef(line, col, cache.reuse(name), publicID, systemID);
+		return super.entityRef(line, col, reuse(name), publicID, systemID);
 	}
 
 	@Override
 	public EntityRef entityRef(final int line, final int col, final String name, final String systemID) {
-		return super.entityRef(line, col, cache.reuse(name), systemID);
+		return super.entityRef(line, col, reuse(name), systemID);
 	}
 
 }
@@ -0,0 +1,218 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The text of an {@link Element} in the document it was built from: the
+ * characters from the start of its start tag to the end of its end tag (or
+ * of its empty-element tag).
+ * <p>
+ * A SAXBuilder with {@link org.jdom2.input.SAXBuilder#setSourceSpans(boolean)
+ * source spans} set keeps the characters of each document it builds, and
+ * records a SourceSpan on each Element it can. Any change to an Element, its
+ * Attributes, or its content discards the spans of the Element and all its
+ * ancestors (see {@link Element#getSourceSpan()}), so an Element that still
+ * has a span is exactly what was parsed. The
+ * {@link org.jdom2.output.XMLOutputter} copies the source text of those
+ * Elements instead of formatting and escaping them again, when the output
+ * Format allows it.
+ * <p>
+ * All the SourceSpans of a document share the same characters, which are
+ * not copied: the array given to the constructor must not be changed. Each
+ * span keeps the whole array reachable; see
+ * {@link org.jdom2.input.SAXBuilder#setSourceSpans(boolean)} for how to
+ * release it.
+ */
+public final class SourceSpan {
+
+	/**
+	 * Set on Elements that are built with source spans, but whose source
+	 * text is not known.
+	 */
+	static final SourceSpan NONE = new SourceSpan();
+
+	/**
+	 * Set on Elements that had a source text, but have changed since.
+	 */
+	static final SourceSpan MODIFIED = new SourceSpan();
+
+	private final char[] source;
+	private final int start;
+	private final int end;
+	private final boolean declaresNamespace;
+
+	private SourceSpan() {
+		this.source = new char[0];
+		this.start = 0;
+		this.end = 0;
+		this.declaresNamespace = false;
+	}
+
+	/**
+	 * Create a SourceSpan for part of a document's characters.
+	 * 
+	 * @param source
+	 *        The characters of the whole document, they are shared, not
+	 *        copied.
+	 * @param start
+	 *        The index of the first character (the '&lt;' of the start tag).
+	 * @param end
+	 *        The index after the last character.
+	 * @throws IllegalArgumentException
+	 *         if the span is not inside the source.
+	 */
+	public SourceSpan(final char[] source, final int start, final int end) {
+		this(source, start, end, false);
+	}
+
+	/**
+	 * Create a SourceSpan for part of a document's characters.
+	 * 
+	 * @param source
+	 *        The characters of the whole document, they are shared, not
+	 *        copied.
+	 * @param start
+	 *        The index of the first character (the '&lt;' of the start tag).
+	 * @param end
+	 *        The index after the last character.
+	 * @param declaresNamespace
+	 *        true if the start tag declares the Namespace of the Element
+	 *        itself (which is not one of its additional Namespaces).
+	 * @throws IllegalArgumentException
+	 *         if the span is not inside the source.
+	 */
+	public SourceSpan(final char[] source, final int start, final int end,
+			final boolean declaresNamespace) {
+		if (source == null) {
+			throw new NullPointerException("The source cannot be null");
+		}
+		if (start < 0 || end < start || end > source.length) {
+			throw new IllegalArgumentException("The span " + start + "-" + end
+					+ " is not inside the source of length " + source.length);
+		}
+		this.source = source;
+		this.start = start;
+		this.end = end;
+		this.declaresNamespace = declaresNamespace;
+	}
+
+	/**
+	 * Get the index of the first character in the document.
+	 * 
+	 * @return the start of the span.
+	 */
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * Get the index after the last character in the document.
+	 * 
+	 * @return the end of the span.
+	 */
+	public int getEnd() {
+		return end;
+	}
+
+	/**
+	 * Get the number of characters in the span.
+	 * 
+	 * @return the length of the span.
+	 */
+	public int length() {
+		return end - start;
+	}
+
+	/**
+	 * Indicates whether the start tag declares the Namespace of the Element.
+	 * The other Namespaces it declares are the additional Namespaces of the
+	 * Element, see {@link Element#getAdditionalNamespaces()}.
+	 * 
+	 * @return true if the source declares the Element's own Namespace.
+	 */
+	public boolean declaresNamespace() {
+		return declaresNamespace;
+	}
+
+	/**
+	 * Get the source text as a String.
+	 * 
+	 * @return the characters of the span.
+	 */
+	public String getText() {
+		return new String(source, start, end - start);
+	}
+
+	/**
+	 * Write the source text, without creating a String.
+	 * 
+	 * @param out
+	 *        The Writer to write the characters to.
+	 * @throws IOException
+	 *         if the Writer fails.
+	 */
+	public void write(final Writer out) throws IOException {
+		out.write(source, start, end - start);
+	}
+
+	@Override
+	public String toString() {
+		return "[SourceSpan: " + start + "-" + end + "]";
+	}
+
+}
@@ -0,0 +1,677 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A Text whose character content is kept in a temporary file instead of in
+ * memory. It is meant for very large character data (for example a base64
+ * payload in a single element), where building the content as a String
+ * needs several times its size on the heap.
+ * <p>
+ * The content is written once through a {@link Spool}, and can be read back
+ * as a stream with {@link #getReader()}, or as a {@link CharSequence} with
+ * {@link #getCharSequence()}, without creating the String. The
+ * {@link org.jdom2.output.XMLOutputter} streams the content whenever it
+ * outputs the Text as-is (for example with the raw Format).
+ * {@link #getText()} and {@link #getValue()} still work, but they create
+ * (and do not keep) the full String each time they are called.
+ * <p>
+ * Changing the text with {@link #setText(String)} or one of the append
+ * methods brings the content in to memory, after which this behaves as a
+ * normal Text. Clones share the stored content. The temporary file is
+ * deleted as soon as every SpilledText that uses it has been
+ * {@link #dispose() disposed} (or changed). Otherwise it is deleted after
+ * the content is garbage collected: the files of collected content are
+ * deleted whenever a new {@link Spool} is created. Files of content that is
+ * still reachable when the JVM exits are not deleted. A SpilledText is
+ * serialized as a normal Text.
+ * <p>
+ * The SAXBuilder creates SpilledText instances for text content larger than
+ * its {@link org.jdom2.input.SAXBuilder#setSpillThreshold(int) spill
+ * threshold}.
+ */
+public class SpilledText extends Text {
+
+	/**
+	 * JDOM2 Serialization. A SpilledText is written as a plain Text.
+	 */
+	private static final long serialVersionUID = 200L;
+
+	/** The number of chars read or written in one block */
+	private static final int BLOCK = 8192;
+
+	/** The Cleanups of the Stores that have been garbage collected */
+	private static final ReferenceQueue<Store> COLLECTED = new ReferenceQueue<Store>();
+
+	/** The Cleanups of the Stores whose file is not deleted yet */
+	private static final Set<Cleanup> PENDING =
+			Collections.synchronizedSet(new HashSet<Cleanup>());
+
+	/**
+	 * Deletes the temporary file of a Store, either when it is released, or
+	 * after the Store is garbage collected (it must not reference the Store).
+	 */
+	private static final class Cleanup extends PhantomReference<Store> {
+		private final File file;
+
+		private Cleanup(final Store store, final File file) {
+			super(store, COLLECTED);
+			this.file = file;
+			PENDING.add(this);
+		}
+
+		private void delete() {
+			if (PENDING.remove(this)) {
+				clear();
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Delete the temporary files of the Stores that have been garbage
+	 * collected.
+	 */
+	private static void deleteCollected() {
+		Reference<? extends Store> ref;
+		while ((ref = COLLECTED.poll()) != null) {
+			((Cleanup)ref).delete();
+		}
+	}
+
+	/**
+	 * The temporary file with the characters (two bytes each, UTF-16BE).
+	 */
+	private static final class Store {
+		private final File file;
+		private final Cleanup cleanup;
+		private int length = 0;
+		/** The number of SpilledText instances using the file */
+		private int users = 0;
+
+		private Store(final File file) {
+			this.file = file;
+			this.cleanup = new Cleanup(this, file);
+		}
+
+		private synchronized void acquire() {
+			users++;
+		}
+
+		private synchronized void release() {
+			if (--users == 0) {
+				cleanup.delete();
+			}
+		}
+
+		/**
+		 * Read chars from the file.
+		 */
+		private void read(final int from, final char[] dest, final int off,
+				final int count) throws IOException {
+			final RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				raf.seek(2L * from);
+				read(raf, dest, off, count, new byte[2 * Math.min(count, BLOCK)]);
+			} finally {
+				raf.close();
+			}
+		}
+
+		private static void read(final RandomAccessFile raf, final char[] dest,
+				final int off, final int count, final byte[] bytes)
+				throws IOException {
+			int done = 0;
+			while (done < count) {
+				final int cnt = Math.min(count - done, bytes.length >> 1);
+				raf.readFully(bytes, 0, cnt * 2);
+				int d = off + done;
+				for (int b = 0; b < cnt * 2; b += 2) {
+					dest[d++] = (char)(((bytes[b] & 0xff) << 8) | (bytes[b + 1] & 0xff));
+				}
+				done += cnt;
+			}
+		}
+
+		private String read(final int from, final int count) {
+			if (count == 0) {
+				return EMPTY_STRING;
+			}
+			final char[] chars = new char[count];
+			try {
+				read(from, chars, 0, count);
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to read the text content from "
+						+ file + ": " + e.getMessage(), e);
+			}
+			return new String(chars);
+		}
+	}
+
+	/**
+	 * Writes the content of a new SpilledText to a temporary file. The
+	 * characters are checked as they are written, like the content of a
+	 * normal Text.
+	 */
+	public static final class Spool extends Writer {
+		private final Store store;
+		private final byte[] bytes = new byte[2 * BLOCK];
+		private OutputStream out;
+		private int fill = 0;
+		private char high = 0;
+		private boolean discarded = false;
+
+		/**
+		 * Create a Spool with its temporary file in the default temporary
+		 * directory.
+		 * 
+		 * @throws IOException
+		 *         if the temporary file cannot be created.
+		 */
+		public Spool() throws IOException {
+			this(null);
+		}
+
+		/**
+		 * Create a Spool with its temporary file in the given directory.
+		 * 
+		 * @param directory
+		 *        The directory for the temporary file, or null for the
+		 *        default temporary directory.
+		 * @throws IOException
+		 *         if the temporary file cannot be created.
+		 */
+		public Spool(final File directory) throws IOException {
+			deleteCollected();
+			store = new Store(File.createTempFile("jdom", ".text", directory));
+			out = new FileOutputStream(store.file);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * 
+		 * @throws IllegalDataException
+		 *         if the characters are not legal XML character data.
+		 */
+		@Override
+		public void write(final char[] cbuf, final int off, final int len)
+				throws IOException {
+			if (out == null) {
+				throw new IOException("The Spool is closed");
+			}
+			if (len > Integer.MAX_VALUE - store.length) {
+				throw new IOException("A SpilledText cannot hold more than "
+						+ Integer.MAX_VALUE + " characters");
+			}
+			final int end = off + len;
+			for (int i = off; i < end; i++) {
+				final char c = cbuf[i];
+				if (high != 0) {
+					if (!Verifier.isLowSurrogate(c)) {
+						throw new IllegalDataException("Illegal surrogate pair 0x"
+								+ Integer.toHexString(high) + " / 0x"
+								+ Integer.toHexString(c));
+					}
+					high = 0;
+				} else if (Verifier.isHighSurrogate(c)) {
+					high = c;
+				} else if (!Verifier.isXMLCharacter(c)) {
+					throw new IllegalDataException("0x" + Integer.toHexString(c)
+							+ " is not a legal XML character");
+				}
+				if (fill == bytes.length) {
+					out.write(bytes, 0, fill);
+					fill = 0;
+				}
+				bytes[fill++] = (byte)(c >>> 8);
+				bytes[fill++] = (byte)c;
+			}
+			store.length += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (out != null) {
+				out.write(bytes, 0, fill);
+				fill = 0;
+				out.flush();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (out != null) {
+				try {
+					out.write(bytes, 0, fill);
+					fill = 0;
+				} finally {
+					out.close();
+					out = null;
+				}
+			}
+		}
+
+		/**
+		 * Get the number of characters written so far.
+		 * 
+		 * @return the number of characters written.
+		 */
+		public int length() {
+			return store.length;
+		}
+
+		/**
+		 * Get the characters written so far, without closing this Spool (as
+		 * for a StringWriter).
+		 * 
+		 * @return the content written so far.
+		 * @throws IllegalStateException
+		 *         if the temporary file cannot be read.
+		 */
+		@Override
+		public String toString() {
+			if (discarded) {
+				throw new IllegalStateException("The Spool has been discarded");
+			}
+			try {
+				flush();
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to write the text content to "
+						+ store.file + ": " + e.getMessage(), e);
+			}
+			return store.read(0, store.length);
+		}
+
+		/**
+		 * Close this Spool and get a SpilledText with its content. Each call
+		 * returns a new SpilledText sharing the same content.
+		 * 
+		 * @return a SpilledText with the characters written to this Spool.
+		 * @throws IOException
+		 *         if the temporary file cannot be completed.
+		 * @throws IllegalDataException
+		 *         if the content ends with half of a surrogate pair.
+		 */
+		public SpilledText toText() throws IOException {
+			if (discarded) {
+				throw new IllegalStateException("The Spool has been discarded");
+			}
+			if (high != 0) {
+				throw new IllegalDataException("Incomplete surrogate pair 0x"
+						+ Integer.toHexString(high) + " at the end of the text");
+			}
+			close();
+			return new SpilledText(store);
+		}
+
+		/**
+		 * Close this Spool and delete its temporary file. Use this when the
+		 * content is not needed after all.
+		 */
+		public void discard() {
+			discarded = true;
+			try {
+				close();
+			} catch (IOException e) {
+				// the file is deleted anyway.
+			}
+			store.cleanup.delete();
+		}
+	}
+
+	/**
+	 * Reads the content of a Store from start to end.
+	 */
+	private static final class StoreReader extends Reader {
+		private final Store store;
+		private RandomAccessFile raf = null;
+		private byte[] bytes = null;
+		private int pos = 0;
+		private boolean closed = false;
+
+		private StoreReader(final Store store) {
+			this.store = store;
+		}
+
+		@Override
+		public int read(final char[] cbuf, final int off, final int len)
+				throws IOException {
+			if (closed) {
+				throw new IOException("The Reader is closed");
+			}
+			if (len == 0) {
+				return 0;
+			}
+			if (pos >= store.length) {
+				if (raf != null) {
+					raf.close();
+					raf = null;
+				}
+				return -1;
+			}
+			if (raf == null) {
+				raf = new RandomAccessFile(store.file, "r");
+				raf.seek(2L * pos);
+				bytes = new byte[2 * BLOCK];
+			}
+			final int cnt = Math.min(len, store.length - pos);
+			Store.read(raf, cbuf, off, cnt, bytes);
+			pos += cnt;
+			return cnt;
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+			if (raf != null) {
+				raf.close();
+				raf = null;
+			}
+		}
+	}
+
+	/**
+	 * A CharSequence over part of a Store, reading one block at a time.
+	 */
+	private static final class StoreChars implements CharSequence {
+		private final Store store;
+		private final int start, end;
+		private final char[] block = new char[BLOCK];
+		private int blockstart = -1;
+
+		private StoreChars(final Store store, final int start, final int end) {
+			this.store = store;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(final int index) {
+			if (index < 0 || index >= end - start) {
+				throw new IndexOutOfBoundsException("Index " + index
+						+ " is not in a CharSequence of length " + (end - start));
+			}
+			final int pos = start + index;
+			if (blockstart < 0 || pos < blockstart || pos >= blockstart + BLOCK) {
+				final int bs = pos - (pos % BLOCK);
+				try {
+					store.read(bs, block, 0, Math.min(BLOCK, store.length - bs));
+				} catch (IOException e) {
+					throw new IllegalStateException("Unable to read the text content from "
+							+ store.file + ": " + e.getMessage(), e);
+				}
+				blockstart = bs;
+			}
+			return block[pos - blockstart];
+		}
+
+		@Override
+		public CharSequence subSequence(final int from, final int to) {
+			if (from < 0 || to > end - start || from > to) {
+				throw new IndexOutOfBoundsException("Illegal range " + from
+						+ " to " + to + " in a CharSequence of length " + (end - start));
+			}
+			return new StoreChars(store, start + from, start + to);
+		}
+
+		@Override
+		public String toString() {
+			return store.read(start, end - start);
+		}
+	}
+
+	/** The content while it is not in memory (value is null) */
+	private transient Store store;
+
+	private SpilledText(final Store store) {
+		super();
+		this.store = store;
+		store.acquire();
+	}
+
+	/**
+	 * Create a SpilledText that shares the content of another one, for
+	 * subclasses (for example those created by a
+	 * {@link JDOMFactory#spilledText(int, int, SpilledText)}).
+	 * 
+	 * @param text
+	 *        The SpilledText with the content.
+	 */
+	protected SpilledText(final SpilledText text) {
+		super();
+		final Store s = text.store;
+		if (s != null) {
+			s.acquire();
+			store = s;
+		} else {
+			value = text.value;
+		}
+	}
+
+	/**
+	 * Indicates whether the content is still in its temporary file.
+	 * 
+	 * @return true if the content is not in memory.
+	 */
+	public boolean isSpilled() {
+		return store != null;
+	}
+
+	/**
+	 * Get the number of characters in this Text.
+	 * 
+	 * @return the length of the content.
+	 */
+	public int length() {
+		final Store s = store;
+		return s != null ? s.length : value.length();
+	}
+
+	/**
+	 * Get a Reader over the content, which reads it from the temporary file
+	 * without bringing all of it in to memory.
+	 * 
+	 * @return a new Reader for the content.
+	 */
+	public Reader getReader() {
+		final Store s = store;
+		return s != null ? new StoreReader(s) : new StringReader(value);
+	}
+
+	/**
+	 * Get the content as a CharSequence that reads from the temporary file
+	 * as needed. The CharSequence reads the file one block at a time, so it
+	 * is efficient for scans and local access, and it is not thread-safe.
+	 * The CharSequence keeps the content it was created with, even if this
+	 * Text is changed later.
+	 * 
+	 * @return the content as a CharSequence.
+	 */
+	public CharSequence getCharSequence() {
+		final Store s = store;
+		return s != null ? new StoreChars(s, 0, s.length) : value;
+	}
+
+	/**
+	 * Get the content as a String. If the content is spilled the String is
+	 * read from the temporary file each time, and is not kept.
+	 * 
+	 * @return the content.
+	 * @throws IllegalStateException
+	 *         if the temporary file cannot be read.
+	 */
+	@Override
+	public String getText() {
+		final Store s = store;
+		return s != null ? s.read(0, s.length) : value;
+	}
+
+	@Override
+	public String getValue() {
+		return getText();
+	}
+
+	@Override
+	public SpilledText setText(final String str) {
+		super.setText(str);
+		release();
+		return this;
+	}
+
+	/**
+	 * Release the temporary file of this SpilledText when its content is no
+	 * longer needed. The content is discarded, and this is an empty Text
+	 * afterwards. The file is deleted once every SpilledText sharing it has
+	 * been disposed or changed.
+	 * 
+	 * @throws IllegalStateException
+	 *         if this Text is frozen.
+	 */
+	public void dispose() {
+		checkFrozen();
+		markModified();
+		value = EMPTY_STRING;
+		release();
+	}
+
+	/**
+	 * Stop using the temporary file, if this was.
+	 */
+	private void release() {
+		final Store s = store;
+		if (s != null) {
+			store = null;
+			s.release();
+		}
+	}
+
+	@Override
+	public void append(final String str) {
+		inMemory();
+		super.append(str);
+	}
+
+	@Override
+	public void append(final Text text) {
+		inMemory();
+		super.append(text);
+	}
+
+	/**
+	 * Read the content in to memory before it is changed.
+	 */
+	private void inMemory() {
+		checkFrozen();
+		final Store s = store;
+		if (s != null) {
+			value = s.read(0, s.length);
+			release();
+		}
+	}
+
+	@Override
+	public String toString() {
+		final Store s = store;
+		if (s == null) {
+			return super.toString();
+		}
+		return new StringBuilder(64)
+		.append("[Text: ")
+		.append(s.length)
+		.append(" characters in ")
+		.append(s.file)
+		.append("]")
+		.toString();
+	}
+
+	@Override
+	public SpilledText clone() {
+		final SpilledText ret = (SpilledText)super.clone();
+		if (ret.store != null) {
+			ret.store.acquire();
+		}
+		return ret;
+	}
+
+	/**
+	 * Serialize the content as a plain Text.
+	 * 
+	 * @return a Text with the same content.
+	 */
+	private Object writeReplace() {
+		return new Text(getText());
+	}
+
+}
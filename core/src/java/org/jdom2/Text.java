@@ -171,6 +171,8 @@ public class Text extends Content {
 	 *         by {@link org.jdom2.Verifier#checkCharacterData})
 	 */
 	public Text setText(String str) {
+		checkFrozen();
+		markModified();
 		String reason;
 
 		if (str == null) {
@@ -195,6 +197,8 @@ public class Text extends Content {
 	 *         by {@link org.jdom2.Verifier#checkCharacterData})
 	 */
 	public void append(String str) {
+		checkFrozen();
+		markModified();
 		String reason;
 
 		if (str == null) {
@@ -216,6 +220,8 @@ public class Text extends Content {
 	 * @param text Text node to append.
 	 */
 	public void append(Text text) {
+		checkFrozen();
+		markModified();
 		if (text == null) {
 			return;
 		}
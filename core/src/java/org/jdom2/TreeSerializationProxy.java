@@ -0,0 +1,567 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import org.jdom2.internal.ArrayCopy;
+
+/**
+ * The compact serialized form of {@link Element} and {@link Document} trees.
+ * <p>
+ * Plain Element and Document instances are replaced by this proxy when they
+ * are serialized (see their <code>writeReplace()</code> methods). Instead of
+ * writing every node as a separate object, the tree is walked iteratively
+ * (there is no recursion, so deep trees do not overflow the stack) and
+ * written as a sequence of compact records. Element names, Attribute names,
+ * and Namespace prefixes/URIs are held in a symbol table and written only
+ * once, and Namespaces are written once and then referenced by index.
+ * <p>
+ * Only the core JDOM classes are encoded compactly. Content or Attributes
+ * that are instances of subclasses are written as regular serialized objects
+ * inside the stream, which preserves their own serialization mechanisms.
+ * <p>
+ * The stream is trusted on the way back in: the tree is rebuilt through the
+ * same unchecked mechanisms that {@link UncheckedJDOMFactory} uses, so no
+ * name or character verification is repeated.
+ * <p>
+ * Note that because the nodes inside the tree are not individually
+ * serialized objects, references from outside the tree to Content inside
+ * the tree are not shared with the tree after deserialization.
+ */
+final class TreeSerializationProxy implements Externalizable {
+
+	/**
+	 * JDOM2 Serialization.
+	 */
+	private static final long serialVersionUID = 200L;
+
+	/** The version of the stream protocol */
+	private static final int VERSION = 1;
+
+	/* The types of the records in the stream */
+	private static final int T_ELEMENT = 1;
+	private static final int T_TEXT = 2;
+	private static final int T_CDATA = 3;
+	private static final int T_COMMENT = 4;
+	private static final int T_OBJECT = 5;
+
+	/** Strings longer than this are written in multiple UTF chunks */
+	private static final int UTFCHUNK = 16384;
+
+	/** The Element or Document being (de)serialized */
+	private Parent tree = null;
+
+	/**
+	 * Externalizable requires a public no-arg constructor.
+	 */
+	public TreeSerializationProxy() {
+		// used when reading.
+	}
+
+	/**
+	 * Create a proxy for writing the supplied tree.
+	 * @param tree The Element or Document to write.
+	 */
+	TreeSerializationProxy(final Parent tree) {
+		this.tree = tree;
+	}
+
+	/**
+	 * Replace this proxy with the tree it read.
+	 * @return The Element or Document that was read.
+	 * @throws ObjectStreamException if nothing was read.
+	 */
+	private Object readResolve() throws ObjectStreamException {
+		if (tree == null) {
+			throw new InvalidObjectException("No JDOM content was read.");
+		}
+		return tree;
+	}
+
+	/* * * * * * * * * * * * * * Writing * * * * * * * * * * * * * * * * */
+
+	/**
+	 * @serialData
+	 * The stream protocol is:
+	 * <ol>
+	 *   <li>The protocol version (currently 1).
+	 *   <li>A boolean, true if the tree is a Document.
+	 *   <li>For a Document, the base URI and the count of the Document's
+	 *       content followed by each content record. For an Element, a single
+	 *       Element record.
+	 * </ol>
+	 * Element records contain the name, Namespace, additional Namespaces,
+	 * Attributes, and the count of child content. The child content records
+	 * follow the Element record, in document order.
+	 */
+	@Override
+	public void writeExternal(final ObjectOutput out) throws IOException {
+		final Writer writer = new Writer(out);
+		writeVarInt(out, VERSION);
+		if (tree instanceof Document) {
+			final Document doc = (Document)tree;
+			out.writeBoolean(true);
+			writeString(out, doc.baseURI);
+			final int cs = doc.content.size();
+			writeVarInt(out, cs);
+			for (int i = 0; i < cs; i++) {
+				writer.write(doc.content.get(i));
+			}
+		} else {
+			out.writeBoolean(false);
+			writer.write((Element)tree);
+		}
+	}
+
+	/**
+	 * Manages the symbol and Namespace tables, and the Element stack, when
+	 * writing a tree.
+	 */
+	private static final class Writer {
+		private final ObjectOutput out;
+		private final HashMap<String, Integer> symbols =
+				new HashMap<String, Integer>();
+		private final IdentityHashMap<Namespace, Integer> namespaces =
+				new IdentityHashMap<Namespace, Integer>();
+		private Element[] estack = new Element[16];
+		private int[] istack = new int[16];
+
+		Writer(final ObjectOutput out) {
+			this.out = out;
+		}
+
+		private void symbol(final String sym) throws IOException {
+			final Integer id = symbols.get(sym);
+			if (id != null) {
+				writeVarInt(out, id.intValue());
+				return;
+			}
+			final int nid = symbols.size();
+			symbols.put(sym, Integer.valueOf(nid));
+			writeVarInt(out, nid);
+			writeString(out, sym);
+		}
+
+		private void namespace(final Namespace ns) throws IOException {
+			final Integer id = namespaces.get(ns);
+			if (id != null) {
+				writeVarInt(out, id.intValue());
+				return;
+			}
+			final int nid = namespaces.size();
+			namespaces.put(ns, Integer.valueOf(nid));
+			writeVarInt(out, nid);
+			symbol(ns.getPrefix());
+			symbol(ns.getURI());
+		}
+
+		/**
+		 * Write the content, and if it is a plain Element, all its
+		 * descendants.
+		 */
+		void write(final Content root) throws IOException {
+			int sp = 0;
+			if (record(root)) {
+				estack[sp] = (Element)root;
+				istack[sp++] = 0;
+			}
+			while (sp > 0) {
+				final Element emt = estack[sp - 1];
+				final int index = istack[sp - 1]++;
+				if (index >= emt.getContentSize()) {
+					estack[--sp] = null;
+					continue;
+				}
+				final Content c = emt.getContent(index);
+				if (record(c)) {
+					if (sp == estack.length) {
+						estack = ArrayCopy.copyOf(estack, sp << 1);
+						istack = ArrayCopy.copyOf(istack, sp << 1);
+					}
+					estack[sp] = (Element)c;
+					istack[sp++] = 0;
+				}
+			}
+		}
+
+		/**
+		 * Write a single content record.
+		 * @return true if the record is for a plain Element, and the child
+		 *         records need to follow it.
+		 */
+		private boolean record(final Content c) throws IOException {
+			final Class<?> clazz = c.getClass();
+			if (clazz == Element.class) {
+				final Element emt = (Element)c;
+				emt.expand();
+				out.writeByte(T_ELEMENT);
+				symbol(emt.name);
+				namespace(emt.namespace);
+				final int nss = emt.additionalNamespaces == null ? 0 
+						: emt.additionalNamespaces.size();
+				writeVarInt(out, nss);
+				for (int i = 0; i < nss; i++) {
+					namespace(emt.additionalNamespaces.get(i));
+				}
+				final int ats = emt.attributes == null ? 0 
+						: emt.attributes.size();
+				writeVarInt(out, ats);
+				for (int i = 0; i < ats; i++) {
+					attribute(emt.attributes.get(i));
+				}
+				writeVarInt(out, emt.getContentSize());
+				return true;
+			}
+			if (clazz == Text.class) {
+				out.writeByte(T_TEXT);
+				writeString(out, ((Text)c).value);
+			} else if (clazz == CDATA.class) {
+				out.writeByte(T_CDATA);
+				writeString(out, ((CDATA)c).value);
+			} else if (clazz == Comment.class) {
+				out.writeByte(T_COMMENT);
+				writeString(out, ((Comment)c).text);
+			} else {
+				out.writeByte(T_OBJECT);
+				out.writeObject(c);
+			}
+			return false;
+		}
+
+		private void attribute(final Attribute att) throws IOException {
+			if (att.getClass() != Attribute.class) {
+				out.writeBoolean(false);
+				out.writeObject(att);
+				return;
+			}
+			out.writeBoolean(true);
+			symbol(att.name);
+			namespace(att.namespace);
+			out.writeByte(att.type.ordinal());
+			out.writeBoolean(att.specified);
+			writeString(out, att.value);
+		}
+	}
+
+	/* * * * * * * * * * * * * * Reading * * * * * * * * * * * * * * * * */
+
+	@Override
+	public void readExternal(final ObjectInput in) throws IOException,
+			ClassNotFoundException {
+		final int version = readVarInt(in);
+		if (version != VERSION) {
+			throw new InvalidObjectException(
+					"Unsupported JDOM serialization version " + version);
+		}
+		final Reader reader = new Reader(in);
+		if (in.readBoolean()) {
+			final Document doc = new Document();
+			doc.baseURI = readString(in);
+			int cs = readVarInt(in);
+			while (--cs >= 0) {
+				doc.content.uncheckedAddContent(reader.read());
+			}
+			tree = doc;
+		} else {
+			final Content root = reader.read();
+			if (!(root instanceof Element)) {
+				throw new InvalidObjectException("Expected an Element record.");
+			}
+			tree = (Element)root;
+		}
+	}
+
+	/**
+	 * Manages the symbol and Namespace tables, and the Element stack, when
+	 * reading a tree.
+	 */
+	private static final class Reader {
+		private final ObjectInput in;
+		private final ArrayList<String> symbols = new ArrayList<String>();
+		private final ArrayList<Namespace> namespaces =
+				new ArrayList<Namespace>();
+		private Element[] estack = new Element[16];
+		private int[] rstack = new int[16];
+
+		Reader(final ObjectInput in) {
+			this.in = in;
+		}
+
+		private String symbol() throws IOException {
+			final int id = readVarInt(in);
+			if (id < symbols.size()) {
+				return symbols.get(id);
+			}
+			if (id != symbols.size()) {
+				throw new InvalidObjectException("Illegal symbol " + id);
+			}
+			final String sym = readString(in);
+			if (sym == null) {
+				throw new InvalidObjectException("Null symbol " + id);
+			}
+			symbols.add(sym);
+			return sym;
+		}
+
+		private Namespace namespace() throws IOException {
+			final int id = readVarInt(in);
+			if (id < namespaces.size()) {
+				return namespaces.get(id);
+			}
+			if (id != namespaces.size()) {
+				throw new InvalidObjectException("Illegal Namespace " + id);
+			}
+			final String prefix = symbol();
+			final Namespace ns = Namespace.getNamespace(prefix, symbol());
+			namespaces.add(ns);
+			return ns;
+		}
+
+		/**
+		 * Read a content record, and if it is an Element, all its
+		 * descendants.
+		 */
+		Content read() throws IOException, ClassNotFoundException {
+			final int[] count = new int[1];
+			final Content root = record(count);
+			if (count[0] == 0) {
+				return root;
+			}
+			int sp = 0;
+			estack[sp] = (Element)root;
+			rstack[sp++] = count[0];
+			while (sp > 0) {
+				final Element emt = estack[sp - 1];
+				if (--rstack[sp - 1] == 0) {
+					estack[--sp] = null;
+				}
+				count[0] = 0;
+				final Content c = record(count);
+				emt.uncheckedAddContent(c);
+				if (count[0] > 0) {
+					if (sp == estack.length) {
+						estack = ArrayCopy.copyOf(estack, sp << 1);
+						rstack = ArrayCopy.copyOf(rstack, sp << 1);
+					}
+					estack[sp] = (Element)c;
+					rstack[sp++] = count[0];
+				}
+			}
+			return root;
+		}
+
+		/**
+		 * Read a single content record.
+		 * @param count set to the number of child records an Element has.
+		 */
+		private Content record(final int[] count) throws IOException,
+				ClassNotFoundException {
+			final int type = in.readByte();
+			switch (type) {
+				case T_ELEMENT:
+					final Element emt = new Element();
+					emt.name = symbol();
+					emt.namespace = namespace();
+					int nss = readVarInt(in);
+					if (nss > 0) {
+						emt.additionalNamespaces = new ArrayList<Namespace>(nss);
+						while (--nss >= 0) {
+							emt.additionalNamespaces.add(namespace());
+						}
+					}
+					final int ats = readVarInt(in);
+					if (ats > 0) {
+						final AttributeList atts = emt.getAttributeList();
+						atts.ensureCapacity(ats);
+						for (int i = 0; i < ats; i++) {
+							atts.uncheckedAddAttribute(attribute());
+						}
+					}
+					count[0] = readVarInt(in);
+					if (count[0] > 1) {
+						emt.content().ensureCapacity(count[0]);
+					}
+					return emt;
+				case T_TEXT:
+					final Text text = new Text();
+					text.value = readString(in);
+					return text;
+				case T_CDATA:
+					final CDATA cdata = new CDATA();
+					cdata.value = readString(in);
+					return cdata;
+				case T_COMMENT:
+					final Comment comment = new Comment();
+					comment.text = readString(in);
+					return comment;
+				case T_OBJECT:
+					final Object o = in.readObject();
+					if (!(o instanceof Content)) {
+						throw new InvalidObjectException(
+								"Expected Content but got " + o);
+					}
+					return (Content)o;
+				default:
+					throw new InvalidObjectException(
+							"Unknown JDOM record type " + type);
+			}
+		}
+
+		private Attribute attribute() throws IOException,
+				ClassNotFoundException {
+			if (!in.readBoolean()) {
+				final Object o = in.readObject();
+				if (!(o instanceof Attribute)) {
+					throw new InvalidObjectException(
+							"Expected an Attribute but got " + o);
+				}
+				return (Attribute)o;
+			}
+			final Attribute att = new Attribute();
+			att.name = symbol();
+			att.namespace = namespace();
+			final int type = in.readByte();
+			final AttributeType[] types = AttributeType.values();
+			if (type < 0 || type >= types.length) {
+				throw new InvalidObjectException(
+						"Illegal Attribute type " + type);
+			}
+			att.type = types[type];
+			att.specified = in.readBoolean();
+			att.value = readString(in);
+			return att;
+		}
+	}
+
+	/* * * * * * * * * * * * * * Primitives * * * * * * * * * * * * * * * */
+
+	/**
+	 * Write a non-negative int using 7 bits per byte.
+	 */
+	private static final void writeVarInt(final ObjectOutput out, int val)
+			throws IOException {
+		while ((val & ~0x7F) != 0) {
+			out.writeByte((val & 0x7F) | 0x80);
+			val >>>= 7;
+		}
+		out.writeByte(val);
+	}
+
+	private static final int readVarInt(final ObjectInput in) throws IOException {
+		int val = 0;
+		int shift = 0;
+		while (shift < 32) {
+			final int b = in.readByte();
+			val |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				if (val < 0) {
+					break;
+				}
+				return val;
+			}
+			shift += 7;
+		}
+		throw new InvalidObjectException("Corrupt length value in stream.");
+	}
+
+	/**
+	 * Write a (possibly null, possibly long) String.
+	 */
+	private static final void writeString(final ObjectOutput out,
+			final String str) throws IOException {
+		if (str == null) {
+			writeVarInt(out, 0);
+			return;
+		}
+		final int len = str.length();
+		writeVarInt(out, len + 1);
+		if (len <= UTFCHUNK) {
+			out.writeUTF(str);
+			return;
+		}
+		for (int i = 0; i < len; i += UTFCHUNK) {
+			out.writeUTF(str.substring(i, Math.min(len, i + UTFCHUNK)));
+		}
+	}
+
+	private static final String readString(final ObjectInput in) 
+			throws IOException {
+		final int len = readVarInt(in) - 1;
+		if (len < 0) {
+			return null;
+		}
+		if (len <= UTFCHUNK) {
+			return in.readUTF();
+		}
+		final StringBuilder sb = new StringBuilder(len);
+		while (sb.length() < len) {
+			sb.append(in.readUTF());
+		}
+		if (sb.length() != len) {
+			throw new InvalidObjectException("Corrupt String in stream.");
+		}
+		return sb.toString();
+	}
+
+}
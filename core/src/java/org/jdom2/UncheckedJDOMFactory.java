@@ -310,7 +310,7 @@ public class UncheckedJDOMFactory extends DefaultJDOMFactory {
 	public void addContent(Parent parent, Content child) {
 		if (parent instanceof Element) {
 			Element elt = (Element) parent;
-			elt.content.uncheckedAddContent(child);
+			elt.uncheckedAddContent(child);
 		}
 		else {
 			Document doc = (Document) parent;
@@ -325,10 +325,13 @@ public class UncheckedJDOMFactory extends DefaultJDOMFactory {
 
 	@Override
 	public void addNamespaceDeclaration(Element parent, Namespace additional) {
+		parent.checkFrozen();
+		parent.markModified();
 		if (parent.additionalNamespaces == null) {
 			parent.additionalNamespaces = new ArrayList<Namespace>(5); //Element.INITIAL_ARRAY_SIZE
 		}
 		parent.additionalNamespaces.add(additional);
+		parent.scopeChanged();
 	}
 	
 	@Override
@@ -346,6 +346,27 @@ final public class Verifier {
 	private static final byte MASKURICHAR       = 1 << 6;
 	/** Mask used to test for {@link #isXMLLetterOrDigit(char)} */
 	private static final byte MASKXMLLETTERORDIGIT = MASKXMLLETTER | MASKXMLDIGIT;
+
+	/**
+	 * Number of slots in the verified-name cache (must be a power of 2).
+	 */
+	private static final int NAMECACHESIZE = 1024;
+
+	/**
+	 * Longer names are not cached (they are rare, and checking them is
+	 * not the bottleneck).
+	 */
+	private static final int NAMECACHEMAXLEN = 64;
+
+	/**
+	 * A cache of JDOM names that have passed {@link #checkJDOMName(String)}.
+	 * Documents typically use a few hundred distinct element and attribute
+	 * names, millions of times. The cache is direct-mapped by hash code, so
+	 * it is bounded, and a colliding name simply replaces the previous one.
+	 * No locking is needed: slots hold immutable String references, and a
+	 * stale or missing entry only means the name is checked again.
+	 */
+	private static final String[] NAMECACHE = new String[NAMECACHESIZE];
 	
 	/**
 	 * Ensure instantation cannot occur.
@@ -364,6 +385,14 @@ final public class Verifier {
 			return "XML names cannot be empty";
 		}
 
+		// names that have already been checked (usually the same instance).
+		final int hash = name.hashCode();
+		final int slot = ((hash >>> 16) ^ hash) & (NAMECACHESIZE - 1);
+		final String known = NAMECACHE[slot];
+		if (known == name || (known != null && known.equals(name))) {
+			return null;
+		}
+
 		// Cannot start with a number
 		if ((byte)0 == (CHARFLAGS[name.charAt(0)] & MASKXMLSTARTCHAR)) {
 			return "XML name '" + name + "' cannot begin with the character \"" + 
@@ -379,6 +408,9 @@ final public class Verifier {
 		}
 
 		// If we got here, everything is OK
+		if (name.length() <= NAMECACHEMAXLEN) {
+			NAMECACHE[slot] = name;
+		}
 		return null;
 	}
 
@@ -436,7 +468,40 @@ final public class Verifier {
 		}
 		
 		final int len = text.length();
-		for (int i = 0; i < len; i++) {
+		// Fast path: every char from 0x20 to 0xD7FF is legal, and a single
+		// unsigned range compare is cheaper than the CHARFLAGS lookup. Only
+		// the other chars (whitespace controls, chars above the surrogates)
+		// need the table, and only surrogates and illegal chars need the
+		// full check.
+		int i = 0;
+		while (i < len) {
+			final char c = text.charAt(i);
+			if ((char)(c - 0x20) >= (char)(0xD800 - 0x20) 
+					&& CHARFLAGS[c] == (byte)0) {
+				break;
+			}
+			i++;
+		}
+		if (i == len) {
+			return null;
+		}
+		return checkCharacterData(text, i, len);
+	}
+
+	/**
+	 * Check the characters from a start index in a String, with full support
+	 * for surrogate pairs.
+	 * 
+	 * @param text The String to check
+	 * @param from The first char to check (the start of a surrogate pair, if
+	 *        there is one).
+	 * @param len The length of the String.
+	 * @return <code>String</code> reason name is illegal, or
+	 *         <code>null</code> if name is OK.
+	 */
+	private static String checkCharacterData(final String text, final int from,
+			final int len) {
+		for (int i = from; i < len; i++) {
 			// we are expecting a normal char, but may be a surrogate.
 			// the isXMLCharacter method takes an int argument, but we have a char.
 			// we save a lot of time by doing the test directly here without
@@ -0,0 +1,309 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.input;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.xml.sax.InputSource;
+
+import org.jdom2.Document;
+import org.jdom2.JDOMException;
+import org.jdom2.input.sax.SAXEngine;
+
+/**
+ * Builds a batch of inputs in parallel, for
+ * {@link SAXBuilder#buildAll(Collection, int, boolean, BuildListener)}.
+ * <p>
+ * Each worker thread has its own SAXEngine, created up-front by the calling
+ * thread (SAXBuilder is not thread-safe). Workers claim the next input from
+ * a shared counter and put the outcome on a queue. The calling thread takes
+ * the outcomes from the queue and delivers them (in completion order, or
+ * re-ordered to input order), so listeners are only ever called from one
+ * thread.
+ * <p>
+ * The number of outcomes that have been built but not yet delivered is
+ * limited, so a slow input does not cause the whole batch to be held in
+ * memory while waiting to deliver in input order.
+ */
+final class BatchBuilder {
+
+	/** The number of undelivered outcomes allowed per worker */
+	private static final int WINDOW = 16;
+
+	/**
+	 * The result of building one input.
+	 */
+	private static final class Outcome {
+		private final int index;
+		private final Document document;
+		private final Exception error;
+		private final Error fatal;
+		private final long nanos;
+
+		Outcome(final int index, final Document document, final Exception error,
+				final Error fatal, final long nanos) {
+			this.index = index;
+			this.document = document;
+			this.error = error;
+			this.fatal = fatal;
+			this.nanos = nanos;
+		}
+	}
+
+	/**
+	 * A worker thread, builds inputs until there are none left.
+	 */
+	private final class Worker extends Thread {
+		private SAXEngine engine;
+
+		Worker(final SAXEngine engine, final int id) {
+			super("JDOM Batch Builder " + id);
+			setDaemon(true);
+			this.engine = engine;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					window.acquire();
+					if (abandoned) {
+						return;
+					}
+					final int index = next.getAndIncrement();
+					if (index >= sources.length) {
+						return;
+					}
+					results.add(buildOne(this, index));
+				}
+			} catch (InterruptedException e) {
+				// abandoned.
+			}
+		}
+	}
+
+	private final SAXBuilder builder;
+	private final InputSource[] sources;
+	private final int parallelism;
+	private final boolean ordered;
+	private final BuildListener listener;
+
+	private final AtomicInteger next = new AtomicInteger();
+	private final BlockingQueue<Outcome> results = new LinkedBlockingQueue<Outcome>();
+	private final Semaphore window;
+	private volatile boolean abandoned = false;
+
+	private final TreeMap<Integer, Exception> errors = new TreeMap<Integer, Exception>();
+	private final List<Document> documents;
+	private long busy = 0L;
+
+	/**
+	 * Prepare a batch.
+	 * 
+	 * @param builder The (not thread-safe) builder used to create engines.
+	 * @param inputs The sources to build.
+	 * @param parallelism The number of threads to use.
+	 * @param ordered Whether to deliver results in input order.
+	 * @param listener Where to deliver results, if null the Documents are
+	 *        collected in the BatchResult.
+	 */
+	BatchBuilder(final SAXBuilder builder,
+			final Collection<? extends InputSource> inputs, 
+			final int parallelism, final boolean ordered,
+			final BuildListener listener) {
+		if (inputs == null) {
+			throw new NullPointerException("Cannot build a null input collection");
+		}
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"Parallelism must be at least 1, not " + parallelism);
+		}
+		this.builder = builder;
+		this.sources = inputs.toArray(new InputSource[inputs.size()]);
+		// an XMLFilter instance can not be shared by engines.
+		final int p = builder.getXMLFilter() != null ? 1 : parallelism;
+		this.parallelism = Math.max(1, Math.min(p, sources.length));
+		this.ordered = ordered;
+		this.listener = listener;
+		this.window = new Semaphore(this.parallelism * WINDOW);
+		if (listener == null) {
+			documents = new ArrayList<Document>(sources.length);
+			for (int i = 0; i < sources.length; i++) {
+				documents.add(null);
+			}
+		} else {
+			documents = null;
+		}
+	}
+
+	/**
+	 * Build one input.
+	 * 
+	 * @param worker The worker (and engine) to use, null when building on
+	 *        the calling thread.
+	 * @param index The input to build.
+	 * @return the outcome of the build.
+	 */
+	private Outcome buildOne(final Worker worker, final int index) {
+		final long start = System.nanoTime();
+		try {
+			if (worker.engine == null) {
+				// replace an engine discarded after an unexpected failure.
+				synchronized (builder) {
+					worker.engine = builder.buildEngine();
+				}
+			}
+			final Document doc = worker.engine.build(sources[index]);
+			return new Outcome(index, doc, null, null, System.nanoTime() - start);
+		} catch (JDOMException e) {
+			return new Outcome(index, null, e, null, System.nanoTime() - start);
+		} catch (Exception e) {
+			// IOException, or something unexpected, the engine may not be
+			// in a good state for the next input.
+			worker.engine = null;
+			return new Outcome(index, null, e, null, System.nanoTime() - start);
+		} catch (Error e) {
+			return new Outcome(index, null, null, e, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Deliver an outcome to the listener (or the collected Documents).
+	 * 
+	 * @param outcome The outcome to deliver.
+	 */
+	private void deliver(final Outcome outcome) {
+		if (outcome.fatal != null) {
+			throw outcome.fatal;
+		}
+		busy += outcome.nanos;
+		final InputSource source = sources[outcome.index];
+		if (outcome.error != null) {
+			errors.put(outcome.index, outcome.error);
+			if (listener != null) {
+				listener.buildFailed(outcome.index, source, outcome.error);
+			}
+		} else if (listener != null) {
+			listener.documentBuilt(outcome.index, source, outcome.document);
+		} else {
+			documents.set(outcome.index, outcome.document);
+		}
+	}
+
+	/**
+	 * Build the whole batch.
+	 * 
+	 * @return the result of the batch.
+	 * @throws JDOMException if an engine can not be created.
+	 * @throws InterruptedException if the calling thread is interrupted.
+	 */
+	BatchResult run() throws JDOMException, InterruptedException {
+		final long start = System.nanoTime();
+		final Worker[] workers = new Worker[parallelism];
+		for (int i = 0; i < parallelism; i++) {
+			workers[i] = new Worker(builder.buildEngine(), i);
+		}
+		if (parallelism == 1) {
+			// no point in a second thread.
+			for (int i = 0; i < sources.length; i++) {
+				deliver(buildOne(workers[0], i));
+			}
+		} else {
+			try {
+				for (Worker w : workers) {
+					w.start();
+				}
+				final HashMap<Integer, Outcome> pending = 
+						new HashMap<Integer, Outcome>();
+				int delivered = 0;
+				while (delivered < sources.length) {
+					Outcome outcome = results.take();
+					if (!ordered) {
+						deliver(outcome);
+						delivered++;
+						window.release();
+						continue;
+					}
+					pending.put(outcome.index, outcome);
+					while ((outcome = pending.remove(delivered)) != null) {
+						deliver(outcome);
+						delivered++;
+						window.release();
+					}
+				}
+			} finally {
+				abandoned = true;
+				// wake up any workers waiting for space in the window.
+				window.release(workers.length);
+				for (Worker w : workers) {
+					if (w.isAlive()) {
+						w.interrupt();
+					}
+				}
+			}
+		}
+		return new BatchResult(sources.length, parallelism, errors, documents,
+				System.nanoTime() - start, busy);
+	}
+
+}
@@ -0,0 +1,193 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.input;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+
+import org.jdom2.Document;
+
+/**
+ * The outcome of a batch build: the errors for the inputs that failed, and
+ * aggregate statistics. See {@link SAXBuilder#buildAll(java.util.Collection, int)}.
+ */
+public final class BatchResult {
+
+	private final int inputs;
+	private final int parallelism;
+	private final SortedMap<Integer, Exception> errors;
+	private final List<Document> documents;
+	private final long elapsed;
+	private final long busy;
+
+	/**
+	 * Package-private, only SAXBuilder creates results.
+	 * 
+	 * @param inputs The number of inputs.
+	 * @param parallelism The number of worker threads used.
+	 * @param errors The errors, by input index.
+	 * @param documents The documents in input order, or null.
+	 * @param elapsed The wall-clock time for the batch, in nanoseconds.
+	 * @param busy The total time spent building, in nanoseconds.
+	 */
+	BatchResult(final int inputs, final int parallelism,
+			final SortedMap<Integer, Exception> errors,
+			final List<Document> documents, final long elapsed, final long busy) {
+		this.inputs = inputs;
+		this.parallelism = parallelism;
+		this.errors = Collections.unmodifiableSortedMap(errors);
+		this.documents = documents == null ? null
+				: Collections.unmodifiableList(documents);
+		this.elapsed = elapsed;
+		this.busy = busy;
+	}
+
+	/**
+	 * The number of inputs in the batch.
+	 * 
+	 * @return the input count.
+	 */
+	public int getInputCount() {
+		return inputs;
+	}
+
+	/**
+	 * The number of inputs that were built successfully.
+	 * 
+	 * @return the count of built Documents.
+	 */
+	public int getBuiltCount() {
+		return inputs - errors.size();
+	}
+
+	/**
+	 * The number of inputs that failed.
+	 * 
+	 * @return the count of failed inputs.
+	 */
+	public int getFailedCount() {
+		return errors.size();
+	}
+
+	/**
+	 * The number of threads used to build the batch.
+	 * 
+	 * @return the parallelism of the batch.
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * The errors for the inputs that failed, keyed by the input position.
+	 * 
+	 * @return an unmodifiable map of failures (empty if all inputs were
+	 *         built).
+	 */
+	public SortedMap<Integer, Exception> getErrors() {
+		return errors;
+	}
+
+	/**
+	 * The built Documents, in input order, with null for inputs that
+	 * failed. Documents are only collected when no {@link BuildListener} is
+	 * used.
+	 * 
+	 * @return an unmodifiable list of Documents, or null if the Documents
+	 *         were delivered to a BuildListener.
+	 */
+	public List<Document> getDocuments() {
+		return documents;
+	}
+
+	/**
+	 * The wall-clock time the batch took.
+	 * 
+	 * @return the elapsed time in nanoseconds.
+	 */
+	public long getElapsedNanos() {
+		return elapsed;
+	}
+
+	/**
+	 * The total time the workers spent building, which is larger than the
+	 * elapsed time when the builds overlap.
+	 * 
+	 * @return the total build time in nanoseconds.
+	 */
+	public long getBuildNanos() {
+		return busy;
+	}
+
+	/**
+	 * The throughput of the batch.
+	 * 
+	 * @return the number of inputs processed per second.
+	 */
+	public double getInputsPerSecond() {
+		return elapsed == 0L ? 0.0 : inputs * 1000000000.0 / elapsed;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"BatchResult[inputs=%d, built=%d, failed=%d, parallelism=%d, " +
+				"elapsed=%.3fms, build=%.3fms, %.1f inputs/s]",
+				inputs, getBuiltCount(), getFailedCount(), parallelism, 
+				elapsed / 1000000.0, busy / 1000000.0, getInputsPerSecond());
+	}
+
+}
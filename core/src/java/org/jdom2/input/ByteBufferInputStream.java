@@ -0,0 +1,150 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.input;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An InputStream that reads the remaining bytes of a {@link ByteBuffer}.
+ * <p>
+ * The buffer is not copied: the stream reads from a duplicate of the
+ * buffer, so the position and limit of the original buffer are not
+ * changed. This makes it possible to parse data in a direct or
+ * memory-mapped buffer without first copying it to a byte[] array, and
+ * the parser's bulk reads are bulk copies from the buffer.
+ * <p>
+ * This class is not thread-safe.
+ * 
+ * @see SAXBuilder#build(ByteBuffer)
+ */
+public final class ByteBufferInputStream extends InputStream {
+
+	private final ByteBuffer buffer;
+	/** Like ByteArrayInputStream, the initial mark is the start */
+	private int markpos;
+
+	/**
+	 * Create an InputStream that reads the bytes between the position and
+	 * limit of a ByteBuffer.
+	 * 
+	 * @param buffer
+	 *        The ByteBuffer to read.
+	 */
+	public ByteBufferInputStream(final ByteBuffer buffer) {
+		if (buffer == null) {
+			throw new NullPointerException("Cannot read a null ByteBuffer");
+		}
+		this.buffer = buffer.duplicate();
+		this.markpos = this.buffer.position();
+	}
+
+	@Override
+	public int read() {
+		if (!buffer.hasRemaining()) {
+			return -1;
+		}
+		return buffer.get() & 0xFF;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) {
+		if (off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (len == 0) {
+			return 0;
+		}
+		final int rem = buffer.remaining();
+		if (rem == 0) {
+			return -1;
+		}
+		final int cnt = len < rem ? len : rem;
+		buffer.get(b, off, cnt);
+		return cnt;
+	}
+
+	@Override
+	public long skip(final long n) {
+		if (n <= 0) {
+			return 0;
+		}
+		final int rem = buffer.remaining();
+		final int cnt = n < rem ? (int)n : rem;
+		buffer.position(buffer.position() + cnt);
+		return cnt;
+	}
+
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	@Override
+	public void mark(final int readlimit) {
+		markpos = buffer.position();
+	}
+
+	@Override
+	public void reset() {
+		buffer.position(markpos);
+	}
+
+}
@@ -0,0 +1,1597 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.input;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.xml.sax.SAXParseException;
+
+import org.jdom2.AttributeType;
+import org.jdom2.DefaultJDOMFactory;
+import org.jdom2.Deferred;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.IllegalNameException;
+import org.jdom2.JDOMException;
+import org.jdom2.JDOMFactory;
+import org.jdom2.Namespace;
+import org.jdom2.Parent;
+import org.jdom2.Verifier;
+import org.jdom2.internal.ArrayCopy;
+
+/**
+ * Builds Documents in which each Element is only populated with its
+ * attributes and content when they are first used.
+ * <p>
+ * Documents that are large, but only sparsely queried, spend most of their
+ * build time and memory on nodes that are never looked at. A DeferredBuilder
+ * reads the document in two stages:
+ * <ol>
+ * <li>When the Document is built, the bytes are scanned once to check that
+ * the document is well-formed, and to record a compact structural index:
+ * for each Element (in document order) the offset of its end, and the number
+ * of Elements it contains. That is 8 bytes for each Element. Only the
+ * Document's own content (comments and processing instructions around the
+ * root Element) and the root Element itself are created.
+ * <li>Each Element is created with just its name, Namespace and Namespace
+ * declarations, and is {@link Deferred}. The first time the attributes or
+ * content of the Element are used (for example by
+ * {@link Element#getChildren()}, {@link Element#getAttributes()} or
+ * {@link Element#getText()}) its start tag and direct content are parsed
+ * from the bytes. The child Elements it contains are created as deferred
+ * Elements in turn, and their content is skipped using the index.
+ * </ol>
+ * The Element API is unchanged, the deferral is invisible to code that uses
+ * the Document. A query that looks at a few Elements only creates those
+ * Elements, their ancestors, and the siblings of each.
+ * <p>
+ * The bytes are read in place from the array, ByteBuffer or memory-mapped
+ * file, and are referenced by the Document until all of it has been
+ * expanded. They must not be changed while the Document is in use. Files up
+ * to 2GB can be mapped, larger files are built eagerly.
+ * <p>
+ * The scan checks the XML syntax: tags are nested and matched, markup and
+ * attribute values are terminated, references are to the predefined
+ * entities or are legal character references, and the characters are legal
+ * and correctly encoded. Errors are thrown as a {@link JDOMParseException}
+ * from the build method. Names, Namespace prefixes and the uniqueness of
+ * attributes are only checked when an Element is expanded, and errors are
+ * then thrown as an {@link IllegalNameException} from the method that
+ * caused the expansion.
+ * <p>
+ * Documents in UTF-8, US-ASCII and ISO-8859-1 that do not have a DOCTYPE
+ * declaration are deferred. Anything else (other encodings, XML 1.1, or a
+ * DOCTYPE, which may declare entities or default attributes) is built
+ * eagerly by a {@link SAXBuilder} with the same {@link JDOMFactory}.
+ * <p>
+ * The content is built the way {@link DirectSAXEngine} builds it: text is
+ * coalesced, CDATA sections are built as they appear, and attributes have
+ * the {@link AttributeType#CDATA} type. No line or column numbers are
+ * passed to the JDOMFactory.
+ * <p>
+ * Expanding an Element changes it, so a Document with deferred Elements
+ * can not be read from multiple threads. Freezing a Document expands all of
+ * it first (see {@link Document#freeze()}).
+ * <p>
+ * A DeferredBuilder can be used for any number of builds. It is not
+ * thread-safe, but the Documents it builds are independent of it.
+ *
+ * @see Deferred
+ */
+public class DeferredBuilder {
+
+	/** The encodings the scan can read in place. */
+	private static final int UTF8 = 0;
+	private static final int LATIN1 = 1;
+	private static final int ASCII = 2;
+
+	/** How bytes are decoded: text, attribute values, and markup. */
+	private static final int TEXT = 0;
+	private static final int ATTR = 1;
+	private static final int RAW = 2;
+
+	/** The ASCII characters that can be part of a name. */
+	private static final boolean[] NAMEBYTE = new boolean[0x80];
+	static {
+		for (int c = 0x21; c < 0x7F; c++) {
+			NAMEBYTE[c] = "<>/=?!'\"&;".indexOf(c) < 0;
+		}
+	}
+
+	/** The factory used to build the content */
+	private JDOMFactory factory;
+
+	/**
+	 * Create a DeferredBuilder that uses a {@link DefaultJDOMFactory}.
+	 */
+	public DeferredBuilder() {
+		this(null);
+	}
+
+	/**
+	 * Create a DeferredBuilder that uses the given JDOMFactory.
+	 *
+	 * @param factory
+	 *        the factory to build content with. A null value uses a
+	 *        {@link DefaultJDOMFactory}.
+	 */
+	public DeferredBuilder(final JDOMFactory factory) {
+		setJDOMFactory(factory);
+	}
+
+	/**
+	 * Get the JDOMFactory used to build content.
+	 *
+	 * @return the JDOMFactory.
+	 */
+	public JDOMFactory getJDOMFactory() {
+		return factory;
+	}
+
+	/**
+	 * Set the JDOMFactory used to build content.
+	 *
+	 * @param factory
+	 *        the factory to build content with. A null value uses a
+	 *        {@link DefaultJDOMFactory}.
+	 */
+	public void setJDOMFactory(final JDOMFactory factory) {
+		this.factory = factory == null ? new DefaultJDOMFactory() : factory;
+	}
+
+	/**
+	 * Build a deferred Document from a byte array. The array must not be
+	 * changed while the Document is in use.
+	 *
+	 * @param data
+	 *        the document bytes.
+	 * @return the Document.
+	 * @throws JDOMException
+	 *         if the document is not well-formed.
+	 * @throws IOException
+	 *         if an eagerly-built document can not be read.
+	 */
+	public Document build(final byte[] data) throws JDOMException, IOException {
+		return build(ByteBuffer.wrap(data), null);
+	}
+
+	/**
+	 * Build a deferred Document from the remaining bytes in a ByteBuffer
+	 * (from its position to its limit). The buffer's position is not
+	 * changed, and its content must not be changed while the Document is in
+	 * use.
+	 *
+	 * @param buffer
+	 *        the document bytes.
+	 * @return the Document.
+	 * @throws JDOMException
+	 *         if the document is not well-formed.
+	 * @throws IOException
+	 *         if an eagerly-built document can not be read.
+	 */
+	public Document build(final ByteBuffer buffer)
+			throws JDOMException, IOException {
+		return build(buffer, null);
+	}
+
+	/**
+	 * Build a deferred Document from a file, which is memory-mapped. Files
+	 * larger than 2GB can not be mapped, and are built eagerly. The file's
+	 * URL is the base URI of the Document. The file must not be changed
+	 * while the Document is in use.
+	 *
+	 * @param file
+	 *        the file to read.
+	 * @return the Document.
+	 * @throws JDOMException
+	 *         if the document is not well-formed.
+	 * @throws IOException
+	 *         if the file can not be read.
+	 */
+	public Document build(final File file) throws JDOMException, IOException {
+		if (file.length() > Integer.MAX_VALUE) {
+			return saxBuilder().build(file);
+		}
+		final String systemId = file.getAbsoluteFile().toURI().toURL().toExternalForm();
+		final FileInputStream fis = new FileInputStream(file);
+		final ByteBuffer buffer;
+		try {
+			final FileChannel fc = fis.getChannel();
+			buffer = fc.map(MapMode.READ_ONLY, 0, fc.size());
+		} finally {
+			// the mapping remains valid after the channel is closed.
+			fis.close();
+		}
+		return build(buffer, systemId);
+	}
+
+	/**
+	 * Index the bytes and build the Document, or build it eagerly if it can
+	 * not be deferred.
+	 *
+	 * @param buffer
+	 *        the document bytes.
+	 * @param systemId
+	 *        the system ID of the document, may be null.
+	 * @return the Document.
+	 * @throws JDOMException
+	 *         if the document is not well-formed.
+	 * @throws IOException
+	 *         if an eagerly-built document can not be read.
+	 */
+	private Document build(final ByteBuffer buffer, final String systemId)
+			throws JDOMException, IOException {
+		final Source source = new Source(buffer.slice(), factory, systemId);
+		if (!source.index()) {
+			return systemId == null ? saxBuilder().build(buffer)
+					: saxBuilder().build(buffer, systemId);
+		}
+		return source.document();
+	}
+
+	/**
+	 * Create the SAXBuilder used for documents that can not be deferred.
+	 *
+	 * @return a SAXBuilder with this builder's JDOMFactory.
+	 */
+	private SAXBuilder saxBuilder() {
+		final SAXBuilder sax = new SAXBuilder();
+		sax.setJDOMFactory(factory);
+		return sax;
+	}
+
+	/**
+	 * Test for XML whitespace.
+	 *
+	 * @param c
+	 *        the byte (or -1).
+	 * @return true if it is a space, tab, carriage return or line feed.
+	 */
+	private static boolean isWhitespace(final int c) {
+		return c == ' ' || c == '\n' || c == '\t' || c == '\r';
+	}
+
+	/**
+	 * Find a pseudo-attribute value in an XML declaration.
+	 *
+	 * @param decl
+	 *        The declaration content
+	 * @param name
+	 *        The pseudo-attribute to find
+	 * @return the value, or null if there is none.
+	 */
+	private static String pseudoAttribute(final String decl, final String name) {
+		final int len = decl.length();
+		int i = 0;
+		while (i < len) {
+			while (i < len && decl.charAt(i) <= ' ') {
+				i++;
+			}
+			final int nstart = i;
+			while (i < len && decl.charAt(i) > ' ' && decl.charAt(i) != '=') {
+				i++;
+			}
+			final String pname = decl.substring(nstart, i);
+			while (i < len && decl.charAt(i) <= ' ') {
+				i++;
+			}
+			if (i >= len || decl.charAt(i) != '=') {
+				return null;
+			}
+			i++;
+			while (i < len && decl.charAt(i) <= ' ') {
+				i++;
+			}
+			if (i >= len || (decl.charAt(i) != '"' && decl.charAt(i) != '\'')) {
+				return null;
+			}
+			final int end = decl.indexOf(decl.charAt(i), i + 1);
+			if (end < 0) {
+				return null;
+			}
+			if (pname.equals(name)) {
+				return decl.substring(i + 1, end);
+			}
+			i = end + 1;
+		}
+		return null;
+	}
+
+	/**
+	 * Check that an XML declaration has only the version, encoding and
+	 * standalone pseudo-attributes, each at most once and in that order,
+	 * separated by whitespace and with quoted values.
+	 *
+	 * @param decl
+	 *        The declaration content, after the "&lt;?xml".
+	 * @return true if the declaration is in that form.
+	 */
+	private static boolean inOrder(final String decl) {
+		final String[] names = {"version", "encoding", "standalone"};
+		final int len = decl.length();
+		int next = 0;
+		int i = 0;
+		for (;;) {
+			final int ws = i;
+			while (i < len && isWhitespace(decl.charAt(i))) {
+				i++;
+			}
+			if (i >= len) {
+				return true;
+			}
+			if (i == ws) {
+				return false;
+			}
+			final int nstart = i;
+			while (i < len && decl.charAt(i) != '=' && !isWhitespace(decl.charAt(i))) {
+				i++;
+			}
+			final String pname = decl.substring(nstart, i);
+			while (next < names.length && !names[next].equals(pname)) {
+				next++;
+			}
+			if (next++ >= names.length) {
+				return false;
+			}
+			while (i < len && isWhitespace(decl.charAt(i))) {
+				i++;
+			}
+			if (i >= len || decl.charAt(i) != '=') {
+				return false;
+			}
+			i++;
+			while (i < len && isWhitespace(decl.charAt(i))) {
+				i++;
+			}
+			if (i >= len || (decl.charAt(i) != '"' && decl.charAt(i) != '\'')) {
+				return false;
+			}
+			final int end = decl.indexOf(decl.charAt(i), i + 1);
+			if (end < 0) {
+				return false;
+			}
+			i = end + 1;
+		}
+	}
+
+	/**
+	 * The Namespaces declared on an Element, linked to those in scope of its
+	 * parent. Elements without declarations share their parent's Scope.
+	 */
+	private static final class Scope {
+		private final Namespace[] declared;
+		private final Scope parent;
+
+		private Scope(final Namespace[] declared, final Scope parent) {
+			this.declared = declared;
+			this.parent = parent;
+		}
+	}
+
+	/**
+	 * The Deferred attached to each Element: where its start tag is, its
+	 * position in the index, and the Namespaces in scope for its content.
+	 */
+	private static final class Node extends Deferred {
+		private final Source source;
+		private final int offset;
+		private final int index;
+		private final Scope scope;
+
+		private Node(final Source source, final int offset, final int index,
+				final Scope scope) {
+			this.source = source;
+			this.offset = offset;
+			this.index = index;
+			this.scope = scope;
+		}
+
+		@Override
+		protected void expand(final Element element) {
+			source.expand(element, this);
+		}
+	}
+
+	/**
+	 * The bytes and the structural index of one Document. This is shared by
+	 * all the deferred Elements of the Document.
+	 */
+	private static final class Source {
+		private final ByteBuffer buf;
+		private final int limit;
+		private final JDOMFactory factory;
+		private final String systemId;
+		private int mode = UTF8;
+		/** The offset after the end of each Element, in document order. */
+		private int[] ends = new int[256];
+		/** The number of Elements inside each Element. */
+		private int[] counts = new int[256];
+		private int size = 0;
+		/** Where the content of the Document starts (after any declaration). */
+		private int prolog = 0;
+		/** Where the root Element starts. */
+		private int rootStart = 0;
+		/** Text is accumulated here while it is decoded. */
+		private final StringBuilder text = new StringBuilder();
+		/** A cache of the names read from the bytes: qname, prefix, local. */
+		private final byte[][] namekeys = new byte[512][];
+		private final String[][] namevals = new String[512][];
+
+		private Source(final ByteBuffer buf, final JDOMFactory factory,
+				final String systemId) {
+			this.buf = buf;
+			this.limit = buf.limit();
+			this.factory = factory;
+			this.systemId = systemId;
+		}
+
+		/**
+		 * Get a byte.
+		 *
+		 * @param p
+		 *        the offset.
+		 * @return the unsigned byte, or -1 past the end of the document.
+		 */
+		private int byt(final int p) {
+			return p < limit ? buf.get(p) & 0xFF : -1;
+		}
+
+		/**
+		 * Test whether the bytes at an offset are the given ASCII text.
+		 *
+		 * @param p
+		 *        the offset.
+		 * @param s
+		 *        the text.
+		 * @return true if the text is at the offset.
+		 */
+		private boolean lookingAt(final int p, final String s) {
+			final int len = s.length();
+			if (p + len > limit) {
+				return false;
+			}
+			for (int i = 0; i < len; i++) {
+				if (buf.get(p + i) != s.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Find ASCII text.
+		 *
+		 * @param from
+		 *        where to start looking.
+		 * @param s
+		 *        the text.
+		 * @return the offset of the text, or -1 if it is not found.
+		 */
+		private int find(final int from, final String s) {
+			final int first = s.charAt(0);
+			for (int p = from; p < limit; p++) {
+				if (buf.get(p) == first && lookingAt(p, s)) {
+					return p;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Skip whitespace.
+		 *
+		 * @param from
+		 *        the offset to start at.
+		 * @return the offset of the first byte that is not whitespace.
+		 */
+		private int skipWhitespace(final int from) {
+			int p = from;
+			while (isWhitespace(byt(p))) {
+				p++;
+			}
+			return p;
+		}
+
+		/**
+		 * Skip a name that has already been checked by the scan.
+		 *
+		 * @param from
+		 *        the start of the name.
+		 * @return the offset after the name.
+		 */
+		private int skipName(final int from) {
+			int p = from;
+			for (;;) {
+				final int c = byt(p);
+				if (c < 0 || (c < 0x80 && !NAMEBYTE[c])) {
+					return p;
+				}
+				p++;
+			}
+		}
+
+		/**
+		 * Create a parse exception for a well-formedness error.
+		 *
+		 * @param p
+		 *        where the error is.
+		 * @param message
+		 *        the problem.
+		 * @return the exception to throw.
+		 */
+		private JDOMParseException error(final int p, final String message) {
+			int line = 1;
+			int linestart = 0;
+			final int end = p < limit ? p : limit;
+			for (int i = 0; i < end; i++) {
+				if (buf.get(i) == '\n') {
+					line++;
+					linestart = i + 1;
+				}
+			}
+			final SAXParseException spe = new SAXParseException(message,
+					null, systemId, line, end - linestart + 1);
+			if (systemId != null) {
+				return new JDOMParseException("Error on line " + line +
+						" of document " + systemId + ": " + message, spe);
+			}
+			return new JDOMParseException("Error on line " + line + ": " +
+					message, spe);
+		}
+
+		/**
+		 * Get the raw text between two offsets, for error messages.
+		 *
+		 * @param from
+		 *        the start.
+		 * @param to
+		 *        the end.
+		 * @return the bytes as ISO-8859-1 text.
+		 */
+		private String raw(final int from, final int to) {
+			final StringBuilder sb = new StringBuilder(to - from);
+			for (int i = from; i < to; i++) {
+				sb.append((char)byt(i));
+			}
+			return sb.toString();
+		}
+
+		/* ------------------------------------------------------------
+		 * The structural scan.
+		 * ------------------------------------------------------------ */
+
+		/**
+		 * Scan the whole document, checking the syntax and building the
+		 * index.
+		 *
+		 * @return false if the document can not be deferred.
+		 * @throws JDOMParseException
+		 *         if the document is not well-formed.
+		 */
+		private boolean index() throws JDOMParseException {
+			int p = 0;
+			if (byt(0) == 0xEF && byt(1) == 0xBB && byt(2) == 0xBF) {
+				p = 3;
+			} else if (limit >= 2 && (byt(0) == 0 || byt(1) == 0
+					|| byt(0) >= 0xFE)) {
+				// UTF-16, UTF-32, or something else that is not ASCII-based.
+				return false;
+			}
+			if (lookingAt(p, "<?xml") && isWhitespace(byt(p + 5))) {
+				p = declaration(p);
+				if (p < 0) {
+					return false;
+				}
+			}
+			prolog = p;
+			for (;;) {
+				p = skipWhitespace(p);
+				if (p >= limit) {
+					throw error(p, "Premature end of file.");
+				}
+				if (byt(p) != '<') {
+					throw error(p, "Content is not allowed in prolog.");
+				}
+				if (lookingAt(p, "<?")) {
+					p = scanPI(p);
+				} else if (lookingAt(p, "<!--")) {
+					p = scanComment(p);
+				} else if (lookingAt(p, "<!DOCTYPE")) {
+					return false;
+				} else if (lookingAt(p, "<!")) {
+					throw error(p, "The markup in the document preceding the root element must be well-formed.");
+				} else {
+					break;
+				}
+			}
+			rootStart = p;
+			p = scanElements(p);
+			for (;;) {
+				p = skipWhitespace(p);
+				if (p >= limit) {
+					return true;
+				}
+				if (byt(p) != '<') {
+					throw error(p, "Content is not allowed in trailing section.");
+				}
+				if (lookingAt(p, "<?")) {
+					p = scanPI(p);
+				} else if (lookingAt(p, "<!--")) {
+					p = scanComment(p);
+				} else {
+					throw error(p, "The markup in the document following the root element must be well-formed.");
+				}
+			}
+		}
+
+		/**
+		 * Read the XML declaration, and select the encoding.
+		 *
+		 * @param p
+		 *        the start of the declaration.
+		 * @return the offset after the declaration, or -1 if the document
+		 *         can not be deferred.
+		 * @throws JDOMParseException
+		 *         if the declaration is not terminated.
+		 */
+		private int declaration(final int p) throws JDOMParseException {
+			final int end = find(p + 5, "?>");
+			if (end < 0) {
+				throw error(limit, "XML document structures must start and end within the same entity.");
+			}
+			final String decl = raw(p + 5, end);
+			if (!inOrder(decl)) {
+				// let the SAX parser report what is wrong with it.
+				return -1;
+			}
+			final String version = pseudoAttribute(decl, "version");
+			if (version == null) {
+				throw error(p, "The version is required in the XML declaration.");
+			}
+			if (!"1.0".equals(version)) {
+				if ("1.1".equals(version)) {
+					return -1;
+				}
+				throw error(p, "XML version \"" + version + "\" is not supported, only XML 1.0 is supported.");
+			}
+			final String standalone = pseudoAttribute(decl, "standalone");
+			if (standalone != null && !"yes".equals(standalone) && !"no".equals(standalone)) {
+				throw error(p, "The standalone document declaration value must be \"yes\" or \"no\", not \"" + standalone + "\".");
+			}
+			final String enc = pseudoAttribute(decl, "encoding");
+			if (enc == null || "UTF-8".equalsIgnoreCase(enc)) {
+				mode = UTF8;
+			} else if ("ISO-8859-1".equalsIgnoreCase(enc)) {
+				mode = LATIN1;
+			} else if ("US-ASCII".equalsIgnoreCase(enc) || "ASCII".equalsIgnoreCase(enc)) {
+				mode = ASCII;
+			} else {
+				return -1;
+			}
+			return end + 2;
+		}
+
+		/**
+		 * Scan the root Element and everything in it, recording each
+		 * Element in the index.
+		 *
+		 * @param start
+		 *        the start of the root Element.
+		 * @return the offset after the root Element.
+		 * @throws JDOMParseException
+		 *         if the Elements are not well-formed.
+		 */
+		private int scanElements(final int start) throws JDOMParseException {
+			int[] open = new int[32];
+			int[] names = new int[32];
+			int depth = 0;
+			int p = start;
+			for (;;) {
+				if (byt(p + 1) == '/') {
+					depth--;
+					final int nstart = names[depth];
+					final int len = skipName(nstart) - nstart;
+					int q = p + 2;
+					for (int i = 0; i < len; i++) {
+						if (byt(q + i) != byt(nstart + i)) {
+							q = -1;
+							break;
+						}
+					}
+					if (q < 0 || skipName(q + len) != q + len) {
+						throw error(p, "The element type \"" +
+								raw(nstart, nstart + len) +
+								"\" must be terminated by the matching end-tag \"</" +
+								raw(nstart, nstart + len) + ">\".");
+					}
+					q = skipWhitespace(q + len);
+					if (byt(q) != '>') {
+						throw error(q, "The end-tag for element type \"" +
+								raw(nstart, nstart + len) +
+								"\" must end with a '>' delimiter.");
+					}
+					p = q + 1;
+					final int index = open[depth];
+					ends[index] = p;
+					counts[index] = size - index - 1;
+					if (depth == 0) {
+						return p;
+					}
+				} else {
+					if (size == ends.length) {
+						ends = ArrayCopy.copyOf(ends, size << 1);
+						counts = ArrayCopy.copyOf(counts, size << 1);
+					}
+					final int index = size++;
+					final int nend = scanName(p + 1);
+					if (nend == p + 1) {
+						throw error(p, "The markup in the document must be well-formed.");
+					}
+					final int tend = scanAttributes(p + 1, nend);
+					if (tend < 0) {
+						p = -tend;
+						ends[index] = p;
+						counts[index] = 0;
+						if (depth == 0) {
+							return p;
+						}
+					} else {
+						if (depth == open.length) {
+							open = ArrayCopy.copyOf(open, depth << 1);
+							names = ArrayCopy.copyOf(names, depth << 1);
+						}
+						open[depth] = index;
+						names[depth] = p + 1;
+						depth++;
+						p = tend;
+					}
+				}
+				p = scanContent(p);
+			}
+		}
+
+		/**
+		 * Scan the attributes of a start tag.
+		 *
+		 * @param nstart
+		 *        the start of the element name.
+		 * @param nend
+		 *        the end of the element name.
+		 * @return the offset after the tag, negated for an empty-element tag.
+		 * @throws JDOMParseException
+		 *         if the tag is not well-formed.
+		 */
+		private int scanAttributes(final int nstart, final int nend)
+				throws JDOMParseException {
+			int p = nend;
+			for (;;) {
+				final int q = skipWhitespace(p);
+				final int c = byt(q);
+				if (c == '>') {
+					return q + 1;
+				}
+				if (c < 0) {
+					throw error(q, "XML document structures must start and end within the same entity.");
+				}
+				final int aend = c == '/' || q == p ? q : scanName(q);
+				if (c == '/' && byt(q + 1) == '>') {
+					return -(q + 2);
+				}
+				if (aend == q) {
+					throw error(q, "Element type \"" + raw(nstart, nend) +
+							"\" must be followed by either attribute specifications, \">\" or \"/>\".");
+				}
+				p = skipWhitespace(aend);
+				if (byt(p) != '=') {
+					throw error(p, "Attribute name \"" + raw(q, aend) +
+							"\" associated with an element type \"" +
+							raw(nstart, nend) +
+							"\" must be followed by the ' = ' character.");
+				}
+				p = skipWhitespace(p + 1);
+				final int quote = byt(p);
+				if (quote != '"' && quote != '\'') {
+					throw error(p, "Open quote is expected for attribute \"" +
+							raw(q, aend) + "\" associated with an  element type  \"" +
+							raw(nstart, nend) + "\".");
+				}
+				p++;
+				for (;;) {
+					final int v = byt(p);
+					if (v == quote) {
+						p++;
+						break;
+					}
+					if (v == '<') {
+						throw error(p, "The value of attribute \"" +
+								raw(q, aend) + "\" associated with an element type \"" +
+								raw(nstart, nend) + "\" must not contain the '<' character.");
+					}
+					if (v == '&') {
+						p = scanReference(p);
+					} else {
+						p = scanChar(p, v, "attribute value");
+					}
+				}
+			}
+		}
+
+		/**
+		 * Scan the content between tags, up to the next start or end tag.
+		 *
+		 * @param from
+		 *        the offset to start at.
+		 * @return the offset of the next start or end tag.
+		 * @throws JDOMParseException
+		 *         if the content is not well-formed.
+		 */
+		private int scanContent(final int from) throws JDOMParseException {
+			int p = from;
+			for (;;) {
+				int c = byt(p);
+				while (c != '<') {
+					if (c > '>' && c < 0x80 && c != ']') {
+						// the common case.
+						p++;
+					} else if (c == '&') {
+						p = scanReference(p);
+					} else if (c == '>' && p - 2 >= from
+							&& byt(p - 1) == ']' && byt(p - 2) == ']') {
+						throw error(p, "The character sequence \"]]>\" must not appear in content unless used to mark the end of a CDATA section.");
+					} else {
+						p = scanChar(p, c, "element content of the document");
+					}
+					c = byt(p);
+				}
+				final int n = byt(p + 1);
+				if (n == '!') {
+					if (lookingAt(p, "<!--")) {
+						p = scanComment(p);
+					} else if (lookingAt(p, "<![CDATA[")) {
+						p = scanUntil(p + 9, "]]>", "CDATA section");
+					} else {
+						throw error(p, "The markup in the document must be well-formed.");
+					}
+				} else if (n == '?') {
+					p = scanPI(p);
+				} else {
+					return p;
+				}
+			}
+		}
+
+		/**
+		 * Check one character, which is not markup.
+		 *
+		 * @param p
+		 *        the offset of the character.
+		 * @param c
+		 *        the first byte of the character.
+		 * @param where
+		 *        where the character is, for error messages.
+		 * @return the offset after the character.
+		 * @throws JDOMParseException
+		 *         if the character is not legal, or not correctly encoded.
+		 */
+		private int scanChar(final int p, final int c, final String where)
+				throws JDOMParseException {
+			if (c < 0) {
+				throw error(p, "XML document structures must start and end within the same entity.");
+			}
+			if (c < 0x20) {
+				if (c == '\n' || c == '\t' || c == '\r') {
+					return p + 1;
+				}
+				throw error(p, "An invalid XML character (Unicode: 0x" +
+						Integer.toHexString(c) + ") was found in the " + where + ".");
+			}
+			if (c < 0x80 || mode == LATIN1) {
+				return p + 1;
+			}
+			if (mode == ASCII) {
+				throw error(p, "Invalid byte 1 of 1-byte UTF-8 sequence.");
+			}
+			final int n;
+			int min = 0x80;
+			int max = 0xBF;
+			if (c >= 0xC2 && c < 0xE0) {
+				n = 2;
+			} else if (c >= 0xE0 && c < 0xF0) {
+				n = 3;
+				if (c == 0xE0) {
+					// overlong.
+					min = 0xA0;
+				} else if (c == 0xED) {
+					// surrogates.
+					max = 0x9F;
+				} else if (c == 0xEF && byt(p + 1) == 0xBF
+						&& (byt(p + 2) == 0xBE || byt(p + 2) == 0xBF)) {
+					throw error(p, "An invalid XML character (Unicode: 0xff" +
+							Integer.toHexString(byt(p + 2) & 0x3F | 0xC0) +
+							") was found in the " + where + ".");
+				}
+			} else if (c >= 0xF0 && c < 0xF5) {
+				n = 4;
+				if (c == 0xF0) {
+					min = 0x90;
+				} else if (c == 0xF4) {
+					max = 0x8F;
+				}
+			} else {
+				throw error(p, "Invalid byte 1 of 1-byte UTF-8 sequence.");
+			}
+			for (int i = 1; i < n; i++) {
+				final int b = byt(p + i);
+				if (b < min || b > max) {
+					throw error(p, "Invalid byte " + (i + 1) + " of " + n +
+							"-byte UTF-8 sequence.");
+				}
+				min = 0x80;
+				max = 0xBF;
+			}
+			return p + n;
+		}
+
+		/**
+		 * Scan a name.
+		 *
+		 * @param from
+		 *        the start of the name.
+		 * @return the offset after the name (which is <code>from</code> if
+		 *         there is no name).
+		 * @throws JDOMParseException
+		 *         if the name is not correctly encoded.
+		 */
+		private int scanName(final int from) throws JDOMParseException {
+			int p = from;
+			for (;;) {
+				final int c = byt(p);
+				if (c < 0x80) {
+					if (c < 0 || !NAMEBYTE[c]) {
+						return p;
+					}
+					p++;
+				} else {
+					p = scanChar(p, c, "name");
+				}
+			}
+		}
+
+		/**
+		 * Scan characters until the given terminator.
+		 *
+		 * @param from
+		 *        the offset to start at.
+		 * @param end
+		 *        the terminator.
+		 * @param where
+		 *        what is being scanned, for error messages.
+		 * @return the offset after the terminator.
+		 * @throws JDOMParseException
+		 *         if the characters are not legal, or there is no terminator.
+		 */
+		private int scanUntil(final int from, final String end,
+				final String where) throws JDOMParseException {
+			final int first = end.charAt(0);
+			int p = from;
+			for (;;) {
+				final int c = byt(p);
+				if (c == first && lookingAt(p, end)) {
+					return p + end.length();
+				}
+				p = c > first && c < 0x80 ? p + 1 : scanChar(p, c, where);
+			}
+		}
+
+		/**
+		 * Scan a comment.
+		 *
+		 * @param p
+		 *        the start of the comment.
+		 * @return the offset after the comment.
+		 * @throws JDOMParseException
+		 *         if the comment is not well-formed.
+		 */
+		private int scanComment(final int p) throws JDOMParseException {
+			final int end = scanUntil(p + 4, "--", "comment");
+			if (byt(end) != '>') {
+				throw error(end, "The string \"--\" is not permitted within comments.");
+			}
+			return end + 1;
+		}
+
+		/**
+		 * Scan a processing instruction.
+		 *
+		 * @param p
+		 *        the start of the processing instruction.
+		 * @return the offset after the processing instruction.
+		 * @throws JDOMParseException
+		 *         if the processing instruction is not well-formed.
+		 */
+		private int scanPI(final int p) throws JDOMParseException {
+			final int tend = scanName(p + 2);
+			if (tend == p + 2) {
+				throw error(p, "The processing instruction must begin with the name of the target.");
+			}
+			if (tend == p + 5 && "xml".equalsIgnoreCase(raw(p + 2, tend))) {
+				throw error(p, "The processing instruction target matching \"[xX][mM][lL]\" is not allowed.");
+			}
+			if (!isWhitespace(byt(tend)) && !lookingAt(tend, "?>")) {
+				throw error(tend, "White space is required between the processing instruction target and data.");
+			}
+			return scanUntil(tend, "?>", "processing instruction");
+		}
+
+		/**
+		 * Scan an entity or character reference.
+		 *
+		 * @param p
+		 *        the offset of the '&amp;'.
+		 * @return the offset after the reference.
+		 * @throws JDOMParseException
+		 *         if the reference is not well-formed, or is to an
+		 *         undeclared entity.
+		 */
+		private int scanReference(final int p) throws JDOMParseException {
+			int q = p + 1;
+			if (byt(q) == '#') {
+				q++;
+				int radix = 10;
+				if (byt(q) == 'x') {
+					radix = 16;
+					q++;
+				}
+				final int dstart = q;
+				int value = 0;
+				for (;;) {
+					final int c = byt(q);
+					if (c == ';') {
+						break;
+					}
+					final int d = c < 0 ? -1 : Character.digit(c, radix);
+					if (d < 0) {
+						throw error(q, q == dstart
+								? "A " + (radix == 16 ? "hexadecimal" : "decimal") + " representation must immediately follow the \"&#" + (radix == 16 ? "x" : "") + "\" in a character reference."
+								: "The character reference must end with the ';' delimiter.");
+					}
+					value = value > 0x10FFFF ? value : value * radix + d;
+					q++;
+				}
+				if (q == dstart) {
+					throw error(q, "A " + (radix == 16 ? "hexadecimal" : "decimal") + " representation must immediately follow the \"&#" + (radix == 16 ? "x" : "") + "\" in a character reference.");
+				}
+				if (!Verifier.isXMLCharacter(value)) {
+					throw error(p, "Character reference \"" + raw(p, q) +
+							"\" is an invalid XML character.");
+				}
+				return q + 1;
+			}
+			final int nend = scanName(q);
+			if (nend == q) {
+				throw error(q, "The entity name must immediately follow the '&' in the entity reference.");
+			}
+			if (byt(nend) != ';') {
+				throw error(nend, "The reference to entity \"" + raw(q, nend) +
+						"\" must end with the ';' delimiter.");
+			}
+			final String name = raw(q, nend);
+			if (!"lt".equals(name) && !"gt".equals(name) && !"amp".equals(name)
+					&& !"quot".equals(name) && !"apos".equals(name)) {
+				throw error(q, "The entity \"" + name +
+						"\" was referenced, but not declared.");
+			}
+			return nend + 1;
+		}
+
+		/* ------------------------------------------------------------
+		 * Building the content.
+		 * ------------------------------------------------------------ */
+
+		/**
+		 * Build the Document with its root Element, which is deferred.
+		 *
+		 * @return the Document.
+		 */
+		private Document document() {
+			final Document doc = factory.document(null);
+			if (systemId != null) {
+				doc.setBaseURI(systemId);
+			}
+			content(doc, prolog, rootStart, 0, null);
+			element(doc, rootStart, 0, null);
+			content(doc, ends[0], limit, 0, null);
+			return doc;
+		}
+
+		/**
+		 * Populate the attributes and content of a deferred Element.
+		 *
+		 * @param element
+		 *        the Element to populate.
+		 * @param node
+		 *        the Element's place in the document.
+		 */
+		private void expand(final Element element, final Node node) {
+			int p = skipName(node.offset + 1);
+			for (;;) {
+				p = skipWhitespace(p);
+				final int c = byt(p);
+				if (c == '/') {
+					// empty-element tag.
+					return;
+				}
+				if (c == '>') {
+					break;
+				}
+				final int aend = skipName(p);
+				int v = skipWhitespace(skipWhitespace(aend) + 1);
+				final int quote = byt(v++);
+				int vend = v;
+				while (byt(vend) != quote) {
+					vend++;
+				}
+				attribute(element, p, aend, v, vend, node.scope);
+				p = vend + 1;
+			}
+			content(element, p + 1, limit, node.index + 1, node.scope);
+		}
+
+		/**
+		 * Add an attribute to an Element that is being expanded.
+		 *
+		 * @param element
+		 *        the Element.
+		 * @param nstart
+		 *        the start of the attribute name.
+		 * @param nend
+		 *        the end of the attribute name.
+		 * @param vstart
+		 *        the start of the value.
+		 * @param vend
+		 *        the end of the value.
+		 * @param scope
+		 *        the Namespaces in scope.
+		 */
+		private void attribute(final Element element, final int nstart,
+				final int nend, final int vstart, final int vend,
+				final Scope scope) {
+			final String[] qname = name(nstart, nend);
+			if (qname[0] == "xmlns" || qname[1] == "xmlns") {
+				// declared when the Element was created.
+				return;
+			}
+			Namespace ns = Namespace.NO_NAMESPACE;
+			if (qname[1].length() > 0) {
+				ns = resolve(scope, qname[1]);
+				if (ns == null) {
+					throw new IllegalNameException("The prefix \"" + qname[1] +
+							"\" for attribute \"" + qname[0] +
+							"\" associated with an element type \"" +
+							element.getQualifiedName() + "\" is not bound.");
+				}
+			}
+			if (element.getAttribute(qname[2], ns) != null) {
+				throw new IllegalNameException("Attribute \"" + qname[0] +
+						"\" was already specified for element \"" +
+						element.getQualifiedName() + "\".");
+			}
+			decode(vstart, vend, ATTR);
+			factory.setAttribute(element, factory.attribute(qname[2], take(),
+					AttributeType.CDATA, ns));
+		}
+
+		/**
+		 * Build the content between two offsets. The content ends at the
+		 * first end tag, or at <code>stop</code>.
+		 *
+		 * @param parent
+		 *        the Element or Document to add the content to.
+		 * @param from
+		 *        the start of the content.
+		 * @param stop
+		 *        the end of the content.
+		 * @param first
+		 *        the index of the first child Element.
+		 * @param scope
+		 *        the Namespaces in scope.
+		 */
+		private void content(final Parent parent, final int from,
+				final int stop, final int first, final Scope scope) {
+			final boolean document = parent instanceof Document;
+			int child = first;
+			int p = from;
+			for (;;) {
+				if (p >= stop) {
+					flush(parent);
+					return;
+				}
+				if (byt(p) != '<') {
+					int q = p;
+					while (q < stop && byt(q) != '<') {
+						q++;
+					}
+					if (!document) {
+						// the Document only has whitespace between markup.
+						decode(p, q, TEXT);
+					}
+					p = q;
+					continue;
+				}
+				final int c = byt(p + 1);
+				if (c == '/') {
+					flush(parent);
+					return;
+				}
+				flush(parent);
+				if (c == '!') {
+					if (byt(p + 2) == '-') {
+						final int end = find(p + 4, "-->");
+						if (end > p + 4) {
+							// empty comments are dropped, as SAXHandler does.
+							decode(p + 4, end, RAW);
+							factory.addContent(parent, factory.comment(take()));
+						}
+						p = end + 3;
+					} else {
+						final int end = find(p + 9, "]]>");
+						decode(p + 9, end, RAW);
+						factory.addContent(parent, factory.cdata(take()));
+						p = end + 3;
+					}
+				} else if (c == '?') {
+					final int tend = skipName(p + 2);
+					final int end = find(tend, "?>");
+					final String target = name(p + 2, tend)[0];
+					decode(skipWhitespace(tend), end, RAW);
+					factory.addContent(parent,
+							factory.processingInstruction(target, take()));
+					p = end + 2;
+				} else {
+					element(parent, p, child, scope);
+					p = ends[child];
+					child += counts[child] + 1;
+				}
+			}
+		}
+
+		/**
+		 * Create a deferred Element, with its name and Namespace
+		 * declarations, and add it to its parent.
+		 *
+		 * @param parent
+		 *        the parent to add to.
+		 * @param p
+		 *        the start of the Element.
+		 * @param index
+		 *        the Element's index.
+		 * @param pscope
+		 *        the Namespaces in scope of the parent.
+		 */
+		private void element(final Parent parent, final int p,
+				final int index, final Scope pscope) {
+			final int nend = skipName(p + 1);
+			final String[] qname = name(p + 1, nend);
+			Namespace[] declared = null;
+			int dcount = 0;
+			int q = nend;
+			for (;;) {
+				q = skipWhitespace(q);
+				final int c = byt(q);
+				if (c == '/' || c == '>') {
+					break;
+				}
+				final int aend = skipName(q);
+				int v = skipWhitespace(skipWhitespace(aend) + 1);
+				final int quote = byt(v++);
+				int vend = v;
+				while (byt(vend) != quote) {
+					vend++;
+				}
+				if (lookingAt(q, "xmlns") && (aend == q + 5 || byt(q + 5) == ':')) {
+					final String prefix = aend == q + 5 ? "" : name(q + 6, aend)[0];
+					decode(v, vend, ATTR);
+					final Namespace ns = declare(prefix, take());
+					if (ns != null) {
+						if (declared == null) {
+							declared = new Namespace[4];
+						} else if (dcount == declared.length) {
+							declared = ArrayCopy.copyOf(declared, dcount << 1);
+						}
+						declared[dcount++] = ns;
+					}
+				}
+				q = vend + 1;
+			}
+			final Scope scope = dcount == 0 ? pscope
+					: new Scope(ArrayCopy.copyOf(declared, dcount), pscope);
+			final Namespace ns = resolve(scope, qname[1]);
+			if (ns == null) {
+				throw new IllegalNameException("The prefix \"" + qname[1] +
+						"\" for element \"" + qname[0] + "\" is not bound.");
+			}
+			final Element element = factory.element(qname[2], ns);
+			for (int i = 0; i < dcount; i++) {
+				if (declared[i] != ns) {
+					factory.addNamespaceDeclaration(element, declared[i]);
+				}
+			}
+			factory.addContent(parent, element);
+			Deferred.defer(element, new Node(this, p, index, scope));
+		}
+
+		/**
+		 * Check a Namespace declaration.
+		 *
+		 * @param prefix
+		 *        the declared prefix.
+		 * @param uri
+		 *        the declared URI.
+		 * @return the Namespace, or null if it is the (implicit) xml
+		 *         Namespace.
+		 */
+		private static Namespace declare(final String prefix, final String uri) {
+			if ("xmlns".equals(prefix)) {
+				throw new IllegalNameException("The prefix \"xmlns\" cannot be bound to any namespace explicitly.");
+			}
+			if (prefix.length() > 0 && uri.length() == 0) {
+				throw new IllegalNameException("The namespace prefix \"" +
+						prefix + "\" can not be bound to an empty URI.");
+			}
+			final Namespace ns = Namespace.getNamespace(prefix, uri);
+			return "xml".equals(prefix) ? null : ns;
+		}
+
+		/**
+		 * Find the Namespace in scope for a prefix.
+		 *
+		 * @param scope
+		 *        the Namespaces in scope.
+		 * @param prefix
+		 *        The prefix
+		 * @return The Namespace, or null if the prefix is not bound.
+		 */
+		private static Namespace resolve(final Scope scope, final String prefix) {
+			for (Scope s = scope; s != null; s = s.parent) {
+				final Namespace[] declared = s.declared;
+				for (int i = 0; i < declared.length; i++) {
+					if (declared[i].getPrefix().equals(prefix)) {
+						return declared[i];
+					}
+				}
+			}
+			if (prefix.length() == 0) {
+				return Namespace.NO_NAMESPACE;
+			}
+			if ("xml".equals(prefix)) {
+				return Namespace.XML_NAMESPACE;
+			}
+			return null;
+		}
+
+		/**
+		 * Get a name, split in to its prefix and local part. Names are
+		 * cached, so the repeated names of a document are decoded once.
+		 *
+		 * @param from
+		 *        the start of the name.
+		 * @param to
+		 *        the end of the name.
+		 * @return the (interned) qualified name, prefix and local name.
+		 */
+		private String[] name(final int from, final int to) {
+			final int len = to - from;
+			int hash = len;
+			for (int i = from; i < to; i++) {
+				hash = hash * 31 + buf.get(i);
+			}
+			final int slot = (hash ^ (hash >>> 9)) & (namekeys.length - 1);
+			final byte[] key = namekeys[slot];
+			if (key != null && key.length == len) {
+				int i = 0;
+				while (i < len && key[i] == buf.get(from + i)) {
+					i++;
+				}
+				if (i == len) {
+					return namevals[slot];
+				}
+			}
+			final byte[] nkey = new byte[len];
+			for (int i = 0; i < len; i++) {
+				nkey[i] = buf.get(from + i);
+			}
+			final int mark = text.length();
+			decode(from, to, RAW);
+			final String qname = text.substring(mark).intern();
+			text.setLength(mark);
+			final int colon = qname.indexOf(':');
+			final String[] val = colon < 0
+					? new String[] {qname, "", qname}
+					: new String[] {qname, qname.substring(0, colon).intern(),
+							qname.substring(colon + 1).intern()};
+			namekeys[slot] = nkey;
+			namevals[slot] = val;
+			return val;
+		}
+
+		/**
+		 * Add any accumulated text to a parent.
+		 *
+		 * @param parent
+		 *        the parent to add to.
+		 */
+		private void flush(final Parent parent) {
+			if (text.length() > 0) {
+				factory.addContent(parent, factory.text(take()));
+			}
+		}
+
+		/**
+		 * Get the accumulated text, and reset it.
+		 *
+		 * @return the text.
+		 */
+		private String take() {
+			final String s = text.toString();
+			text.setLength(0);
+			return s;
+		}
+
+		/**
+		 * Decode the characters between two offsets, which have been checked
+		 * by the scan, and append them to the text.
+		 *
+		 * @param from
+		 *        the start.
+		 * @param to
+		 *        the end.
+		 * @param how
+		 *        TEXT to resolve references, ATTR to also normalize
+		 *        whitespace, RAW for neither.
+		 */
+		private void decode(final int from, final int to, final int how) {
+			int p = from;
+			while (p < to) {
+				int c = buf.get(p) & 0xFF;
+				if (c < 0x80) {
+					if (c == '&' && how != RAW) {
+						p = reference(p);
+						continue;
+					}
+					p++;
+					if (c == '\r') {
+						if (p < to && buf.get(p) == '\n') {
+							p++;
+						}
+						c = '\n';
+					}
+					if (how == ATTR && (c == '\n' || c == '\t')) {
+						c = ' ';
+					}
+					text.append((char)c);
+				} else if (mode != UTF8) {
+					text.append((char)c);
+					p++;
+				} else if (c < 0xE0) {
+					text.append((char)(((c & 0x1F) << 6)
+							| (buf.get(p + 1) & 0x3F)));
+					p += 2;
+				} else if (c < 0xF0) {
+					text.append((char)(((c & 0x0F) << 12)
+							| ((buf.get(p + 1) & 0x3F) << 6)
+							| (buf.get(p + 2) & 0x3F)));
+					p += 3;
+				} else {
+					text.appendCodePoint(((c & 0x07) << 18)
+							| ((buf.get(p + 1) & 0x3F) << 12)
+							| ((buf.get(p + 2) & 0x3F) << 6)
+							| (buf.get(p + 3) & 0x3F));
+					p += 4;
+				}
+			}
+		}
+
+		/**
+		 * Decode a reference, which has been checked by the scan, and append
+		 * the character to the text.
+		 *
+		 * @param p
+		 *        the offset of the '&amp;'.
+		 * @return the offset after the reference.
+		 */
+		private int reference(final int p) {
+			if (buf.get(p + 1) == '#') {
+				int q = p + 2;
+				int radix = 10;
+				if (buf.get(q) == 'x') {
+					radix = 16;
+					q++;
+				}
+				int value = 0;
+				int c = buf.get(q);
+				while (c != ';') {
+					value = value * radix + Character.digit(c, radix);
+					c = buf.get(++q);
+				}
+				text.appendCodePoint(value);
+				return q + 1;
+			}
+			switch (buf.get(p + 1)) {
+				case 'l':
+					text.append('<');
+					return p + 4;
+				case 'g':
+					text.append('>');
+					return p + 4;
+				case 'q':
+					text.append('"');
+					return p + 6;
+				default:
+					if (buf.get(p + 2) == 'm') {
+						text.append('&');
+						return p + 5;
+					}
+					text.append('\'');
+					return p + 6;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,2292 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.input;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+
+import org.xml.sax.DTDHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import org.jdom2.AttributeType;
+import org.jdom2.Content;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.IllegalNameException;
+import org.jdom2.JDOMException;
+import org.jdom2.JDOMFactory;
+import org.jdom2.Namespace;
+import org.jdom2.Verifier;
+import org.jdom2.input.sax.DefaultSAXHandlerFactory;
+import org.jdom2.input.sax.SAXEngine;
+import org.jdom2.input.sax.XMLReaders;
+import org.jdom2.internal.ArrayCopy;
+import org.jdom2.located.LocationTable;
+
+/**
+ * A {@link SAXEngine} that builds Documents with a built-in, non-validating
+ * XML parser instead of a SAX XMLReader.
+ * <p>
+ * When SAXBuilder parses a document the SAX parser creates Strings for the
+ * qName, localName and namespace URI of every element and attribute, and
+ * wraps the attributes in an {@link org.xml.sax.Attributes} instance. The
+ * {@link org.jdom2.input.sax.SAXHandler} then splits the names again before
+ * it calls the {@link JDOMFactory}. A DirectSAXEngine tokenizes the
+ * characters itself and creates the JDOM content directly through the
+ * JDOMFactory. Element and attribute names are kept in a symbol table, so
+ * each distinct name is validated, split in to its prefix and local name,
+ * and converted to a String only once.
+ * <p>
+ * The built-in parser handles the common case: well-formed, namespace-aware
+ * XML 1.0 in UTF-8, UTF-16, ISO-8859-1 or US-ASCII, without a DOCTYPE.
+ * Everything else is built by a regular SAX engine that is created from the
+ * same template SAXBuilder. Specifically, the SAX engine is used when:
+ * <ul>
+ * <li>the document has a DOCTYPE declaration (which may declare entities or
+ * default attributes, or require an external DTD to be read).
+ * <li>the XML declaration has version 1.1, or an encoding that the built-in
+ * parser does not support.
+ * <li>the input is identified by a relative system ID (the SAX parser
+ * resolves it to an absolute base URI).
+ * <li>the template SAXBuilder validates, has an XMLFilter, has SAX features
+ * or properties set, has a {@link SAXBuilder#setSpillThreshold(int) spill
+ * threshold} or a {@link SAXBuilder#setProjection projection}, or uses a
+ * custom SAXHandlerFactory or XMLReaderJDOMFactory. In this case all
+ * documents are built by the SAX engine.
+ * </ul>
+ * The switch is transparent: the content read before a DOCTYPE is found is
+ * replayed to the SAX engine. {@link #getDirectCount()} and
+ * {@link #getFallbackCount()} report how many documents each parser built.
+ * <p>
+ * The Documents built by the built-in parser are the same as those built by
+ * SAXBuilder: text and CDATA are coalesced the same way, the
+ * {@link SAXBuilder#getIgnoringBoundaryWhitespace()} setting is honoured,
+ * and attributes have the {@link AttributeType#CDATA} type. Line and column
+ * numbers passed to the JDOMFactory are those at the end of each start
+ * tag, as reported by SAX. Well-formedness errors are passed to the
+ * template's {@link ErrorHandler} as fatal errors, and are then thrown as
+ * {@link JDOMParseException}.
+ * <p>
+ * The one difference is that CDATA sections are built exactly as they
+ * appear in the document. The SAXHandler adds an empty Text before a CDATA
+ * section that does not follow text, and turns the text before an empty
+ * CDATA section in to CDATA.
+ * <p>
+ * Like other SAXEngine instances, a DirectSAXEngine can be used for any
+ * number of builds, but it is not thread-safe.
+ * 
+ * @see SAXBuilder#buildEngine()
+ */
+public final class DirectSAXEngine implements SAXEngine {
+
+	/** The initial size of the character buffer */
+	private static final int BUFSIZE = 8192;
+
+	/** Clear the symbol table between builds if it grows larger than this */
+	private static final int MAXSYMBOLS = 8192;
+
+	/** Prefixes and local names are interned, so can be compared with == */
+	private static final String XMLNS = "xmlns";
+
+	/** The xml prefix (interned) */
+	private static final String XML = "xml";
+
+	/** The pseudo-attributes of the XML declaration, in order */
+	private static final String[] DECLNAMES = {"version", "encoding", "standalone"};
+
+	/** ASCII characters that end a run of plain element content */
+	private static final boolean[] TEXTSTOP = new boolean[128];
+
+	/** ASCII characters that end a run of a plain attribute value */
+	private static final boolean[] ATTSTOP = new boolean[128];
+
+	/** ASCII characters that end a name */
+	private static final boolean[] NAMESTOP = new boolean[128];
+
+	static {
+		for (int i = 0; i < 0x20; i++) {
+			TEXTSTOP[i] = true;
+			ATTSTOP[i] = true;
+			NAMESTOP[i] = true;
+		}
+		TEXTSTOP['\t'] = false;
+		TEXTSTOP['\n'] = false;
+		TEXTSTOP['<'] = true;
+		TEXTSTOP['&'] = true;
+		TEXTSTOP['>'] = true;
+		ATTSTOP['<'] = true;
+		ATTSTOP['&'] = true;
+		ATTSTOP['"'] = true;
+		ATTSTOP['\''] = true;
+		final String namestop = " <>/=?;&\"'!";
+		for (int i = 0; i < namestop.length(); i++) {
+			NAMESTOP[namestop.charAt(i)] = true;
+		}
+	}
+
+	/**
+	 * A name from the symbol table. The prefix and local name are interned.
+	 */
+	private static final class QName {
+		private final String qname;
+		private final String prefix;
+		private final String local;
+		private final int hash;
+		private QName next;
+
+		private QName(final String qname, final String prefix,
+				final String local, final int hash) {
+			this.qname = qname;
+			this.prefix = prefix;
+			this.local = local;
+			this.hash = hash;
+		}
+
+		private boolean matches(final char[] chars, final int start, final int len) {
+			if (qname.length() != len) {
+				return false;
+			}
+			for (int i = 0; i < len; i++) {
+				if (qname.charAt(i) != chars[start + i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Replays the characters read before switching to the SAX engine, and
+	 * then continues with the rest of the input.
+	 */
+	private static final class ReplayReader extends Reader {
+		private final char[] head;
+		private final int length;
+		private final Reader tail;
+		private int index = 0;
+
+		private ReplayReader(final char[] head, final int length, final Reader tail) {
+			this.head = head;
+			this.length = length;
+			this.tail = tail;
+		}
+
+		@Override
+		public int read(final char[] cbuf, final int off, final int len)
+				throws IOException {
+			if (index < length) {
+				final int cnt = Math.min(len, length - index);
+				System.arraycopy(head, index, cbuf, off, cnt);
+				index += cnt;
+				return cnt;
+			}
+			return tail.read(cbuf, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			tail.close();
+		}
+	}
+
+	private final SAXEngine fallback;
+	private final JDOMFactory factory;
+	private final ErrorHandler errorHandler;
+	private final boolean ignoringBoundaryWhite;
+	private final boolean recordLocations;
+	private final boolean direct;
+
+	private long directs = 0L;
+	private long fallbacks = 0L;
+
+	/* The state of the current build, cleared by reset() */
+
+	private Reader reader = null;
+	private String encoding = null;
+	private InputStream replay = null;
+	private String systemId = null;
+	private String publicId = null;
+	private Document document = null;
+	private LocationTable locations = null;
+	private boolean eof = false;
+	private boolean rootSeen = false;
+
+	/** the characters read, with the next one at pos, and limit */
+	private char[] buf = new char[BUFSIZE];
+	private int pos = 0;
+	private int limit = 0;
+	/** the start of a token in buf that must survive a fill(), or -1 */
+	private int keep = -1;
+
+	/** push mode: characters are added by push(), fill() never reads */
+	private boolean pushing = false;
+	/** in push mode, the end of the characters pushed so far */
+	private int pushed = 0;
+	/** in push mode, whether the BOM and XML declaration are parsed */
+	private boolean started = false;
+
+	/** line counting: lines before lineScan, and where the line started */
+	private int line = 1;
+	private int lineScan = 0;
+	private int colBase = 0;
+	private boolean lastCR = false;
+
+	/** the characters read before the root element, for the SAX engine */
+	private char[] recorded = null;
+	private int reclen = 0;
+
+	/** pending text, comment, PI or CDATA content */
+	private char[] tbuf = new char[256];
+	private int tlen = 0;
+
+	/** attribute value content that is not a plain run */
+	private char[] abuf = new char[64];
+	private int alen = 0;
+
+	/** the open elements */
+	private Element[] elements = new Element[32];
+	private QName[] names = new QName[32];
+	private int[] nsmarks = new int[32];
+	private int depth = 0;
+
+	/** the namespace declarations in scope */
+	private String[] nsprefix = new String[16];
+	private Namespace[] nsspace = new Namespace[16];
+	private int nscount = 0;
+
+	/** the attributes of the current start tag */
+	private QName[] attnames = new QName[16];
+	private String[] attvalues = new String[16];
+	private Namespace[] attspaces = new Namespace[16];
+	private int attcount = 0;
+
+	/** the symbol table of names */
+	private QName[] symbols = new QName[512];
+	private int symbolcount = 0;
+
+	/**
+	 * Create a DirectSAXEngine that builds Documents with the JDOMFactory,
+	 * ErrorHandler and whitespace settings of a SAXBuilder, and that uses an
+	 * engine created by that SAXBuilder for documents the built-in parser
+	 * does not handle.
+	 * <p>
+	 * Changes to the template after the DirectSAXEngine is created have no
+	 * effect on it.
+	 * 
+	 * @param template
+	 *        The SAXBuilder to take the configuration from.
+	 * @throws JDOMException
+	 *         if the template can not create a SAX engine.
+	 */
+	public DirectSAXEngine(final SAXBuilder template) throws JDOMException {
+		if (template == null) {
+			throw new NullPointerException("Cannot use a null SAXBuilder template");
+		}
+		this.fallback = template.buildEngine();
+		this.factory = fallback.getJDOMFactory();
+		this.errorHandler = fallback.getErrorHandler();
+		this.ignoringBoundaryWhite = fallback.getIgnoringBoundaryWhitespace();
+		this.recordLocations = template.getRecordLocations();
+		this.direct = !fallback.isValidating()
+				&& template.getXMLFilter() == null
+				&& !template.hasParserSettings()
+				&& template.getSpillThreshold() == 0
+				&& template.getProjection() == null
+				&& !template.getSourceSpans()
+				&& template.getXMLReaderFactory() == XMLReaders.NONVALIDATING
+				&& template.getSAXHandlerFactory() instanceof DefaultSAXHandlerFactory;
+	}
+
+	/**
+	 * Indicates whether the built-in parser can be used at all. If the
+	 * template SAXBuilder has settings the built-in parser does not support
+	 * then all documents are built by the SAX engine.
+	 * 
+	 * @return true if documents can be built by the built-in parser.
+	 */
+	public boolean isDirect() {
+		return direct;
+	}
+
+	/**
+	 * Get the number of documents built by the built-in parser.
+	 * 
+	 * @return the number of documents the built-in parser built.
+	 */
+	public long getDirectCount() {
+		return directs;
+	}
+
+	/**
+	 * Get the number of documents that were passed to the SAX engine.
+	 * 
+	 * @return the number of documents the SAX engine was used for.
+	 */
+	public long getFallbackCount() {
+		return fallbacks;
+	}
+
+	@Override
+	public JDOMFactory getJDOMFactory() {
+		return factory;
+	}
+
+	@Override
+	public boolean isValidating() {
+		return fallback.isValidating();
+	}
+
+	@Override
+	public ErrorHandler getErrorHandler() {
+		return errorHandler;
+	}
+
+	@Override
+	public EntityResolver getEntityResolver() {
+		return fallback.getEntityResolver();
+	}
+
+	@Override
+	public DTDHandler getDTDHandler() {
+		return fallback.getDTDHandler();
+	}
+
+	@Override
+	public boolean getIgnoringElementContentWhitespace() {
+		return fallback.getIgnoringElementContentWhitespace();
+	}
+
+	@Override
+	public boolean getIgnoringBoundaryWhitespace() {
+		return ignoringBoundaryWhite;
+	}
+
+	@Override
+	public boolean getExpandEntities() {
+		return fallback.getExpandEntities();
+	}
+
+	@Override
+	public Document build(final InputSource in)
+			throws JDOMException, IOException {
+		final String sysid = in.getSystemId();
+		if (!direct || (sysid != null && !isAbsolute(sysid))
+				|| (in.getCharacterStream() == null && in.getByteStream() == null
+					&& sysid == null)) {
+			fallbacks++;
+			return fallback.build(in);
+		}
+		InputStream opened = null;
+		try {
+			Reader chars = in.getCharacterStream();
+			if (chars == null) {
+				InputStream bytes = in.getByteStream();
+				if (bytes == null) {
+					bytes = new URL(sysid).openStream();
+					opened = bytes;
+				}
+				chars = openReader(bytes, in.getEncoding());
+				if (chars == null) {
+					final InputSource src = new InputSource(replay);
+					src.setSystemId(sysid);
+					src.setPublicId(in.getPublicId());
+					fallbacks++;
+					return fallback.build(src);
+				}
+			} else {
+				encoding = "UTF-16";
+			}
+			reader = chars;
+			systemId = sysid;
+			publicId = in.getPublicId();
+			if (parse()) {
+				directs++;
+				return document;
+			}
+			final InputSource src = new InputSource(
+					new ReplayReader(recorded, reclen, reader));
+			src.setSystemId(sysid);
+			src.setPublicId(in.getPublicId());
+			reset();
+			fallbacks++;
+			return fallback.build(src);
+		} catch (final SAXException e) {
+			throw wrap(e);
+		} finally {
+			reset();
+			if (opened != null) {
+				opened.close();
+			}
+		}
+	}
+
+	@Override
+	public Document build(final InputStream in)
+			throws JDOMException, IOException {
+		return build(new InputSource(in));
+	}
+
+	@Override
+	public Document build(final File file)
+			throws JDOMException, IOException {
+		try {
+			return build(file.getAbsoluteFile().toURI().toURL());
+		} catch (final MalformedURLException e) {
+			throw new JDOMException("Error in building", e);
+		}
+	}
+
+	@Override
+	public Document build(final URL url)
+			throws JDOMException, IOException {
+		return build(new InputSource(url.toExternalForm()));
+	}
+
+	@Override
+	public Document build(final InputStream in, final String systemId)
+			throws JDOMException, IOException {
+		final InputSource src = new InputSource(in);
+		src.setSystemId(systemId);
+		return build(src);
+	}
+
+	@Override
+	public Document build(final Reader characterStream)
+			throws JDOMException, IOException {
+		return build(new InputSource(characterStream));
+	}
+
+	@Override
+	public Document build(final Reader characterStream, final String systemId)
+			throws JDOMException, IOException {
+		final InputSource src = new InputSource(characterStream);
+		src.setSystemId(systemId);
+		return build(src);
+	}
+
+	@Override
+	public Document build(final String systemId)
+			throws JDOMException, IOException {
+		return build(new InputSource(systemId));
+	}
+
+	/**
+	 * Clear the state of a build, and trim oversized buffers.
+	 */
+	private void reset() {
+		for (int i = 0; i < elements.length && elements[i] != null; i++) {
+			elements[i] = null;
+		}
+		for (int i = 0; i < attcount; i++) {
+			attvalues[i] = null;
+			attspaces[i] = null;
+		}
+		reader = null;
+		encoding = null;
+		replay = null;
+		systemId = null;
+		publicId = null;
+		document = null;
+		locations = null;
+		eof = false;
+		rootSeen = false;
+		pos = 0;
+		limit = 0;
+		keep = -1;
+		pushing = false;
+		pushed = 0;
+		started = false;
+		line = 1;
+		lineScan = 0;
+		colBase = 0;
+		lastCR = false;
+		recorded = null;
+		reclen = 0;
+		tlen = 0;
+		alen = 0;
+		depth = 0;
+		nscount = 0;
+		attcount = 0;
+		if (buf.length > BUFSIZE * 8) {
+			buf = new char[BUFSIZE];
+		}
+		if (tbuf.length > BUFSIZE * 8) {
+			tbuf = new char[256];
+		}
+		if (symbolcount > MAXSYMBOLS) {
+			symbols = new QName[512];
+			symbolcount = 0;
+		}
+	}
+
+	/**
+	 * Check whether a system ID is an absolute URI (which the SAX parser
+	 * would use unchanged as the base URI).
+	 * 
+	 * @param sysid
+	 *        The system ID to check
+	 * @return true if the system ID is absolute
+	 */
+	private static boolean isAbsolute(final String sysid) {
+		try {
+			return new URI(sysid).isAbsolute();
+		} catch (URISyntaxException e) {
+			return false;
+		}
+	}
+
+	/*
+	 * ========================================================================
+	 * Input and encoding detection
+	 * ========================================================================
+	 */
+
+	/**
+	 * Detect the encoding of a byte stream (from a byte order mark, the
+	 * first characters, the XML declaration, or the InputSource encoding),
+	 * and return a Reader that decodes it.
+	 * 
+	 * @param in
+	 *        The bytes to decode
+	 * @param declared
+	 *        The encoding set on the InputSource, may be null.
+	 * @return The decoding Reader, or null if the built-in parser does not
+	 *         support the encoding, in which case the {@link #replay} stream
+	 *         has all the bytes for the SAX engine.
+	 * @throws IOException
+	 *         if the input can not be read.
+	 */
+	private Reader openReader(final InputStream in, final String declared)
+			throws IOException {
+		// read enough to see the XML declaration, if there is one.
+		final byte[] head = new byte[256];
+		int len = 0;
+		while (len < head.length) {
+			final int got = in.read(head, len, head.length - len);
+			if (got < 0) {
+				break;
+			}
+			int i = len;
+			len += got;
+			while (i < len && head[i] != '>') {
+				i++;
+			}
+			if (i < len) {
+				break;
+			}
+		}
+		String charset = detectCharset(head, len);
+		final int skip = len > 2 && (head[0] & 0xFF) == 0xEF
+				&& (head[1] & 0xFF) == 0xBB && (head[2] & 0xFF) == 0xBF ? 3 : 0;
+		if (charset != null && declared != null) {
+			charset = supported(declared);
+		}
+		final InputStream all = new SequenceInputStream(
+				new ByteArrayInputStream(head, skip, len - skip), in);
+		if (charset == null) {
+			replay = skip == 0 ? all : new SequenceInputStream(
+					new ByteArrayInputStream(head, 0, skip), all);
+			return null;
+		}
+		encoding = charset;
+		return new InputStreamReader(all, Charset.forName(charset).newDecoder());
+	}
+
+	/**
+	 * Detect the encoding of the first bytes of a document from a byte order
+	 * mark, the first characters, or the XML declaration.
+	 * 
+	 * @param head
+	 *        The first bytes of the input, up to the end of the XML
+	 *        declaration if there is one.
+	 * @param len
+	 *        The number of bytes
+	 * @return the Java charset name, or null if the built-in parser does not
+	 *         support the encoding.
+	 */
+	static String detectCharset(final byte[] head, final int len) {
+		final int b0 = len > 0 ? head[0] & 0xFF : -1;
+		final int b1 = len > 1 ? head[1] & 0xFF : -1;
+		final int b2 = len > 2 ? head[2] & 0xFF : -1;
+		final int b3 = len > 3 ? head[3] & 0xFF : -1;
+		if (b0 == 0xEF && b1 == 0xBB && b2 == 0xBF) {
+			return "UTF-8";
+		}
+		if ((b0 == 0xFE && b1 == 0xFF) || (b0 == 0xFF && b1 == 0xFE && (b2 != 0 || b3 != 0))) {
+			return "UTF-16";
+		}
+		if (b0 == 0x3C && b1 == 0 && b2 == 0x3F && b3 == 0) {
+			return "UTF-16LE";
+		}
+		if (b0 == 0 && b1 == 0x3C && b2 == 0 && b3 == 0x3F) {
+			return "UTF-16BE";
+		}
+		if (b0 > 0 && b0 != 0x4C && b0 != 0xFF && b0 != 0xFE) {
+			return supported(declaredEncoding(head, len));
+		}
+		return null;
+	}
+
+	/**
+	 * Get the name of a supported charset from an encoding name.
+	 * 
+	 * @param enc
+	 *        The encoding, may be null (which is UTF-8)
+	 * @return the Java charset name, or null if it is not supported.
+	 */
+	static String supported(final String enc) {
+		if (enc == null || "UTF-8".equalsIgnoreCase(enc)) {
+			return "UTF-8";
+		}
+		if ("UTF-16".equalsIgnoreCase(enc)) {
+			return "UTF-16";
+		}
+		if ("ISO-8859-1".equalsIgnoreCase(enc)) {
+			return "ISO-8859-1";
+		}
+		if ("US-ASCII".equalsIgnoreCase(enc) || "ASCII".equalsIgnoreCase(enc)) {
+			return "US-ASCII";
+		}
+		return null;
+	}
+
+	/**
+	 * Get the encoding from an XML declaration in an ASCII-compatible
+	 * encoding.
+	 * 
+	 * @param head
+	 *        The first bytes of the input
+	 * @param len
+	 *        The number of bytes
+	 * @return The encoding, or null if there is no declaration or encoding.
+	 */
+	private static String declaredEncoding(final byte[] head, final int len) {
+		if (len < 6 || head[0] != '<' || head[1] != '?' || head[2] != 'x'
+				|| head[3] != 'm' || head[4] != 'l') {
+			return null;
+		}
+		final StringBuilder sb = new StringBuilder(len);
+		for (int i = 5; i < len && head[i] != '>'; i++) {
+			sb.append((char)(head[i] & 0xFF));
+		}
+		return pseudoAttribute(sb.toString(), "encoding");
+	}
+
+	/**
+	 * Find a pseudo-attribute value in an XML declaration.
+	 * 
+	 * @param decl
+	 *        The declaration content
+	 * @param name
+	 *        The pseudo-attribute to find
+	 * @return the value, or null if there is none.
+	 */
+	private static String pseudoAttribute(final String decl, final String name) {
+		final int len = decl.length();
+		int i = 0;
+		while (i < len) {
+			while (i < len && decl.charAt(i) <= ' ') {
+				i++;
+			}
+			final int nstart = i;
+			while (i < len && decl.charAt(i) > ' ' && decl.charAt(i) != '=') {
+				i++;
+			}
+			final String pname = decl.substring(nstart, i);
+			while (i < len && decl.charAt(i) <= ' ') {
+				i++;
+			}
+			if (i >= len || decl.charAt(i) != '=') {
+				return null;
+			}
+			i++;
+			while (i < len && decl.charAt(i) <= ' ') {
+				i++;
+			}
+			if (i >= len || (decl.charAt(i) != '"' && decl.charAt(i) != '\'')) {
+				return null;
+			}
+			final int end = decl.indexOf(decl.charAt(i), i + 1);
+			if (end < 0) {
+				return null;
+			}
+			if (pname.equals(name)) {
+				return decl.substring(i + 1, end);
+			}
+			i = end + 1;
+		}
+		return null;
+	}
+
+	/**
+	 * Read more characters in to the buffer, keeping everything from the
+	 * current position (or the {@link #keep} position if that is set).
+	 * 
+	 * @return false if there are no more characters.
+	 * @throws IOException
+	 *         if the input can not be read.
+	 * @throws SAXException
+	 *         if the input is not correctly encoded.
+	 */
+	private boolean fill() throws IOException, SAXException {
+		if (eof || pushing) {
+			return false;
+		}
+		final int from = keep >= 0 ? keep : pos;
+		if (from > 0) {
+			countLines(from);
+			System.arraycopy(buf, from, buf, 0, limit - from);
+			limit -= from;
+			pos -= from;
+			if (keep >= 0) {
+				keep -= from;
+			}
+			lineScan -= from;
+			colBase -= from;
+		} else if (limit == buf.length) {
+			buf = ArrayCopy.copyOf(buf, buf.length * 2);
+		}
+		int got = 0;
+		try {
+			while (got == 0) {
+				got = reader.read(buf, limit, buf.length - limit);
+			}
+		} catch (final CharacterCodingException e) {
+			throw fatal("Invalid byte sequence in " + encoding + " input: " +
+					e.getMessage());
+		}
+		if (got < 0) {
+			eof = true;
+			return false;
+		}
+		if (recorded != null) {
+			if (reclen + got > recorded.length) {
+				recorded = ArrayCopy.copyOf(recorded,
+						Math.max(recorded.length * 2, reclen + got));
+			}
+			System.arraycopy(buf, limit, recorded, reclen, got);
+			reclen += got;
+		}
+		limit += got;
+		return true;
+	}
+
+	/**
+	 * Make sure there are at least <code>cnt</code> characters available.
+	 * 
+	 * @param cnt
+	 *        The number of characters needed after pos.
+	 * @return false if the input ends first
+	 * @throws IOException
+	 *         if the input can not be read.
+	 * @throws SAXException
+	 *         if the input is not correctly encoded.
+	 */
+	private boolean ensure(final int cnt) throws IOException, SAXException {
+		while (limit - pos < cnt) {
+			if (!fill()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the next character, or -1 at the end of the input.
+	 * @throws IOException
+	 *         if the input can not be read.
+	 * @throws SAXException
+	 *         if the input is not correctly encoded.
+	 */
+	private int peek() throws IOException, SAXException {
+		if (pos >= limit && !fill()) {
+			return -1;
+		}
+		return buf[pos];
+	}
+
+	/**
+	 * @param s
+	 *        The markup to look for
+	 * @return true if the characters at pos are the markup.
+	 * @throws IOException
+	 *         if the input can not be read.
+	 * @throws SAXException
+	 *         if the input is not correctly encoded.
+	 */
+	private boolean lookingAt(final String s) throws IOException, SAXException {
+		final int len = s.length();
+		if (!ensure(len)) {
+			return false;
+		}
+		for (int i = 0; i < len; i++) {
+			if (buf[pos + i] != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Skip over whitespace.
+	 * 
+	 * @return true if there was whitespace to skip
+	 * @throws IOException
+	 *         if the input can not be read.
+	 * @throws SAXException
+	 *         if the input is not correctly encoded.
+	 */
+	private boolean skipWhitespace() throws IOException, SAXException {
+		boolean skipped = false;
+		while (pos < limit || fill()) {
+			final char c = buf[pos];
+			if (c != ' ' && c != '\n' && c != '\t' && c != '\r') {
+				return skipped;
+			}
+			pos++;
+			skipped = true;
+		}
+		return skipped;
+	}
+
+	/*
+	 * ========================================================================
+	 * Locations and errors
+	 * ========================================================================
+	 */
+
+	/**
+	 * Count the line ends in the buffer before <code>upto</code>.
+	 * 
+	 * @param upto
+	 *        The index to count up to.
+	 */
+	private void countLines(final int upto) {
+		for (int i = lineScan; i < upto; i++) {
+			final char c = buf[i];
+			if (c == '\n') {
+				if (!lastCR) {
+					line++;
+				}
+				colBase = i + 1;
+				lastCR = false;
+			} else if (c == '\r') {
+				line++;
+				colBase = i + 1;
+				lastCR = true;
+			} else {
+				lastCR = false;
+			}
+		}
+		if (upto > lineScan) {
+			lineScan = upto;
+		}
+	}
+
+	/**
+	 * @return The line number at the current position
+	 */
+	private int line() {
+		countLines(pos);
+		return line;
+	}
+
+	/**
+	 * @return The column number at the current position
+	 */
+	private int column() {
+		countLines(pos);
+		return pos - colBase + 1;
+	}
+
+	/**
+	 * Record the current location of some Content in the LocationTable of
+	 * the Document, if locations are recorded.
+	 * 
+	 * @param content
+	 *        The Content that was built.
+	 * @return the Content.
+	 */
+	private <C extends Content> C locate(final C content) {
+		if (recordLocations) {
+			if (locations == null) {
+				locations = LocationTable.install(document);
+			}
+			locations.add(content, line(), column());
+		}
+		return content;
+	}
+
+	/**
+	 * Report a fatal well-formedness error to the ErrorHandler, and return
+	 * it to be thrown.
+	 * 
+	 * @param message
+	 *        The problem
+	 * @return The exception to throw
+	 * @throws SAXException
+	 *         if the ErrorHandler throws it.
+	 */
+	private SAXParseException fatal(final String message) throws SAXException {
+		final SAXParseException e = new SAXParseException(message, publicId,
+				systemId, line(), column());
+		if (errorHandler != null) {
+			errorHandler.fatalError(e);
+		}
+		return e;
+	}
+
+	/**
+	 * Convert a SAX error to the exception SAXBuilder would throw.
+	 * 
+	 * @param e
+	 *        The error
+	 * @return The exception to throw, with the partially built Document.
+	 */
+	private JDOMException wrap(final SAXException e) {
+		if (e instanceof SAXParseException) {
+			final SAXParseException spe = (SAXParseException)e;
+			Document doc = document;
+			if (doc != null && !doc.hasRootElement()) {
+				doc = null;
+			}
+			final String esysid = spe.getSystemId();
+			if (esysid != null) {
+				return new JDOMParseException("Error on line " +
+						spe.getLineNumber() + " of document " + esysid + ": " +
+						spe.getMessage(), spe, doc);
+			}
+			return new JDOMParseException("Error on line " +
+					spe.getLineNumber() + ": " +
+							spe.getMessage(), spe, doc);
+		}
+		return new JDOMParseException("Error in building: " +
+				e.getMessage(), e, document);
+	}
+
+	/**
+	 * @return a description of the character at pos, for error messages.
+	 */
+	private String describe() {
+		if (pos >= limit) {
+			return "the end of the input";
+		}
+		return "\"" + buf[pos] + "\"";
+	}
+
+	/*
+	 * ========================================================================
+	 * Parsing
+	 * ========================================================================
+	 */
+
+	/**
+	 * Parse the whole document.
+	 * 
+	 * @return true if the Document was built, false if the SAX engine has to
+	 *         build it.
+	 * @throws IOException
+	 *         if the input can not be read.
+	 * @throws SAXException
+	 *         if the input is not well-formed.
+	 */
+	private boolean parse() throws IOException, SAXException {
+		begin();
+		recorded = new char[1024];
+		if (!fill()) {
+			throw fatal("Premature end of file.");
+		}
+		if (!prolog() || !tokens()) {
+			return false;
+		}
+		finish();
+		return true;
+	}
+
+	/**
+	 * Create the Document to build.
+	 */
+	private void begin() {
+		document = factory.document(null);
+		if (systemId != null) {
+			document.setBaseURI(systemId);
+		}
+	}
+
+	/**
+	 * Skip a byte order mark, and parse the XML declaration if there is one.
+	 * 
+	 * @return false if the SAX engine has to build the document.
+	 * @throws IOException
+	 *         if the input can not be read.
+	 * @throws SAXException
+	 *         if the declaration is not well-formed.
+	 */
+	private boolean prolog() throws IOException, SAXException {
+		if (limit > 0 && buf[0] == '\uFEFF') {
+			pos++;
+			colBase++;
+		}
+		if (lookingAt("<?xml") && ensure(6) && buf[pos + 5] <= ' ') {
+			return parseXMLDeclaration();
+		}
+		return true;
+	}
+
+	/**
+	 * Parse the markup and content up to the end of the input (or, in push
+	 * mode, up to the limit).
+	 * 
+	 * @return false if the SAX engine has to build the document.
+	 * @throws IOException
+	 *         if the input can not be read.
+	 * @throws SAXException
+	 *         if the input is not well-formed.
+	 */
+	private boolean tokens() throws IOException, SAXException {
+		while (pos < limit || fill()) {
+			final char c = buf[pos];
+			if (c == '<') {
+				if (!ensure(2)) {
+					throw fatal("XML document structures must start and end within the same entity.");
+				}
+				final char n = buf[pos + 1];
+				if (n == '/') {
+					if (depth == 0) {
+						throw fatal("The markup in the document following the root element must be well-formed.");
+					}
+					parseEndTag();
+				} else if (n == '?') {
+					parsePI();
+				} else if (n == '!') {
+					if (lookingAt("<!--")) {
+						parseComment();
+					} else if (depth > 0 && lookingAt("<![CDATA[")) {
+						parseCDATA();
+					} else if (!rootSeen && lookingAt("<!DOCTYPE")) {
+						return false;
+					} else {
+						throw fatal("The markup in the document " +
+								(rootSeen ? "following" : "preceding") +
+								" the root element must be well-formed.");
+					}
+				} else {
+					if (rootSeen && depth == 0) {
+						throw fatal("The markup in the document following the root element must be well-formed.");
+					}
+					parseStartTag();
+				}
+			} else if (depth > 0) {
+				parseText();
+			} else if (c == ' ' || c == '\n' || c == '\t' || c == '\r') {
+				pos++;
+			} else {
+				throw fatal(rootSeen
+						? "Content is not allowed in trailing section."
+						: "Content is not allowed in prolog.");
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Check the document is complete at the end of the input.
+	 * 
+	 * @throws SAXException
+	 *         if it is not.
+	 */
+	private void finish() throws SAXException {
+		if (depth > 0) {
+			throw fatal("XML document structures must start and end within the same entity.");
+		}
+		if (!rootSeen) {
+			throw fatal("Premature end of file.");
+		}
+	}
+
+	/**
+	 * Parse the XML declaration.
+	 * 
+	 * @return false if the SAX engine has to build the document.
+	 * @throws IOException
+	 *         if the input can not be read.
+	 * @throws SAXException
+	 *         if the input is not well-formed.
+	 */
+	private boolean parseXMLDeclaration() throws IOException, SAXException {
+		pos += 5;
+		final String decl = readUntil("?>", "XML declaration");
+		// version, then the optional encoding and standalone, in that order.
+		final String[] values = new String[DECLNAMES.length];
+		final int len = decl.length();
+		int next = 0;
+		int i = 0;
+		for (;;) {
+			final int ws = i;
+			while (i < len && Verifier.isXMLWhitespace(decl.charAt(i))) {
+				i++;
+			}
+			if (i >= len) {
+				break;
+			}
+			final int nstart = i;
+			while (i < len && decl.charAt(i) != '='
+					&& !Verifier.isXMLWhitespace(decl.charAt(i))) {
+				i++;
+			}
+			final String pname = decl.substring(nstart, i);
+			int which = next;
+			while (which < DECLNAMES.length && !DECLNAMES[which].equals(pname)) {
+				which++;
+			}
+			if (values[0] == null && which != 0) {
+				throw fatal("The version is required in the XML declaration.");
+			}
+			if (which == DECLNAMES.length) {
+				throw fatal("The XML declaration may only have version, encoding " +
+						"and standalone, in that order, not \"" + pname + "\".");
+			}
+			if (ws == nstart) {
+				throw fatal("White space is required before the " + pname +
+						" pseudo attribute in the XML declaration.");
+			}
+			while (i < len && Verifier.isXMLWhitespace(decl.charAt(i))) {
+				i++;
+			}
+			if (i >= len || decl.charAt(i) != '=') {
+				throw fatal("The '=' character must follow \"" + pname +
+						"\" in the XML declaration.");
+			}
+			i++;
+			while (i < len && Verifier.isXMLWhitespace(decl.charAt(i))) {
+				i++;
+			}
+			final int end = i >= len ? -1 : decl.indexOf(decl.charAt(i), i + 1);
+			if (end < 0 || (decl.charAt(i) != '"' && decl.charAt(i) != '\'')) {
+				throw fatal("The value following \"" + pname +
+						"\" in the XML declaration must be a quoted string.");
+			}
+			values[which] = decl.substring(i + 1, end);
+			next = which + 1;
+			i = end + 1;
+		}
+		final String version = values[0];
+		if (version == null) {
+			throw fatal("The version is required in the XML declaration.");
+		}
+		if (!"1.0".equals(version)) {
+			if ("1.1".equals(version)) {
+				return false;
+			}
+			throw fatal("XML version \"" + version + "\" is not supported, only XML 1.0 is supported.");
+		}
+		final String standalone = values[2];
+		if (standalone != null && !"yes".equals(standalone) && !"no".equals(standalone)) {
+			throw fatal("The standalone document declaration value must be \"yes\" or \"no\", not \"" + standalone + "\".");
+		}
+		return true;
+	}
+
+	/**
+	 * Parse a start tag, and the element's attributes, and add the element
+	 * to the document.
+	 * 
+	 * @throws IOException
+	 *         if the input can not be read.
+	 * @throws SAXException
+	 *         if the input is not well-formed.
+	 */
+	private void parseStartTag() throws IOException, SAXException {
+		pos++;
+		final QName qname = parseName();
+		boolean empty = false;
+		attcount = 0;
+		for (;;) {
+			final boolean ws = skipWhitespace();
+			final int c = peek();
+			if (c == '>') {
+				pos++;
+				break;
+			}
+			if (c == '/') {
+				pos++;
+				if (peek() != '>') {
+					throw fatal("Element type \"" + qname.qname + "\" must be followed by either attribute specifications, \">\" or \"/>\".");
+				}
+				pos++;
+				empty = true;
+				break;
+			}
+			if (c < 0) {
+				throw fatal("XML document structures must start and end within the same entity.");
+			}
+			if (!ws) {
+				throw fatal("Element type \"" + qname.qname + "\" must be followed by either attribute specifications, \">\" or \"/>\".");
+			}
+			final QName aname = parseName();
+			skipWhitespace();
+			if (peek() != '=') {
+				throw fatal("Attribute name \"" + aname.qname + "\" associated with an element type \"" + qname.qname + "\" must be followed by the ' = ' character.");
+			}
+			pos++;
+			skipWhitespace();
+			final String value = parseAttributeValue(aname, qname);
+			for (int i = 0; i < attcount; i++) {
+				if (attnames[i] == aname) {
+					throw fatal("Attribute \"" + aname.qname + "\" was already specified for element \"" + qname.qname + "\".");
+				}
+			}
+			if (attcount == attnames.length) {
+				attnames = ArrayCopy.copyOf(attnames, attcount * 2);
+				attvalues = ArrayCopy.copyOf(attvalues, attcount * 2);
+				attspaces = ArrayCopy.copyOf(attspaces, attcount * 2);
+			}
+			attnames[attcount] = aname;
+			attvalues[attcount++] = value;
+		}
+		startElement(qname, empty);
+	}
+
+	/**
+	 * Create the element for a start tag and add it to the document.
+	 * 
+	 * @param qname
+	 *        The element name
+	 * @param empty
+	 *        true if this is an empty-element tag.
+	 * @throws SAXException
+	 *         if the namespaces are not well-formed.
+	 */
+	private void startElement(final QName qname, final boolean empty)
+			throws SAXException {
+		final int nsstart = nscount;
+		boolean prefixed = false;
+		for (int i = 0; i < attcount; i++) {
+			final QName a = attnames[i];
+			if (a.prefix == XMLNS) {
+				declare(a.local, attvalues[i]);
+				attnames[i] = null;
+			} else if (a.qname == XMLNS) {
+				declare("", attvalues[i]);
+				attnames[i] = null;
+			} else if (a.prefix.length() > 0) {
+				prefixed = true;
+			}
+		}
+		final Namespace ns = resolve(qname.prefix);
+		if (ns == null) {
+			throw fatal("The prefix \"" + qname.prefix + "\" for element \"" + qname.qname + "\" is not bound.");
+		}
+		final Element element = locate(factory.element(line(), column(), qname.local, ns));
+		for (int i = nsstart; i < nscount; i++) {
+			if (nsspace[i] != ns) {
+				element.addNamespaceDeclaration(nsspace[i]);
+			}
+		}
+		flushText();
+		if (depth == 0) {
+			factory.setRoot(document, element);
+			rootSeen = true;
+			recorded = null;
+		} else {
+			factory.addContent(elements[depth - 1], element);
+		}
+		for (int i = 0; i < attcount; i++) {
+			final QName a = attnames[i];
+			if (a == null) {
+				continue;
+			}
+			Namespace ans = Namespace.NO_NAMESPACE;
+			if (a.prefix.length() > 0) {
+				ans = resolve(a.prefix);
+				if (ans == null) {
+					throw fatal("The prefix \"" + a.prefix + "\" for attribute \"" + a.qname + "\" associated with an element type \"" + qname.qname + "\" is not bound.");
+				}
+				if (prefixed) {
+					for (int j = 0; j < i; j++) {
+						if (attnames[j] != null && attnames[j].local == a.local
+								&& attspaces[j].getURI().equals(ans.getURI())) {
+							throw fatal("Attribute \"" + a.local + "\" bound to namespace \"" + ans.getURI() + "\" was already specified for element \"" + qname.qname + "\".");
+						}
+					}
+				}
+			}
+			attspaces[i] = ans;
+			factory.setAttribute(element, factory.attribute(
+					a.local, attvalues[i], AttributeType.CDATA, ans));
+		}
+		if (empty) {
+			nscount = nsstart;
+			return;
+		}
+		if (depth == elements.length) {
+			elements = ArrayCopy.copyOf(elements, depth * 2);
+			names = ArrayCopy.copyOf(names, depth * 2);
+			nsmarks = ArrayCopy.copyOf(nsmarks, depth * 2);
+		}
+		elements[depth] = element;
+		names[depth] = qname;
+		nsmarks[depth] = nsstart;
+		depth++;
+	}
+
+	/**
+	 * Declare a namespace prefix for the current start tag.
+	 * 
+	 * @param prefix
+	 *        The (interned) prefix.
+	 * @param uri
+	 *        The namespace URI.
+	 * @throws SAXException
+	 *         if the declaration is not allowed.
+	 */
+	private void declare(final String prefix, final String uri)
+			throws SAXException {
+		if (prefix == XMLNS) {
+			throw fatal("The prefix \"xmlns\" cannot be bound to any namespace explicitly.");
+		}
+		if (prefix.length() > 0 && uri.length() == 0) {
+			throw fatal("The namespace prefix \"" + prefix + "\" can not be bound to an empty URI.");
+		}
+		final Namespace ns;
+		try {
+			ns = Namespace.getNamespace(prefix, uri);
+		} catch (IllegalNameException e) {
+			throw fatal(e.getMessage());
+		}
+		if (prefix == XML) {
+			// implicitly declared, and never reported.
+			return;
+		}
+		if (nscount == nsprefix.length) {
+			nsprefix = ArrayCopy.copyOf(nsprefix, nscount * 2);
+			nsspace = ArrayCopy.copyOf(nsspace, nscount * 2);
+		}
+		nsprefix[nscount] = prefix;
+		nsspace[nscount++] = ns;
+	}
+
+	/**
+	 * Find the Namespace in scope for a prefix.
+	 * 
+	 * @param prefix
+	 *        The (interned) prefix
+	 * @return The Namespace, or null if the prefix is not bound.
+	 */
+	private Namespace resolve(final String prefix) {
+		for (int i = nscount - 1; i >= 0; i--) {
+			if (nsprefix[i] == prefix) {
+				return nsspace[i];
+			}
+		}
+		if (prefix.length() == 0) {
+			return Namespace.NO_NAMESPACE;
+		}
+		if (prefix == XML) {
+			return Namespace.XML_NAMESPACE;
+		}
+		return null;
+	}
+
+	/**
+	 * Parse an end tag, and close the current element.
+	 * 
+	 * @throws IOException
+	 *         if the input can not be read.
+	 * @throws SAXException
+	 *         if the input is not well-formed.
+	 */
+	private void parseEndTag() throws IOException, SAXException {
+		pos += 2;
+		final QName qname = parseName();
+		skipWhitespace();
+		if (peek() != '>') {
+			throw fatal("The end-tag for element type \"" + qname.qname + "\" must end with a '>' delimiter.");
+		}
+		pos++;
+		final QName open = names[depth - 1];
+		if (qname != open) {
+			throw fatal("The element type \"" + open.qname + "\" must be terminated by the matching end-tag \"</" + open.qname + ">\".");
+		}
+		flushText();
+		depth--;
+		nscount = nsmarks[depth];
+		elements[depth] = null;
+	}
+
+	/**
+	 * Parse a name, and look it up in the symbol table.
+	 * 
+	 * @return The name.
+	 * @throws IOException
+	 *         if the input can not be read.
+	 * @throws SAXException
+	 *         if the name is not a legal XML name.
+	 */
+	private QName parseName() throws IOException, SAXException {
+		keep = pos;
+		int hash = 0;
+		while (pos < limit || fill()) {
+			final char c = buf[pos];
+			if (c < 128 && NAMESTOP[c]) {
+				break;
+			}
+			hash = 31 * hash + c;
+			pos++;
+		}
+		final int start = keep;
+		keep = -1;
+		if (pos == start) {
+			throw fatal("A name was expected, but found " + describe() + ".");
+		}
+		return symbol(start, pos - start, hash);
+	}
+
+	/**
+	 * Look up (or add) a name in the symbol table.
+	 * 
+	 * @param start
+	 *        The start of the name in the buffer
+	 * @param len
+	 *        The length of the name
+	 * @param hash
+	 *        The hash of the name characters.
+	 * @return The QName
+	 * @throws SAXException
+	 *         if the name is not a legal XML name.
+	 */
+	private QName symbol(final int start, final int len, final int hash)
+			throws SAXException {
+		final int idx = hash & (symbols.length - 1);
+		for (QName q = symbols[idx]; q != null; q = q.next) {
+			if (q.hash == hash && q.matches(buf, start, len)) {
+				return q;
+			}
+		}
+		final String name = new String(buf, start, len);
+		String reason = Verifier.checkXMLName(name);
+		final int colon = name.indexOf(':');
+		if (reason == null && colon >= 0) {
+			if (colon == 0 || name.indexOf(':', colon + 1) >= 0) {
+				reason = "it is not a legal namespace-qualified name";
+			} else {
+				reason = Verifier.checkXMLName(name.substring(colon + 1));
+			}
+		}
+		if (reason != null) {
+			throw fatal("The name \"" + name + "\" is not legal: " + reason);
+		}
+		final QName q;
+		if (colon > 0) {
+			q = new QName(name, name.substring(0, colon).intern(),
+					name.substring(colon + 1).intern(), hash);
+		} else {
+			final String local = name.intern();
+			q = new QName(local, "", local, hash);
+		}
+		if (++symbolcount > symbols.length - (symbols.length >>> 2)) {
+			final QName[] grown = new QName[symbols.length * 2];
+			for (QName s : symbols) {
+				while (s != null) {
+					final QName nxt = s.next;
+					final int i = s.hash & (grown.length - 1);
+					s.next = grown[i];
+					grown[i] = s;
+					s = nxt;
+				}
+			}
+			symbols = grown;
+		}
+		final int i = hash & (symbols.length - 1);
+		q.next = symbols[i];
+		symbols[i] = q;
+		return q;
+	}
+
+	/**
+	 * Parse a quoted attribute value, with references replaced and
+	 * whitespace normalized.
+	 * 
+	 * @param aname
+	 *        The attribute name (for errors)
+	 * @param qname
+	 *        The element name (for errors)
+	 * @return The attribute value.
+	 * @throws IOException
+	 *         if the input can not be read.
+	 * @throws SAXException
+	 *         if the value is not well-formed.
+	 */
+	private String parseAttributeValue(final QName aname, final QName qname)
+			throws IOException, SAXException {
+		final int quote = peek();
+		if (quote != '"' && quote != '\'') {
+			throw fatal("Open quote is expected for attribute \"" + aname.qname + "\" associated with an element type \"" + qname.qname + "\".");
+		}
+		pos++;
+		alen = 0;
+		keep = pos;
+		for (;;) {
+			if (pos >= limit) {
+				if (!fill()) {
+					throw fatal("XML document structures must start and end within the same entity.");
+				}
+				continue;
+			}
+			final char c = buf[pos];
+			if (c < 128 ? !ATTSTOP[c] : c < 0xD800) {
+				pos++;
+				continue;
+			}
+			if (c == quote) {
+				final String value;
+				if (alen == 0) {
+					value = new String(buf, keep, pos - keep);
+				} else {
+					appendAttribute(keep, pos);
+					value = new String(abuf, 0, alen);
+				}
+				keep = -1;
+				pos++;
+				return value;
+			}
+			appendAttribute(keep, pos);
+			keep = -1;
+			if (c == '<') {
+				throw fatal("The value of attribute \"" + aname.qname + "\" associated with an element type \"" + qname.qname + "\" must not contain the '<' character.");
+			}
+			final int cp;
+			if (c == '&') {
+				cp = parseReference();
+			} else if (c == '"' || c == '\'') {
+				pos++;
+				cp = c;
+			} else {
+				final int raw = readSpecial(c, "attribute value");
+				cp = raw == '\n' || raw == '\t' ? ' ' : raw;
+			}
+			if (alen + 2 > abuf.length) {
+				abuf = ArrayCopy.copyOf(abuf, abuf.length * 2);
+			}
+			alen += Character.toChars(cp, abuf, alen);
+			keep = pos;
+		}
+	}
+
+	/**
+	 * @param from
+	 *        The start of the run in the buffer
+	 * @param to
+	 *        The end of the run in the buffer
+	 */
+	private void appendAttribute(final int from, final int to) {
+		final int len = to - from;
+		if (alen + len > abuf.length) {
+			abuf = ArrayCopy.copyOf(abuf, Math.max(abuf.length * 2, alen + len));
+		}
+		System.arraycopy(buf, from, abuf, alen, len);
+		alen += len;
+	}
+
+	/**
+	 * @param from
+	 *        The start of the run in the buffer
+	 * @param to
+	 *        The end of the run in the buffer
+	 */
+	private void appendText(final int from, final int to) {
+		final int len = to - from;
+		if (tlen + len > tbuf.length) {
+			tbuf = ArrayCopy.copyOf(tbuf, Math.max(tbuf.length * 2, tlen + len));
+		}
+		System.arraycopy(buf, from, tbuf, tlen, len);
+		tlen += len;
+	}
+
+	/**
+	 * @param cp
+	 *        The code point to append to the text.
+	 */
+	private void appendText(final int cp) {
+		if (tlen + 2 > tbuf.length) {
+			tbuf = ArrayCopy.copyOf(tbuf, tbuf.length * 2);
+		}
+		tlen += Character.toChars(cp, tbuf, tlen);
+	}
+
+	/**
+	 * Consume a character that is not plain content: a carriage return
+	 * (which is normalized to a newline), a surrogate pair, or a character
+	 * that is not allowed in XML.
+	 * 
+	 * @param c
+	 *        The character at pos.
+	 * @param where
+	 *        The context, for errors.
+	 * @return the code point it represents.
+	 * @throws IOException
+	 *         if the input can not be read.
+	 * @throws SAXException
+	 *         if the character is not legal XML.
+	 */
+	private int readSpecial(final char c, final String where)
+			throws IOException, SAXException {
+		if (c == '\r') {
+			pos++;
+			if ((pos < limit || fill()) && buf[pos] == '\n') {
+				pos++;
+			}
+			return '\n';
+		}
+		if (c == '\n' || c == '\t' || (c >= 0x20 && c < 0xD800)
+				|| (c >= 0xE000 && c < 0xFFFE)) {
+			pos++;
+			return c;
+		}
+		if (c >= 0xD800 && c < 0xDC00) {
+			pos++;
+			if ((pos < limit || fill()) && buf[pos] >= 0xDC00 && buf[pos] < 0xE000) {
+				return Character.toCodePoint(c, buf[pos++]);
+			}
+		}
+		throw fatal("An invalid XML character (Unicode: 0x" +
+				Integer.toHexString(c) + ") was found in the " + where + ".");
+	}
+
+	/**
+	 * Parse a character or entity reference.
+	 * 
+	 * @return The code point the reference represents.
+	 * @throws IOException
+	 *         if the input can not be read.
+	 * @throws SAXException
+	 *         if the reference is not well-formed, or is to an undeclared
+	 *         entity.
+	 */
+	private int parseReference() throws IOException, SAXException {
+		pos++;
+		if (peek() == '#') {
+			pos++;
+			int radix = 10;
+			if (peek() == 'x') {
+				radix = 16;
+				pos++;
+			}
+			int value = 0;
+			int digits = 0;
+			for (;;) {
+				final int c = peek();
+				if (c == ';') {
+					break;
+				}
+				int d = -1;
+				if (c >= '0' && c <= '9') {
+					d = c - '0';
+				} else if (radix == 16 && c >= 'a' && c <= 'f') {
+					d = c - 'a' + 10;
+				} else if (radix == 16 && c >= 'A' && c <= 'F') {
+					d = c - 'A' + 10;
+				}
+				if (d < 0) {
+					throw fatal(digits == 0
+							? "A " + (radix == 16 ? "hexadecimal" : "decimal") + " representation must immediately follow the \"&#" + (radix == 16 ? "x" : "") + "\" in a character reference."
+							: "The character reference must end with the ';' delimiter.");
+				}
+				value = value > 0x10FFFF ? value : value * radix + d;
+				digits++;
+				pos++;
+			}
+			pos++;
+			if (digits == 0) {
+				throw fatal("A " + (radix == 16 ? "hexadecimal" : "decimal") + " representation must immediately follow the \"&#" + (radix == 16 ? "x" : "") + "\" in a character reference.");
+			}
+			if (!Verifier.isXMLCharacter(value)) {
+				throw fatal("Character reference \"&#" + (radix == 16 ? "x" + Integer.toHexString(value) : Integer.toString(value)) + "\" is an invalid XML character.");
+			}
+			return value;
+		}
+		final QName name = parseName();
+		if (peek() != ';') {
+			throw fatal("The reference to entity \"" + name.qname + "\" must end with the ';' delimiter.");
+		}
+		pos++;
+		final String n = name.qname;
+		if ("lt".equals(n)) {
+			return '<';
+		}
+		if ("gt".equals(n)) {
+			return '>';
+		}
+		if ("amp".equals(n)) {
+			return '&';
+		}
+		if ("quot".equals(n)) {
+			return '"';
+		}
+		if ("apos".equals(n)) {
+			return '\'';
+		}
+		throw fatal("The entity \"" + n + "\" was referenced, but not declared.");
+	}
+
+	/**
+	 * Parse character content up to the next markup.
+	 * 
+	 * @throws IOException
+	 *         if the input can not be read.
+	 * @throws SAXException
+	 *         if the content is not well-formed.
+	 */
+	private void parseText() throws IOException, SAXException {
+		keep = pos;
+		for (;;) {
+			if (pos >= limit) {
+				appendText(keep, pos);
+				keep = -1;
+				if (!fill()) {
+					return;
+				}
+				keep = pos;
+				continue;
+			}
+			final char c = buf[pos];
+			if (c < 128 ? !TEXTSTOP[c] : c < 0xD800) {
+				pos++;
+				continue;
+			}
+			appendText(keep, pos);
+			keep = -1;
+			if (c == '<') {
+				return;
+			}
+			if (c == '&') {
+				appendText(parseReference());
+			} else if (c == '>') {
+				if (tlen >= 2 && tbuf[tlen - 1] == ']' && tbuf[tlen - 2] == ']') {
+					throw fatal("The character sequence \"]]>\" must not appear in content unless used to mark the end of a CDATA section.");
+				}
+				pos++;
+				appendText('>');
+			} else {
+				appendText(readSpecial(c, "element content of the document"));
+			}
+			keep = pos;
+		}
+	}
+
+	/**
+	 * Read (and normalize) characters up to a terminating sequence, and
+	 * leave pos after the terminator.
+	 * 
+	 * @param end
+	 *        The terminating sequence, which starts with a character that
+	 *        needs no normalization.
+	 * @param where
+	 *        The context, for errors.
+	 * @return The characters read.
+	 * @throws IOException
+	 *         if the input can not be read.
+	 * @throws SAXException
+	 *         if the content is not well-formed.
+	 */
+	private String readUntil(final String end, final String where)
+			throws IOException, SAXException {
+		final char first = end.charAt(0);
+		tlen = 0;
+		keep = pos;
+		for (;;) {
+			if (pos >= limit) {
+				appendText(keep, pos);
+				keep = -1;
+				if (!fill()) {
+					throw fatal("The " + where + " must end with \"" + end + "\".");
+				}
+				keep = pos;
+				continue;
+			}
+			final char c = buf[pos];
+			if (c == first && lookingAt(end)) {
+				appendText(keep, pos);
+				keep = -1;
+				pos += end.length();
+				final String content = new String(tbuf, 0, tlen);
+				tlen = 0;
+				return content;
+			}
+			if (c < 128 ? (c >= 0x20 || c == '\t' || c == '\n') : c < 0xD800) {
+				pos++;
+				continue;
+			}
+			appendText(keep, pos);
+			keep = -1;
+			appendText(readSpecial(c, where));
+			keep = pos;
+		}
+	}
+
+	/**
+	 * Parse a comment and add it to the document.
+	 * 
+	 * @throws IOException
+	 *         if the input can not be read.
+	 * @throws SAXException
+	 *         if the comment is not well-formed.
+	 */
+	private void parseComment() throws IOException, SAXException {
+		flushText();
+		pos += 4;
+		final String text = readUntil("--", "comment");
+		if (peek() != '>') {
+			throw fatal("The string \"--\" is not permitted within comments.");
+		}
+		pos++;
+		if (text.length() == 0) {
+			return;
+		}
+		if (depth == 0) {
+			factory.addContent(document, locate(factory.comment(line(), column(), text)));
+		} else {
+			factory.addContent(elements[depth - 1],
+					locate(factory.comment(line(), column(), text)));
+		}
+	}
+
+	/**
+	 * Parse a CDATA section, and add it to the current element.
+	 * 
+	 * @throws IOException
+	 *         if the input can not be read.
+	 * @throws SAXException
+	 *         if the section is not well-formed.
+	 */
+	private void parseCDATA() throws IOException, SAXException {
+		flushText();
+		pos += 9;
+		final String data = readUntil("]]>", "CDATA section");
+		if (ignoringBoundaryWhite && isWhitespace(data)) {
+			return;
+		}
+		factory.addContent(elements[depth - 1],
+				locate(factory.cdata(line(), column(), data)));
+	}
+
+	/**
+	 * Parse a processing instruction and add it to the document.
+	 * 
+	 * @throws IOException
+	 *         if the input can not be read.
+	 * @throws SAXException
+	 *         if the processing instruction is not well-formed.
+	 */
+	private void parsePI() throws IOException, SAXException {
+		flushText();
+		pos += 2;
+		final QName target = parseName();
+		if (XML.equalsIgnoreCase(target.qname)) {
+			throw fatal("The processing instruction target matching \"[xX][mM][lL]\" is not allowed.");
+		}
+		String data = "";
+		if (lookingAt("?>")) {
+			pos += 2;
+		} else {
+			if (!skipWhitespace()) {
+				throw fatal("White space is required between the processing instruction target and data.");
+			}
+			data = readUntil("?>", "processing instruction");
+		}
+		if (depth == 0) {
+			factory.addContent(document, locate(factory.processingInstruction(
+					line(), column(), target.qname, data)));
+		} else {
+			factory.addContent(elements[depth - 1], locate(factory.processingInstruction(
+					line(), column(), target.qname, data)));
+		}
+	}
+
+	/**
+	 * Add any pending character content to the current element.
+	 */
+	private void flushText() {
+		if (tlen == 0) {
+			return;
+		}
+		final int len = tlen;
+		tlen = 0;
+		if (ignoringBoundaryWhite) {
+			int i = 0;
+			while (i < len && Verifier.isXMLWhitespace(tbuf[i])) {
+				i++;
+			}
+			if (i == len) {
+				return;
+			}
+		}
+		factory.addContent(elements[depth - 1],
+				locate(factory.text(line(), column(), new String(tbuf, 0, len))));
+	}
+
+	/**
+	 * @param s
+	 *        The String to check
+	 * @return true if it is all XML whitespace.
+	 */
+	private static boolean isWhitespace(final String s) {
+		for (int i = s.length() - 1; i >= 0; i--) {
+			if (!Verifier.isXMLWhitespace(s.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * ========================================================================
+	 * Push mode, used by PushBuilder
+	 * ========================================================================
+	 */
+
+	/**
+	 * Start building a document from pushed characters.
+	 * 
+	 * @param sysid
+	 *        The system ID of the document, may be null.
+	 * @return false if the built-in parser can not build the document, in
+	 *         which case it has to be buffered and built by {@link #build(InputSource)}.
+	 */
+	boolean pushStart(final String sysid) {
+		reset();
+		if (!direct || (sysid != null && !isAbsolute(sysid))) {
+			return false;
+		}
+		pushing = true;
+		systemId = sysid;
+		begin();
+		return true;
+	}
+
+	/**
+	 * Add characters to the document, and build all the complete markup and
+	 * content. Characters that may be part of an incomplete token are kept
+	 * for the next push.
+	 * 
+	 * @param chars
+	 *        The characters to add
+	 * @param len
+	 *        The number of characters
+	 * @param last
+	 *        true if this is the end of the input, in which case the Document
+	 *        is complete and can be taken with {@link #pushDone()}.
+	 * @return false if the SAX engine has to build the document, in which
+	 *         case this engine is reset.
+	 * @throws IOException
+	 *         never, fill() does not read in push mode.
+	 * @throws SAXException
+	 *         if the input is not well-formed.
+	 */
+	boolean push(final char[] chars, final int len, final boolean last)
+			throws IOException, SAXException {
+		if (pos > 0) {
+			countLines(pos);
+			System.arraycopy(buf, pos, buf, 0, pushed - pos);
+			pushed -= pos;
+			lineScan -= pos;
+			colBase -= pos;
+			pos = 0;
+		}
+		if (pushed + len > buf.length) {
+			buf = ArrayCopy.copyOf(buf, Math.max(buf.length * 2, pushed + len));
+		}
+		System.arraycopy(chars, 0, buf, pushed, len);
+		pushed += len;
+		if (!started) {
+			final int bom = pushed > 0 && buf[0] == '\uFEFF' ? 1 : 0;
+			if (!last && (pushed - bom < 6 || (buf[bom] == '<' && buf[bom + 1] == '?'
+					&& buf[bom + 2] == 'x' && buf[bom + 3] == 'm' && buf[bom + 4] == 'l'
+					&& buf[bom + 5] <= ' ' && find(bom + 6, "?>") < 0))) {
+				// wait for the whole XML declaration
+				return true;
+			}
+			limit = pushed;
+			if (!prolog()) {
+				reset();
+				return false;
+			}
+			started = true;
+		}
+		limit = last ? pushed : horizon();
+		if (!tokens()) {
+			reset();
+			return false;
+		}
+		if (last) {
+			finish();
+		}
+		return true;
+	}
+
+	/**
+	 * Take the Document built from pushed characters, and reset the engine.
+	 * 
+	 * @return The complete Document.
+	 */
+	Document pushDone() {
+		final Document doc = document;
+		reset();
+		return doc;
+	}
+
+	/**
+	 * Stop building from pushed characters after an error, and reset the
+	 * engine.
+	 * 
+	 * @param e
+	 *        The error.
+	 * @return The exception to throw, with the partially built Document.
+	 */
+	JDOMException pushError(final SAXException e) {
+		final JDOMException je = wrap(e);
+		reset();
+		return je;
+	}
+
+	/**
+	 * Report a fatal error found in the pushed input (such as an invalid
+	 * byte sequence) at the current location, and reset the engine.
+	 * 
+	 * @param message
+	 *        The problem
+	 * @return The exception to throw.
+	 */
+	JDOMException pushFatal(final String message) {
+		try {
+			return pushError(fatal(message));
+		} catch (SAXException e) {
+			return pushError(e);
+		}
+	}
+
+	/**
+	 * @return The Document being built from pushed characters.
+	 */
+	Document pushDocument() {
+		return document;
+	}
+
+	/**
+	 * @return The innermost open element, or null.
+	 */
+	Element pushElement() {
+		return depth > 0 ? elements[depth - 1] : null;
+	}
+
+	/**
+	 * @return The number of open elements.
+	 */
+	int pushDepth() {
+		return depth;
+	}
+
+	/**
+	 * @return true once the root element has started.
+	 */
+	boolean pushRootSeen() {
+		return rootSeen;
+	}
+
+	/**
+	 * Find where the complete tokens pushed so far end, so that the parser
+	 * never needs characters that have not arrived yet. Character content
+	 * is complete up to an unterminated reference, or a trailing carriage
+	 * return or high surrogate that may be followed by its pair.
+	 * 
+	 * @return The index in buf after the last complete token.
+	 */
+	private int horizon() {
+		int i = pos;
+		int safe = pos;
+		while (i < pushed) {
+			final char c = buf[i];
+			if (c == '<') {
+				i = markupEnd(i);
+				if (i < 0) {
+					return safe;
+				}
+			} else if (c == '&') {
+				i++;
+				while (i < pushed && buf[i] != ';' && buf[i] > ' '
+						&& buf[i] != '<' && buf[i] != '&') {
+					i++;
+				}
+				if (i == pushed) {
+					return safe;
+				}
+				if (buf[i] == ';') {
+					i++;
+				}
+			} else if ((c == '\r' || (c >= 0xD800 && c < 0xDC00)) && i + 1 == pushed) {
+				return safe;
+			} else {
+				i++;
+			}
+			safe = i;
+		}
+		return safe;
+	}
+
+	/**
+	 * Find the end of the markup that starts at an index. Malformed markup
+	 * ends where the parser will report it.
+	 * 
+	 * @param start
+	 *        The index of the '&lt;'
+	 * @return The index after the markup, or -1 if it is not complete.
+	 */
+	private int markupEnd(final int start) {
+		if (start + 1 >= pushed) {
+			return -1;
+		}
+		final char n = buf[start + 1];
+		if (n == '?') {
+			return find(start + 2, "?>");
+		}
+		if (n == '!') {
+			int m = prefix(start, "<!--");
+			if (m > 0) {
+				final int end = find(start + 4, "--");
+				return end < 0 || end >= pushed ? -1 : end + 1;
+			}
+			if (m == 0) {
+				return -1;
+			}
+			m = prefix(start, "<![CDATA[");
+			if (m > 0) {
+				return find(start + 9, "]]>");
+			}
+			if (m == 0 || prefix(start, "<!DOCTYPE") == 0) {
+				return -1;
+			}
+			return start + 2;
+		}
+		char quote = 0;
+		for (int i = start + 1; i < pushed; i++) {
+			final char c = buf[i];
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '"' || c == '\'') {
+				quote = c;
+			} else if (c == '>' || c == '<') {
+				return i + 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param start
+	 *        The index to compare at
+	 * @param s
+	 *        The markup to compare
+	 * @return 1 if the pushed characters at start are the markup, 0 if they
+	 *         are the start of it, and -1 if they are not.
+	 */
+	private int prefix(final int start, final String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (start + i >= pushed) {
+				return 0;
+			}
+			if (buf[start + i] != s.charAt(i)) {
+				return -1;
+			}
+		}
+		return 1;
+	}
+
+	/**
+	 * @param from
+	 *        The index to search from
+	 * @param s
+	 *        The sequence to find
+	 * @return The index after the first occurrence of the sequence in the
+	 *         pushed characters, or -1 if there is none.
+	 */
+	private int find(final int from, final String s) {
+		final int last = pushed - s.length();
+		final char first = s.charAt(0);
+		for (int i = from; i <= last; i++) {
+			if (buf[i] == first && prefix(i, s) > 0) {
+				return i + s.length();
+			}
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,425 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.input;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.xml.sax.DTDHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+
+import org.jdom2.Document;
+import org.jdom2.JDOMException;
+import org.jdom2.JDOMFactory;
+import org.jdom2.input.sax.SAXEngine;
+
+/**
+ * A thread-safe {@link SAXEngine} that builds Documents using a pool of
+ * SAXEngine instances, all created from the same {@link SAXBuilder}
+ * template.
+ * <p>
+ * A SAXBuilder is not thread-safe, and
+ * {@link SAXBuilder#buildEngine()} is relatively slow, so code that parses on
+ * many threads (for example, in a servlet) would otherwise have to
+ * synchronize on a shared builder, or create a new engine for every
+ * document. A PooledSAXBuilder can be shared by any number of threads. Each
+ * build borrows an idle engine (or creates a new one if none is idle), and
+ * returns it to the pool when the build is done. Borrowing and returning
+ * engines is lock-free.
+ * <p>
+ * The pool holds at most a fixed number of idle engines. Engines returned
+ * when the pool is full are discarded. Engines are also discarded (instead
+ * of being returned) when a build fails with anything other than a
+ * {@link JDOMException}: a parse error resets the engine, but an I/O error,
+ * or an unexpected RuntimeException may leave the parser in an unknown
+ * state.
+ * <p>
+ * The pool takes a copy of the template's configuration when it is
+ * created, and creates all its engines from that copy, so they are all
+ * configured identically: changes to the template after the pool is
+ * created do not affect the pool. All engines share the
+ * template's {@link ErrorHandler}, {@link EntityResolver},
+ * {@link DTDHandler} and {@link JDOMFactory}, so those must be
+ * thread-safe too (the defaults are). A template with an
+ * {@link org.xml.sax.XMLFilter} can not be pooled because the filter
+ * instance would be shared by all the engines.
+ * <p>
+ * The pool keeps some simple statistics: {@link #getBuildCount()},
+ * {@link #getMissCount()} (builds that had to create a new engine),
+ * {@link #getDiscardCount()} and {@link #getFailureCount()}.
+ * 
+ * @see SAXBuilder#buildEngine()
+ */
+public class PooledSAXBuilder implements SAXEngine {
+
+	/** A copy of the template, that only this pool uses */
+	private final SAXBuilder template;
+
+	/** The idle engines, empty slots are null. */
+	private final AtomicReferenceArray<SAXEngine> pool;
+
+	/** Used to answer the configuration methods of SAXEngine */
+	private final SAXEngine prototype;
+
+	private final AtomicLong builds = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong discards = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+
+	/**
+	 * Create a pool that holds up to two idle engines per available
+	 * processor.
+	 * 
+	 * @param template
+	 *        The SAXBuilder whose configuration is used to create
+	 *        (identically configured) engines.
+	 * @throws JDOMException
+	 *         if the template can not create an engine.
+	 */
+	public PooledSAXBuilder(final SAXBuilder template) throws JDOMException {
+		this(template, Runtime.getRuntime().availableProcessors() * 2);
+	}
+
+	/**
+	 * Create a pool that holds up to <code>maxidle</code> idle engines.
+	 * 
+	 * @param template
+	 *        The SAXBuilder whose configuration is used to create
+	 *        (identically configured) engines.
+	 * @param maxidle
+	 *        The maximum number of idle engines to keep.
+	 * @throws JDOMException
+	 *         if the template can not create an engine.
+	 */
+	public PooledSAXBuilder(final SAXBuilder template, final int maxidle)
+			throws JDOMException {
+		if (template == null) {
+			throw new NullPointerException("Cannot use a null SAXBuilder template");
+		}
+		if (maxidle < 1) {
+			throw new IllegalArgumentException(
+					"The pool must be able to hold at least 1 engine, not " + maxidle);
+		}
+		if (template.getXMLFilter() != null) {
+			throw new IllegalArgumentException(
+					"Cannot pool a SAXBuilder with an XMLFilter, " +
+					"the filter would be shared by all engines");
+		}
+		this.template = template.copy();
+		this.pool = new AtomicReferenceArray<SAXEngine>(maxidle);
+		// build the first engine now, so configuration problems are
+		// reported early.
+		this.prototype = createEngine();
+		pool.set(0, prototype);
+	}
+
+	/**
+	 * Create a new engine from the copy of the template. SAXBuilder is not
+	 * thread-safe, so engine creation (which is the slow path anyway) is serialized.
+	 * 
+	 * @return the new engine.
+	 * @throws JDOMException
+	 *         if the engine can not be created.
+	 */
+	private SAXEngine createEngine() throws JDOMException {
+		synchronized (template) {
+			return template.buildEngine();
+		}
+	}
+
+	/**
+	 * Get the pool slot to start searching from. Different threads start in
+	 * different places to reduce CAS contention.
+	 * 
+	 * @return the first slot to try.
+	 */
+	private int firstSlot() {
+		return (int)(Thread.currentThread().getId() % pool.length());
+	}
+
+	/**
+	 * Take an idle engine from the pool, or create a new one.
+	 * 
+	 * @return an engine that is not in use by any other thread.
+	 * @throws JDOMException
+	 *         if a new engine is needed and can not be created.
+	 */
+	private SAXEngine borrow() throws JDOMException {
+		builds.incrementAndGet();
+		final int size = pool.length();
+		int slot = firstSlot();
+		for (int i = 0; i < size; i++) {
+			final SAXEngine engine = pool.get(slot);
+			if (engine != null && pool.compareAndSet(slot, engine, null)) {
+				return engine;
+			}
+			if (++slot == size) {
+				slot = 0;
+			}
+		}
+		misses.incrementAndGet();
+		return createEngine();
+	}
+
+	/**
+	 * Return an engine after a build. Only engines that completed normally
+	 * (or failed with a parse error, which resets the engine) are returned
+	 * to the pool.
+	 * 
+	 * @param engine
+	 *        The engine to return
+	 * @param reusable
+	 *        true if the build completed in a way that leaves the engine in
+	 *        a known state.
+	 */
+	private void release(final SAXEngine engine, final boolean reusable) {
+		if (!reusable) {
+			failures.incrementAndGet();
+			return;
+		}
+		final int size = pool.length();
+		int slot = firstSlot();
+		for (int i = 0; i < size; i++) {
+			if (pool.get(slot) == null && pool.compareAndSet(slot, null, engine)) {
+				return;
+			}
+			if (++slot == size) {
+				slot = 0;
+			}
+		}
+		discards.incrementAndGet();
+	}
+
+	/**
+	 * The maximum number of idle engines the pool holds.
+	 * 
+	 * @return the pool capacity.
+	 */
+	public int getMaxIdle() {
+		return pool.length();
+	}
+
+	/**
+	 * The number of engines currently idle in the pool.
+	 * 
+	 * @return the idle engine count.
+	 */
+	public int getIdleCount() {
+		int cnt = 0;
+		for (int i = pool.length() - 1; i >= 0; i--) {
+			if (pool.get(i) != null) {
+				cnt++;
+			}
+		}
+		return cnt;
+	}
+
+	/**
+	 * The number of builds started with this pool.
+	 * 
+	 * @return the build count.
+	 */
+	public long getBuildCount() {
+		return builds.get();
+	}
+
+	/**
+	 * The number of builds that found no idle engine in the pool, and had to
+	 * create a new one. If this is high compared to the build count then the
+	 * pool is too small for the number of concurrent builds.
+	 * 
+	 * @return the number of pool misses.
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * The number of engines that were discarded after a build because the
+	 * pool was already full.
+	 * 
+	 * @return the number of discarded engines.
+	 */
+	public long getDiscardCount() {
+		return discards.get();
+	}
+
+	/**
+	 * The number of engines that were discarded because the build failed
+	 * with something other than a JDOMException.
+	 * 
+	 * @return the number of failed builds that discarded an engine.
+	 */
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	@Override
+	public JDOMFactory getJDOMFactory() {
+		return prototype.getJDOMFactory();
+	}
+
+	@Override
+	public boolean isValidating() {
+		return prototype.isValidating();
+	}
+
+	@Override
+	public ErrorHandler getErrorHandler() {
+		return prototype.getErrorHandler();
+	}
+
+	@Override
+	public EntityResolver getEntityResolver() {
+		return prototype.getEntityResolver();
+	}
+
+	@Override
+	public DTDHandler getDTDHandler() {
+		return prototype.getDTDHandler();
+	}
+
+	@Override
+	public boolean getIgnoringElementContentWhitespace() {
+		return prototype.getIgnoringElementContentWhitespace();
+	}
+
+	@Override
+	public boolean getIgnoringBoundaryWhitespace() {
+		return prototype.getIgnoringBoundaryWhitespace();
+	}
+
+	@Override
+	public boolean getExpandEntities() {
+		return prototype.getExpandEntities();
+	}
+
+	@Override
+	public Document build(final InputSource in) 
+			throws JDOMException, IOException {
+		final SAXEngine engine = borrow();
+		boolean reusable = false;
+		try {
+			final Document doc = engine.build(in);
+			reusable = true;
+			return doc;
+		} catch (JDOMException e) {
+			// the engine resets its handler after parse errors.
+			reusable = true;
+			throw e;
+		} finally {
+			release(engine, reusable);
+		}
+	}
+
+	@Override
+	public Document build(final InputStream in) 
+			throws JDOMException, IOException {
+		return build(new InputSource(in));
+	}
+
+	@Override
+	public Document build(final File file) 
+			throws JDOMException, IOException {
+		try {
+			return build(file.getAbsoluteFile().toURI().toURL());
+		} catch (final MalformedURLException e) {
+			throw new JDOMException("Error in building", e);
+		}
+	}
+
+	@Override
+	public Document build(final URL url) 
+			throws JDOMException, IOException {
+		return build(new InputSource(url.toExternalForm()));
+	}
+
+	@Override
+	public Document build(final InputStream in, final String systemId)
+			throws JDOMException, IOException {
+		final InputSource src = new InputSource(in);
+		src.setSystemId(systemId);
+		return build(src);
+	}
+
+	@Override
+	public Document build(final Reader characterStream)
+			throws JDOMException, IOException {
+		return build(new InputSource(characterStream));
+	}
+
+	@Override
+	public Document build(final Reader characterStream, final String systemId)
+			throws JDOMException, IOException {
+		final InputSource src = new InputSource(characterStream);
+		src.setSystemId(systemId);
+		return build(src);
+	}
+
+	@Override
+	public Document build(final String systemId)
+			throws JDOMException, IOException {
+		return build(new InputSource(systemId));
+	}
+
+}
@@ -0,0 +1,496 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.input;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+
+/**
+ * Builds a Document from bytes that are pushed to it as they arrive, for
+ * example from a non-blocking channel, without holding a thread while it
+ * waits for more input.
+ * <p>
+ * Each call to {@link #push(ByteBuffer)} consumes the whole chunk, builds
+ * all the content that is complete, keeps any incomplete markup for the next
+ * chunk, and returns. The Document grows as the chunks arrive:
+ * {@link #getDocument()}, {@link #getCurrentElement()}, {@link #getDepth()}
+ * and {@link #getBytesConsumed()} show the progress so far. Calling
+ * {@link #end()} at the end of the input completes the Future returned by
+ * {@link #getResult()} with the Document, or with the error if the document
+ * is not well-formed. Errors are also thrown by the push() or end() call
+ * that finds them, and no more input is accepted after an error.
+ * <p>
+ * The content is built incrementally by the parser of
+ * {@link DirectSAXEngine}, with the JDOMFactory and settings of the template
+ * SAXBuilder, so it is the same as the Document that SAXBuilder would build.
+ * Documents the built-in parser does not handle (those with a DOCTYPE, XML
+ * 1.1, other encodings, a relative system ID, or a template that validates
+ * or is otherwise not supported by DirectSAXEngine) are buffered instead,
+ * and built by the SAX parser when end() is called.
+ * {@link #isIncremental()} reports which is the case.
+ * <p>
+ * A PushBuilder builds one Document. It is not thread-safe: push() and
+ * end() have to be called by one thread at a time (such as the event loop
+ * of the connection), but any thread can wait on the Future.
+ * 
+ * @see DirectSAXEngine
+ */
+public final class PushBuilder {
+
+	/** The bytes to look at for the encoding (enough for an XML declaration) */
+	private static final int HEADSIZE = 256;
+
+	/** The Callable for the Result, which is only ever completed directly */
+	private static final Callable<Document> NOTRUN = new Callable<Document>() {
+		@Override
+		public Document call() {
+			throw new IllegalStateException("A PushBuilder result is not run");
+		}
+	};
+
+	/**
+	 * The Future for the Document, completed by end() or by an error.
+	 */
+	private static final class Result extends FutureTask<Document> {
+		private Result() {
+			super(NOTRUN);
+		}
+
+		@Override
+		public void run() {
+			// completed by the PushBuilder only
+		}
+
+		private void complete(final Document doc) {
+			set(doc);
+		}
+
+		private void fail(final Exception e) {
+			setException(e);
+		}
+	}
+
+	private final DirectSAXEngine engine;
+	private final String systemId;
+	private final Result result = new Result();
+
+	/** The decoded characters for the engine */
+	private final CharBuffer chars = CharBuffer.allocate(8192);
+	/** The bytes of an incomplete character at the end of a chunk */
+	private final ByteBuffer carry = ByteBuffer.allocate(16);
+
+	/** The first bytes, until the encoding is known */
+	private byte[] head = new byte[HEADSIZE];
+	private int headlen = 0;
+	/** The bytes before the root element, or all of them when buffering */
+	private ByteArrayOutputStream saved = new ByteArrayOutputStream();
+
+	private CharsetDecoder decoder = null;
+	private String charset = null;
+	private boolean incremental;
+	private boolean done = false;
+	private Document document = null;
+	private long consumed = 0L;
+
+	/**
+	 * Create a PushBuilder with the default SAXBuilder configuration.
+	 * 
+	 * @throws JDOMException
+	 *         if a SAX engine can not be created.
+	 */
+	public PushBuilder() throws JDOMException {
+		this(new SAXBuilder(), null);
+	}
+
+	/**
+	 * Create a PushBuilder that builds a Document with the configuration of
+	 * a SAXBuilder.
+	 * 
+	 * @param template
+	 *        The SAXBuilder to take the configuration from.
+	 * @param systemId
+	 *        The system ID (and base URI) of the document, may be null.
+	 * @throws JDOMException
+	 *         if the template can not create a SAX engine.
+	 */
+	public PushBuilder(final SAXBuilder template, final String systemId)
+			throws JDOMException {
+		this.engine = new DirectSAXEngine(template);
+		this.systemId = systemId;
+		this.incremental = engine.pushStart(systemId);
+		if (incremental) {
+			document = engine.pushDocument();
+		}
+	}
+
+	/**
+	 * Add the next chunk of the input. All the remaining bytes of the chunk
+	 * are consumed, and all the complete content is added to the Document.
+	 * 
+	 * @param chunk
+	 *        The bytes. Its position is moved to its limit.
+	 * @throws JDOMException
+	 *         if the input is not well-formed.
+	 * @throws IOException
+	 *         if the input can not be processed.
+	 * @throws IllegalStateException
+	 *         if end() was called, or an error was already thrown.
+	 */
+	public void push(final ByteBuffer chunk) throws JDOMException, IOException {
+		if (done) {
+			throw new IllegalStateException(
+					"Cannot push input after the end of the document or an error");
+		}
+		consumed += chunk.remaining();
+		if (saved != null) {
+			final ByteBuffer copy = chunk.duplicate();
+			if (copy.hasArray()) {
+				saved.write(copy.array(), copy.arrayOffset() + copy.position(),
+						copy.remaining());
+			} else {
+				final byte[] bytes = new byte[copy.remaining()];
+				copy.get(bytes);
+				saved.write(bytes);
+			}
+		}
+		try {
+			if (incremental && decoder == null) {
+				final int cnt = Math.min(chunk.remaining(), HEADSIZE - headlen);
+				chunk.get(head, headlen, cnt);
+				headlen += cnt;
+				if (headlen < HEADSIZE && !hasDeclarationEnd()) {
+					return;
+				}
+				if (start()) {
+					decode(ByteBuffer.wrap(head, 0, headlen), false);
+					head = null;
+				}
+			}
+			if (incremental) {
+				decode(chunk, false);
+			}
+			if (incremental && engine.pushRootSeen()) {
+				// the prolog does not have to be replayed to the SAX parser
+				saved = null;
+			}
+		} catch (SAXException e) {
+			throw failed(engine.pushError(e));
+		} catch (JDOMException e) {
+			throw failed(e);
+		} finally {
+			chunk.position(chunk.limit());
+		}
+	}
+
+	/**
+	 * Mark the end of the input, and complete the Document.
+	 * 
+	 * @return The result, which is complete. Calling end() again returns the
+	 *         same result.
+	 * @throws JDOMException
+	 *         if the input is not well-formed.
+	 * @throws IOException
+	 *         if the buffered input can not be built.
+	 */
+	public Future<Document> end() throws JDOMException, IOException {
+		if (done) {
+			return result;
+		}
+		try {
+			if (incremental && decoder == null && start()) {
+				decode(ByteBuffer.wrap(head, 0, headlen), false);
+				head = null;
+			}
+			if (incremental) {
+				carry.flip();
+				if (convert(carry, true)) {
+					decoder.flush(chars);
+					chars.flip();
+					if (engine.push(chars.array(), chars.remaining(), true)) {
+						document = engine.pushDone();
+					} else {
+						buffer();
+					}
+					chars.clear();
+				}
+			}
+			if (!incremental) {
+				final InputSource source = new InputSource(
+						new ByteArrayInputStream(saved.toByteArray()));
+				source.setSystemId(systemId);
+				saved = null;
+				document = engine.build(source);
+			}
+		} catch (SAXException e) {
+			throw failed(engine.pushError(e));
+		} catch (JDOMException e) {
+			throw failed(e);
+		} catch (IOException e) {
+			done = true;
+			result.fail(e);
+			throw e;
+		}
+		done = true;
+		result.complete(document);
+		return result;
+	}
+
+	/**
+	 * The result of the build, which completes when {@link #end()} is
+	 * called, or when an error is found. A failed result throws an
+	 * ExecutionException with the JDOMException as the cause.
+	 * 
+	 * @return The Future Document.
+	 */
+	public Future<Document> getResult() {
+		return result;
+	}
+
+	/**
+	 * The Document as it is built. While the input is incomplete it has the
+	 * content that has arrived so far.
+	 * 
+	 * @return The Document, or null if the input is buffered and end() has
+	 *         not been called yet.
+	 */
+	public Document getDocument() {
+		return document;
+	}
+
+	/**
+	 * The innermost element that has started but not ended yet.
+	 * 
+	 * @return The current element, or null if there is none (or the input is
+	 *         buffered).
+	 */
+	public Element getCurrentElement() {
+		return incremental && !done ? engine.pushElement() : null;
+	}
+
+	/**
+	 * The number of elements that have started but not ended yet.
+	 * 
+	 * @return The current element depth.
+	 */
+	public int getDepth() {
+		return incremental && !done ? engine.pushDepth() : 0;
+	}
+
+	/**
+	 * The number of bytes pushed so far.
+	 * 
+	 * @return The byte count.
+	 */
+	public long getBytesConsumed() {
+		return consumed;
+	}
+
+	/**
+	 * Whether the Document is built as the input arrives, or the input is
+	 * buffered and built at the end. This can change from true to false
+	 * until the root element starts, for example when a DOCTYPE is found.
+	 * 
+	 * @return true if the Document is built incrementally.
+	 */
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	/**
+	 * Whether the build is finished, successfully or not.
+	 * 
+	 * @return true once end() has been called or an error was thrown.
+	 */
+	public boolean isDone() {
+		return done;
+	}
+
+	/**
+	 * @return true if the head has the end of the first markup, which is the
+	 *         end of the XML declaration if there is one.
+	 */
+	private boolean hasDeclarationEnd() {
+		for (int i = 0; i < headlen; i++) {
+			if (head[i] == '>') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Choose the decoder from the head of the input.
+	 * 
+	 * @return false if the encoding is not supported, and the input is
+	 *         buffered instead.
+	 */
+	private boolean start() {
+		charset = DirectSAXEngine.detectCharset(head, headlen);
+		if (charset == null) {
+			buffer();
+			return false;
+		}
+		decoder = Charset.forName(charset).newDecoder();
+		return true;
+	}
+
+	/**
+	 * Switch to buffering the input for the SAX parser.
+	 */
+	private void buffer() {
+		incremental = false;
+		document = null;
+		head = null;
+	}
+
+	/**
+	 * Decode bytes and push the characters to the engine.
+	 * 
+	 * @param in
+	 *        The bytes to decode.
+	 * @param last
+	 *        true if this is the end of the input.
+	 * @throws JDOMException
+	 *         if the bytes are not correctly encoded.
+	 * @throws SAXException
+	 *         if the document is not well-formed.
+	 * @throws IOException
+	 *         never, see DirectSAXEngine.push().
+	 */
+	private void decode(final ByteBuffer in, final boolean last)
+			throws JDOMException, SAXException, IOException {
+		while (carry.position() > 0 && in.hasRemaining()) {
+			carry.put(in.get());
+			carry.flip();
+			final boolean ok = convert(carry, false);
+			carry.compact();
+			if (!ok) {
+				return;
+			}
+		}
+		if (convert(in, last) && in.hasRemaining()) {
+			carry.put(in);
+		}
+	}
+
+	/**
+	 * Decode bytes and push the characters to the engine, leaving the bytes
+	 * of an incomplete character in the input.
+	 * 
+	 * @param in
+	 *        The bytes to decode.
+	 * @param last
+	 *        true if this is the end of the input.
+	 * @return false if the input is buffered instead.
+	 * @throws JDOMException
+	 *         if the bytes are not correctly encoded.
+	 * @throws SAXException
+	 *         if the document is not well-formed.
+	 * @throws IOException
+	 *         never, see DirectSAXEngine.push().
+	 */
+	private boolean convert(final ByteBuffer in, final boolean last)
+			throws JDOMException, SAXException, IOException {
+		for (;;) {
+			final CoderResult cr = decoder.decode(in, chars, last);
+			chars.flip();
+			final boolean ok = engine.push(chars.array(), chars.remaining(), false);
+			chars.clear();
+			if (!ok) {
+				buffer();
+				return false;
+			}
+			if (cr.isError()) {
+				throw engine.pushFatal("Invalid byte sequence in " + charset +
+						" input: " + cr);
+			}
+			if (cr.isUnderflow()) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Record an error as the result.
+	 * 
+	 * @param e
+	 *        The error
+	 * @return The error, to throw.
+	 */
+	private JDOMException failed(final JDOMException e) {
+		done = true;
+		incremental = false;
+		saved = null;
+		result.fail(e);
+		return e;
+	}
+
+}
@@ -60,11 +60,19 @@ import static org.jdom2.JDOMConstants.SAX_PROPERTY_LEXICAL_HANDLER;
 import static org.jdom2.JDOMConstants.SAX_PROPERTY_LEXICAL_HANDLER_ALT;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -87,6 +95,8 @@ import org.jdom2.JDOMFactory;
 import org.jdom2.Verifier;
 import org.jdom2.input.sax.BuilderErrorHandler;
 import org.jdom2.input.sax.DefaultSAXHandlerFactory;
+import org.jdom2.input.sax.GrammarCache;
+import org.jdom2.input.sax.Projection;
 import org.jdom2.input.sax.SAXBuilderEngine;
 import org.jdom2.input.sax.SAXEngine;
 import org.jdom2.input.sax.SAXHandler;
@@ -149,6 +159,14 @@ public class SAXBuilder implements SAXEngine {
 	/** Default source of JDOM Content */
 	private static final JDOMFactory DEFAULTJDOMFAC = new DefaultJDOMFactory();
 
+	/**
+	 * Files (and FileChannels) with at least this many bytes are
+	 * memory-mapped by {@link #buildMapped(File)} and
+	 * {@link #build(ReadableByteChannel)}. Mapping smaller files costs more
+	 * than reading them.
+	 */
+	public static final int MAPTHRESHOLD = 1 << 20;
+
 	/*
 	 * ====================================================================
 	 */
@@ -201,9 +219,24 @@ public class SAXBuilder implements SAXEngine {
 	/** Whether to ignore all whitespace content */
 	private boolean ignoringBoundaryWhite = false;
 
+	/** Text longer than this is kept in a temporary file, 0 for never */
+	private int spillThreshold = 0;
+
+	/** The parts of the documents to build, or null for everything */
+	private Projection projection = null;
+
+	/** Whether to keep the source text of each Element */
+	private boolean sourceSpans = false;
+
+	/** Whether to record the location of the Content in a LocationTable */
+	private boolean recordLocations = false;
+
 	/** Whether parser reuse is allowed. */
 	private boolean reuseParser = true;
 
+	/** The cache for the grammars the parser reads, or null */
+	private GrammarCache grammarCache = null;
+
 	/** The current SAX parser, if parser reuse has been activated. */
 	private SAXEngine engine = null;
 
@@ -682,6 +715,154 @@ public class SAXBuilder implements SAXEngine {
 		engine = null;
 	}
 
+	/**
+	 * Returns the number of characters above which text content is kept in a
+	 * temporary file instead of in memory.
+	 * 
+	 * @return the threshold, or 0 if all text is kept in memory.
+	 * @see #setSpillThreshold(int)
+	 */
+	public int getSpillThreshold() {
+		return spillThreshold;
+	}
+
+	/**
+	 * Specifies the number of characters above which the text content of an
+	 * element is kept in a temporary file as a {@link org.jdom2.SpilledText},
+	 * instead of being built as a String. This is for documents that embed
+	 * very large payloads (for example base64 data) in a single element: once
+	 * the text passes the threshold it streams to the file, and the
+	 * {@link org.jdom2.output.XMLOutputter} streams it back out. The
+	 * {@link org.jdom2.JDOMFactory#spilledText(int, int, org.jdom2.SpilledText)
+	 * JDOMFactory} gets each SpilledText before it is added. Use
+	 * {@link org.jdom2.SpilledText#dispose()} to delete the temporary files
+	 * when the text is no longer needed, otherwise they are deleted when the
+	 * JVM exits.
+	 * <p>
+	 * CDATA sections are not kept in files, they are read back in to memory
+	 * once they are complete. The {@link DirectSAXEngine} built-in parser
+	 * does not spill text, so it uses the SAX parser when a threshold is
+	 * set. The default is 0, which keeps all text in memory.
+	 * 
+	 * @param spillThreshold
+	 *        The threshold in characters, or 0 to keep all text in memory.
+	 * @throws IllegalArgumentException
+	 *         if the threshold is negative.
+	 */
+	public void setSpillThreshold(final int spillThreshold) {
+		if (spillThreshold < 0) {
+			throw new IllegalArgumentException(
+					"The spill threshold cannot be negative: " + spillThreshold);
+		}
+		this.spillThreshold = spillThreshold;
+		engine = null;
+	}
+
+	/**
+	 * Returns the parts of the documents that are built.
+	 * 
+	 * @return the Projection, or null if documents are built completely.
+	 * @see #setProjection(Projection)
+	 */
+	public Projection getProjection() {
+		return projection;
+	}
+
+	/**
+	 * Specifies the parts of the documents to build. Only the Elements
+	 * selected by the {@link Projection} (with all their content) and their
+	 * ancestors are built; the rest of each document is skipped in the
+	 * SAXHandler without creating JDOM content. The documents are still
+	 * parsed (and checked) completely. The {@link DirectSAXEngine} built-in
+	 * parser does not project, so it uses the SAX parser when a Projection is
+	 * set. The default is null, which builds complete documents.
+	 * 
+	 * @param projection
+	 *        The parts of the documents to build, or null to build
+	 *        everything.
+	 */
+	public void setProjection(final Projection projection) {
+		this.projection = projection;
+		engine = null;
+	}
+
+	/**
+	 * Returns whether the source text of each Element is kept.
+	 * 
+	 * @return true if a {@link org.jdom2.SourceSpan} is recorded on the
+	 *         Elements.
+	 * @see #setSourceSpans(boolean)
+	 */
+	public boolean getSourceSpans() {
+		return sourceSpans;
+	}
+
+	/**
+	 * Specifies whether to keep the text of each document that is built,
+	 * and record where each Element is in it as a {@link org.jdom2.SourceSpan}
+	 * (see {@link org.jdom2.Element#getSourceSpan()}). The span of an Element
+	 * is discarded when the Element, or anything in it, changes. The
+	 * {@link org.jdom2.output.XMLOutputter} copies the source text of the
+	 * Elements that still have it, instead of formatting them again, so a
+	 * document that is parsed, changed in a few places, and output again
+	 * costs little more than a copy for the parts that did not change. The
+	 * text is only copied when the Format would output it unchanged, which
+	 * needs a Unicode encoding, preserved text, and the line separator
+	 * {@link org.jdom2.output.LineSeparator#UNIX} (the default is CRLF).
+	 * <p>
+	 * All the spans of a document share one copy of the whole decoded input
+	 * (in memory, two bytes per character), so a single Element that still
+	 * has its span keeps the text of the entire document reachable, even
+	 * after it is detached. To release the text while keeping the document,
+	 * call {@link org.jdom2.Element#setSourceSpan(org.jdom2.SourceSpan)
+	 * setSourceSpan(null)} on every Element that has a span, for example
+	 * over {@code doc.getDescendants(Filters.element())}, once the source
+	 * text is no longer needed. The input is read and decoded completely
+	 * before it is parsed, and documents are built sequentially by
+	 * {@link #buildParallel(ByteBuffer, String, int)}. The
+	 * {@link DirectSAXEngine} built-in parser does not record spans, so it
+	 * uses the SAX parser when this is set. No spans are recorded while
+	 * whitespace is ignored, or with a {@link #setProjection(Projection)
+	 * Projection}. The default is false.
+	 * 
+	 * @param sourceSpans
+	 *        true to record the source text of the Elements.
+	 */
+	public void setSourceSpans(final boolean sourceSpans) {
+		this.sourceSpans = sourceSpans;
+		engine = null;
+	}
+
+	/**
+	 * Returns whether the locations of the Content are recorded.
+	 * 
+	 * @return true if a {@link org.jdom2.located.LocationTable} is added to
+	 *         the documents.
+	 * @see #setRecordLocations(boolean)
+	 */
+	public boolean getRecordLocations() {
+		return recordLocations;
+	}
+
+	/**
+	 * Specifies whether to record the line and column of each Content that
+	 * is built in a {@link org.jdom2.located.LocationTable} of its Document.
+	 * This is an alternative to the {@link org.jdom2.located.LocatedJDOMFactory}
+	 * that keeps the plain JDOM classes, and costs a few ints per Content
+	 * in one table instead of a subclass for each kind of Content. Use
+	 * {@link org.jdom2.located.LocationTable#locate(org.jdom2.Content)} to
+	 * get the locations. When {@link #setSourceSpans(boolean) source spans}
+	 * are recorded as well, the table has the character offset of each
+	 * Content too. The default is false.
+	 * 
+	 * @param recordLocations
+	 *        true to record the locations of the Content.
+	 */
+	public void setRecordLocations(final boolean recordLocations) {
+		this.recordLocations = recordLocations;
+		engine = null;
+	}
+
 	/**
 	 * Returns whether or not entities are being expanded into normal text
 	 * content.
@@ -827,6 +1008,78 @@ public class SAXBuilder implements SAXEngine {
 		engine = null;
 	}
 
+	/**
+	 * Returns the GrammarCache used for the DTDs (and other grammars) that the
+	 * SAX parser reads.
+	 * 
+	 * @return the GrammarCache, or null if grammars are not cached (the
+	 *         default).
+	 */
+	public GrammarCache getGrammarCache() {
+		return grammarCache;
+	}
+
+	/**
+	 * Cache the DTDs (and XSDs referenced by schemaLocation) that the SAX
+	 * parser reads, so that documents that refer to the same external DTD do
+	 * not read and parse it again. This matters most for validating builds
+	 * (see {@link XMLReaders#DTDVALIDATING}). The cache is only used by
+	 * Apache Xerces parsers (not the Xerces built in to recent JDKs), other
+	 * parsers are unaffected, and not for documents with an internal DTD
+	 * subset (see {@link GrammarCache}).
+	 * <p>
+	 * {@link GrammarCache#getDefault()} shares the grammars with every
+	 * builder in the process.
+	 * 
+	 * @param grammarCache
+	 *        The GrammarCache to use, or null to read grammars for each
+	 *        document.
+	 */
+	public void setGrammarCache(final GrammarCache grammarCache) {
+		this.grammarCache = grammarCache;
+		engine = null;
+	}
+
+	/**
+	 * Indicates whether any SAX features or properties have been set on this
+	 * builder. Used by {@link DirectSAXEngine} which can not honour them.
+	 *
+	 * @return true if {@link #setFeature(String, boolean)} or
+	 *         {@link #setProperty(String, Object)} has been called.
+	 */
+	boolean hasParserSettings() {
+		return !features.isEmpty() || !properties.isEmpty();
+	}
+
+	/**
+	 * Create a SAXBuilder with the same configuration as this one. The
+	 * factories, handlers, parser property values, Projection and
+	 * GrammarCache are shared, not copied; the current engine is not.
+	 * Used by {@link PooledSAXBuilder} so that changes to its template do
+	 * not change the engines it creates.
+	 *
+	 * @return a new SAXBuilder configured like this one.
+	 */
+	SAXBuilder copy() {
+		final SAXBuilder copy = new SAXBuilder(readerfac, handlerfac, jdomfac);
+		copy.features.putAll(features);
+		copy.properties.putAll(properties);
+		copy.saxErrorHandler = saxErrorHandler;
+		copy.saxEntityResolver = saxEntityResolver;
+		copy.saxDTDHandler = saxDTDHandler;
+		copy.saxXMLFilter = saxXMLFilter;
+		copy.expand = expand;
+		copy.ignoringWhite = ignoringWhite;
+		copy.ignoringBoundaryWhite = ignoringBoundaryWhite;
+		copy.spillThreshold = spillThreshold;
+		copy.projection = projection;
+		copy.sourceSpans = sourceSpans;
+		copy.recordLocations = recordLocations;
+		copy.reuseParser = reuseParser;
+		copy.grammarCache = grammarCache;
+		return copy;
+	}
+
 	/**
 	 * This method builds a new and reusable {@link SAXEngine}.
 	 * Each time this method is called a new instance of a SAXEngine will be
@@ -850,13 +1103,17 @@ public class SAXBuilder implements SAXEngine {
 		contentHandler.setExpandEntities(expand);
 		contentHandler.setIgnoringElementContentWhitespace(ignoringWhite);
 		contentHandler.setIgnoringBoundaryWhitespace(ignoringBoundaryWhite);
+		contentHandler.setSpillThreshold(spillThreshold);
+		contentHandler.setProjection(projection);
+		contentHandler.setRecordLocations(recordLocations);
 
 		final XMLReader parser = createParser();
 		// Configure parser
 		configureParser(parser, contentHandler);
 		final boolean valid = readerfac.isValidating();
 
-		return new SAXBuilderEngine(parser, contentHandler, valid);
+		final SAXEngine sax = new SAXBuilderEngine(parser, contentHandler, valid);
+		return sourceSpans ? new SourceSpanEngine(sax, contentHandler) : sax;
 	}
 
 	/**
@@ -981,6 +1238,10 @@ public class SAXBuilder implements SAXEngine {
 			internalSetProperty(parser, me.getKey(), me.getValue(), me.getKey());
 		}
 
+		if (grammarCache != null) {
+			grammarCache.install(parser);
+		}
+
 		// Set entity expansion
 		// Note SAXHandler can work regardless of how this is set, but when
 		// entity expansion it's worth it to try to tell the parser not to
@@ -1302,4 +1563,327 @@ public class SAXBuilder implements SAXEngine {
 		}
 	}
 
+	/**
+	 * This builds a document from the remaining bytes in a ByteBuffer (from
+	 * its position to its limit). The buffer's position is not changed.
+	 * <p>
+	 * The bytes are read directly from the buffer (which may be a direct or
+	 * memory-mapped buffer), without first being copied to an array. The
+	 * parser detects the encoding as it would for an InputStream.
+	 * 
+	 * @param buffer
+	 *        <code>ByteBuffer</code> to read from
+	 * @return <code>Document</code> resultant Document object
+	 * @throws JDOMException
+	 *         when errors occur in parsing
+	 * @throws IOException
+	 *         when an I/O error prevents a document from being fully parsed.
+	 * @see ByteBufferInputStream
+	 */
+	public Document build(final ByteBuffer buffer)
+			throws JDOMException, IOException {
+		return build(new ByteBufferInputStream(buffer));
+	}
+
+	/**
+	 * This builds a document from the remaining bytes in a ByteBuffer, with
+	 * a system ID used to resolve relative references (DTDs, external
+	 * entities) in the document.
+	 * 
+	 * @param buffer
+	 *        <code>ByteBuffer</code> to read from
+	 * @param systemId
+	 *        base for resolving relative URIs
+	 * @return <code>Document</code> resultant Document object
+	 * @throws JDOMException
+	 *         when errors occur in parsing
+	 * @throws IOException
+	 *         when an I/O error prevents a document from being fully parsed.
+	 */
+	public Document build(final ByteBuffer buffer, final String systemId)
+			throws JDOMException, IOException {
+		return build(new ByteBufferInputStream(buffer), systemId);
+	}
+
+	/**
+	 * This builds a document from the supplied channel, reading it until
+	 * the end of the stream. The channel is not closed.
+	 * <p>
+	 * If the channel is a FileChannel with at least
+	 * {@link #MAPTHRESHOLD} bytes remaining then the remaining content is
+	 * memory-mapped (see {@link #buildMapped(File)}) instead of read through
+	 * stream buffers. The channel's position is then moved to the end of the
+	 * file.
+	 * 
+	 * @param channel
+	 *        <code>ReadableByteChannel</code> to read from
+	 * @return <code>Document</code> resultant Document object
+	 * @throws JDOMException
+	 *         when errors occur in parsing
+	 * @throws IOException
+	 *         when an I/O error prevents a document from being fully parsed.
+	 */
+	public Document build(final ReadableByteChannel channel)
+			throws JDOMException, IOException {
+		return build(channel, null);
+	}
+
+	/**
+	 * This builds a document from the supplied channel, with a system ID
+	 * used to resolve relative references in the document. See
+	 * {@link #build(ReadableByteChannel)}.
+	 * 
+	 * @param channel
+	 *        <code>ReadableByteChannel</code> to read from
+	 * @param systemId
+	 *        base for resolving relative URIs (may be null)
+	 * @return <code>Document</code> resultant Document object
+	 * @throws JDOMException
+	 *         when errors occur in parsing
+	 * @throws IOException
+	 *         when an I/O error prevents a document from being fully parsed.
+	 */
+	public Document build(final ReadableByteChannel channel, final String systemId)
+			throws JDOMException, IOException {
+		if (channel == null) {
+			throw new NullPointerException("Cannot read a null channel");
+		}
+		if (channel instanceof FileChannel) {
+			final FileChannel fc = (FileChannel)channel;
+			final long start = fc.position();
+			final long len = fc.size() - start;
+			if (len >= MAPTHRESHOLD && len <= Integer.MAX_VALUE) {
+				final ByteBuffer buffer = fc.map(MapMode.READ_ONLY, start, len);
+				fc.position(start + len);
+				return build(new ByteBufferInputStream(buffer), systemId);
+			}
+		}
+		// do not let the parser close the channel.
+		final InputStream in = new FilterInputStream(Channels.newInputStream(channel)) {
+			@Override
+			public void close() {
+				// the caller owns the channel.
+			}
+		};
+		return systemId == null ? build(in) : build(in, systemId);
+	}
+
+	/**
+	 * This builds a document from a file, using memory-mapped I/O for files
+	 * of at least {@link #MAPTHRESHOLD} bytes (and less than 2GB). Smaller
+	 * files are built with {@link #build(File)}.
+	 * <p>
+	 * The parser reads the mapped bytes directly, without the copies through
+	 * stream buffers that reading a large file normally involves. The
+	 * file's URL is used as the system ID, exactly as for
+	 * {@link #build(File)}.
+	 * <p>
+	 * Note that Java does not unmap a mapped file until the buffer is
+	 * garbage-collected, and on some platforms a mapped file can not be
+	 * deleted or modified until then.
+	 * 
+	 * @param file
+	 *        <code>File</code> to read from
+	 * @return <code>Document</code> resultant Document object
+	 * @throws JDOMException
+	 *         when errors occur in parsing
+	 * @throws IOException
+	 *         when an I/O error prevents a document from being fully parsed.
+	 */
+	public Document buildMapped(final File file)
+			throws JDOMException, IOException {
+		final long len = file.length();
+		if (len < MAPTHRESHOLD || len > Integer.MAX_VALUE) {
+			return build(file);
+		}
+		final String systemId = file.getAbsoluteFile().toURI().toURL().toExternalForm();
+		final FileInputStream fis = new FileInputStream(file);
+		final ByteBuffer buffer;
+		try {
+			final FileChannel fc = fis.getChannel();
+			buffer = fc.map(MapMode.READ_ONLY, 0, fc.size());
+		} finally {
+			// the mapping remains valid after the channel is closed.
+			fis.close();
+		}
+		return build(new ByteBufferInputStream(buffer), systemId);
+	}
+
+	/**
+	 * This builds a single large document from a file, parsing parts of it
+	 * in parallel. The file is memory-mapped, and is then built as for
+	 * {@link #buildParallel(ByteBuffer, String, int)} with the file's URL as
+	 * the system ID. Files larger than 2GB are built with
+	 * {@link #build(File)}.
+	 * 
+	 * @param file
+	 *        <code>File</code> to read from
+	 * @param parallelism
+	 *        The number of threads to parse with.
+	 * @return <code>Document</code> resultant Document object
+	 * @throws JDOMException
+	 *         when errors occur in parsing
+	 * @throws IOException
+	 *         when an I/O error prevents a document from being fully parsed.
+	 * @throws InterruptedException
+	 *         if the calling thread is interrupted while waiting for the
+	 *         parts to be parsed.
+	 */
+	public Document buildParallel(final File file, final int parallelism)
+			throws JDOMException, IOException, InterruptedException {
+		if (file.length() > Integer.MAX_VALUE) {
+			return build(file);
+		}
+		final String systemId = file.getAbsoluteFile().toURI().toURL().toExternalForm();
+		final FileInputStream fis = new FileInputStream(file);
+		final ByteBuffer buffer;
+		try {
+			final FileChannel fc = fis.getChannel();
+			buffer = fc.map(MapMode.READ_ONLY, 0, fc.size());
+		} finally {
+			// the mapping remains valid after the channel is closed.
+			fis.close();
+		}
+		return buildParallel(buffer, systemId, parallelism);
+	}
+
+	/**
+	 * This builds a single large document from the remaining bytes in a
+	 * ByteBuffer, parsing parts of it in parallel. See
+	 * {@link #buildParallel(ByteBuffer, String, int)}.
+	 * 
+	 * @param buffer
+	 *        <code>ByteBuffer</code> to read from
+	 * @param parallelism
+	 *        The number of threads to parse with.
+	 * @return <code>Document</code> resultant Document object
+	 * @throws JDOMException
+	 *         when errors occur in parsing
+	 * @throws IOException
+	 *         when an I/O error prevents a document from being fully parsed.
+	 * @throws InterruptedException
+	 *         if the calling thread is interrupted while waiting for the
+	 *         parts to be parsed.
+	 */
+	public Document buildParallel(final ByteBuffer buffer, final int parallelism)
+			throws JDOMException, IOException, InterruptedException {
+		return buildParallel(buffer, null, parallelism);
+	}
+
+	/**
+	 * This builds a single large document from the remaining bytes in a
+	 * ByteBuffer, parsing parts of it in parallel. The buffer's position is
+	 * not changed.
+	 * <p>
+	 * This is for documents that are a root Element with many child
+	 * Elements (records). The bytes are pre-scanned to find where the
+	 * children of the root start, and the root's content is split in to
+	 * chunks (of at least 64KB) at those points. The chunks are parsed
+	 * concurrently, each by its own SAXEngine (see {@link #buildEngine()}),
+	 * with the root start tag (and its Namespace declarations) in scope, and
+	 * the content is then moved under a single root Element in document
+	 * order. The result is the same Document that {@link #build(ByteBuffer)}
+	 * builds, and line numbers (for errors, and for a located JDOMFactory)
+	 * are those of the whole document.
+	 * <p>
+	 * The document is built on the calling thread by
+	 * {@link #build(ByteBuffer, String)} instead when it can not be split:
+	 * when it is small, has a DOCTYPE declaration (which may declare
+	 * entities or default attributes), is not in an ASCII-based encoding
+	 * (UTF-8, ISO-8859-1, ...), or when this SAXBuilder validates or has an
+	 * XMLFilter. Malformed documents may also be built sequentially, which
+	 * reports the error.
+	 * <p>
+	 * This SAXBuilder should not be modified while the build is running.
+	 * 
+	 * @param buffer
+	 *        <code>ByteBuffer</code> to read from
+	 * @param systemId
+	 *        base for resolving relative URIs (may be null)
+	 * @param parallelism
+	 *        The number of threads to parse with.
+	 * @return <code>Document</code> resultant Document object
+	 * @throws JDOMException
+	 *         when errors occur in parsing
+	 * @throws IOException
+	 *         when an I/O error prevents a document from being fully parsed.
+	 * @throws InterruptedException
+	 *         if the calling thread is interrupted while waiting for the
+	 *         parts to be parsed.
+	 */
+	public Document buildParallel(final ByteBuffer buffer, final String systemId,
+			final int parallelism)
+			throws JDOMException, IOException, InterruptedException {
+		return new SplitBuilder(this, buffer, systemId, parallelism).run();
+	}
+
+	/**
+	 * Build a batch of inputs in parallel, and collect the Documents.
+	 * <p>
+	 * This is the same as
+	 * {@link #buildAll(Collection, int, boolean, BuildListener)} except that
+	 * the Documents are returned in {@link BatchResult#getDocuments()} (in
+	 * input order) instead of being delivered to a listener. All the
+	 * Documents are held in memory at the same time, use a BuildListener
+	 * for large batches.
+	 * 
+	 * @param inputs
+	 *        The sources to build.
+	 * @param parallelism
+	 *        The number of threads to build with.
+	 * @return the Documents, the per-input errors, and the batch statistics.
+	 * @throws JDOMException
+	 *         if the SAXEngines needed for the batch can not be created.
+	 * @throws InterruptedException
+	 *         if the calling thread is interrupted while waiting for the
+	 *         batch.
+	 */
+	public BatchResult buildAll(final Collection<? extends InputSource> inputs,
+			final int parallelism) throws JDOMException, InterruptedException {
+		return new BatchBuilder(this, inputs, parallelism, true, null).run();
+	}
+
+	/**
+	 * Build a batch of inputs in parallel, delivering each result to a
+	 * {@link BuildListener} as it is available.
+	 * <p>
+	 * Each thread builds using its own SAXEngine, configured from the
+	 * current state of this SAXBuilder (see {@link #buildEngine()}). If an
+	 * XMLFilter is set the batch is built on one thread, because the filter
+	 * can not be shared by engines. The listener is always called on the
+	 * calling thread, which waits until the whole batch is built.
+	 * <p>
+	 * An input that fails (a {@link JDOMParseException}, an IOException,
+	 * ...) does not stop the batch: the error is passed to
+	 * {@link BuildListener#buildFailed(int, InputSource, Exception)} and
+	 * recorded in the {@link BatchResult}.
+	 * <p>
+	 * This SAXBuilder should not be modified while the batch is running.
+	 * 
+	 * @param inputs
+	 *        The sources to build.
+	 * @param parallelism
+	 *        The number of threads to build with.
+	 * @param ordered
+	 *        If true the results are delivered in input order, otherwise
+	 *        they are delivered in the order they complete.
+	 * @param listener
+	 *        The listener to deliver the results to.
+	 * @return the per-input errors and the batch statistics.
+	 * @throws JDOMException
+	 *         if the SAXEngines needed for the batch can not be created.
+	 * @throws InterruptedException
+	 *         if the calling thread is interrupted while waiting for the
+	 *         batch.
+	 */
+	public BatchResult buildAll(final Collection<? extends InputSource> inputs,
+			final int parallelism, final boolean ordered, 
+			final BuildListener listener) 
+					throws JDOMException, InterruptedException {
+		if (listener == null) {
+			throw new NullPointerException("Cannot use a null BuildListener");
+		}
+		return new BatchBuilder(this, inputs, parallelism, ordered, listener).run();
+	}
+
 }
@@ -0,0 +1,335 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.input;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+
+import org.xml.sax.DTDHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+
+import org.jdom2.Document;
+import org.jdom2.JDOMException;
+import org.jdom2.JDOMFactory;
+import org.jdom2.input.sax.SAXEngine;
+import org.jdom2.input.sax.SAXHandler;
+import org.jdom2.internal.ArrayCopy;
+
+/**
+ * A SAXEngine that keeps the text of each document it builds, so that the
+ * SAXHandler records a {@link org.jdom2.SourceSpan} on the Elements. The
+ * whole input is read and decoded first, and the SAX parser then parses the
+ * characters. Byte input is decoded with the encoding that the built-in
+ * parser would use (see {@link DirectSAXEngine}); input in other encodings
+ * is parsed without keeping the text.
+ * 
+ * @see SAXBuilder#setSourceSpans(boolean)
+ */
+final class SourceSpanEngine implements SAXEngine {
+
+	private static final int BUFSIZE = 8192;
+
+	/** How far to look for the XML declaration, like DirectSAXEngine */
+	private static final int HEADSIZE = 256;
+
+	private final SAXEngine engine;
+	private final SAXHandler handler;
+
+	/**
+	 * Create a SourceSpanEngine.
+	 * 
+	 * @param engine
+	 *        The engine that parses the characters.
+	 * @param handler
+	 *        The SAXHandler of that engine.
+	 */
+	SourceSpanEngine(final SAXEngine engine, final SAXHandler handler) {
+		this.engine = engine;
+		this.handler = handler;
+	}
+
+	@Override
+	public JDOMFactory getJDOMFactory() {
+		return engine.getJDOMFactory();
+	}
+
+	@Override
+	public boolean isValidating() {
+		return engine.isValidating();
+	}
+
+	@Override
+	public ErrorHandler getErrorHandler() {
+		return engine.getErrorHandler();
+	}
+
+	@Override
+	public EntityResolver getEntityResolver() {
+		return engine.getEntityResolver();
+	}
+
+	@Override
+	public DTDHandler getDTDHandler() {
+		return engine.getDTDHandler();
+	}
+
+	@Override
+	public boolean getIgnoringElementContentWhitespace() {
+		return engine.getIgnoringElementContentWhitespace();
+	}
+
+	@Override
+	public boolean getIgnoringBoundaryWhitespace() {
+		return engine.getIgnoringBoundaryWhitespace();
+	}
+
+	@Override
+	public boolean getExpandEntities() {
+		return engine.getExpandEntities();
+	}
+
+	@Override
+	public Document build(final InputSource in) throws JDOMException,
+			IOException {
+		CharBuffer text = null;
+		final Reader reader = in.getCharacterStream();
+		if (reader != null) {
+			text = readChars(reader);
+		} else {
+			InputStream stream = in.getByteStream();
+			final boolean opened = stream == null && in.getSystemId() != null;
+			if (opened) {
+				stream = openSystemId(in.getSystemId());
+			}
+			if (stream == null) {
+				return engine.build(in);
+			}
+			try {
+				final byte[] bytes = readBytes(stream);
+				text = decode(bytes, in.getEncoding());
+				if (text == null) {
+					// not an encoding we decode, the parser does it.
+					final InputSource src = new InputSource(
+							new ByteArrayInputStream(bytes));
+					src.setSystemId(in.getSystemId());
+					src.setPublicId(in.getPublicId());
+					src.setEncoding(in.getEncoding());
+					return engine.build(src);
+				}
+			} finally {
+				if (opened) {
+					stream.close();
+				}
+			}
+		}
+		final char[] chars = text.array();
+		int len = text.limit();
+		if (len > 0 && chars[0] == '\uFEFF') {
+			// the parser does not expect a byte order mark in characters.
+			System.arraycopy(chars, 1, chars, 0, --len);
+		}
+		final InputSource src = new InputSource(
+				new CharArrayReader(chars, 0, len));
+		src.setSystemId(in.getSystemId());
+		src.setPublicId(in.getPublicId());
+		handler.setSourceText(chars, len);
+		return engine.build(src);
+	}
+
+	@Override
+	public Document build(final InputStream in) throws JDOMException,
+			IOException {
+		return build(new InputSource(in));
+	}
+
+	@Override
+	public Document build(final File file) throws JDOMException, IOException {
+		return build(file.toURI().toURL());
+	}
+
+	@Override
+	public Document build(final URL url) throws JDOMException, IOException {
+		return build(new InputSource(url.toExternalForm()));
+	}
+
+	@Override
+	public Document build(final InputStream in, final String systemId)
+			throws JDOMException, IOException {
+		final InputSource src = new InputSource(in);
+		src.setSystemId(systemId);
+		return build(src);
+	}
+
+	@Override
+	public Document build(final Reader characterStream) throws JDOMException,
+			IOException {
+		return build(new InputSource(characterStream));
+	}
+
+	@Override
+	public Document build(final Reader characterStream, final String systemId)
+			throws JDOMException, IOException {
+		final InputSource src = new InputSource(characterStream);
+		src.setSystemId(systemId);
+		return build(src);
+	}
+
+	@Override
+	public Document build(final String systemId) throws JDOMException,
+			IOException {
+		return build(new InputSource(systemId));
+	}
+
+	/**
+	 * Open the input of a system ID. A system ID that is not a URL is a file
+	 * name, as it is for the SAX parser.
+	 * 
+	 * @param systemId
+	 *        The system ID
+	 * @return the input.
+	 * @throws IOException
+	 *         if the input can not be opened.
+	 */
+	private static InputStream openSystemId(final String systemId)
+			throws IOException {
+		try {
+			return new URL(systemId).openStream();
+		} catch (MalformedURLException e) {
+			return new FileInputStream(new File(systemId));
+		}
+	}
+
+	/**
+	 * Read all the characters of a Reader.
+	 * 
+	 * @param reader
+	 *        The Reader
+	 * @return the characters, from 0 to the limit of the buffer.
+	 * @throws IOException
+	 *         if the Reader fails.
+	 */
+	private static CharBuffer readChars(final Reader reader) throws IOException {
+		char[] buf = new char[BUFSIZE];
+		int len = 0;
+		int got;
+		while ((got = reader.read(buf, len, buf.length - len)) >= 0) {
+			len += got;
+			if (len == buf.length) {
+				buf = ArrayCopy.copyOf(buf, len * 2);
+			}
+		}
+		return CharBuffer.wrap(buf, 0, len);
+	}
+
+	/**
+	 * Read all the bytes of an InputStream.
+	 * 
+	 * @param stream
+	 *        The InputStream
+	 * @return the bytes.
+	 * @throws IOException
+	 *         if the InputStream fails.
+	 */
+	private static byte[] readBytes(final InputStream stream) throws IOException {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream(BUFSIZE);
+		final byte[] buf = new byte[BUFSIZE];
+		int got;
+		while ((got = stream.read(buf)) >= 0) {
+			baos.write(buf, 0, got);
+		}
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Decode the bytes of a document.
+	 * 
+	 * @param bytes
+	 *        The document
+	 * @param declared
+	 *        The encoding set on the InputSource, may be null.
+	 * @return the characters, or null if the encoding is not one that
+	 *         {@link DirectSAXEngine} decodes.
+	 * @throws IOException
+	 *         if the bytes are not valid in the encoding.
+	 */
+	private static CharBuffer decode(final byte[] bytes, final String declared)
+			throws IOException {
+		String charset = DirectSAXEngine.detectCharset(bytes,
+				Math.min(bytes.length, HEADSIZE));
+		if (charset != null && declared != null) {
+			charset = DirectSAXEngine.supported(declared);
+		}
+		if (charset == null) {
+			return null;
+		}
+		// the characters are in the array of the buffer, from 0 to the limit.
+		return Charset.forName(charset).newDecoder().decode(
+				ByteBuffer.wrap(bytes));
+	}
+
+}
@@ -0,0 +1,607 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.input;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.xml.sax.InputSource;
+
+import org.jdom2.Content;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.sax.SAXEngine;
+import org.jdom2.internal.ArrayCopy;
+import org.jdom2.located.LocationTable;
+
+/**
+ * Builds one large document in parallel, for
+ * {@link SAXBuilder#buildParallel(ByteBuffer, String, int)}.
+ * <p>
+ * The bytes are pre-scanned to find the child Elements of the root Element.
+ * The root's content is split in to chunks at the start tags of those
+ * children. Each chunk is parsed as a document of its own, which is the
+ * original document's prolog and root start tag, the chunk, and a root
+ * end tag, so every chunk has the root's Namespace declarations (and
+ * xml:base, xml:space, ...) in scope. Padding inside the root start tag
+ * puts the chunk at its original line (and usually column), so the
+ * locations seen by the JDOMFactory and in errors are those of the whole
+ * document.
+ * <p>
+ * Workers parse the chunks with their own SAXEngine, and the calling thread
+ * moves the content of each chunk's root to the first chunk's root, in
+ * document order, as the chunks complete.
+ */
+final class SplitBuilder {
+
+	/** The smallest chunk worth parsing on its own thread */
+	static final int MINCHUNK = 64 * 1024;
+
+	/** The number of chunks per thread, to balance uneven records */
+	private static final int CHUNKSPERTHREAD = 4;
+
+	/**
+	 * The result of parsing one chunk.
+	 */
+	private static final class Outcome {
+		private final int index;
+		private final Document document;
+		private final Exception error;
+		private final Error fatal;
+
+		Outcome(final int index, final Document document, final Exception error,
+				final Error fatal) {
+			this.index = index;
+			this.document = document;
+			this.error = error;
+			this.fatal = fatal;
+		}
+	}
+
+	/**
+	 * A worker thread, parses chunks until there are none left.
+	 */
+	private final class Worker extends Thread {
+		private final SAXEngine engine;
+
+		Worker(final SAXEngine engine, final int id) {
+			super("JDOM Split Builder " + id);
+			setDaemon(true);
+			this.engine = engine;
+		}
+
+		@Override
+		public void run() {
+			while (!abandoned) {
+				final int index = next.getAndIncrement();
+				if (index >= chunks) {
+					return;
+				}
+				try {
+					results.add(new Outcome(index,
+							engine.build(chunk(index)), null, null));
+				} catch (Exception e) {
+					results.add(new Outcome(index, null, e, null));
+				} catch (Error e) {
+					results.add(new Outcome(index, null, null, e));
+				}
+			}
+		}
+	}
+
+	private final SAXBuilder builder;
+	private final ByteBuffer buf;
+	private final ByteBuffer original;
+	private final String systemId;
+	private final int parallelism;
+	private final int limit;
+
+	/** The offset of the root start tag, and of its '>' */
+	private int rootStart = 0;
+	private int rootClose = 0;
+	/** The end of the root's name */
+	private int nameEnd = 0;
+	/** The start of each chunk, with its line and column */
+	private int[] starts = new int[16];
+	private int[] lines = new int[16];
+	private int[] columns = new int[16];
+	private int chunks = 0;
+
+	private final AtomicInteger next = new AtomicInteger();
+	private final BlockingQueue<Outcome> results = new LinkedBlockingQueue<Outcome>();
+	private volatile boolean abandoned = false;
+
+	/**
+	 * Prepare a parallel build.
+	 *
+	 * @param builder The (not thread-safe) builder used to create engines.
+	 * @param buffer The document.
+	 * @param systemId The system ID of the document, may be null.
+	 * @param parallelism The number of threads to use.
+	 */
+	SplitBuilder(final SAXBuilder builder, final ByteBuffer buffer,
+			final String systemId, final int parallelism) {
+		if (buffer == null) {
+			throw new NullPointerException("Cannot read a null ByteBuffer");
+		}
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"Parallelism must be at least 1, not " + parallelism);
+		}
+		this.builder = builder;
+		this.original = buffer;
+		this.buf = buffer.slice();
+		this.limit = buf.limit();
+		this.systemId = systemId;
+		// an XMLFilter instance can not be shared by engines, a
+		// validating parser would validate each chunk on its own, and the
+		// source spans are for the text of the whole document.
+		this.parallelism = builder.getXMLFilter() != null
+				|| builder.isValidating() || builder.getSourceSpans()
+				? 1 : parallelism;
+	}
+
+	/**
+	 * Build the document, in parallel if it can be split.
+	 *
+	 * @return the Document.
+	 * @throws JDOMException if the document is not well-formed.
+	 * @throws IOException if the document can not be read.
+	 * @throws InterruptedException if the calling thread is interrupted.
+	 */
+	Document run() throws JDOMException, IOException, InterruptedException {
+		if (parallelism < 2 || !scan()) {
+			return systemId == null ? builder.build(original)
+					: builder.build(original, systemId);
+		}
+		final Worker[] workers = new Worker[Math.min(parallelism, chunks)];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Worker(builder.buildEngine(), i);
+		}
+		try {
+			for (Worker w : workers) {
+				w.start();
+			}
+			final HashMap<Integer, Outcome> pending = new HashMap<Integer, Outcome>();
+			Document doc = null;
+			int stitched = 0;
+			while (stitched < chunks) {
+				Outcome outcome = results.take();
+				pending.put(outcome.index, outcome);
+				while ((outcome = pending.remove(stitched)) != null) {
+					doc = stitch(doc, outcome);
+					stitched++;
+				}
+			}
+			return doc;
+		} finally {
+			abandoned = true;
+		}
+	}
+
+	/**
+	 * Add the content of a parsed chunk to the Document.
+	 *
+	 * @param doc The Document built from the first chunk, null if this is
+	 *        the first chunk.
+	 * @param outcome The parsed chunk.
+	 * @return the Document.
+	 * @throws JDOMException if the chunk could not be parsed.
+	 * @throws IOException if the chunk could not be read.
+	 */
+	private Document stitch(final Document doc, final Outcome outcome)
+			throws JDOMException, IOException {
+		if (outcome.fatal != null) {
+			throw outcome.fatal;
+		}
+		if (outcome.error instanceof JDOMException) {
+			throw (JDOMException)outcome.error;
+		}
+		if (outcome.error instanceof IOException) {
+			throw (IOException)outcome.error;
+		}
+		if (outcome.error != null) {
+			throw (RuntimeException)outcome.error;
+		}
+		if (doc == null) {
+			return outcome.document;
+		}
+		final Element root = doc.getRootElement();
+		final Document part = outcome.document;
+		final Element proot = part.getRootElement();
+		root.addContent(proot.removeContent());
+		if (outcome.index == chunks - 1) {
+			// the last chunk has the epilog.
+			final List<Content> epilog = part.getContent();
+			final int rindex = part.indexOf(proot);
+			while (epilog.size() > rindex + 1) {
+				doc.addContent(epilog.remove(rindex + 1));
+			}
+		}
+		final LocationTable plocs = LocationTable.get(part);
+		if (plocs != null) {
+			// keep the locations of the content that moved to doc.
+			final LocationTable locs = LocationTable.install(doc);
+			for (int i = 0; i < plocs.size(); i++) {
+				final Content c = plocs.getContent(i);
+				if (c.getDocument() == doc) {
+					locs.add(c, plocs.getLine(i), plocs.getColumn(i),
+							plocs.getOffset(i));
+				}
+			}
+		}
+		return doc;
+	}
+
+	/**
+	 * Create the input for one chunk.
+	 *
+	 * @param index The chunk.
+	 * @return the InputSource for the chunk's document.
+	 */
+	private InputSource chunk(final int index) {
+		final int start = starts[index];
+		final boolean last = index == chunks - 1;
+		final int end = last ? limit : starts[index + 1];
+		InputStream in;
+		if (index == 0) {
+			// the first chunk starts right after the original root start tag.
+			in = range(0, end);
+		} else {
+			in = new SequenceInputStream(range(0, rootClose),
+					new ByteArrayInputStream(padding(index)));
+			in = new SequenceInputStream(in, range(start, end));
+		}
+		if (!last) {
+			final byte[] close = new byte[nameEnd - rootStart + 2];
+			close[0] = '<';
+			close[1] = '/';
+			for (int i = rootStart + 1; i < nameEnd; i++) {
+				close[i - rootStart + 1] = buf.get(i);
+			}
+			close[close.length - 1] = '>';
+			in = new SequenceInputStream(in, new ByteArrayInputStream(close));
+		}
+		final InputSource source = new InputSource(in);
+		source.setSystemId(systemId);
+		return source;
+	}
+
+	/**
+	 * Get a stream of a range of the document.
+	 *
+	 * @param from The start of the range.
+	 * @param to The end of the range.
+	 * @return A stream of the bytes in the range.
+	 */
+	private InputStream range(final int from, final int to) {
+		final ByteBuffer range = buf.duplicate();
+		range.limit(to);
+		range.position(from);
+		return new ByteBufferInputStream(range);
+	}
+
+	/**
+	 * Create the end of the root start tag for a chunk, with the whitespace
+	 * that puts the chunk at its original line and column.
+	 *
+	 * @param index The chunk.
+	 * @return The bytes between the root start tag and the chunk.
+	 */
+	private byte[] padding(final int index) {
+		final int nl = lines[index];
+		final int col = columns[index];
+		final int spaces = nl == 0 ? starts[index] - rootClose - 1
+				: (col > 1 ? col - 2 : 0);
+		final byte[] pad = new byte[nl + spaces + 1];
+		int p = 0;
+		if (nl > 0 && col <= 1) {
+			// the '>' ends the line before the chunk.
+			while (p < nl - 1) {
+				pad[p++] = '\n';
+			}
+			pad[p++] = '>';
+			pad[p++] = '\n';
+			return pad;
+		}
+		while (p < nl) {
+			pad[p++] = '\n';
+		}
+		while (p < nl + spaces) {
+			pad[p++] = ' ';
+		}
+		pad[p] = '>';
+		return pad;
+	}
+
+	/* ------------------------------------------------------------
+	 * The pre-scan. This only finds the structure, the chunk parsers check
+	 * that the document is well-formed. Anything unexpected means the
+	 * document is built sequentially, where the errors are reported.
+	 * ------------------------------------------------------------ */
+
+	/** The number of newlines before {@link #pos} */
+	private int newlines = 0;
+	/** The offset of the last newline before {@link #pos} */
+	private int lastNewline = -1;
+	/** The scan position */
+	private int pos = 0;
+
+	/**
+	 * Get a byte.
+	 *
+	 * @param p The offset.
+	 * @return the unsigned byte, or -1 past the end of the document.
+	 */
+	private int byt(final int p) {
+		return p < limit ? buf.get(p) & 0xFF : -1;
+	}
+
+	/**
+	 * Test whether the bytes at the scan position are the given ASCII text.
+	 *
+	 * @param s The text.
+	 * @return true if the text is at the scan position.
+	 */
+	private boolean lookingAt(final String s) {
+		final int len = s.length();
+		if (pos + len > limit) {
+			return false;
+		}
+		for (int i = 0; i < len; i++) {
+			if (buf.get(pos + i) != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Move the scan position to the next occurrence of a byte, counting
+	 * newlines.
+	 *
+	 * @param b The byte to find.
+	 * @return false if the byte is not found.
+	 */
+	private boolean skipTo(final int b) {
+		int p = pos;
+		while (p < limit) {
+			final int c = buf.get(p);
+			if (c == b) {
+				pos = p;
+				return true;
+			}
+			if (c == '\n') {
+				newlines++;
+				lastNewline = p;
+			}
+			p++;
+		}
+		pos = limit;
+		return false;
+	}
+
+	/**
+	 * Move the scan position to after the next occurrence of ASCII text.
+	 *
+	 * @param s The text to find.
+	 * @return false if the text is not found.
+	 */
+	private boolean skipPast(final String s) {
+		final int first = s.charAt(0);
+		while (skipTo(first)) {
+			if (lookingAt(s)) {
+				pos += s.length();
+				return true;
+			}
+			pos++;
+		}
+		return false;
+	}
+
+	/**
+	 * Move the scan position past a tag, skipping quoted attribute values.
+	 *
+	 * @return false if the tag is not terminated.
+	 */
+	private boolean skipTag() {
+		for (;;) {
+			final int c = byt(pos);
+			if (c < 0) {
+				return false;
+			}
+			if (c == '>') {
+				pos++;
+				return true;
+			}
+			if (c == '"' || c == '\'') {
+				pos++;
+				if (!skipTo(c)) {
+					return false;
+				}
+			} else if (c == '\n') {
+				newlines++;
+				lastNewline = pos;
+			}
+			pos++;
+		}
+	}
+
+	/**
+	 * Find the root Element and the chunks of its content.
+	 *
+	 * @return false if the document can not be split.
+	 */
+	private boolean scan() {
+		if (byt(0) == 0xEF && byt(1) == 0xBB && byt(2) == 0xBF) {
+			pos = 3;
+		}
+		// only ASCII-based encodings can be split at '<' bytes.
+		final int first = byt(pos);
+		if (first != '<' && first != ' ' && first != '\n' && first != '\r'
+				&& first != '\t') {
+			return false;
+		}
+		if (limit - pos < 2 * MINCHUNK) {
+			return false;
+		}
+		for (;;) {
+			if (!skipTo('<')) {
+				return false;
+			}
+			if (lookingAt("<?")) {
+				if (!skipPast("?>")) {
+					return false;
+				}
+			} else if (lookingAt("<!--")) {
+				if (!skipPast("-->")) {
+					return false;
+				}
+			} else if (lookingAt("<!")) {
+				// a DOCTYPE may declare entities and default attributes.
+				return false;
+			} else {
+				break;
+			}
+		}
+		rootStart = pos;
+		pos++;
+		while (pos < limit && " \t\r\n/>".indexOf(byt(pos)) < 0) {
+			pos++;
+		}
+		nameEnd = pos;
+		if (!skipTag() || byt(pos - 2) == '/') {
+			return false;
+		}
+		rootClose = pos - 1;
+		final int rootLines = newlines;
+		final int target = Math.max(MINCHUNK,
+				(limit - pos) / (parallelism * CHUNKSPERTHREAD));
+		addChunk(pos, 0, 0);
+		int boundary = pos + target;
+		int depth = 1;
+		while (depth > 0) {
+			if (!skipTo('<')) {
+				return false;
+			}
+			final int n = byt(pos + 1);
+			if (n == '/') {
+				depth--;
+				if (!skipTag()) {
+					return false;
+				}
+			} else if (n == '!') {
+				if (lookingAt("<!--")) {
+					if (!skipPast("-->")) {
+						return false;
+					}
+				} else if (lookingAt("<![CDATA[")) {
+					if (!skipPast("]]>")) {
+						return false;
+					}
+				} else {
+					return false;
+				}
+			} else if (n == '?') {
+				if (!skipPast("?>")) {
+					return false;
+				}
+			} else {
+				if (depth == 1 && pos >= boundary) {
+					addChunk(pos, newlines - rootLines, pos - lastNewline);
+					boundary = pos + target;
+				}
+				pos++;
+				if (!skipTag()) {
+					return false;
+				}
+				if (byt(pos - 2) != '/') {
+					depth++;
+				}
+			}
+		}
+		return chunks > 1;
+	}
+
+	/**
+	 * Record the start of a chunk.
+	 *
+	 * @param start The offset of the chunk.
+	 * @param line The number of newlines between the root start tag and the
+	 *        chunk.
+	 * @param column The (byte) column of the chunk on its line.
+	 */
+	private void addChunk(final int start, final int line, final int column) {
+		if (chunks == starts.length) {
+			starts = ArrayCopy.copyOf(starts, chunks << 1);
+			lines = ArrayCopy.copyOf(lines, chunks << 1);
+			columns = ArrayCopy.copyOf(columns, chunks << 1);
+		}
+		starts[chunks] = start;
+		lines[chunks] = line;
+		columns[chunks] = column;
+		chunks++;
+	}
+
+}
@@ -57,7 +57,9 @@ package org.jdom2.input;
 import static javax.xml.stream.XMLStreamConstants.*;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamException;
@@ -72,8 +74,10 @@ import org.jdom2.JDOMException;
 import org.jdom2.JDOMFactory;
 import org.jdom2.Namespace;
 import org.jdom2.Verifier;
+import org.jdom2.input.sax.Projection;
 import org.jdom2.input.stax.DTDParser;
 import org.jdom2.input.stax.StAXFilter;
+import org.jdom2.internal.ArrayCopy;
 
 /**
  * Builds a JDOM Document from a StAX-based XMLStreamReader.
@@ -114,12 +118,14 @@ public class StAXStreamBuilder {
 	 * Create a Document from an XMLStreamReader
 	 * @param factory The {@link JDOMFactory} to use
 	 * @param stream The XMLStreamReader to read from
+	 * @param projection The parts of the document to build, or null
 	 * @return the parsed Document
 	 * @throws JDOMException if there is any issue
 	 * 				(XMLStreamExceptions are wrapped).
 	 */
 	private static final Document process(final JDOMFactory factory, 
-			final XMLStreamReader stream) throws JDOMException {
+			final XMLStreamReader stream, final Projection projection)
+			throws JDOMException {
 		try {
 
 			int state = stream.getEventType();
@@ -151,7 +157,9 @@ public class StAXStreamBuilder {
 						break;
 
 					case START_ELEMENT:
-						document.setRootElement(processElementFragment(factory, stream));
+						document.setRootElement(projection == null
+								? processElementFragment(factory, stream)
+								: processProjectedElement(factory, stream, projection));
 						break;
 
 					case END_ELEMENT:
@@ -499,8 +507,193 @@ public class StAXStreamBuilder {
 		return fragment;
 	}
 
+	/**
+	 * Build the root Element, with only the content selected by a Projection.
+	 * The reader is left at the END_ELEMENT of the root.
+	 */
+	private static final Element processProjectedElement(final JDOMFactory factory,
+			final XMLStreamReader reader, final Projection projection)
+			throws XMLStreamException, JDOMException {
+
+		Projection.Match match = projection.root(reader.getNamespaceURI(),
+				reader.getLocalName());
+		if (match.isAll()) {
+			return processElementFragment(factory, reader);
+		}
+		final Element root = processElement(factory, reader, projection);
+		Projection.Match[] matches = new Projection.Match[16];
+		matches[0] = match;
+		Element current = root;
+		int depth = 1;
+		while (depth > 0 && reader.hasNext()) {
+			switch(reader.next()) {
+				case START_ELEMENT:
+					match = projection.match(matches[depth - 1],
+							reader.getNamespaceURI(), reader.getLocalName());
+					if (match == null) {
+						skipElement(reader);
+					} else if (match.isAll()) {
+						current.addContent(processElementFragment(factory, reader));
+					} else {
+						final Element tmp = processElement(factory, reader, projection);
+						current.addContent(tmp);
+						current = tmp;
+						if (depth == matches.length) {
+							matches = ArrayCopy.copyOf(matches, depth * 2);
+						}
+						matches[depth++] = match;
+					}
+					break;
+				case END_ELEMENT:
+					current = current.getParentElement();
+					depth--;
+					break;
+				case CDATA:
+				case SPACE:
+				case CHARACTERS:
+				case COMMENT:
+				case ENTITY_REFERENCE:
+				case PROCESSING_INSTRUCTION:
+					// content of Elements that are only built for structure.
+					break;
+				default:
+					throw new JDOMException("Unexpected XMLStream event " + reader.getEventType());
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * Skip an Element and all its content. The reader is left at the
+	 * Element's END_ELEMENT.
+	 */
+	private static final void skipElement(final XMLStreamReader reader)
+			throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0 && reader.hasNext()) {
+			switch (reader.next()) {
+				case START_ELEMENT:
+					depth++;
+					break;
+				case END_ELEMENT:
+					depth--;
+					break;
+				default:
+					// skipped.
+			}
+		}
+	}
+
+	/**
+	 * Lazily builds the Element fragments selected by a StAXFilter. Unlike
+	 * {@link StAXStreamBuilder#buildFragments(XMLStreamReader, StAXFilter)}
+	 * the Elements that are not included are searched for included
+	 * descendants, so repeated 'record' Elements at any depth can be
+	 * returned. Content outside the included Elements is skipped.
+	 * <p>
+	 * hasNext() advances the reader to the START_ELEMENT of the next
+	 * included Element, and next() builds it (applying the filter's prune
+	 * methods), leaving the reader at its END_ELEMENT.
+	 */
+	private static final class FragmentIterator implements Iterator<Element> {
+		private final JDOMFactory factory;
+		private final XMLStreamReader reader;
+		private final StAXFilter filter;
+		/** The number of open (not included) Elements we are inside */
+		private int depth = 0;
+		/** true if the reader is at the START_ELEMENT of a fragment */
+		private boolean pending = false;
+		private boolean done = false;
+
+		FragmentIterator(final JDOMFactory factory, 
+				final XMLStreamReader reader, final StAXFilter filter) {
+			this.factory = factory;
+			this.reader = reader;
+			this.filter = filter;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (pending) {
+				return true;
+			}
+			if (done) {
+				return false;
+			}
+			try {
+				while (reader.hasNext()) {
+					switch (reader.next()) {
+						case START_ELEMENT:
+							final QName qn = reader.getName();
+							if (filter.includeElement(depth, qn.getLocalPart(), 
+									Namespace.getNamespace(qn.getPrefix(), 
+											qn.getNamespaceURI()))) {
+								pending = true;
+								return true;
+							}
+							depth++;
+							break;
+						case END_ELEMENT:
+							depth--;
+							break;
+						case END_DOCUMENT:
+							done = true;
+							return false;
+						default:
+							// content outside the fragments is skipped.
+							break;
+					}
+				}
+				done = true;
+				return false;
+			} catch (XMLStreamException e) {
+				done = true;
+				throw new IllegalStateException("Unable to read the next " +
+						"fragment from the XMLStreamReader.", 
+						new JDOMException("Unable to process fragments " +
+								"from XMLStreamReader.", e));
+			}
+		}
+
+		@Override
+		public Element next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException("No more fragments.");
+			}
+			pending = false;
+			try {
+				return processPrunableElement(factory, reader, depth, filter);
+			} catch (XMLStreamException e) {
+				done = true;
+				throw new IllegalStateException("Unable to build the " +
+						"fragment from the XMLStreamReader.", 
+						new JDOMException("Unable to process fragments " +
+								"from XMLStreamReader.", e));
+			} catch (JDOMException e) {
+				done = true;
+				throw new IllegalStateException("Unable to build the " +
+						"fragment from the XMLStreamReader.", e);
+			}
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException(
+					"Cannot remove fragments from an XMLStreamReader.");
+		}
+	}
+
 	private static final Element processElement(final JDOMFactory factory, 
 			final XMLStreamReader reader) {
+		return processElement(factory, reader, null);
+	}
+
+	/**
+	 * Create the Element at the START_ELEMENT, with only the attributes in a
+	 * Projection (if there is one).
+	 */
+	private static final Element processElement(final JDOMFactory factory, 
+			final XMLStreamReader reader, final Projection projection) {
 
 		final Element element = factory.element(reader.getLocalName(),
 				Namespace.getNamespace(reader.getPrefix(), 
@@ -508,6 +701,10 @@ public class StAXStreamBuilder {
 
 		// Handle attributes
 		for (int i=0, len=reader.getAttributeCount(); i<len; i++) {
+			if (projection != null && !projection.keepAttribute(
+					reader.getAttributeNamespace(i), reader.getAttributeLocalName(i))) {
+				continue;
+			}
 			factory.setAttribute(element, factory.attribute(
 					reader.getAttributeLocalName(i),
 					reader.getAttributeValue(i), 
@@ -529,6 +726,9 @@ public class StAXStreamBuilder {
 	/** The factory to use for parsing */
 	private JDOMFactory builderfactory = new DefaultJDOMFactory();
 
+	/** The parts of the documents to build, or null for everything */
+	private Projection projection = null;
+
 	/**
 	 * Returns the current {@link org.jdom2.JDOMFactory} in use.
 	 * @return the factory in use
@@ -547,6 +747,31 @@ public class StAXStreamBuilder {
 		this.builderfactory = factory;
 	}
 
+	/**
+	 * Returns the parts of the documents that {@link #build(XMLStreamReader)}
+	 * builds.
+	 * 
+	 * @return the Projection, or null if documents are built completely.
+	 */
+	public Projection getProjection() {
+		return projection;
+	}
+
+	/**
+	 * Specifies the parts of the documents to build. Only the Elements
+	 * selected by the {@link Projection} (with all their content) and their
+	 * ancestors are built by {@link #build(XMLStreamReader)}; the rest of
+	 * the document is read past without creating JDOM content. The
+	 * fragment methods are not affected.
+	 * 
+	 * @param projection
+	 *        The parts of the documents to build, or null to build
+	 *        everything.
+	 */
+	public void setProjection(Projection projection) {
+		this.projection = projection;
+	}
+
 	/**
 	 * This builds a document from the supplied
 	 * XMLStreamReader.
@@ -558,7 +783,7 @@ public class StAXStreamBuilder {
 	 * @throws JDOMException when errors occur in parsing
 	 */
 	public Document build(XMLStreamReader reader) throws JDOMException {
-		return process(builderfactory, reader);
+		return process(builderfactory, reader, projection);
 	}
 	
 	/**
@@ -573,6 +798,41 @@ public class StAXStreamBuilder {
 		return processFragments(builderfactory, reader, filter);
 	}
 
+	/**
+	 * Lazily read the Element fragments from an XMLStreamReader that conform
+	 * to the rules in the supplied StAXFilter. Each fragment is only built
+	 * when the Iterator's next() method is called, so a large input can be
+	 * processed one fragment at a time, with memory bounded by the largest
+	 * fragment.
+	 * <p>
+	 * Elements for which
+	 * {@link StAXFilter#includeElement(int, String, Namespace)} returns true
+	 * are built (using the filter's prune methods for their content). The
+	 * descendants of other Elements are checked too (with increasing depth),
+	 * so nested repeating Elements can be selected. All content outside the
+	 * selected Elements is skipped.
+	 * <p>
+	 * The XMLStreamReader is only advanced by the Iterator's hasNext() and
+	 * next() methods. Between calls to next() and hasNext() the reader is at
+	 * the END_ELEMENT of the last fragment. Parse problems are thrown as an
+	 * IllegalStateException with the JDOMException as the cause.
+	 * 
+	 * @param reader The XMLStreamReader to parse, at its START_DOCUMENT
+	 * @param filter The Filter that selects the Elements
+	 * @return an Iterator over the selected Element fragments
+	 * @throws JDOMException if the reader is not at the START_DOCUMENT
+	 */
+	public Iterator<Element> iterateFragments(XMLStreamReader reader, StAXFilter filter) throws JDOMException {
+		if (START_DOCUMENT != reader.getEventType()) {
+			throw new JDOMException("JDOM requires that XMLStreamReaders " +
+					"are at their beginning when being processed.");
+		}
+		if (filter == null) {
+			throw new NullPointerException("Cannot use a null StAXFilter");
+		}
+		return new FragmentIterator(builderfactory, reader, filter);
+	}
+
 	
 	/**
 	 * Read the current XML Fragment from the XMLStreamReader.
@@ -58,7 +58,9 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.Source;
@@ -84,6 +86,13 @@ import org.jdom2.JDOMException;
  * File xmlfile = new File(&quot;data.xml&quot;);
  * Document validdoc = builder.build(xmlfile);
  * </pre>
+ * <p>
+ * Each factory compiles its sources, unless it is created with a
+ * {@link GrammarCache}: the compiled Schema is then kept in the cache when
+ * the sources are identified by system IDs, URLs or Files, so creating
+ * another factory for the same sources with the same cache does not compile
+ * them again. Schemas identified by a system ID or URL are not compiled
+ * again when the resource changes (see {@link GrammarCache#clear()}).
  * 
  * @see org.jdom2.input.sax
  * @author Rolf Lear
@@ -116,6 +125,8 @@ public class AbstractReaderXSDFactory extends AbstractReaderSchemaFactory {
 	 * Compile an array of String URLs in to Sources which are then compiled in
 	 * to a single Schema
 	 * 
+	 * @param cache
+	 *        The GrammarCache for the Schema, or null to always compile it.
 	 * @param systemID
 	 *        The source URLs to compile
 	 * @return the resulting Schema
@@ -123,7 +134,7 @@ public class AbstractReaderXSDFactory extends AbstractReaderSchemaFactory {
 	 *         if there is a problem with the Sources
 	 */
 	private static final Schema getSchemaFromString(final SchemaFactoryProvider sfp,
-			String... systemID) throws JDOMException {
+			final GrammarCache cache, String... systemID) throws JDOMException {
 		if (systemID == null) {
 			throw new NullPointerException("Cannot specify a null input array");
 		}
@@ -138,13 +149,15 @@ public class AbstractReaderXSDFactory extends AbstractReaderSchemaFactory {
 			}
 			urls[i] = new StreamSource(systemID[i]);
 		}
-		return getSchemaFromSource(sfp, urls);
+		return getSchemaFromSource(sfp, cache, urls);
 	}
 
 	/**
 	 * Compile an array of Files in to URLs which are then compiled in to a
 	 * single Schema
 	 * 
+	 * @param cache
+	 *        The GrammarCache for the Schema, or null to always compile it.
 	 * @param systemID
 	 *        The source Files to compile
 	 * @return the resulting Schema
@@ -152,7 +165,7 @@ public class AbstractReaderXSDFactory extends AbstractReaderSchemaFactory {
 	 *         if there is a problem with the Sources
 	 */
 	private static final Schema getSchemaFromFile(final SchemaFactoryProvider sfp,
-			File... systemID) throws JDOMException {
+			final GrammarCache cache, File... systemID) throws JDOMException {
 		if (systemID == null) {
 			throw new NullPointerException("Cannot specify a null input array");
 		}
@@ -160,20 +173,31 @@ public class AbstractReaderXSDFactory extends AbstractReaderSchemaFactory {
 			throw new IllegalArgumentException("You need at least one " +
 					"XSD source for an XML Schema validator");
 		}
+		final List<Object> key = newKey(sfp, systemID.length * 3);
 		Source[] sources = new Source[systemID.length];
 		for (int i = 0; i < systemID.length; i++) {
 			if (systemID[i] == null) {
 				throw new NullPointerException("Cannot specify a null SystemID");
 			}
 			sources[i] = new StreamSource(systemID[i]);
+			// a changed file is compiled again.
+			key.add(systemID[i].getAbsoluteFile());
+			key.add(Long.valueOf(systemID[i].lastModified()));
+			key.add(Long.valueOf(systemID[i].length()));
+		}
+		final Schema schema = cache == null ? null : cache.getSchema(key);
+		if (schema != null) {
+			return schema;
 		}
-		return getSchemaFromSource(sfp, sources);
+		return cache(cache, key, compileSchema(sfp, sources));
 	}
 
 	/**
 	 * Compile an array of URLs in to Sources which are then compiled in to a
 	 * single Schema
 	 * 
+	 * @param cache
+	 *        The GrammarCache for the Schema, or null to always compile it.
 	 * @param systemID
 	 *        The source URLs to compile
 	 * @return the resulting Schema
@@ -181,7 +205,7 @@ public class AbstractReaderXSDFactory extends AbstractReaderSchemaFactory {
 	 *         if there is a problem with the Sources
 	 */
 	private static final Schema getSchemaFromURL(final SchemaFactoryProvider sfp,
-			URL... systemID) throws JDOMException {
+			final GrammarCache cache, URL... systemID) throws JDOMException {
 		if (systemID == null) {
 			throw new NullPointerException("Cannot specify a null input array");
 		}
@@ -189,6 +213,18 @@ public class AbstractReaderXSDFactory extends AbstractReaderSchemaFactory {
 			throw new IllegalArgumentException("You need at least one " +
 					"XSD source for an XML Schema validator");
 		}
+		final List<Object> key = newKey(sfp, systemID.length);
+		for (URL url : systemID) {
+			if (url == null) {
+				throw new NullPointerException("Cannot specify a null SystemID");
+			}
+			// URL.equals() may resolve host names, the String does not.
+			key.add(url.toExternalForm());
+		}
+		final Schema schema = cache == null ? null : cache.getSchema(key);
+		if (schema != null) {
+			return schema;
+		}
 		InputStream[] streams = new InputStream[systemID.length];
 		try {
 			Source[] sources = new Source[systemID.length];
@@ -206,7 +242,7 @@ public class AbstractReaderXSDFactory extends AbstractReaderSchemaFactory {
 				streams[i] = is;
 				sources[i] = new StreamSource(is, systemID[i].toString());
 			}
-			return getSchemaFromSource(sfp, sources);
+			return cache(cache, key, compileSchema(sfp, sources));
 		} finally {
 			for (InputStream is : streams) {
 				if (is != null) {
@@ -221,8 +257,46 @@ public class AbstractReaderXSDFactory extends AbstractReaderSchemaFactory {
 	}
 
 	/**
-	 * Compile an array of Sources in to a single Schema
+	 * Start the GrammarCache key for a set of Schema sources.
 	 * 
+	 * @param sfp
+	 *        The SchemaFactoryProvider that compiles the Schema
+	 * @param size
+	 *        The number of source identities that will be added.
+	 * @return the key, with the SchemaFactoryProvider.
+	 */
+	private static final List<Object> newKey(final SchemaFactoryProvider sfp,
+			final int size) {
+		final List<Object> key = new ArrayList<Object>(size + 1);
+		key.add(sfp);
+		return key;
+	}
+
+	/**
+	 * Add a compiled Schema to a GrammarCache.
+	 * 
+	 * @param cache
+	 *        The GrammarCache, or null to not keep the Schema.
+	 * @param key
+	 *        The identity of the sources.
+	 * @param schema
+	 *        The compiled Schema
+	 * @return the Schema
+	 */
+	private static final Schema cache(final GrammarCache cache,
+			final List<Object> key, final Schema schema) {
+		if (cache != null) {
+			cache.putSchema(key, schema);
+		}
+		return schema;
+	}
+
+	/**
+	 * Compile an array of Sources in to a single Schema, or get it from the
+	 * GrammarCache if the Sources are all identified by a system ID only.
+	 * 
+	 * @param cache
+	 *        The GrammarCache for the Schema, or null to always compile it.
 	 * @param sources
 	 *        The sources to compile
 	 * @return the resulting Schema
@@ -230,7 +304,7 @@ public class AbstractReaderXSDFactory extends AbstractReaderSchemaFactory {
 	 *         if there is a problem with the Sources
 	 */
 	private static final Schema getSchemaFromSource(final SchemaFactoryProvider sfp, 
-			Source... sources) throws JDOMException {
+			final GrammarCache cache, Source... sources) throws JDOMException {
 		if (sources == null) {
 			throw new NullPointerException("Cannot specify a null input array");
 		}
@@ -238,6 +312,38 @@ public class AbstractReaderXSDFactory extends AbstractReaderSchemaFactory {
 			throw new IllegalArgumentException("You need at least one " +
 					"XSD Source for an XML Schema validator");
 		}
+		List<Object> key = newKey(sfp, sources.length);
+		for (Source src : sources) {
+			if (!(src instanceof StreamSource) || src.getSystemId() == null
+					|| ((StreamSource)src).getInputStream() != null
+					|| ((StreamSource)src).getReader() != null) {
+				// the content does not come from the system ID.
+				key = null;
+				break;
+			}
+			key.add(src.getSystemId());
+		}
+		if (key == null || cache == null) {
+			return compileSchema(sfp, sources);
+		}
+		final Schema schema = cache.getSchema(key);
+		if (schema != null) {
+			return schema;
+		}
+		return cache(cache, key, compileSchema(sfp, sources));
+	}
+
+	/**
+	 * Compile an array of Sources in to a single Schema
+	 * 
+	 * @param sources
+	 *        The sources to compile
+	 * @return the resulting Schema
+	 * @throws JDOMException
+	 *         if there is a problem with the Sources
+	 */
+	private static final Schema compileSchema(final SchemaFactoryProvider sfp, 
+			Source... sources) throws JDOMException {
 		try {
 			SchemaFactory sfac = schemafactl.get();
 			if (sfac == null) {
@@ -272,7 +378,31 @@ public class AbstractReaderXSDFactory extends AbstractReaderSchemaFactory {
 	 */
 	public AbstractReaderXSDFactory(final SAXParserFactory fac,
 			final SchemaFactoryProvider sfp, String... systemid) throws JDOMException {
-		super(fac, getSchemaFromString(sfp, systemid));
+		super(fac, getSchemaFromString(sfp, null, systemid));
+	}
+
+	/**
+	 * Create an XML Schema validating XMLReader factory using one or more XSD
+	 * sources from SystemID references, keeping the compiled Schema in a
+	 * GrammarCache.
+	 * 
+	 * @param fac
+	 *        The SAXParserFactory used to create the XMLReader instances.
+	 * @param sfp
+	 *        The SchemaFactoryProvider instance that gives us Schema Factories 
+	 * @param cache
+	 *        The GrammarCache to look up and keep the compiled Schema in.
+	 * @param systemid
+	 *        The var-arg array of at least one SystemID reference (URL) to
+	 *        locate the XSD's used to validate
+	 * @throws JDOMException
+	 *         If the Schemas could not be loaded from the SystemIDs This will
+	 *         wrap a SAXException that contains the actual fault.
+	 */
+	public AbstractReaderXSDFactory(final SAXParserFactory fac,
+			final SchemaFactoryProvider sfp, final GrammarCache cache,
+			String... systemid) throws JDOMException {
+		super(fac, getSchemaFromString(sfp, cache, systemid));
 	}
 
 	/**
@@ -292,7 +422,31 @@ public class AbstractReaderXSDFactory extends AbstractReaderSchemaFactory {
 	 */
 	public AbstractReaderXSDFactory(final SAXParserFactory fac,
 			final SchemaFactoryProvider sfp, URL... systemid) throws JDOMException {
-		super(fac, getSchemaFromURL(sfp, systemid));
+		super(fac, getSchemaFromURL(sfp, null, systemid));
+	}
+
+	/**
+	 * Create an XML Schema validating XMLReader factory using one or more XSD
+	 * sources from URL references, keeping the compiled Schema in a
+	 * GrammarCache.
+	 * 
+	 * @param fac
+	 *        The SAXParserFactory used to create the XMLReader instances.
+	 * @param sfp
+	 *        The SchemaFactoryProvider instance that gives us Schema Factories 
+	 * @param cache
+	 *        The GrammarCache to look up and keep the compiled Schema in.
+	 * @param systemid
+	 *        The var-arg array of at least one SystemID reference (URL) to
+	 *        locate the XSD's used to validate
+	 * @throws JDOMException
+	 *         If the Schemas could not be loaded from the SystemIDs This will
+	 *         wrap a SAXException that contains the actual fault.
+	 */
+	public AbstractReaderXSDFactory(final SAXParserFactory fac,
+			final SchemaFactoryProvider sfp, final GrammarCache cache,
+			URL... systemid) throws JDOMException {
+		super(fac, getSchemaFromURL(sfp, cache, systemid));
 	}
 
 	/**
@@ -312,7 +466,31 @@ public class AbstractReaderXSDFactory extends AbstractReaderSchemaFactory {
 	 */
 	public AbstractReaderXSDFactory(final SAXParserFactory fac,
 			final SchemaFactoryProvider sfp, File... systemid) throws JDOMException {
-		super(fac, getSchemaFromFile(sfp, systemid));
+		super(fac, getSchemaFromFile(sfp, null, systemid));
+	}
+
+	/**
+	 * Create an XML Schema validating XMLReader factory using one or more XSD
+	 * sources from File references, keeping the compiled Schema in a
+	 * GrammarCache.
+	 * 
+	 * @param fac
+	 *        The SAXParserFactory used to create the XMLReader instances.
+	 * @param sfp
+	 *        The SchemaFactoryProvider instance that gives us Schema Factories 
+	 * @param cache
+	 *        The GrammarCache to look up and keep the compiled Schema in.
+	 * @param systemid
+	 *        The var-arg array of at least one SystemID reference (File) to
+	 *        locate the XSD's used to validate
+	 * @throws JDOMException
+	 *         If the Schemas could not be loaded from the SystemIDs This will
+	 *         wrap a SAXException that contains the actual fault.
+	 */
+	public AbstractReaderXSDFactory(final SAXParserFactory fac,
+			final SchemaFactoryProvider sfp, final GrammarCache cache,
+			File... systemid) throws JDOMException {
+		super(fac, getSchemaFromFile(sfp, cache, systemid));
 	}
 
 	/**
@@ -332,7 +510,31 @@ public class AbstractReaderXSDFactory extends AbstractReaderSchemaFactory {
 	 */
 	public AbstractReaderXSDFactory(final SAXParserFactory fac,
 			final SchemaFactoryProvider sfp, Source... sources) throws JDOMException {
-		super(fac, getSchemaFromSource(sfp, sources));
+		super(fac, getSchemaFromSource(sfp, null, sources));
+	}
+
+	/**
+	 * Create an XML Schema validating XMLReader factory using one or more XSD
+	 * sources from Transform Source references, keeping the compiled Schema in a
+	 * GrammarCache.
+	 * 
+	 * @param fac
+	 *        The SAXParserFactory used to create the XMLReader instances.
+	 * @param sfp
+	 *        The SchemaFactoryProvider instance that gives us Schema Factories 
+	 * @param cache
+	 *        The GrammarCache to look up and keep the compiled Schema in.
+	 * @param sources
+	 *        The var-arg array of at least one transform Source reference to
+	 *        locate the XSD's used to validate
+	 * @throws JDOMException
+	 *         If the Schemas could not be loaded from the Sources This will
+	 *         wrap a SAXException that contains the actual fault.
+	 */
+	public AbstractReaderXSDFactory(final SAXParserFactory fac,
+			final SchemaFactoryProvider sfp, final GrammarCache cache,
+			Source... sources) throws JDOMException {
+		super(fac, getSchemaFromSource(sfp, cache, sources));
 	}
 
 }
@@ -0,0 +1,623 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.input.sax;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.xml.validation.Schema;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.XMLReader;
+
+/**
+ * A size-bounded cache of compiled grammars that is shared by the builds in
+ * a process, so that documents validated against the same schema or DTD do
+ * not pay to compile it each time.
+ * <p>
+ * The cache holds two kinds of grammar:
+ * <ul>
+ * <li>Compiled {@link Schema} instances. An {@link XMLReaderXSDFactory} (or
+ * other {@link AbstractReaderXSDFactory}) that is created with a
+ * GrammarCache looks up the Schema for its sources in the cache, so creating
+ * a factory for sources that were compiled before is cheap. Sources are only
+ * cached when they are identified by a system ID, URL or File (a File is
+ * recompiled when its size or modification time changes); Sources that
+ * supply a stream, Reader or DOM are compiled each time.
+ * <li>DTD (and schemaLocation XSD) grammars read by the SAX parser itself,
+ * for example when {@link XMLReaders#DTDVALIDATING} validates a document
+ * against its external DTD. These are cached when a GrammarCache is set on a
+ * SAXBuilder with
+ * {@link org.jdom2.input.SAXBuilder#setGrammarCache(GrammarCache)}, which
+ * installs the cache as the Xerces grammar pool of its parsers. The grammar
+ * is keyed by the parser's description of it (the expanded system ID and
+ * public ID of the DTD), and documents with the same external DTD then skip
+ * reading and parsing it. A DTD grammar includes the internal subset of
+ * the document it was read for, so documents with an internal subset, and
+ * documents that can not be checked for one before they are parsed (when
+ * the DOCTYPE declaration is not in the first 8K characters, or the
+ * document is in UTF-16), neither use nor add to the cache. Parsers that
+ * are not Xerces, and the Xerces
+ * built in to JDKs that do not export its grammar classes, are used
+ * unchanged.
+ * </ul>
+ * Each kind of grammar is limited to {@link #getMaximumSize()} entries, and
+ * the least recently used entry is dropped when the limit is reached. Cached
+ * grammars are not re-read when the resource they came from changes (other
+ * than Files compiled to a Schema): call {@link #clear()} after changing a
+ * schema or DTD that is identified by a URL.
+ * <p>
+ * GrammarCache is thread-safe. Compiled Schemas and Xerces grammars are
+ * immutable, so a cache can be shared by any number of builders and
+ * threads.
+ */
+public final class GrammarCache {
+
+	/** The size of the default cache */
+	public static final int DEFAULT_SIZE = 64;
+
+	/** The Xerces property for the grammar pool of a parser */
+	private static final String GRAMMAR_POOL =
+			"http://apache.org/xml/properties/internal/grammar-pool";
+
+	/** The process-wide cache */
+	private static final GrammarCache DEFAULT = new GrammarCache(DEFAULT_SIZE);
+
+	/** How far into a document to look for its DOCTYPE declaration */
+	private static final int PROLOG = 8192;
+
+	/** The parsers that a GrammarCache is installed on */
+	private static final Map<XMLReader, Boolean> INSTALLED =
+			Collections.synchronizedMap(new WeakHashMap<XMLReader, Boolean>());
+
+	/**
+	 * TRUE while the document parsed on this thread is known to have no
+	 * internal DTD subset: the pools only retrieve and cache grammars then.
+	 */
+	private static final ThreadLocal<Boolean> NOSUBSET = new ThreadLocal<Boolean>();
+
+	/**
+	 * A least-recently-used map with a maximum size.
+	 * 
+	 * @param <V> The cached type
+	 */
+	private static final class LRU<V> extends LinkedHashMap<Object, V> {
+		private static final long serialVersionUID = 1L;
+		private final int max;
+
+		private LRU(final int max) {
+			super(16, 0.75f, true);
+			this.max = max;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<Object, V> eldest) {
+			return size() > max;
+		}
+	}
+
+	/**
+	 * Implements the Xerces XMLGrammarPool interface (which is loaded from
+	 * the parser, so Xerces is not needed to compile JDOM) on the grammar
+	 * map of the cache. Locking the pool is ignored: grammars are always
+	 * cached.
+	 */
+	private final class Pool implements InvocationHandler {
+		private final Class<?> grammar;
+		private final Method description;
+
+		private Pool(final Class<?> grammar) throws NoSuchMethodException,
+				IllegalAccessException, InvocationTargetException {
+			this.grammar = grammar;
+			this.description = grammar.getMethod("getGrammarDescription");
+			// The grammar types of the parser built in to the JDK are in a
+			// package that is not exported, so they can be proxied but not
+			// called: try it on a proxy Grammar before using the pool.
+			description.invoke(Proxy.newProxyInstance(grammar.getClassLoader(),
+					new Class<?>[] {grammar}, new InvocationHandler() {
+						@Override
+						public Object invoke(final Object p, final Method m,
+								final Object[] a) {
+							return null;
+						}
+					}));
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method,
+				final Object[] args) throws Throwable {
+			final String name = method.getName();
+			if (("retrieveGrammar".equals(name) || "cacheGrammars".equals(name))
+					&& NOSUBSET.get() != Boolean.TRUE) {
+				// the grammar of a document with an internal subset
+				// includes the subset, so it is not shared.
+				return null;
+			}
+			if ("retrieveGrammar".equals(name)) {
+				final Object found = args[0] == null ? null : retrieve(args[0]);
+				return found != null && grammar.isInstance(found) ? found : null;
+			}
+			if ("cacheGrammars".equals(name)) {
+				if (args[1] != null) {
+					for (int i = Array.getLength(args[1]) - 1; i >= 0; i--) {
+						final Object g = Array.get(args[1], i);
+						if (g != null) {
+							store(description.invoke(g), g);
+						}
+					}
+				}
+				return null;
+			}
+			if ("retrieveInitialGrammarSet".equals(name)) {
+				return Array.newInstance(grammar, 0);
+			}
+			if ("clear".equals(name)) {
+				clearGrammars();
+				return null;
+			}
+			if ("equals".equals(name)) {
+				return Boolean.valueOf(proxy == args[0]);
+			}
+			if ("hashCode".equals(name)) {
+				return Integer.valueOf(System.identityHashCode(proxy));
+			}
+			if ("toString".equals(name)) {
+				return "GrammarCache pool for " + grammar.getName();
+			}
+			// lockPool and unlockPool
+			return null;
+		}
+	}
+
+	/**
+	 * Get the process-wide GrammarCache, which has room for
+	 * {@link #DEFAULT_SIZE} Schemas and {@link #DEFAULT_SIZE} parser
+	 * grammars.
+	 * 
+	 * @return the default GrammarCache.
+	 */
+	public static GrammarCache getDefault() {
+		return DEFAULT;
+	}
+
+	private final int maxsize;
+	private final LRU<Schema> schemas;
+	private final LRU<Object> grammars;
+	/** The pool proxy for each XMLGrammarPool interface, or null if it failed */
+	private final HashMap<Class<?>, Object> pools = new HashMap<Class<?>, Object>();
+	private long hits = 0L;
+	private long misses = 0L;
+
+	/**
+	 * Create a GrammarCache, for example to keep the grammars of one
+	 * application apart from the default cache.
+	 * 
+	 * @param maxsize
+	 *        The maximum number of Schemas, and of parser grammars, to keep.
+	 * @throws IllegalArgumentException
+	 *         if maxsize is less than 1.
+	 */
+	public GrammarCache(final int maxsize) {
+		if (maxsize < 1) {
+			throw new IllegalArgumentException(
+					"The GrammarCache size must be at least 1, not " + maxsize);
+		}
+		this.maxsize = maxsize;
+		this.schemas = new LRU<Schema>(maxsize);
+		this.grammars = new LRU<Object>(maxsize);
+	}
+
+	/**
+	 * Look up a compiled Schema.
+	 * 
+	 * @param key
+	 *        The identity of the Schema sources.
+	 * @return the Schema, or null if it is not cached.
+	 */
+	synchronized Schema getSchema(final List<Object> key) {
+		final Schema schema = schemas.get(key);
+		if (schema == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return schema;
+	}
+
+	/**
+	 * Add a compiled Schema.
+	 * 
+	 * @param key
+	 *        The identity of the Schema sources.
+	 * @param schema
+	 *        The compiled Schema.
+	 */
+	synchronized void putSchema(final List<Object> key, final Schema schema) {
+		schemas.put(key, schema);
+	}
+
+	private synchronized Object retrieve(final Object desc) {
+		final Object g = grammars.get(desc);
+		if (g == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return g;
+	}
+
+	private synchronized void store(final Object desc, final Object g) {
+		if (desc != null) {
+			grammars.put(desc, g);
+		}
+	}
+
+	private synchronized void clearGrammars() {
+		grammars.clear();
+	}
+
+	/**
+	 * Install this cache as the grammar pool of a Xerces parser, so the
+	 * grammars it reads are cached, and the cached grammars are used instead
+	 * of reading them again.
+	 * 
+	 * @param reader
+	 *        The parser.
+	 * @return true if the parser uses the cache, false if it does not support
+	 *         a grammar pool, or its grammar types are not accessible (as
+	 *         with the parser built in to recent JDKs).
+	 */
+	public boolean install(final XMLReader reader) {
+		final Object pool = getPool(reader);
+		if (pool == null) {
+			return false;
+		}
+		try {
+			reader.setProperty(GRAMMAR_POOL, pool);
+			INSTALLED.put(reader, Boolean.TRUE);
+			return true;
+		} catch (SAXNotRecognizedException e) {
+			return false;
+		} catch (SAXNotSupportedException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Prepare to parse a document with a parser that may have a GrammarCache
+	 * installed. The DTD grammar a parser reads includes the internal subset
+	 * of the document, but the parser looks the grammar up before it reads
+	 * the subset, so the cache is only used for documents that are known to
+	 * have no internal subset: this looks for the DOCTYPE declaration in the
+	 * first few kilobytes of the document. Documents in which it can not be
+	 * found that way (for example, UTF-16 documents, or a relative system
+	 * ID) do not use the cache.
+	 * 
+	 * @param parser
+	 *        The parser that is about to parse the document.
+	 * @param in
+	 *        The document.
+	 * @return the InputSource to parse instead of <code>in</code>, which
+	 *         reads the same document.
+	 * @throws IOException
+	 *         if the document can not be read.
+	 * @see #done(InputSource, InputSource)
+	 */
+	static InputSource prepare(final XMLReader parser, final InputSource in)
+			throws IOException {
+		NOSUBSET.remove();
+		if (!INSTALLED.containsKey(parser)) {
+			return in;
+		}
+		final InputSource src = new InputSource();
+		src.setPublicId(in.getPublicId());
+		src.setSystemId(in.getSystemId());
+		src.setEncoding(in.getEncoding());
+		final char[] prolog = new char[PROLOG];
+		int len = 0;
+		if (in.getCharacterStream() != null) {
+			Reader reader = in.getCharacterStream();
+			if (!reader.markSupported()) {
+				reader = new BufferedReader(reader, PROLOG);
+			}
+			src.setCharacterStream(reader);
+			reader.mark(PROLOG);
+			int got = 0;
+			while (len < PROLOG && (got = reader.read(prolog, len, PROLOG - len)) >= 0) {
+				len += got;
+			}
+			reader.reset();
+		} else {
+			InputStream stream = in.getByteStream();
+			if (stream == null) {
+				if (in.getSystemId() == null) {
+					return in;
+				}
+				try {
+					stream = new URL(in.getSystemId()).openStream();
+				} catch (MalformedURLException e) {
+					return in;
+				}
+			}
+			if (!stream.markSupported()) {
+				stream = new BufferedInputStream(stream, PROLOG);
+			}
+			src.setByteStream(stream);
+			final byte[] bytes = new byte[PROLOG];
+			stream.mark(PROLOG);
+			int got = 0;
+			while (len < PROLOG && (got = stream.read(bytes, len, PROLOG - len)) >= 0) {
+				len += got;
+			}
+			stream.reset();
+			for (int i = 0; i < len; i++) {
+				if (bytes[i] == 0 || (bytes[i] & 0xFE) == 0xFE) {
+					// UTF-16 or UTF-32 (or not XML): leave it to the parser.
+					return src;
+				}
+				prolog[i] = (char)(bytes[i] & 0xFF);
+			}
+		}
+		if (!hasSubset(prolog, len, len < PROLOG)) {
+			NOSUBSET.set(Boolean.TRUE);
+		}
+		return src;
+	}
+
+	/**
+	 * Finish parsing a document that was prepared with
+	 * {@link #prepare(XMLReader, InputSource)}.
+	 * 
+	 * @param in
+	 *        The document as given to prepare.
+	 * @param src
+	 *        The InputSource prepare returned.
+	 */
+	static void done(final InputSource in, final InputSource src) {
+		NOSUBSET.remove();
+		if (src != in && in.getByteStream() == null
+				&& in.getCharacterStream() == null && src.getByteStream() != null) {
+			// opened by prepare.
+			try {
+				src.getByteStream().close();
+			} catch (IOException e) {
+				// ignore, the document is read.
+			}
+		}
+	}
+
+	/**
+	 * Look for an internal DTD subset in the start of a document.
+	 * 
+	 * @param prolog
+	 *        The start of the document.
+	 * @param len
+	 *        The number of characters in prolog.
+	 * @param complete
+	 *        true if prolog is the whole document.
+	 * @return false if the document is known to have no internal subset.
+	 */
+	private static boolean hasSubset(final char[] prolog, final int len,
+			final boolean complete) {
+		final String doc = new String(prolog, 0, len);
+		int i = 0;
+		for (;;) {
+			i = doc.indexOf('<', i);
+			if (i < 0) {
+				return !complete;
+			}
+			final int end;
+			if (doc.startsWith("<?", i)) {
+				end = doc.indexOf("?>", i + 2);
+			} else if (doc.startsWith("<!--", i)) {
+				end = doc.indexOf("-->", i + 4);
+			} else if (doc.startsWith("<!DOCTYPE", i)) {
+				for (int p = i + 9; p < len; p++) {
+					final char c = doc.charAt(p);
+					if (c == '[') {
+						return true;
+					}
+					if (c == '>') {
+						return false;
+					}
+					if (c == '"' || c == '\'') {
+						p = doc.indexOf(c, p + 1);
+						if (p < 0) {
+							break;
+						}
+					}
+				}
+				return true;
+			} else {
+				// the root element, there is no DOCTYPE.
+				return false;
+			}
+			if (end < 0) {
+				return !complete;
+			}
+			i = end;
+		}
+	}
+
+	/**
+	 * Get the pool for the Xerces implementation of a parser.
+	 * 
+	 * @param reader
+	 *        The parser.
+	 * @return the pool, or null if the parser is not Xerces, or its grammars
+	 *         are not accessible.
+	 */
+	private synchronized Object getPool(final XMLReader reader) {
+		// an XMLFilter passes the property to its parent, assume that is
+		// Apache Xerces.
+		final String cname = reader.getClass().getName();
+		final int idx = cname.indexOf(".xerces.");
+		final String prefix = idx < 0 ? "org.apache.xerces."
+				: cname.substring(0, idx) + ".xerces.";
+		final String type = cname.startsWith("com.sun.")
+				? prefix + "internal.xni.grammars.XMLGrammarPool"
+				: prefix + "xni.grammars.XMLGrammarPool";
+		final Class<?> iface;
+		try {
+			iface = Class.forName(type, false, reader.getClass().getClassLoader());
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (LinkageError e) {
+			return null;
+		}
+		if (pools.containsKey(iface)) {
+			return pools.get(iface);
+		}
+		Object pool = null;
+		try {
+			final Class<?> gtype = iface.getMethod("retrieveInitialGrammarSet",
+					String.class).getReturnType().getComponentType();
+			pool = Proxy.newProxyInstance(iface.getClassLoader(),
+					new Class<?>[] {iface}, new Pool(gtype));
+		} catch (NoSuchMethodException e) {
+			pool = null;
+		} catch (IllegalAccessException e) {
+			// the grammars are not accessible, see Pool.
+			pool = null;
+		} catch (InvocationTargetException e) {
+			pool = null;
+		} catch (RuntimeException e) {
+			// for example, a JDK internal package that can not be proxied.
+			pool = null;
+		}
+		pools.put(iface, pool);
+		return pool;
+	}
+
+	/**
+	 * The maximum number of Schemas, and of parser grammars, in the cache.
+	 * 
+	 * @return the size limit.
+	 */
+	public int getMaximumSize() {
+		return maxsize;
+	}
+
+	/**
+	 * The number of compiled Schemas in the cache.
+	 * 
+	 * @return the Schema count.
+	 */
+	public synchronized int getSchemaCount() {
+		return schemas.size();
+	}
+
+	/**
+	 * The number of parser grammars (such as DTDs) in the cache.
+	 * 
+	 * @return the grammar count.
+	 */
+	public synchronized int getGrammarCount() {
+		return grammars.size();
+	}
+
+	/**
+	 * The number of lookups that found a cached Schema or grammar.
+	 * 
+	 * @return the hit count.
+	 */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * The number of lookups that did not find a cached Schema or grammar.
+	 * 
+	 * @return the miss count.
+	 */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * Remove all the Schemas and grammars from the cache, so they are read
+	 * again the next time they are needed.
+	 */
+	public synchronized void clear() {
+		schemas.clear();
+		grammars.clear();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "GrammarCache[schemas=" + schemas.size() + ", grammars=" +
+				grammars.size() + ", max=" + maxsize + ", hits=" + hits +
+				", misses=" + misses + "]";
+	}
+
+}
@@ -0,0 +1,367 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.input.sax;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.jdom2.Namespace;
+import org.jdom2.internal.ArrayCopy;
+
+/**
+ * Selects the parts of a document to build. A Projection is a set of element
+ * paths and attribute names. When it is set on a
+ * {@link org.jdom2.input.SAXBuilder#setProjection(Projection) SAXBuilder} or
+ * a {@link org.jdom2.input.StAXStreamBuilder#setProjection(Projection)
+ * StAXStreamBuilder} only the projected parts of the document are built,
+ * everything else is skipped without creating JDOM content. This makes
+ * documents much smaller (and faster to build) when only a few fields of a
+ * large document are read.
+ * <p>
+ * A path is an absolute, slash-separated list of element names, for example
+ * <code>/order/customer/name</code>. The Element a path selects is built
+ * with all of its attributes and content. Its ancestors are built too, so
+ * the Document keeps its structure, but they only have the projected
+ * Elements as content, and only the attributes named with
+ * {@link #addAttribute(String)}. Text, comments and processing instructions
+ * in the ancestors are skipped. Content outside the root Element (the
+ * DocType, comments and processing instructions) is always built, and so is
+ * the root Element, even when no path matches it, so the result is always a
+ * valid Document.
+ * <p>
+ * A name in a path (or an attribute name) is either a local name, which
+ * matches in any namespace, or <code>prefix:local</code>, which matches
+ * only in the namespace the prefix is bound to in the Namespaces given to
+ * the constructor. The name <code>*</code> (or <code>prefix:*</code>)
+ * matches any Element. For example, with a Namespace <code>o</code>:
+ * 
+ * <pre>
+ * Projection projection = new Projection(Namespace.getNamespace("o", "urn:order"))
+ *         .addPath("/o:order/o:customer")
+ *         .addPath("/o:order/items/*&#47;sku")
+ *         .addAttribute("id");
+ * </pre>
+ * 
+ * A Projection may be shared by any number of builders and threads, but it
+ * must not be changed while a build uses it.
+ * <p>
+ * Builders track where they are in the projection with a {@link Match} for
+ * each open Element: {@link #root(String, String)} for the root Element,
+ * and {@link #match(Match, String, String)} for each child.
+ */
+public final class Projection {
+
+	/**
+	 * A name of an element or attribute; a null local or URI matches any.
+	 */
+	private static class Name {
+		private final String uri;
+		private final String local;
+
+		private Name(final String uri, final String local) {
+			this.uri = uri;
+			this.local = local;
+		}
+
+		final boolean matches(final String u, final String l) {
+			return (local == null || local.equals(l))
+					&& (uri == null || uri.equals(u == null ? "" : u));
+		}
+
+		final boolean same(final Name n) {
+			return (local == null ? n.local == null : local.equals(n.local))
+					&& (uri == null ? n.uri == null : uri.equals(n.uri));
+		}
+	}
+
+	/**
+	 * A step in the paths, with the steps that can follow it.
+	 */
+	private static final class Step extends Name {
+		private final List<Step> next = new ArrayList<Step>(2);
+		private final Match alone = new Match(new Step[] {this});
+		/** Whether a path ends at this step. */
+		private boolean selected = false;
+
+		private Step(final String uri, final String local) {
+			super(uri, local);
+		}
+	}
+
+	/**
+	 * Where an Element being built is in the projection: the steps it
+	 * matched, or everything for the content of a selected Element. Builders
+	 * keep the Match of each open Element, see {@link Projection#root} and
+	 * {@link Projection#match}.
+	 */
+	public static final class Match {
+		private final Step[] steps;
+
+		private Match(final Step[] steps) {
+			this.steps = steps;
+		}
+
+		/**
+		 * Indicates whether all the content of the Element is built.
+		 * 
+		 * @return true for selected Elements (and their descendants).
+		 */
+		public boolean isAll() {
+			return steps == null;
+		}
+	}
+
+	/** The Match of selected Elements and their content */
+	private static final Match ALL = new Match(null);
+
+	/** The Match of a root Element that no path selects */
+	private static final Match NONE = new Match(new Step[0]);
+
+	private final HashMap<String, String> prefixes = new HashMap<String, String>();
+	private final Step start = new Step(null, null);
+	private final List<Name> attributes = new ArrayList<Name>();
+	private final List<String> names = new ArrayList<String>();
+
+	/**
+	 * Create an empty Projection, which builds just the root Element.
+	 * 
+	 * @param namespaces
+	 *        The Namespaces for the prefixes used in the paths and attribute
+	 *        names.
+	 */
+	public Projection(final Namespace... namespaces) {
+		prefixes.put(Namespace.XML_NAMESPACE.getPrefix(),
+				Namespace.XML_NAMESPACE.getURI());
+		for (final Namespace ns : namespaces) {
+			prefixes.put(ns.getPrefix(), ns.getURI());
+		}
+	}
+
+	/**
+	 * Parse a name, using the namespaces given to the constructor.
+	 */
+	private Name name(final String name, final String what) {
+		final int colon = name.indexOf(':');
+		final String local = name.substring(colon + 1);
+		if (local.length() == 0 || colon == 0 || local.indexOf(':') >= 0) {
+			throw new IllegalArgumentException("Illegal " + what + " name '"
+					+ name + "'");
+		}
+		String uri = null;
+		if (colon > 0) {
+			uri = prefixes.get(name.substring(0, colon));
+			if (uri == null) {
+				throw new IllegalArgumentException("The prefix in " + what
+						+ " name '" + name + "' has no Namespace");
+			}
+		}
+		return new Name(uri, "*".equals(local) ? null : local);
+	}
+
+	/**
+	 * Add an element path to the projection. The selected Elements are built
+	 * with all their content.
+	 * 
+	 * @param path
+	 *        An absolute path like <code>/root/child/field</code>.
+	 * @return this Projection, for chaining.
+	 * @throws IllegalArgumentException
+	 *         if the path is not absolute, has an empty step, or uses a
+	 *         prefix without a Namespace.
+	 */
+	public Projection addPath(final String path) {
+		if (path == null || !path.startsWith("/") || path.length() == 1) {
+			throw new IllegalArgumentException("Illegal projection path '"
+					+ path + "', paths are absolute, like /root/child");
+		}
+		// parse all the steps before changing the tree.
+		final String[] parts = path.substring(1).split("/", -1);
+		final Name[] steps = new Name[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			steps[i] = name(parts[i], "element");
+		}
+		Step step = start;
+		for (final Name name : steps) {
+			Step child = null;
+			for (final Step s : step.next) {
+				if (s.same(name)) {
+					child = s;
+					break;
+				}
+			}
+			if (child == null) {
+				child = new Step(name.uri, name.local);
+				step.next.add(child);
+			}
+			step = child;
+		}
+		step.selected = true;
+		names.add(path);
+		return this;
+	}
+
+	/**
+	 * Add an attribute name to the projection. Attributes with this name are
+	 * built on the ancestors of the selected Elements (the selected Elements
+	 * always have all their attributes).
+	 * 
+	 * @param name
+	 *        The attribute name, like <code>id</code> or
+	 *        <code>xml:lang</code>.
+	 * @return this Projection, for chaining.
+	 * @throws IllegalArgumentException
+	 *         if the name is empty or uses a prefix without a Namespace.
+	 */
+	public Projection addAttribute(final String name) {
+		if (name == null) {
+			throw new IllegalArgumentException("Illegal attribute name 'null'");
+		}
+		final Name n = name(name, "attribute");
+		if (n.uri == null && n.local != null) {
+			// an unprefixed attribute name matches only unprefixed
+			// attributes, like the XML Namespaces scoping rules.
+			attributes.add(new Name("", n.local));
+		} else {
+			attributes.add(n);
+		}
+		names.add("@" + name);
+		return this;
+	}
+
+	/**
+	 * Get the Match for the root Element.
+	 * 
+	 * @param uri
+	 *        The Namespace URI of the root Element.
+	 * @param local
+	 *        The local name of the root Element.
+	 * @return The Match, the root Element is always built.
+	 */
+	public Match root(final String uri, final String local) {
+		final Match m = match(start.alone, uri, local);
+		return m == null ? NONE : m;
+	}
+
+	/**
+	 * Get the Match for a child Element.
+	 * 
+	 * @param parent
+	 *        The Match of the parent Element.
+	 * @param uri
+	 *        The Namespace URI of the child Element.
+	 * @param local
+	 *        The local name of the child Element.
+	 * @return The Match, or null if the child is not built.
+	 */
+	public Match match(final Match parent, final String uri, final String local) {
+		if (parent.steps == null) {
+			return ALL;
+		}
+		Step found = null;
+		Step[] more = null;
+		int cnt = 0;
+		for (final Step step : parent.steps) {
+			for (final Step s : step.next) {
+				if (s.matches(uri, local)) {
+					if (s.selected) {
+						return ALL;
+					}
+					if (found == null) {
+						found = s;
+					} else {
+						// more than one path (wildcards) match
+						if (more == null) {
+							more = new Step[4];
+							more[cnt++] = found;
+						} else if (cnt == more.length) {
+							more = ArrayCopy.copyOf(more, cnt * 2);
+						}
+						more[cnt++] = s;
+					}
+				}
+			}
+		}
+		if (more != null) {
+			return new Match(ArrayCopy.copyOf(more, cnt));
+		}
+		return found == null ? null : found.alone;
+	}
+
+	/**
+	 * Check whether an attribute of an Element that is not selected (but is
+	 * the ancestor of one) is built.
+	 * 
+	 * @param uri
+	 *        The Namespace URI of the attribute.
+	 * @param local
+	 *        The local name of the attribute.
+	 * @return true if the attribute is projected.
+	 */
+	public boolean keepAttribute(final String uri, final String local) {
+		for (final Name n : attributes) {
+			if (n.matches(uri, local)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "Projection" + names;
+	}
+
+}
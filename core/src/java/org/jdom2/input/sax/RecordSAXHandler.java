@@ -0,0 +1,305 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.input.sax;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.JDOMFactory;
+import org.jdom2.Parent;
+import org.jdom2.internal.ArrayCopy;
+
+/**
+ * A SAXHandler that streams a large document as a sequence of records,
+ * instead of building the whole Document.
+ * <p>
+ * Elements that match one of the record paths are built completely, then
+ * detached and passed to a {@link RecordListener}. Content outside the
+ * records is discarded as soon as it is no longer needed: the ancestors of
+ * the current record are kept (without their completed content) while they
+ * are open. The memory needed is thus bounded by the size of the largest
+ * record, not the size of the document.
+ * <p>
+ * Record paths are made of Element local names separated by '/', and
+ * <code>*</code> matches any name:
+ * <ul>
+ * <li><code>/export/records/record</code> - an absolute path from the root
+ *     Element.
+ * <li><code>record</code> or <code>records/record</code> - a relative path
+ *     that matches at any depth.
+ * <li><code>/export/*</code> - every child of the root Element.
+ * </ul>
+ * An Element inside a record is part of that record, even if it also
+ * matches a record path.
+ * <p>
+ * The Document returned by the parse only has the root Element (without
+ * content), or no root at all if the root Element is itself a record.
+ * Records are detached, so Namespace declarations on their ancestors are
+ * not in scope for the record (the Namespaces of the record's Elements and
+ * Attributes are unaffected).
+ * <p>
+ * Use a {@link RecordSAXHandlerFactory} to stream with a
+ * {@link org.jdom2.input.SAXBuilder}.
+ */
+public class RecordSAXHandler extends SAXHandler {
+
+	private final RecordListener listener;
+	private final List<String> paths;
+	/** The parsed record paths, each is the list of names */
+	private final String[][] steps;
+	/** Whether the matching path is absolute */
+	private final boolean[] absolute;
+
+	/** The open Elements, from the root */
+	private Element[] stack = new Element[16];
+	private int depth = 0;
+	/** The depth of the open record, or -1 if not inside a record */
+	private int recordDepth = -1;
+	/** The number of open Elements suppressed by SAXHandler (in entities) */
+	private int suppressed = 0;
+	private long records = 0L;
+
+	/**
+	 * Create a RecordSAXHandler.
+	 * 
+	 * @param factory
+	 *        The JDOMFactory to build content with (null for the default).
+	 * @param listener
+	 *        Where to send the records.
+	 * @param paths
+	 *        The record paths (at least one).
+	 */
+	public RecordSAXHandler(final JDOMFactory factory, 
+			final RecordListener listener, final String... paths) {
+		super(factory);
+		if (listener == null) {
+			throw new NullPointerException("Cannot use a null RecordListener");
+		}
+		if (paths == null || paths.length == 0) {
+			throw new IllegalArgumentException("At least one record path is required");
+		}
+		this.listener = listener;
+		this.paths = Collections.unmodifiableList(
+				new ArrayList<String>(Arrays.asList(paths)));
+		this.steps = new String[paths.length][];
+		this.absolute = new boolean[paths.length];
+		for (int i = 0; i < paths.length; i++) {
+			String path = paths[i];
+			if (path == null) {
+				throw new NullPointerException("Cannot use a null record path");
+			}
+			absolute[i] = path.startsWith("/");
+			if (absolute[i]) {
+				path = path.substring(1);
+			}
+			steps[i] = path.split("/");
+			for (String step : steps[i]) {
+				if (step.length() == 0) {
+					throw new IllegalArgumentException(
+							"Illegal record path '" + paths[i] + "'");
+				}
+			}
+		}
+	}
+
+	/**
+	 * The record paths this handler streams.
+	 * 
+	 * @return an unmodifiable list of the record paths.
+	 */
+	public List<String> getRecordPaths() {
+		return paths;
+	}
+
+	/**
+	 * The RecordListener records are sent to.
+	 * 
+	 * @return the RecordListener.
+	 */
+	public RecordListener getRecordListener() {
+		return listener;
+	}
+
+	/**
+	 * The number of records processed in the current (or most recent)
+	 * parse.
+	 * 
+	 * @return the record count.
+	 */
+	public long getRecordCount() {
+		return records;
+	}
+
+	@Override
+	protected void resetSubCLass() {
+		if (stack != null) {
+			Arrays.fill(stack, null);
+		}
+		depth = 0;
+		recordDepth = -1;
+		suppressed = 0;
+		records = 0L;
+	}
+
+	/**
+	 * Check whether the open Elements are a match for a record path.
+	 * 
+	 * @return true if the current Element starts a record.
+	 */
+	private boolean isRecord() {
+		for (int p = 0; p < steps.length; p++) {
+			final String[] path = steps[p];
+			if (path.length > depth || (absolute[p] && path.length != depth)) {
+				continue;
+			}
+			int s = path.length - 1;
+			int d = depth - 1;
+			while (s >= 0) {
+				final String step = path[s];
+				if (!"*".equals(step) && !step.equals(stack[d].getName())) {
+					break;
+				}
+				s--;
+				d--;
+			}
+			if (s < 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void startElement(final String namespaceURI, final String localName,
+			final String qName, final Attributes atts) throws SAXException {
+		final Element parent = depth == 0 ? null : stack[depth - 1];
+		super.startElement(namespaceURI, localName, qName, atts);
+		final Element element = getCurrentElement();
+		if (element == parent) {
+			// suppressed inside an unexpanded entity.
+			suppressed++;
+			return;
+		}
+		if (depth == stack.length) {
+			stack = ArrayCopy.copyOf(stack, depth * 2);
+		}
+		stack[depth++] = element;
+		if (recordDepth < 0 && isRecord()) {
+			recordDepth = depth;
+		}
+	}
+
+	@Override
+	public void endElement(final String namespaceURI, final String localName,
+			final String qName) throws SAXException {
+		if (suppressed > 0) {
+			suppressed--;
+			super.endElement(namespaceURI, localName, qName);
+			return;
+		}
+		super.endElement(namespaceURI, localName, qName);
+		if (depth == 0) {
+			// SAXHandler will have complained already.
+			return;
+		}
+		final int level = depth--;
+		final Element element = stack[depth];
+		stack[depth] = null;
+		if (recordDepth > 0 && level >= recordDepth) {
+			if (level == recordDepth) {
+				// the record is complete.
+				recordDepth = -1;
+				discard(element);
+				records++;
+				try {
+					listener.processRecord(element);
+				} catch (JDOMException e) {
+					throw new SAXException(e);
+				}
+			}
+			// otherwise we are still inside the record.
+			return;
+		}
+		if (depth > 0) {
+			// a completed Element outside of any record.
+			discard(element);
+		} else {
+			// the root Element, keep it but not its remaining content.
+			element.removeContent();
+		}
+	}
+
+	/**
+	 * Detach a complete Element, and clear the content that came before it
+	 * in its parent (whitespace, comments, completed Elements, ...).
+	 * 
+	 * @param element The Element to detach.
+	 */
+	private void discard(final Element element) {
+		final Parent parent = element.getParent();
+		element.detach();
+		if (parent instanceof Element) {
+			((Element)parent).removeContent();
+		}
+	}
+
+}
@@ -212,9 +212,10 @@ public class SAXBuilderEngine implements SAXEngine {
 	@Override
 	public Document build(final InputSource in)
 			throws JDOMException, IOException {
+		final InputSource src = GrammarCache.prepare(saxParser, in);
 		try {
 			// Parse the document.
-			saxParser.parse(in);
+			saxParser.parse(src);
 
 			return saxHandler.getDocument();
 		} catch (final SAXParseException e) {
@@ -236,6 +237,7 @@ public class SAXBuilderEngine implements SAXEngine {
 			throw new JDOMParseException("Error in building: " +
 					e.getMessage(), e, saxHandler.getDocument());
 		} finally {
+			GrammarCache.done(in, src);
 			// Explicitly nullify the handler to encourage GC
 			// It's a stack var so this shouldn't be necessary, but it
 			// seems to help on some JVMs
@@ -54,9 +54,8 @@
 
 package org.jdom2.input.sax;
 
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import javax.xml.XMLConstants;
@@ -74,6 +73,7 @@ import org.jdom2.Attribute;
 import org.jdom2.AttributeType;
 import org.jdom2.CDATA;
 import org.jdom2.Comment;
+import org.jdom2.Content;
 import org.jdom2.DefaultJDOMFactory;
 import org.jdom2.DocType;
 import org.jdom2.Document;
@@ -83,8 +83,12 @@ import org.jdom2.JDOMFactory;
 import org.jdom2.Namespace;
 import org.jdom2.Parent;
 import org.jdom2.ProcessingInstruction;
+import org.jdom2.SourceSpan;
+import org.jdom2.SpilledText;
 import org.jdom2.Text;
 import org.jdom2.input.SAXBuilder;
+import org.jdom2.internal.ArrayCopy;
+import org.jdom2.located.LocationTable;
 
 /**
  * A support class for {@link SAXBuilder} which listens for SAX events.
@@ -119,15 +123,91 @@ import org.jdom2.input.SAXBuilder;
 public class SAXHandler extends DefaultHandler implements LexicalHandler,
 		DeclHandler, DTDHandler {
 
+	/** Clear the qName cache if it grows larger than this */
+	private static final int MAXQNAMES = 2048;
+
+	/**
+	 * A qualified name as the parser supplies it, split in to its prefix and
+	 * local name, with the Namespace it was last resolved to.
+	 */
+	private static final class QName {
+		private final String prefix;
+		private final String local;
+		private final boolean xmlns;
+		private Namespace namespace = null;
+
+		private QName(final String qName) {
+			final int colon = qName.indexOf(':');
+			this.prefix = colon > 0 ? qName.substring(0, colon) : "";
+			this.local = qName.substring(colon + 1);
+			this.xmlns = qName.startsWith("xmlns:") || qName.equals("xmlns");
+		}
+
+		private Namespace resolve(final String uri) {
+			final Namespace ns = namespace;
+			if (ns != null && (ns.getURI() == uri || ns.getURI().equals(uri))) {
+				return ns;
+			}
+			return namespace = Namespace.getNamespace(prefix, uri);
+		}
+	}
+
 	/** The JDOMFactory used for JDOM object creation */
 	private final JDOMFactory factory;
 
 	/**
-	 * Temporary holder for namespaces that have been declared with
-	 * startPrefixMapping, but are not yet available on the element
+	 * The namespaces in scope. The declarations made with startPrefixMapping
+	 * for the next element are at the top, from nsDeclared.
 	 */
-	private final List<Namespace> declaredNamespaces = new ArrayList<Namespace>(
-			32);
+	private Namespace[] nsStack = new Namespace[32];
+
+	/** The number of namespaces in scope - must be reset() */
+	private int nsCount = 0;
+
+	/** Where the declarations for the next element start - must be reset() */
+	private int nsDeclared = 0;
+
+	/** Where the declarations of each open element start */
+	private int[] nsMarks = new int[32];
+
+	/** The number of open elements - must be reset() */
+	private int nsDepth = 0;
+
+	/** The split qNames of this parse - must be reset() */
+	private final HashMap<String, QName> qnames = new HashMap<String, QName>();
+
+	/** The parts of the document to build, or null to build everything */
+	private Projection projection = null;
+
+	/** The projection Match of each open Element */
+	private Projection.Match[] projected = new Projection.Match[32];
+
+	/** The number of open Elements in projected - must be reset() */
+	private int projDepth = 0;
+
+	/** The depth of the Elements skipped by the projection - must be reset() */
+	private int skipping = 0;
+
+	/** The text of the document, to record SourceSpans - must be reset() */
+	private char[] source = null;
+
+	/** The number of chars in source */
+	private int sourceLength = 0;
+
+	/** Where each line of the source starts, as far as it is scanned */
+	private int[] lineStarts = new int[64];
+
+	/** The number of lines in lineStarts */
+	private int lineCount = 0;
+
+	/** Where the scan for line starts continues */
+	private int lineScan = 0;
+
+	/** Where the source of each open Element starts (like nsMarks), or -1 */
+	private int[] spanStarts = new int[32];
+
+	/** Whether each open Element declares its own Namespace (like nsMarks) */
+	private boolean[] spanDeclares = new boolean[32];
 
 	/** Temporary holder for the internal subset */
 	private final StringBuilder internalSubset = new StringBuilder();
@@ -175,6 +255,12 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 	 */
 	private boolean suppress = false;
 
+	/** Whether to record the locations of the Content in a LocationTable */
+	private boolean recordLocations = false;
+
+	/** The LocationTable of the current Document - must be reset() */
+	private LocationTable locations = null;
+
 	/** How many nested entities we're currently within - must be reset() */
 	private int entityDepth = 0; // XXX may not be necessary anymore?
 
@@ -235,7 +321,15 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 		expand = true;
 		suppress = false;
 		entityDepth = 0;
-		declaredNamespaces.clear();
+		nsCount = 0;
+		nsDeclared = 0;
+		nsDepth = 0;
+		qnames.clear();
+		projDepth = 0;
+		skipping = 0;
+		source = null;
+		sourceLength = 0;
+		locations = null;
 		internalSubset.setLength(0);
 		textBuffer.clear();
 		externalEntities.clear();
@@ -348,6 +442,303 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 		return ignoringBoundaryWhite;
 	}
 
+	/**
+	 * Specifies the number of characters above which text content is kept in
+	 * a temporary file as a {@link SpilledText}. See
+	 * {@link SAXBuilder#setSpillThreshold(int)}.
+	 * 
+	 * @param spillThreshold
+	 *        The threshold, or 0 to keep all text in memory.
+	 */
+	public void setSpillThreshold(final int spillThreshold) {
+		if (spillThreshold < 0) {
+			throw new IllegalArgumentException(
+					"The spill threshold cannot be negative: " + spillThreshold);
+		}
+		textBuffer.setSpillThreshold(spillThreshold);
+	}
+
+	/**
+	 * Returns the number of characters above which text content is kept in a
+	 * temporary file.
+	 * 
+	 * @return the threshold, or 0 if all text is kept in memory.
+	 * @see #setSpillThreshold(int)
+	 */
+	public int getSpillThreshold() {
+		return textBuffer.getSpillThreshold();
+	}
+
+	/**
+	 * Specifies the parts of the document to build. See
+	 * {@link SAXBuilder#setProjection(Projection)}.
+	 * 
+	 * @param projection
+	 *        The Projection to build, or null to build everything.
+	 */
+	public void setProjection(final Projection projection) {
+		this.projection = projection;
+	}
+
+	/**
+	 * Returns the parts of the document that are built.
+	 * 
+	 * @return the Projection, or null if everything is built.
+	 * @see #setProjection(Projection)
+	 */
+	public Projection getProjection() {
+		return projection;
+	}
+
+	/**
+	 * Specifies whether to record the location of each Content that is built
+	 * in a {@link LocationTable} of the Document. See
+	 * {@link SAXBuilder#setRecordLocations(boolean)}.
+	 * 
+	 * @param recordLocations
+	 *        true to record the locations.
+	 */
+	public void setRecordLocations(final boolean recordLocations) {
+		this.recordLocations = recordLocations;
+	}
+
+	/**
+	 * Returns whether the locations of the Content are recorded.
+	 * 
+	 * @return true if a LocationTable is added to the Document.
+	 * @see #setRecordLocations(boolean)
+	 */
+	public boolean getRecordLocations() {
+		return recordLocations;
+	}
+
+	/**
+	 * Record the current location of some Content in the LocationTable of the
+	 * current Document, if locations are recorded.
+	 * 
+	 * @param content
+	 *        The Content that was built.
+	 */
+	private void locate(final Content content) {
+		if (recordLocations && currentLocator != null) {
+			locate(content, currentLocator.getLineNumber(),
+					currentLocator.getColumnNumber());
+		}
+	}
+
+	/**
+	 * Record the location of some Content in the LocationTable of the
+	 * current Document, if locations are recorded.
+	 * 
+	 * @param content
+	 *        The Content that was built.
+	 * @param line
+	 *        The line the parser reports.
+	 * @param col
+	 *        The column the parser reports.
+	 */
+	private void locate(final Content content, final int line, final int col) {
+		if (!recordLocations || currentLocator == null) {
+			return;
+		}
+		if (locations == null) {
+			locations = LocationTable.install(currentDocument);
+		}
+		// Locations inside entities are not offsets in the source text.
+		locations.add(content, line, col, source == null || entityDepth != 0
+				? -1 : sourceOffset(line, col));
+	}
+
+	/**
+	 * Specifies the text of the document that is about to be parsed, so that
+	 * a {@link SourceSpan} is recorded on each Element that is built (see
+	 * {@link SAXBuilder#setSourceSpans(boolean)}). The text has to be exactly
+	 * what the parser reads, the spans are found from the line and column
+	 * numbers the parser reports. The spans share (do not copy) the text.
+	 * <p>
+	 * Elements whose text can not be found, or is in (or contains) an entity
+	 * other than the predefined ones, or that have DTD defaulted attributes,
+	 * get a null span. No spans are recorded while text is being ignored, or
+	 * with a Projection. The text is forgotten when this SAXHandler is
+	 * reset.
+	 * 
+	 * @param text
+	 *        The characters of the document.
+	 * @param length
+	 *        The number of characters in the document.
+	 */
+	public void setSourceText(final char[] text, final int length) {
+		if (length < 0 || length > text.length) {
+			throw new IllegalArgumentException("The length " + length
+					+ " is not inside the text of length " + text.length);
+		}
+		this.source = text;
+		this.sourceLength = length;
+		lineStarts[0] = 0;
+		lineCount = 1;
+		lineScan = 0;
+	}
+
+	/**
+	 * Get the offset in the source text of the current parse location.
+	 * 
+	 * @return the offset, or -1 if it is not known.
+	 */
+	private int sourceOffset() {
+		final Locator loc = currentLocator;
+		if (loc == null) {
+			return -1;
+		}
+		return sourceOffset(loc.getLineNumber(), loc.getColumnNumber());
+	}
+
+	/**
+	 * Get the offset in the source text of a line and column.
+	 * 
+	 * @param line
+	 *        The line, from 1.
+	 * @param col
+	 *        The column, from 1.
+	 * @return the offset, or -1 if it is not known.
+	 */
+	private int sourceOffset(final int line, final int col) {
+		if (line < 1 || col < 1) {
+			return -1;
+		}
+		// Line ends are \n, \r\n, or \r, the same as for the parser.
+		while (lineCount < line) {
+			if (lineScan >= sourceLength) {
+				return -1;
+			}
+			final char c = source[lineScan++];
+			if (c == '\n' || (c == '\r'
+					&& (lineScan == sourceLength || source[lineScan] != '\n'))) {
+				if (lineCount == lineStarts.length) {
+					lineStarts = ArrayCopy.copyOf(lineStarts, lineCount * 2);
+				}
+				lineStarts[lineCount++] = lineScan;
+			}
+		}
+		final int offset = lineStarts[line - 1] + col - 1;
+		return offset <= sourceLength ? offset : -1;
+	}
+
+	/**
+	 * Indicates whether SourceSpans are recorded at the current point of the
+	 * parse.
+	 * 
+	 * @return true if the source of Elements can be found.
+	 */
+	private boolean recordingSpans() {
+		return source != null && entityDepth == 0 && projection == null
+				&& !ignoringWhite && !ignoringBoundaryWhite;
+	}
+
+	/**
+	 * Check whether an entity is one of the predefined ones.
+	 * 
+	 * @param name
+	 *        The name of the entity
+	 * @return true for amp, lt, gt, apos and quot.
+	 */
+	private static boolean isPredefined(final String name) {
+		return "amp".equals(name) || "lt".equals(name) || "gt".equals(name)
+				|| "apos".equals(name) || "quot".equals(name);
+	}
+
+	/**
+	 * Find the start of the source of the Element whose start tag was just
+	 * reported.
+	 * 
+	 * @param defaulted
+	 *        true if the Element has attributes that are not in the source.
+	 * @param declares
+	 *        true if the Element declares its own Namespace.
+	 */
+	private void startSpan(final boolean defaulted, final boolean declares) {
+		if (spanStarts.length < nsMarks.length) {
+			spanStarts = ArrayCopy.copyOf(spanStarts, nsMarks.length);
+			spanDeclares = ArrayCopy.copyOf(spanDeclares, nsMarks.length);
+		}
+		int start = -1;
+		final int end = defaulted || !recordingSpans() ? -1 : sourceOffset();
+		if (end > 0 && source[end - 1] == '>') {
+			// '<' can not be in attribute values, the first one back is the
+			// start of the tag. References to other than the predefined
+			// entities in attribute values need the DTD.
+			start = end - 1;
+			while (start >= 0 && source[start] != '<') {
+				if (source[start] == '&' && !isCharacterReference(start, end)) {
+					start = -1;
+					break;
+				}
+				start--;
+			}
+		}
+		spanStarts[nsDepth - 1] = start;
+		spanDeclares[nsDepth - 1] = declares;
+	}
+
+	/**
+	 * Check whether there is a predefined entity or character reference at
+	 * an offset in the source.
+	 * 
+	 * @param offset
+	 *        The offset of the '&amp;'
+	 * @param limit
+	 *        The end of the text to check
+	 * @return true if the reference needs no DTD.
+	 */
+	private boolean isCharacterReference(final int offset, final int limit) {
+		int semi = offset + 1;
+		while (semi < limit && source[semi] != ';') {
+			semi++;
+		}
+		if (semi == limit) {
+			return false;
+		}
+		return source[offset + 1] == '#' || isPredefined(
+				new String(source, offset + 1, semi - offset - 1));
+	}
+
+	/**
+	 * Record the SourceSpan of the Element whose end was just reported.
+	 * 
+	 * @param element
+	 *        The Element that ends.
+	 * @param start
+	 *        The start of its source, or -1 if it is not known.
+	 * @param declares
+	 *        true if the Element declares its own Namespace.
+	 */
+	private void endSpan(final Element element, final int start,
+			final boolean declares) {
+		SourceSpan span = null;
+		final int end = start < 0 || !recordingSpans() ? -1 : sourceOffset();
+		if (end > start && source[end - 1] == '>') {
+			int tag = end - 1;
+			while (tag > start && source[tag] != '<') {
+				tag--;
+			}
+			// either an end tag, or the empty-element tag that started it.
+			if (tag == start ? source[end - 2] == '/' : source[tag + 1] == '/') {
+				span = new SourceSpan(source, start, end, declares);
+			}
+		}
+		element.setSourceSpan(span);
+	}
+
+	/**
+	 * Indicates whether content at the current point of the parse is outside
+	 * the projection.
+	 * 
+	 * @return true if the content should not be built.
+	 */
+	private boolean outside() {
+		return skipping > 0
+				|| (projDepth > 0 && !projected[projDepth - 1].isAll());
+	}
+
 	/**
 	 * Returns whether or not the parser will elminate whitespace in element
 	 * content (sometimes known as "ignorable whitespace") when building the
@@ -487,7 +878,7 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 	public void processingInstruction(final String target, final String data)
 			throws SAXException {
 
-		if (suppress)
+		if (suppress || outside())
 			return;
 
 		flushCharacters();
@@ -496,6 +887,7 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 				.processingInstruction(target, data) : factory
 				.processingInstruction(currentLocator.getLineNumber(),
 						currentLocator.getColumnNumber(), target, data);
+		locate(pi);
 
 		if (atRoot) {
 			factory.addContent(currentDocument, pi);
@@ -517,7 +909,7 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 	public void skippedEntity(final String name) throws SAXException {
 
 		// We don't handle parameter entity references.
-		if (name.startsWith("%"))
+		if (name.startsWith("%") || outside())
 			return;
 
 		flushCharacters();
@@ -525,6 +917,7 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 		final EntityRef er = currentLocator == null ? factory.entityRef(name)
 				: factory.entityRef(currentLocator.getLineNumber(),
 						currentLocator.getColumnNumber(), name);
+		locate(er);
 
 		factory.addContent(getCurrentElement(), er);
 	}
@@ -546,7 +939,10 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 			return;
 
 		final Namespace ns = Namespace.getNamespace(prefix, uri);
-		declaredNamespaces.add(ns);
+		if (nsCount == nsStack.length) {
+			nsStack = ArrayCopy.copyOf(nsStack, nsCount * 2);
+		}
+		nsStack[nsCount++] = ns;
 	}
 
 	/**
@@ -575,36 +971,64 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 		if (suppress)
 			return;
 
-		String prefix = "";
+		final Namespace namespace;
 
 		// If QName is set, then set prefix and local name as necessary
 		if (!"".equals(qName)) {
-			final int colon = qName.indexOf(':');
-
-			if (colon > 0) {
-				prefix = qName.substring(0, colon);
-			}
+			final QName q = qname(qName);
 
 			// If local name is not set, try to get it from the QName
 			if ((localName == null) || (localName.equals(""))) {
-				localName = qName.substring(colon + 1);
+				localName = q.local;
 			}
+			namespace = q.resolve(namespaceURI);
+		} else {
+			namespace = Namespace.getNamespace("", namespaceURI);
 		}
 		// At this point either prefix and localName are set correctly or
 		// there is an error in the parser.
 
-		final Namespace namespace = Namespace
-				.getNamespace(prefix, namespaceURI);
+		Projection.Match match = null;
+		if (projection != null) {
+			if (skipping == 0) {
+				match = projDepth == 0 ? projection.root(namespaceURI, localName)
+						: projection.match(projected[projDepth - 1],
+								namespaceURI, localName);
+			}
+			if (match == null) {
+				// not projected, skip it and all its content. The namespace
+				// declarations are discarded at the endElement().
+				skipping++;
+				if (nsDepth == nsMarks.length) {
+					nsMarks = ArrayCopy.copyOf(nsMarks, nsDepth * 2);
+				}
+				nsMarks[nsDepth++] = nsDeclared;
+				nsDeclared = nsCount;
+				return;
+			}
+			if (projDepth == projected.length) {
+				projected = ArrayCopy.copyOf(projected, projDepth * 2);
+			}
+			projected[projDepth++] = match;
+		}
+
 		final Element element = currentLocator == null ? factory.element(
 				localName, namespace) : factory.element(
 				currentLocator.getLineNumber(),
 				currentLocator.getColumnNumber(), localName, namespace);
+		locate(element);
 
 		// Take leftover declared namespaces and add them to this element's
 		// map of namespaces
-		if (declaredNamespaces.size() > 0) {
+		final boolean declares = source != null && declaresNamespace(namespace);
+		if (nsDeclared < nsCount) {
 			transferNamespaces(element);
 		}
+		if (nsDepth == nsMarks.length) {
+			nsMarks = ArrayCopy.copyOf(nsMarks, nsDepth * 2);
+		}
+		nsMarks[nsDepth++] = nsDeclared;
+		nsDeclared = nsCount;
 
 		flushCharacters();
 
@@ -618,12 +1042,14 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 		currentElement = element;
 
 		// Handle attributes
+		boolean defaulted = false;
 		for (int i = 0, len = atts.getLength(); i < len; i++) {
 
 			String attPrefix = "";
 			String attLocalName = atts.getLocalName(i);
 			final String attQName = atts.getQName(i);
 			final boolean specified = (atts instanceof Attributes2) ? ((Attributes2)atts).isSpecified(i) : true;
+			QName aq = null;
 
 			// If attribute QName is set, then set attribute prefix and
 			// attribute local name as necessary
@@ -632,19 +1058,16 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 				// them already in startPrefixMapping(). This is sometimes
 				// necessary when SAXHandler is used with another source than
 				// SAXBuilder, as with JDOMResult.
-				if (attQName.startsWith("xmlns:") || attQName.equals("xmlns")) {
+				aq = qname(attQName);
+				if (aq.xmlns) {
 					continue;
 				}
 
-				final int attColon = attQName.indexOf(':');
-
-				if (attColon > 0) {
-					attPrefix = attQName.substring(0, attColon);
-				}
+				attPrefix = aq.prefix;
 
 				// If localName is not set, try to get it from the QName
 				if ("".equals(attLocalName)) {
-					attLocalName = attQName.substring(attColon + 1);
+					attLocalName = aq.local;
 				}
 			}
 
@@ -661,6 +1084,10 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 				// the namespace-prefixes feature is set as well.
 				continue;
 			}
+			if (match != null && !match.isAll()
+					&& !projection.keepAttribute(attURI, attLocalName)) {
+				continue;
+			}
 			// At this point either attPrefix and attLocalName are set
 			// correctly or there is an error in the parser.
 
@@ -678,49 +1105,25 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 				// is an attribute definition that has form="qualified".
 				// <xs:attribute name="attname" form="qualified" ... />
 				// or the schema sets attributeFormDefault="qualified"
-				final HashMap<String, Namespace> tmpmap = new HashMap<String, Namespace>();
-				for (final Namespace nss : element.getNamespacesInScope()) {
-					if (nss.getPrefix().length() > 0
-							&& nss.getURI().equals(attURI)) {
-						attPrefix = nss.getPrefix();
-						break;
-					}
-					tmpmap.put(nss.getPrefix(), nss);
-				}
-
-				if ("".equals(attPrefix)) {
-					// we cannot find a 'prevailing' namespace that has a prefix
-					// that is for this namespace.
-					// This basically means that there's an XMLSchema, for the
-					// DEFAULT namespace, and there's a defaulted/fixed
-					// attribute definition in the XMLSchema that's targeted
-					// for this namespace,... but, the user has either not
-					// declared a prefixed version of the namespace, or has
-					// re-declared the same prefix at a lower level with a
-					// different namespace.
-					// All of these things are possible.
-					// Create some sort of default prefix.
-					int cnt = 0;
-					final String base = "attns";
-					String pfx = base + cnt;
-					while (tmpmap.containsKey(pfx)) {
-						cnt++;
-						pfx = base + cnt;
-					}
-					attPrefix = pfx;
-				}
+				attPrefix = attributePrefix(element, attURI);
+				aq = null;
 			}
-			final Namespace attNs = Namespace.getNamespace(attPrefix, attURI);
+			final Namespace attNs = aq != null ? aq.resolve(attURI)
+					: Namespace.getNamespace(attPrefix, attURI);
 
 			final Attribute attribute = factory.attribute(attLocalName,
 					attValue, attType, attNs);
 			if (!specified) {
 				// it is a DTD defaulted value.
 				attribute.setSpecified(false);
+				defaulted = true;
 			}
 			factory.setAttribute(element, attribute);
 		}
 
+		if (source != null) {
+			startSpan(defaulted, declares);
+		}
 	}
 
 	/**
@@ -731,12 +1134,102 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 	 *        <code>Element</code> to read namespaces from.
 	 */
 	private void transferNamespaces(final Element element) {
-		for (final Namespace ns : declaredNamespaces) {
-			if (ns != element.getNamespace()) {
-				element.addNamespaceDeclaration(ns);
+		final Namespace ens = element.getNamespace();
+		for (int i = nsDeclared; i < nsCount; i++) {
+			if (nsStack[i] != ens) {
+				element.addNamespaceDeclaration(nsStack[i]);
+			}
+		}
+	}
+
+	/**
+	 * Check whether the Namespace of the next Element is declared on it.
+	 * 
+	 * @param namespace
+	 *        The Namespace of the Element.
+	 * @return true if it is one of the pending declarations.
+	 */
+	private boolean declaresNamespace(final Namespace namespace) {
+		for (int i = nsDeclared; i < nsCount; i++) {
+			if (nsStack[i] == namespace) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get the split form of a qName supplied by the parser. Parsers supply
+	 * the same (often interned) String for each occurrence of a name, so the
+	 * names are split once per parse.
+	 * 
+	 * @param qName
+	 *        The qualified name
+	 * @return The split name.
+	 */
+	private QName qname(final String qName) {
+		QName q = qnames.get(qName);
+		if (q == null) {
+			if (qnames.size() >= MAXQNAMES) {
+				qnames.clear();
 			}
+			q = new QName(qName);
+			qnames.put(qName, q);
 		}
-		declaredNamespaces.clear();
+		return q;
+	}
+
+	/**
+	 * Choose the prefix for an attribute that has a namespace URI but no
+	 * prefix. This only happens when a validating XMLSchema defaults a
+	 * qualified attribute. A prefix in scope for the URI is used, and if
+	 * there is none (for example the URI is only the default namespace, or
+	 * its prefix is redeclared) then a prefix is made up.
+	 * 
+	 * @param element
+	 *        The element the attribute is on
+	 * @param uri
+	 *        The attribute namespace URI
+	 * @return The prefix to use.
+	 */
+	private String attributePrefix(final Element element, final String uri) {
+		for (int i = nsCount - 1; i >= 0; i--) {
+			final Namespace ns = nsStack[i];
+			if (ns.getPrefix().length() > 0 && ns.getURI().equals(uri)) {
+				// the prefix may have been redeclared since, even by an
+				// element's own namespace.
+				final Namespace prevailing = element.getNamespace(ns.getPrefix());
+				if (prevailing != null && prevailing.getURI().equals(uri)) {
+					return ns.getPrefix();
+				}
+			}
+		}
+		// Namespaces that are in scope but were not declared to this
+		// handler (see pushElement()).
+		for (final Namespace nss : element.getNamespacesInScope()) {
+			if (nss.getPrefix().length() > 0 && nss.getURI().equals(uri)) {
+				return nss.getPrefix();
+			}
+		}
+		// we cannot find a 'prevailing' namespace that has a prefix
+		// that is for this namespace.
+		// This basically means that there's an XMLSchema, for the
+		// DEFAULT namespace, and there's a defaulted/fixed
+		// attribute definition in the XMLSchema that's targeted
+		// for this namespace,... but, the user has either not
+		// declared a prefixed version of the namespace, or has
+		// re-declared the same prefix at a lower level with a
+		// different namespace.
+		// All of these things are possible.
+		// Create some sort of default prefix.
+		int cnt = 0;
+		final String base = "attns";
+		String pfx = base + cnt;
+		while (element.getNamespace(pfx) != null) {
+			cnt++;
+			pfx = base + cnt;
+		}
+		return pfx;
 	}
 
 	/**
@@ -753,7 +1246,7 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 	public void characters(final char[] ch, final int start, final int length)
 			throws SAXException {
 
-		if (suppress || (length == 0 && !inCDATA))
+		if (suppress || (length == 0 && !inCDATA) || outside())
 			return;
 
 		if (previousCDATA != inCDATA) {
@@ -761,6 +1254,11 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 		}
 
 		textBuffer.append(ch, start, length);
+		final IOException failure = textBuffer.getSpillFailure();
+		if (failure != null) {
+			throw new SAXException("Unable to spill the text content: "
+					+ failure.getMessage(), failure);
+		}
 		
 		if (currentLocator != null) {
 			lastline = currentLocator.getLineNumber();
@@ -800,14 +1298,44 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 	protected void flushCharacters() throws SAXException {
 		if (ignoringBoundaryWhite) {
 			if (!textBuffer.isAllWhitespace()) {
-				flushCharacters(textBuffer.toString());
+				flushBuffer();
 			}
 		} else {
-			flushCharacters(textBuffer.toString());
+			flushBuffer();
 		}
 		textBuffer.clear();
 	}
 
+	/**
+	 * Flush the text buffer. Spilled text becomes a SpilledText, unless it
+	 * was a CDATA section.
+	 * 
+	 * @throws SAXException
+	 *         if the state of the handler does not allow this.
+	 */
+	private void flushBuffer() throws SAXException {
+		if (!textBuffer.isSpilled() || previousCDATA) {
+			flushCharacters(textBuffer.toString());
+			return;
+		}
+		final SpilledText spilled;
+		try {
+			spilled = textBuffer.toSpilledText();
+		} catch (IOException e) {
+			throw new SAXException("Unable to spill the text content: "
+					+ e.getMessage(), e);
+		}
+		final SpilledText text = currentLocator == null ? factory
+				.spilledText(spilled) : factory.spilledText(lastline, lastcol,
+				spilled);
+		if (text != spilled) {
+			spilled.dispose();
+		}
+		locate(text, lastline, lastcol);
+		factory.addContent(getCurrentElement(), text);
+		previousCDATA = inCDATA;
+	}
+
 	/**
 	 * Flush the given string into the document. This is a protected method so
 	 * subclassers can control text handling without knowledge of the internals
@@ -834,10 +1362,12 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 		if (previousCDATA) {
 			final CDATA cdata = currentLocator == null ? factory.cdata(data)
 					: factory.cdata(lastline, lastcol, data);
+			locate(cdata, lastline, lastcol);
 			factory.addContent(getCurrentElement(), cdata);
 		} else {
 			final Text text = currentLocator == null ? factory.text(data)
 					: factory.text(lastline, lastcol, data);
+			locate(text, lastline, lastcol);
 			factory.addContent(getCurrentElement(), text);
 		}
 
@@ -866,8 +1396,27 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 		if (suppress)
 			return;
 
+		if (skipping > 0) {
+			skipping--;
+			nsCount = nsMarks[--nsDepth];
+			nsDeclared = nsCount;
+			return;
+		}
+
 		flushCharacters();
 
+		if (source != null && nsDepth > 0) {
+			endSpan(currentElement, spanStarts[nsDepth - 1],
+					spanDeclares[nsDepth - 1]);
+		}
+		if (nsDepth > 0) {
+			nsCount = nsMarks[--nsDepth];
+			nsDeclared = nsCount;
+		}
+		if (projDepth > 0) {
+			projected[--projDepth] = null;
+		}
+
 		if (!atRoot) {
 			final Parent p = currentElement.getParent();
 			if (p instanceof Document) {
@@ -904,6 +1453,7 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 				publicID, systemID) : factory.docType(
 				currentLocator.getLineNumber(),
 				currentLocator.getColumnNumber(), name, publicID, systemID);
+		locate(doctype);
 		factory.addContent(currentDocument, doctype);
 		inDTD = true;
 		inInternalSubset = true;
@@ -925,6 +1475,13 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 	public void startEntity(final String name) throws SAXException {
 		entityDepth++;
 
+		if (source != null && !inDTD && !isPredefined(name)) {
+			// the source of the open Elements needs the entity declaration.
+			for (int i = 0; i < nsDepth; i++) {
+				spanStarts[i] = -1;
+			}
+		}
+
 		if (expand || entityDepth > 1) {
 			// Short cut out if we're expanding or if we're nested
 			return;
@@ -957,12 +1514,13 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 				 * ext/LexicalHandler.html#startEntity(java.lang.String) for
 				 * more information
 				 */
-				if (!atRoot) {
+				if (!atRoot && !outside()) {
 					flushCharacters();
 					final EntityRef entity = currentLocator == null ? factory
 							.entityRef(name, pub, sys) : factory.entityRef(
 							currentLocator.getLineNumber(),
 							currentLocator.getColumnNumber(), name, pub, sys);
+					locate(entity);
 
 					// no way to tell if the entity was from an attribute or
 					// element so just assume element
@@ -991,7 +1549,7 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 	 */
 	@Override
 	public void startCDATA() {
-		if (suppress)
+		if (suppress || outside())
 			return;
 
 		inCDATA = true;
@@ -1002,7 +1560,7 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 	 */
 	@Override
 	public void endCDATA() throws SAXException {
-		if (suppress)
+		if (suppress || outside())
 			return;
 
 		previousCDATA = true;
@@ -1029,7 +1587,7 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 	public void comment(final char[] ch, final int start, final int length)
 			throws SAXException {
 
-		if (suppress)
+		if (suppress || (!inDTD && outside()))
 			return;
 
 		flushCharacters();
@@ -1044,6 +1602,7 @@ public class SAXHandler extends DefaultHandler implements LexicalHandler,
 					.comment(commentText) : factory.comment(
 					currentLocator.getLineNumber(),
 					currentLocator.getColumnNumber(), commentText);
+			locate(comment);
 			if (atRoot) {
 				factory.addContent(currentDocument, comment);
 			} else {
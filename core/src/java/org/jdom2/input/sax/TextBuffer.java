@@ -54,6 +54,9 @@
 
 package org.jdom2.input.sax;
 
+import java.io.IOException;
+
+import org.jdom2.SpilledText;
 import org.jdom2.Verifier;
 import org.jdom2.internal.ArrayCopy;
 
@@ -69,6 +72,9 @@ import org.jdom2.internal.ArrayCopy;
  * good performance in the uncommon case. Furthermore, avoiding StringBuilder
  * means that no extra unused char array space will be kept around after parsing
  * is through.
+ * <p>
+ * If a spill threshold is set then text longer than the threshold is written
+ * to a {@link SpilledText.Spool} instead of growing the array.
  * 
  * @author Bradley S. Huffman
  * @author Alex Rosen
@@ -84,6 +90,18 @@ final class TextBuffer {
 	/** The size of the text value. */
 	private int arraySize = 0;
 
+	/** Spill text longer than this many chars, 0 to never spill */
+	private int spillThreshold = 0;
+
+	/** Where the text is going once it is spilled, or null */
+	private SpilledText.Spool spool = null;
+
+	/** Whether all the spilled text is whitespace */
+	private boolean spillWhite = true;
+
+	/** Why the text could not be spilled, or null */
+	private IOException spillFailure = null;
+
 	/** Constructor */
 	TextBuffer() {
 	}
@@ -97,8 +115,17 @@ final class TextBuffer {
 	 *        The offset in the data to start adding from
 	 * @param count
 	 *        The number of chars to add.
+	 * @see #getSpillFailure()
 	 */
 	void append(final char[] source, final int start, final int count) {
+		if (spillFailure != null) {
+			return;
+		}
+		if (spool != null || (spillThreshold > 0
+				&& count > spillThreshold - arraySize)) {
+			spill(source, start, count);
+			return;
+		}
 		if ((count + arraySize) > array.length) {
 			// grow by 25%
 			array = ArrayCopy.copyOf(array, count + arraySize + (array.length >> 2));
@@ -107,11 +134,96 @@ final class TextBuffer {
 		arraySize += count;
 	}
 
+	/**
+	 * Write the text to the Spool, starting it if needed. If the text cannot
+	 * be written the Spool is discarded, and the failure is kept for
+	 * {@link #getSpillFailure()}.
+	 */
+	private void spill(final char[] source, final int start, final int count) {
+		try {
+			if (spool == null) {
+				spillWhite = isAllWhitespace();
+				spool = new SpilledText.Spool();
+				spool.write(array, 0, arraySize);
+				arraySize = 0;
+			}
+			spool.write(source, start, count);
+		} catch (IOException e) {
+			spillFailure = e;
+			if (spool != null) {
+				spool.discard();
+				spool = null;
+			}
+			arraySize = 0;
+			return;
+		}
+		int i = start + count;
+		while (spillWhite && --i >= start) {
+			spillWhite = Verifier.isXMLWhitespace(source[i]);
+		}
+	}
+
+	/**
+	 * Set the number of chars above which text is spilled.
+	 * 
+	 * @param spillThreshold
+	 *        The threshold, or 0 to keep all text in memory.
+	 */
+	void setSpillThreshold(final int spillThreshold) {
+		this.spillThreshold = spillThreshold;
+	}
+
+	/**
+	 * Get the number of chars above which text is spilled.
+	 * 
+	 * @return the threshold, or 0 if all text is kept in memory.
+	 */
+	int getSpillThreshold() {
+		return spillThreshold;
+	}
+
+	/**
+	 * Get the reason the text could not be spilled. The text appended since
+	 * is ignored, until the buffer is cleared.
+	 * 
+	 * @return the failure, or null if the text is intact.
+	 */
+	IOException getSpillFailure() {
+		return spillFailure;
+	}
+
+	/**
+	 * Indicates whether the text has been spilled.
+	 * 
+	 * @return true if the text is in a Spool
+	 */
+	boolean isSpilled() {
+		return spool != null;
+	}
+
+	/**
+	 * Get the spilled text as a SpilledText. The buffer is empty afterwards.
+	 * 
+	 * @return the spilled text.
+	 * @throws IOException
+	 *         if the Spool cannot be completed.
+	 */
+	SpilledText toSpilledText() throws IOException {
+		final SpilledText.Spool s = spool;
+		spool = null;
+		return s.toText();
+	}
+
 	/**
 	 * Clears the text value and prepares the TextBuffer for reuse.
 	 */
 	void clear() {
 		arraySize = 0;
+		spillFailure = null;
+		if (spool != null) {
+			spool.discard();
+			spool = null;
+		}
 	}
 
 	/**
@@ -120,6 +232,9 @@ final class TextBuffer {
 	 * @return true if all chars are whitespace
 	 */
 	boolean isAllWhitespace() {
+		if (spool != null) {
+			return spillWhite;
+		}
 		int i = arraySize;
 		while (--i >= 0) {
 			if (!Verifier.isXMLWhitespace(array[i])) {
@@ -132,6 +247,10 @@ final class TextBuffer {
 	/** Returns the text value stored in the buffer. */
 	@Override
 	public String toString() {
+		if (spool != null) {
+			// reads the spilled text without closing the Spool.
+			return spool.toString();
+		}
 		if (arraySize == 0) {
 			return "";
 		}
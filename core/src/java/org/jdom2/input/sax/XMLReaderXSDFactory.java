@@ -80,6 +80,10 @@ import org.jdom2.JDOMException;
  * File xmlfile = new File(&quot;data.xml&quot;);
  * Document validdoc = builder.build(xmlfile);
  * </pre>
+ * <p>
+ * Each factory compiles its XSD sources. Code that creates many factories
+ * for the same sources can use the constructors that take a
+ * {@link GrammarCache} to compile them once.
  * 
  * @see org.jdom2.input.sax
  * @author Rolf Lear
@@ -111,6 +115,26 @@ public class XMLReaderXSDFactory extends AbstractReaderXSDFactory {
 		super(SAXParserFactory.newInstance(), xsdschemas, systemid);
 	}
 
+	/**
+	 * Create an XML Schema validating XMLReader factory using one or more XSD
+	 * sources from SystemID references, keeping the compiled Schema in a
+	 * GrammarCache: a factory for the same sources with the same cache uses
+	 * the Schema without compiling it again.
+	 * 
+	 * @param cache
+	 *        The GrammarCache, for example {@link GrammarCache#getDefault()}.
+	 * @param systemid
+	 *        The var-arg array of at least one SystemID reference (URL) to
+	 *        locate the XSD's used to validate
+	 * @throws JDOMException
+	 *         If the Schemas could not be loaded from the SystemIDs This will
+	 *         wrap a SAXException that contains the actual fault.
+	 */
+	public XMLReaderXSDFactory(final GrammarCache cache, String... systemid)
+			throws JDOMException {
+		super(SAXParserFactory.newInstance(), xsdschemas, cache, systemid);
+	}
+
 	/**
 	 * Create an XML Schema validating XMLReader factory using one or more XSD
 	 * sources from SystemID references, and use the specified JAXP SAXParserFactory.
@@ -145,6 +169,26 @@ public class XMLReaderXSDFactory extends AbstractReaderXSDFactory {
 		super(SAXParserFactory.newInstance(), xsdschemas, systemid);
 	}
 
+	/**
+	 * Create an XML Schema validating XMLReader factory using one or more XSD
+	 * sources from URL references, keeping the compiled Schema in a
+	 * GrammarCache: a factory for the same sources with the same cache uses
+	 * the Schema without compiling it again.
+	 * 
+	 * @param cache
+	 *        The GrammarCache, for example {@link GrammarCache#getDefault()}.
+	 * @param systemid
+	 *        The var-arg array of at least one SystemID reference (URL) to
+	 *        locate the XSD's used to validate
+	 * @throws JDOMException
+	 *         If the Schemas could not be loaded from the SystemIDs This will
+	 *         wrap a SAXException that contains the actual fault.
+	 */
+	public XMLReaderXSDFactory(final GrammarCache cache, URL... systemid)
+			throws JDOMException {
+		super(SAXParserFactory.newInstance(), xsdschemas, cache, systemid);
+	}
+
 	/**
 	 * Create an XML Schema validating XMLReader factory using one or more XSD
 	 * sources from URL references, and use the specified JAXP SAXParserFactory.
@@ -179,6 +223,26 @@ public class XMLReaderXSDFactory extends AbstractReaderXSDFactory {
 		super(SAXParserFactory.newInstance(), xsdschemas, systemid);
 	}
 
+	/**
+	 * Create an XML Schema validating XMLReader factory using one or more XSD
+	 * sources from File references, keeping the compiled Schema in a
+	 * GrammarCache: a factory for the same sources with the same cache uses
+	 * the Schema without compiling it again.
+	 * 
+	 * @param cache
+	 *        The GrammarCache, for example {@link GrammarCache#getDefault()}.
+	 * @param systemid
+	 *        The var-arg array of at least one SystemID reference (File) to
+	 *        locate the XSD's used to validate
+	 * @throws JDOMException
+	 *         If the Schemas could not be loaded from the SystemIDs This will
+	 *         wrap a SAXException that contains the actual fault.
+	 */
+	public XMLReaderXSDFactory(final GrammarCache cache, File... systemid)
+			throws JDOMException {
+		super(SAXParserFactory.newInstance(), xsdschemas, cache, systemid);
+	}
+
 	/**
 	 * Create an XML Schema validating XMLReader factory using one or more XSD
 	 * sources from File references, and use the specified JAXP SAXParserFactory.
@@ -213,6 +277,26 @@ public class XMLReaderXSDFactory extends AbstractReaderXSDFactory {
 		super(SAXParserFactory.newInstance(), xsdschemas, sources);
 	}
 
+	/**
+	 * Create an XML Schema validating XMLReader factory using one or more XSD
+	 * sources from Transform Source references, keeping the compiled Schema in a
+	 * GrammarCache: a factory for the same sources with the same cache uses
+	 * the Schema without compiling it again.
+	 * 
+	 * @param cache
+	 *        The GrammarCache, for example {@link GrammarCache#getDefault()}.
+	 * @param sources
+	 *        The var-arg array of at least one transform Source reference to
+	 *        locate the XSD's used to validate
+	 * @throws JDOMException
+	 *         If the Schemas could not be loaded from the Sources This will
+	 *         wrap a SAXException that contains the actual fault.
+	 */
+	public XMLReaderXSDFactory(final GrammarCache cache, Source... sources)
+			throws JDOMException {
+		super(SAXParserFactory.newInstance(), xsdschemas, cache, sources);
+	}
+
 	/**
 	 * Create an XML Schema validating XMLReader factory using one or more XSD
 	 * sources from Transform Source references, and use the specified JAXP SAXParserFactory.
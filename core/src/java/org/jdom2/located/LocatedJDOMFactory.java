@@ -64,6 +64,7 @@ import org.jdom2.Element;
 import org.jdom2.EntityRef;
 import org.jdom2.Namespace;
 import org.jdom2.ProcessingInstruction;
+import org.jdom2.SpilledText;
 import org.jdom2.Text;
 
 /**
@@ -97,6 +98,14 @@ public class LocatedJDOMFactory extends DefaultJDOMFactory {
 		return ret;
 	}
 
+	@Override
+	public SpilledText spilledText(int line, int col, SpilledText text) {
+		final LocatedSpilledText ret = new LocatedSpilledText(text);
+		ret.setLine(line);
+		ret.setColumn(col);
+		return ret;
+	}
+
 	@Override
 	public Comment comment(int line, int col, String text) {
 		final LocatedComment ret = new LocatedComment(text);
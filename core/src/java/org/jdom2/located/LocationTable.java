@@ -0,0 +1,439 @@
+/*--
+
+ Copyright (C) 2011-2014 Jason Hunter & Brett McLaughlin.
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions, and the following disclaimer.
+
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions, and the disclaimer that follows
+    these conditions in the documentation and/or other materials
+    provided with the distribution.
+
+ 3. The name "JDOM" must not be used to endorse or promote products
+    derived from this software without prior written permission.  For
+    written permission, please contact <request_AT_jdom_DOT_org>.
+
+ 4. Products derived from this software may not be called "JDOM", nor
+    may "JDOM" appear in their name, without prior written permission
+    from the JDOM Project Management <request_AT_jdom_DOT_org>.
+
+ In addition, we request (but do not require) that you include in the
+ end-user documentation provided with the redistribution and/or in the
+ software itself an acknowledgement equivalent to the following:
+     "This product includes software developed by the
+      JDOM Project (http://www.jdom.org/)."
+ Alternatively, the acknowledgment may be graphical using the logos
+ available at http://www.jdom.org/images/logos.
+
+ THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED.  IN NO EVENT SHALL THE JDOM AUTHORS OR THE PROJECT
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ SUCH DAMAGE.
+
+ This software consists of voluntary contributions made by many
+ individuals on behalf of the JDOM Project and was originally
+ created by Jason Hunter <jhunter_AT_jdom_DOT_org> and
+ Brett McLaughlin <brett_AT_jdom_DOT_org>.  For more information
+ on the JDOM Project, please see <http://www.jdom.org/>.
+
+ */
+
+package org.jdom2.located;
+
+import org.jdom2.Content;
+import org.jdom2.Document;
+import org.jdom2.internal.ArrayCopy;
+
+/**
+ * The locations (line, column, and character offset) of the Content of a
+ * Document, kept in packed int arrays in the Document instead of in
+ * {@link Located} Content.
+ * <p>
+ * The {@link LocatedJDOMFactory} creates a Located subclass for each kind of
+ * Content, with two more fields in each instance. A LocationTable keeps the
+ * Content as the plain JDOM classes (so that, for example, Elements with
+ * just text stay compact, and code that handles the Content sees one class
+ * per kind), and records the location of each one by its ordinal: the order
+ * in which it was added to the table, which is document order for a
+ * builder.
+ * <p>
+ * A SAXBuilder with {@link org.jdom2.input.SAXBuilder#setRecordLocations(boolean)
+ * record locations} set adds the table to each Document it builds, and
+ * {@link #get(Document)} gets it. {@link #locate(Content)} gets the location
+ * of Content that is either Located, or in the LocationTable of its
+ * Document. As with Located Content the locations are those of the
+ * <strong>end</strong> of the SAX events.
+ * <p>
+ * Looking up Content in the table uses an identity index which is built
+ * the first time it is needed. All the methods of a LocationTable are
+ * synchronized on the table, including adding locations and changing them
+ * through a {@link Located} view, so it can be read and updated from any
+ * thread.
+ * <p>
+ * The table holds strong references to the Content it has locations for:
+ * Content that is removed from the Document stays reachable for as long
+ * as the Document is. {@link #locate(Content)} finds the table through
+ * {@link Content#getDocument()}, so it returns null for Content that has
+ * been detached from the Document (or for all the Content of a detached
+ * Element); keep the table (from {@link #get(Document)}) and call
+ * {@link #getLocated(Content)} on it to locate Content that may be
+ * detached. The table is not serialized or cloned with the Document.
+ */
+public final class LocationTable {
+
+	/** The Document property that holds the LocationTable */
+	private static final String PROPERTY = "http://www.jdom.org/located/LocationTable";
+
+	/**
+	 * A {@link Located} view of one entry in the table.
+	 */
+	private static final class Entry implements Located {
+		private final LocationTable table;
+		private final int ordinal;
+
+		private Entry(final LocationTable table, final int ordinal) {
+			this.table = table;
+			this.ordinal = ordinal;
+		}
+
+		@Override
+		public int getLine() {
+			return table.getLine(ordinal);
+		}
+
+		@Override
+		public int getColumn() {
+			return table.getColumn(ordinal);
+		}
+
+		@Override
+		public void setLine(final int line) {
+			table.setPosition(ordinal * 2, line);
+		}
+
+		@Override
+		public void setColumn(final int col) {
+			table.setPosition(ordinal * 2 + 1, col);
+		}
+
+		@Override
+		public String toString() {
+			return "[Location: " + getLine() + ":" + getColumn() + "]";
+		}
+	}
+
+	/** The located Content, by ordinal */
+	private Content[] content = new Content[64];
+
+	/** The line and column of each ordinal, packed in pairs */
+	private int[] positions = new int[128];
+
+	/** The offset of each ordinal, null until an offset is added */
+	private int[] offsets = null;
+
+	/** The number of located Content */
+	private int size = 0;
+
+	/** Open addressing identity index: ordinal + 1 of the Content, or 0 */
+	private int[] index = null;
+
+	/** The number of ordinals in the index */
+	private int indexed = 0;
+
+	/**
+	 * Get the LocationTable of a Document.
+	 * 
+	 * @param document
+	 *        The Document
+	 * @return the LocationTable, or null if the Document has none.
+	 */
+	public static LocationTable get(final Document document) {
+		final Object table = document.getProperty(PROPERTY);
+		return table instanceof LocationTable ? (LocationTable)table : null;
+	}
+
+	/**
+	 * Get the LocationTable of a Document, adding a new one if it has none.
+	 * This synchronizes on the Document, so that concurrent calls get the
+	 * same table.
+	 * 
+	 * @param document
+	 *        The Document
+	 * @return the LocationTable of the Document.
+	 */
+	public static LocationTable install(final Document document) {
+		synchronized (document) {
+			LocationTable table = get(document);
+			if (table == null) {
+				table = new LocationTable();
+				document.setProperty(PROPERTY, table);
+			}
+			return table;
+		}
+	}
+
+	/**
+	 * Get the location of some Content: the Content itself if it is
+	 * {@link Located}, otherwise its entry in the LocationTable of its
+	 * Document.
+	 * 
+	 * @param content
+	 *        The Content to locate.
+	 * @return the location, or null if it is not known.
+	 */
+	public static Located locate(final Content content) {
+		if (content instanceof Located) {
+			return (Located)content;
+		}
+		final Document doc = content.getDocument();
+		final LocationTable table = doc == null ? null : get(doc);
+		return table == null ? null : table.getLocated(content);
+	}
+
+	/**
+	 * Add the location of some Content.
+	 * 
+	 * @param item
+	 *        The Content.
+	 * @param line
+	 *        The line.
+	 * @param column
+	 *        The column.
+	 * @return the ordinal of the location.
+	 */
+	public synchronized int add(final Content item, final int line,
+			final int column) {
+		if (size == content.length) {
+			content = ArrayCopy.copyOf(content, size * 2);
+			positions = ArrayCopy.copyOf(positions, size * 4);
+			if (offsets != null) {
+				offsets = ArrayCopy.copyOf(offsets, size * 2);
+			}
+		}
+		content[size] = item;
+		positions[size * 2] = line;
+		positions[size * 2 + 1] = column;
+		if (offsets != null) {
+			offsets[size] = -1;
+		}
+		return size++;
+	}
+
+	/**
+	 * Add the location of some Content, with its character offset.
+	 * 
+	 * @param item
+	 *        The Content.
+	 * @param line
+	 *        The line.
+	 * @param column
+	 *        The column.
+	 * @param offset
+	 *        The offset from the start of the document, in characters, or
+	 *        -1 if it is not known.
+	 * @return the ordinal of the location.
+	 */
+	public synchronized int add(final Content item, final int line,
+			final int column, final int offset) {
+		final int ordinal = add(item, line, column);
+		if (offset >= 0 && offsets == null) {
+			offsets = new int[content.length];
+			for (int i = 0; i < ordinal; i++) {
+				offsets[i] = -1;
+			}
+		}
+		if (offsets != null) {
+			offsets[ordinal] = offset;
+		}
+		return ordinal;
+	}
+
+	/**
+	 * Get the number of locations.
+	 * 
+	 * @return the number of located Content.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Get the Content at an ordinal.
+	 * 
+	 * @param ordinal
+	 *        The ordinal
+	 * @return the Content.
+	 * @throws IndexOutOfBoundsException
+	 *         if the ordinal is not in the table.
+	 */
+	public synchronized Content getContent(final int ordinal) {
+		checkOrdinal(ordinal);
+		return content[ordinal];
+	}
+
+	/**
+	 * Get the line at an ordinal.
+	 * 
+	 * @param ordinal
+	 *        The ordinal
+	 * @return the line.
+	 * @throws IndexOutOfBoundsException
+	 *         if the ordinal is not in the table.
+	 */
+	public synchronized int getLine(final int ordinal) {
+		checkOrdinal(ordinal);
+		return positions[ordinal * 2];
+	}
+
+	/**
+	 * Get the column at an ordinal.
+	 * 
+	 * @param ordinal
+	 *        The ordinal
+	 * @return the column.
+	 * @throws IndexOutOfBoundsException
+	 *         if the ordinal is not in the table.
+	 */
+	public synchronized int getColumn(final int ordinal) {
+		checkOrdinal(ordinal);
+		return positions[ordinal * 2 + 1];
+	}
+
+	/**
+	 * Get the character offset at an ordinal. Offsets are only known when
+	 * the builder has the text of the document (see
+	 * {@link org.jdom2.input.SAXBuilder#setSourceSpans(boolean)}).
+	 * 
+	 * @param ordinal
+	 *        The ordinal
+	 * @return the offset, or -1 if it is not known.
+	 * @throws IndexOutOfBoundsException
+	 *         if the ordinal is not in the table.
+	 */
+	public synchronized int getOffset(final int ordinal) {
+		checkOrdinal(ordinal);
+		return offsets == null ? -1 : offsets[ordinal];
+	}
+
+	/**
+	 * Get the ordinal of some Content.
+	 * 
+	 * @param item
+	 *        The Content to look up.
+	 * @return the ordinal, or -1 if the Content has no location.
+	 */
+	public synchronized int indexOf(final Content item) {
+		if (item == null) {
+			return -1;
+		}
+		if (indexed < size) {
+			reindex();
+		}
+		final int mask = index.length - 1;
+		int slot = hash(item) & mask;
+		int ord;
+		while ((ord = index[slot]) != 0) {
+			if (content[ord - 1] == item) {
+				return ord - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the location of some Content.
+	 * 
+	 * @param item
+	 *        The Content.
+	 * @return a Located view of the location (changes to it change the
+	 *         table), or null if the Content has no location.
+	 */
+	public synchronized Located getLocated(final Content item) {
+		final int ordinal = indexOf(item);
+		return ordinal < 0 ? null : new Entry(this, ordinal);
+	}
+
+	/**
+	 * Get the line of some Content.
+	 * 
+	 * @param item
+	 *        The Content.
+	 * @return the line, or 0 if the Content has no location.
+	 */
+	public synchronized int getLine(final Content item) {
+		final int ordinal = indexOf(item);
+		return ordinal < 0 ? 0 : positions[ordinal * 2];
+	}
+
+	/**
+	 * Get the column of some Content.
+	 * 
+	 * @param item
+	 *        The Content.
+	 * @return the column, or 0 if the Content has no location.
+	 */
+	public synchronized int getColumn(final Content item) {
+		final int ordinal = indexOf(item);
+		return ordinal < 0 ? 0 : positions[ordinal * 2 + 1];
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "[LocationTable: " + size + " locations]";
+	}
+
+	private synchronized void setPosition(final int slot, final int value) {
+		positions[slot] = value;
+	}
+
+	private void checkOrdinal(final int ordinal) {
+		if (ordinal < 0 || ordinal >= size) {
+			throw new IndexOutOfBoundsException("Ordinal " + ordinal
+					+ " is not in the table of size " + size);
+		}
+	}
+
+	private static int hash(final Content item) {
+		final int h = System.identityHashCode(item);
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Add the ordinals that are not indexed yet, growing the index to keep
+	 * it at most half full.
+	 */
+	private void reindex() {
+		if (index == null || size * 2 > index.length) {
+			int cap = 64;
+			while (cap < size * 2) {
+				cap <<= 1;
+			}
+			index = new int[cap];
+			indexed = 0;
+		}
+		final int mask = index.length - 1;
+		for (; indexed < size; indexed++) {
+			int slot = hash(content[indexed]) & mask;
+			while (index[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			index[slot] = indexed + 1;
+		}
+	}
+
+}
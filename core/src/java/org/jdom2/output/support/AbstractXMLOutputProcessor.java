@@ -55,6 +55,7 @@
 package org.jdom2.output.support;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -73,8 +74,11 @@ import org.jdom2.EntityRef;
 import org.jdom2.IllegalDataException;
 import org.jdom2.Namespace;
 import org.jdom2.ProcessingInstruction;
+import org.jdom2.SourceSpan;
+import org.jdom2.SpilledText;
 import org.jdom2.Text;
 import org.jdom2.Verifier;
+import org.jdom2.output.EscapeStrategy;
 import org.jdom2.output.Format;
 import org.jdom2.output.Format.TextMode;
 import org.jdom2.output.XMLOutputter;
@@ -762,6 +766,10 @@ public abstract class AbstractXMLOutputProcessor extends AbstractOutputProcessor
 	 */
 	protected void printText(final Writer out, final FormatStack fstack,
 			final Text text) throws IOException {
+		if (text instanceof SpilledText && ((SpilledText)text).isSpilled()) {
+			printSpilledText(out, fstack, (SpilledText)text);
+			return;
+		}
 		if (fstack.getEscapeOutput()) {
 			textRaw(out, Format.escapeText(fstack.getEscapeStrategy(),
 					fstack.getLineSeparator(), text.getText()));
@@ -771,11 +779,64 @@ public abstract class AbstractXMLOutputProcessor extends AbstractOutputProcessor
 		textRaw(out, text.getText());
 	}
 
+	/**
+	 * Stream the content of a {@link SpilledText} from its temporary file,
+	 * one block at a time, instead of reading it in to a String.
+	 * 
+	 * @param out
+	 *        <code>Writer</code> to use.
+	 * @param fstack
+	 *        the FormatStack
+	 * @param text
+	 *        <code>SpilledText</code> to write.
+	 * @throws IOException
+	 *         if the destination Writer fails, or the text cannot be read.
+	 */
+	private void printSpilledText(final Writer out, final FormatStack fstack,
+			final SpilledText text) throws IOException {
+		final boolean escape = fstack.getEscapeOutput();
+		final Reader reader = text.getReader();
+		try {
+			final char[] buf = new char[4096];
+			int carry = 0;
+			int len;
+			while ((len = reader.read(buf, carry, buf.length - carry)) >= 0) {
+				len += carry;
+				// keep a high surrogate with the low surrogate it needs.
+				carry = len > 0 && Verifier.isHighSurrogate(buf[len - 1]) ? 1 : 0;
+				final String chunk = new String(buf, 0, len - carry);
+				if (escape) {
+					textRaw(out, Format.escapeText(fstack.getEscapeStrategy(),
+							fstack.getLineSeparator(), chunk));
+				} else {
+					textRaw(out, chunk);
+				}
+				if (carry > 0) {
+					buf[0] = buf[len - 1];
+				}
+			}
+			if (carry > 0) {
+				textRaw(out, buf[0]);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
 	/**
 	 * This will handle printing of an {@link Element}.
 	 * <p>
 	 * This method arranges for outputting the Element infrastructure including
 	 * Namespace Declarations and Attributes.
+	 * <p>
+	 * An Element that still has the text it was parsed from (see
+	 * {@link Element#getSourceSpan()}) is output by copying that text, when
+	 * the text is output as-is ({@link TextMode#PRESERVE}, with escaping on),
+	 * the encoding is UTF-8 or UTF-16 with the default EscapeStrategy, the
+	 * line separator is <code>"\n"</code> (or none), and every Namespace the Element relies on
+	 * from its ancestors is bound the same way in the output. The copy has the
+	 * quoting, attribute order, and empty-element style of the source, not of
+	 * the Format.
 	 * 
 	 * @param out
 	 *        <code>Writer</code> to use.
@@ -791,6 +852,12 @@ public abstract class AbstractXMLOutputProcessor extends AbstractOutputProcessor
 	protected void printElement(final Writer out, final FormatStack fstack,
 			final NamespaceStack nstack, final Element element) throws IOException {
 
+		final SourceSpan span = element.getSourceSpan();
+		if (span != null && isSourceUsable(fstack, nstack, element, span)) {
+			span.write(out);
+			return;
+		}
+
 		nstack.push(element);
 		try {
 			final List<Content> content = element.getContent();
@@ -884,6 +951,61 @@ public abstract class AbstractXMLOutputProcessor extends AbstractOutputProcessor
 
 	}
 
+	/**
+	 * The EscapeStrategy a Format uses by default for UTF-8 and UTF-16.
+	 */
+	private static final EscapeStrategy UTF_ESCAPE =
+			Format.getRawFormat().getEscapeStrategy();
+
+	/**
+	 * Check whether the source text of an Element can be output instead of
+	 * formatting the Element.
+	 * 
+	 * @param fstack
+	 *        the FormatStack
+	 * @param nstack
+	 *        the NamespaceStack, before the Element is pushed.
+	 * @param element
+	 *        <code>Element</code> to write.
+	 * @param span
+	 *        The source text of the Element
+	 * @return true if the source text is the same as the formatted Element.
+	 */
+	private static boolean isSourceUsable(final FormatStack fstack,
+			final NamespaceStack nstack, final Element element,
+			final SourceSpan span) {
+		if (fstack.getTextMode() != TextMode.PRESERVE || !fstack.getEscapeOutput()) {
+			return false;
+		}
+		final String encoding = fstack.getEncoding();
+		if (encoding == null || !encoding.regionMatches(true, 0, "UTF-", 0, 4)) {
+			return false;
+		}
+		// the source has the parsed line ends ('\n') and unescaped characters.
+		final String eol = fstack.getLineSeparator();
+		if (eol != null && !"\n".equals(eol)) {
+			return false;
+		}
+		if (fstack.getEscapeStrategy() != UTF_ESCAPE) {
+			return false;
+		}
+		// the Namespaces declared in the source of the Element.
+		final List<Namespace> declared = element.getAdditionalNamespaces();
+		final String own = span.declaresNamespace()
+				? element.getNamespacePrefix() : null;
+		for (final Namespace ns : element.getNamespacesInScope()) {
+			if (ns == Namespace.XML_NAMESPACE || ns.getPrefix().equals(own)
+					|| declared.contains(ns)) {
+				continue;
+			}
+			final Namespace bound = nstack.getNamespaceForPrefix(ns.getPrefix());
+			if (bound == null || !bound.getURI().equals(ns.getURI())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * This will handle printing of a List of {@link Content}.
 	 * <p>
@@ -29,4 +29,23 @@ public class TestTextBuffer {
 		}
 	}
 
+	@Test
+	public void testSpilledToString() {
+		final TextBuffer tb = new TextBuffer();
+		tb.setSpillThreshold(10);
+		tb.append("frodo".toCharArray(), 0, 5);
+		tb.append("baggins  ".toCharArray(), 0, 9);
+		assertTrue(tb.isSpilled());
+		// toString does not consume the spilled text.
+		assertEquals("frodobaggins  ", tb.toString());
+		assertEquals("frodobaggins  ", tb.toString());
+		tb.append("sam".toCharArray(), 0, 3);
+		assertEquals("frodobaggins  sam", tb.toString());
+		assertFalse(tb.isAllWhitespace());
+		assertNull(tb.getSpillFailure());
+		tb.clear();
+		assertFalse(tb.isSpilled());
+		assertEquals("", tb.toString());
+	}
+
 }
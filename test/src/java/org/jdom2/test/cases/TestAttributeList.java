@@ -409,4 +409,124 @@ public class TestAttributeList extends AbstractTestList<Attribute> {
 		
 	}
 	
+
+	@Test
+	public void testWideAttributeLookup() {
+		final Namespace ns = Namespace.getNamespace("pfx", "nsW");
+		final Element emt = new Element("wide");
+		final int cnt = 200;
+		for (int i = 0; i < cnt; i++) {
+			emt.setAttribute("att" + i, "val" + i);
+			emt.setAttribute("att" + i, "nsval" + i, ns);
+		}
+		assertEquals(cnt * 2, emt.getAttributesSize());
+		for (int i = 0; i < cnt; i++) {
+			assertEquals("val" + i, emt.getAttributeValue("att" + i));
+			assertEquals("nsval" + i, emt.getAttributeValue("att" + i, ns));
+		}
+		assertNull(emt.getAttribute("att" + cnt));
+		assertNull(emt.getAttribute("att0", Namespace.getNamespace("pfx", "nsX")));
+
+		// replace an existing one in the middle.
+		final Attribute repl = new Attribute("att100", "repl");
+		emt.setAttribute(repl);
+		assertEquals(cnt * 2, emt.getAttributesSize());
+		assertTrue(repl == emt.getAttribute("att100"));
+
+		// positions shift on removal.
+		assertTrue(emt.removeAttribute("att0"));
+		assertNull(emt.getAttribute("att0"));
+		assertEquals("val1", emt.getAttributeValue("att1"));
+		assertEquals("nsval199", emt.getAttributeValue("att199", ns));
+
+		// renaming an attached Attribute changes its key.
+		final Attribute att = emt.getAttribute("att5");
+		att.setName("renamed");
+		assertNull(emt.getAttribute("att5"));
+		assertTrue(att == emt.getAttribute("renamed"));
+		att.setNamespace(Namespace.getNamespace("ren", "nsR"));
+		assertNull(emt.getAttribute("renamed"));
+		assertTrue(att == emt.getAttribute("renamed", Namespace.getNamespace("nsR")));
+
+		emt.sortAttributes(null);
+		assertEquals("nsval7", emt.getAttributeValue("att7", ns));
+		assertEquals("val7", emt.getAttributeValue("att7"));
+
+		emt.getAttributes().add(0, new Attribute("first", "1"));
+		assertEquals("1", emt.getAttributeValue("first"));
+		assertEquals("val8", emt.getAttributeValue("att8"));
+	}
+	
+	@Test
+	public void testWideNamespaceCollision() {
+		final Element emt = new Element("wide", Namespace.getNamespace("e", "nsE"));
+		emt.addNamespaceDeclaration(Namespace.getNamespace("d", "nsD"));
+		final List<Attribute> attlist = emt.getAttributes();
+		final int cnt = 200;
+		for (int i = 0; i < cnt; i++) {
+			attlist.add(new Attribute("att" + i, "val",
+					Namespace.getNamespace("p" + (i % 10), "ns" + (i % 10))));
+		}
+		assertEquals(cnt, attlist.size());
+		// same prefix and URI, element and declared Namespaces are fine.
+		attlist.add(new Attribute("more", "val", Namespace.getNamespace("p3", "ns3")));
+		attlist.add(new Attribute("more", "val", Namespace.getNamespace("e", "nsE")));
+		attlist.add(new Attribute("more", "val", Namespace.getNamespace("d", "nsD")));
+		final String[][] bad = {{"p3", "nsX"}, {"e", "nsX"}, {"d", "nsX"}};
+		for (String[] pu : bad) {
+			final Attribute att = new Attribute("bad", "val",
+					Namespace.getNamespace(pu[0], pu[1]));
+			try {
+				attlist.add(att);
+				failNoException(IllegalAddException.class);
+			} catch (Exception e) {
+				checkException(IllegalAddException.class, e);
+			}
+			try {
+				attlist.add(10, att);
+				failNoException(IllegalAddException.class);
+			} catch (Exception e) {
+				checkException(IllegalAddException.class, e);
+			}
+			try {
+				attlist.set(10, att);
+				failNoException(IllegalAddException.class);
+			} catch (Exception e) {
+				checkException(IllegalAddException.class, e);
+			}
+		}
+
+		// a prefix used by just the replaced attribute may change URI.
+		attlist.add(new Attribute("only", "val", Namespace.getNamespace("q", "nsQ")));
+		final int only = attlist.size() - 1;
+		attlist.set(only, new Attribute("only", "val", Namespace.getNamespace("q", "nsQ2")));
+		try {
+			attlist.add(new Attribute("other", "val", Namespace.getNamespace("q", "nsQ")));
+			failNoException(IllegalAddException.class);
+		} catch (Exception e) {
+			checkException(IllegalAddException.class, e);
+		}
+		attlist.remove(only);
+		attlist.add(new Attribute("other", "val", Namespace.getNamespace("q", "nsQ")));
+
+		// replacing a duplicate with a new prefix for the same URI.
+		attlist.add(new Attribute("att0", "val", Namespace.getNamespace("r", "ns0")));
+		try {
+			attlist.add(new Attribute("other", "val", Namespace.getNamespace("r", "nsX")));
+			failNoException(IllegalAddException.class);
+		} catch (Exception e) {
+			checkException(IllegalAddException.class, e);
+		}
+
+		// changing the Namespace of an attached Attribute.
+		emt.getAttribute("more", Namespace.getNamespace("ns3")).setNamespace(
+				Namespace.getNamespace("s", "nsS"));
+		try {
+			attlist.add(new Attribute("other", "val", Namespace.getNamespace("s", "nsX")));
+			failNoException(IllegalAddException.class);
+		} catch (Exception e) {
+			checkException(IllegalAddException.class, e);
+		}
+	}
+
 }
@@ -1,7 +1,17 @@
 package org.jdom2.test.cases;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import org.jdom2.Content;
 import org.jdom2.DefaultJDOMFactory;
+import org.jdom2.Element;
+import org.jdom2.IllegalAddException;
 import org.jdom2.JDOMFactory;
+import org.jdom2.Text;
 
 @SuppressWarnings("javadoc")
 public class TestDefaultJDOMFactory extends AbstractTestJDOMFactory {
@@ -18,4 +28,70 @@ public class TestDefaultJDOMFactory extends AbstractTestJDOMFactory {
 		return new DefaultJDOMFactory();
 	}
 	
+	@Test
+	public void testAddContentMany() {
+		JDOMFactory fac = buildFactory();
+		Element root = fac.element("root");
+		for (int i = 0; i < 1000; i++) {
+			Element kid = fac.element("kid");
+			fac.addContent(root, kid);
+			fac.addContent(kid, fac.text("t" + i));
+		}
+		assertEquals(1000, root.getContentSize());
+		assertEquals("t999", root.getChildren().get(999).getText());
+		assertTrue(root.getChildren().get(10).getParent() == root);
+	}
+	
+	@Test
+	public void testAddContentParented() {
+		JDOMFactory fac = buildFactory();
+		Element root = fac.element("root");
+		Element kid = fac.element("kid");
+		fac.addContent(root, kid);
+		try {
+			fac.addContent(fac.element("other"), kid);
+			fail("Should not be able to add content with a parent");
+		} catch (IllegalAddException iae) {
+			// good
+		}
+		try {
+			fac.addContent(root, root);
+			fail("Should not be able to add an element to itself");
+		} catch (IllegalAddException iae) {
+			// good
+		}
+		try {
+			// root has content, and is the ancestor of kid.
+			fac.addContent(kid, root);
+			fail("Should not be able to add an element to its descendant");
+		} catch (IllegalAddException iae) {
+			// good
+		}
+		assertEquals(1, root.getContentSize());
+		assertEquals(0, kid.getContentSize());
+	}
+	
+	private static final class CountingElement extends Element {
+		private static final long serialVersionUID = 1L;
+		private int count = 0;
+		public CountingElement() {
+			super("counting");
+		}
+		@Override
+		public Element addContent(Content child) {
+			count++;
+			return super.addContent(child);
+		}
+	}
+	
+	@Test
+	public void testAddContentOverridden() {
+		JDOMFactory fac = buildFactory();
+		CountingElement emt = new CountingElement();
+		fac.addContent(emt, new Text("foo"));
+		fac.addContent(emt, fac.element("kid"));
+		assertEquals(2, emt.count);
+		assertEquals(2, emt.getContentSize());
+	}
+	
 }
@@ -990,6 +990,166 @@ public final class TestDocument {
 		assertTrue(doc.toString().indexOf("tstelement") >= 0);
 	}
 
+	private static final Document buildFreezable() {
+		Namespace ns = Namespace.getNamespace("p", "urn:p");
+		Element root = new Element("root", ns);
+		root.setAttribute("att", "val");
+		for (int i = 0; i < 20; i++) {
+			Element kid = new Element("kid", ns);
+			kid.setAttribute("idx", String.valueOf(i));
+			kid.addContent("text" + i);
+			kid.addContent(new CDATA(" cdata"));
+			kid.addContent(new Element("leaf").setText("leaf" + i));
+			root.addContent(kid);
+		}
+		root.addContent(new Comment("comment"));
+		root.addContent(new ProcessingInstruction("pi", "data"));
+		root.addContent(new EntityRef("ent"));
+		Document doc = new Document(root);
+		doc.setDocType(new DocType("root"));
+		return doc;
+	}
+	
+	private static final void checkFrozen(Runnable r) {
+		try {
+			r.run();
+			fail("Expected the frozen Document to refuse the modification");
+		} catch (UnsupportedOperationException uoe) {
+			// good
+		}
+	}
+	
+	@Test
+	public void testFreeze() {
+		final Document doc = buildFreezable();
+		final String before = new XMLOutputter().outputString(doc);
+		final String value = doc.getRootElement().getValue();
+		assertFalse(doc.isFrozen());
+		
+		FrozenDocument handle = doc.freeze();
+		assertTrue(doc.isFrozen());
+		assertTrue(handle == doc.freeze());
+		assertTrue(handle.getDocument() == doc);
+		assertTrue(handle.getRootElement() == doc.getRootElement());
+		
+		final Element root = doc.getRootElement();
+		final Namespace ns = root.getNamespace();
+		final Element kid = root.getChild("kid", ns);
+		
+		// reads are unaffected, and cached values are stable.
+		assertEquals(before, new XMLOutputter().outputString(doc));
+		assertEquals(value, root.getValue());
+		assertTrue(root.getValue() == root.getValue());
+		assertEquals("text0 cdata", kid.getText());
+		assertTrue(kid.getText() == kid.getText());
+		assertEquals("p:kid", kid.getQualifiedName());
+		assertTrue(kid.getQualifiedName() == kid.getQualifiedName());
+		assertTrue(kid.getChild("leaf").getNamespacesInScope().contains(ns));
+		assertTrue(kid.getNamespacesInScope() == kid.getNamespacesInScope());
+		assertTrue(kid.getChild("leaf").getNamespace("p") == ns);
+		assertEquals(20, root.getChildren("kid", ns).size());
+		assertEquals("5", root.getChildren("kid", ns).get(5).getAttributeValue("idx"));
+		
+		checkFrozen(new Runnable() { @Override public void run() { root.setName("x"); } });
+		checkFrozen(new Runnable() { @Override public void run() { root.setNamespace(null); } });
+		checkFrozen(new Runnable() { @Override public void run() { root.addNamespaceDeclaration(Namespace.getNamespace("q", "urn:q")); } });
+		checkFrozen(new Runnable() { @Override public void run() { root.addContent("more"); } });
+		checkFrozen(new Runnable() { @Override public void run() { root.setText("x"); } });
+		checkFrozen(new Runnable() { @Override public void run() { root.removeContent(0); } });
+		checkFrozen(new Runnable() { @Override public void run() { root.removeChildren("kid", ns); } });
+		checkFrozen(new Runnable() { @Override public void run() { root.getChildren().clear(); } });
+		checkFrozen(new Runnable() { @Override public void run() { root.getChildren().iterator().next(); root.getChildren().remove(0); } });
+		checkFrozen(new Runnable() { @Override public void run() { kid.detach(); } });
+		checkFrozen(new Runnable() { @Override public void run() { root.sortChildren(new Comparator<Element>() {
+			@Override
+			public int compare(Element o1, Element o2) {
+				return o2.getAttributeValue("idx").compareTo(o1.getAttributeValue("idx"));
+			}
+		}); } });
+		checkFrozen(new Runnable() { @Override public void run() { root.setAttribute("att", "changed"); } });
+		checkFrozen(new Runnable() { @Override public void run() { root.setAttribute("new", "att"); } });
+		checkFrozen(new Runnable() { @Override public void run() { root.removeAttribute("att"); } });
+		checkFrozen(new Runnable() { @Override public void run() { root.getAttribute("att").setName("x"); } });
+		checkFrozen(new Runnable() { @Override public void run() { root.getAttribute("att").setValue("x"); } });
+		checkFrozen(new Runnable() { @Override public void run() { root.getAttribute("att").setSpecified(false); } });
+		checkFrozen(new Runnable() { @Override public void run() { ((Text)kid.getContent(0)).setText("x"); } });
+		checkFrozen(new Runnable() { @Override public void run() { ((Text)kid.getContent(0)).append("x"); } });
+		checkFrozen(new Runnable() { @Override public void run() { ((CDATA)kid.getContent(1)).append("x"); } });
+		checkFrozen(new Runnable() { @Override public void run() { ((Comment)root.getContent(20)).setText("x"); } });
+		checkFrozen(new Runnable() { @Override public void run() { ((ProcessingInstruction)root.getContent(21)).setData("x"); } });
+		checkFrozen(new Runnable() { @Override public void run() { ((EntityRef)root.getContent(22)).setName("x"); } });
+		checkFrozen(new Runnable() { @Override public void run() { doc.getDocType().setSystemID("x"); } });
+		checkFrozen(new Runnable() { @Override public void run() { doc.detachRootElement(); } });
+		checkFrozen(new Runnable() { @Override public void run() { doc.addContent(new Comment("x")); } });
+		checkFrozen(new Runnable() { @Override public void run() { doc.setBaseURI("x"); } });
+		checkFrozen(new Runnable() { @Override public void run() { doc.setProperty("x", "y"); } });
+		
+		// nothing changed
+		assertEquals(before, new XMLOutputter().outputString(doc));
+		
+		// clones are modifiable.
+		Document copy = doc.clone();
+		assertFalse(copy.isFrozen());
+		copy.getRootElement().setName("changed");
+		copy.getRootElement().getChild("kid", ns).setText("changed");
+		copy.getRootElement().getAttribute("att").setValue("changed");
+		assertEquals("changed", copy.getRootElement().getChild("kid", ns).getText());
+		Element kidcopy = kid.clone();
+		kidcopy.addContent("more");
+		assertEquals("text0 cdatamore", kidcopy.getText());
+		assertEquals(before, new XMLOutputter().outputString(doc));
+	}
+	
+	@Test
+	public void testFreezeNoAttributes() {
+		final Element bare = new Element("bare");
+		final Document doc = new Document(new Element("root").addContent(bare));
+		doc.freeze();
+		assertTrue(bare.getAttributes().isEmpty());
+		assertFalse(bare.hasAttributes());
+		assertNull(bare.getAttribute("a"));
+		checkFrozen(new Runnable() { @Override public void run() { bare.setAttribute("a", "b"); } });
+		checkFrozen(new Runnable() { @Override public void run() { bare.setAttribute(new Attribute("a", "b")); } });
+		checkFrozen(new Runnable() { @Override public void run() { bare.getAttributes().add(new Attribute("a", "b")); } });
+		checkFrozen(new Runnable() { @Override public void run() { bare.setAttributes(Collections.singletonList(new Attribute("a", "b"))); } });
+		assertTrue(bare.getAttributes().isEmpty());
+	}
+	
+	@Test
+	public void testFreezeConcurrentReaders() throws InterruptedException {
+		final FrozenDocument handle = buildFreezable().freeze();
+		final String expect = new XMLOutputter().outputString(handle.getDocument());
+		final int threads = 4;
+		final String[] results = new String[threads];
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int id = t;
+			workers[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					String out = null;
+					for (int i = 0; i < 50; i++) {
+						Element root = handle.getRootElement();
+						for (Element kid : root.getChildren("kid", root.getNamespace())) {
+							kid.getValue();
+							kid.getNamespacesInScope();
+							kid.getAttributeValue("idx");
+						}
+						out = new XMLOutputter().outputString(handle.getDocument());
+					}
+					results[id] = out;
+				}
+			});
+			workers[t].start();
+		}
+		for (Thread w : workers) {
+			w.join();
+		}
+		for (String r : results) {
+			assertEquals(expect, r);
+		}
+	}
+	
 //	@Test
 //	public void testDocumentAddAttribute() {
 //		try {
@@ -71,16 +71,20 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.io.StringWriter;
+import java.lang.reflect.Field;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.junit.Test;
 import org.junit.runner.JUnitCore;
@@ -95,6 +99,7 @@ import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.EntityRef;
 import org.jdom2.IllegalAddException;
+import org.jdom2.IllegalDataException;
 import org.jdom2.IllegalNameException;
 import org.jdom2.Namespace;
 import org.jdom2.ProcessingInstruction;
@@ -103,6 +108,7 @@ import org.jdom2.Content.CType;
 import org.jdom2.filter.ContentFilter;
 import org.jdom2.filter.ElementFilter;
 import org.jdom2.filter.Filters;
+import org.jdom2.input.SAXBuilder;
 import org.jdom2.output.Format;
 import org.jdom2.output.XMLOutputter;
 import org.jdom2.test.util.UnitTestUtil;
@@ -2145,6 +2151,144 @@ public final class TestElement {
 		assertTrue(emt.getNamespace("xml") == Namespace.XML_NAMESPACE);
 		assertTrue(emt.getNamespace("tstada") == nsa);
 	}
+
+	/**
+	 * The scope as it was computed before it was cached on the Element.
+	 */
+	private static final List<Namespace> expectedScope(Element emt) {
+		TreeMap<String,Namespace> namespaces = new TreeMap<String, Namespace>();
+		Element e = emt;
+		namespaces.put("xml", Namespace.XML_NAMESPACE);
+		namespaces.put(emt.getNamespacePrefix(), emt.getNamespace());
+		while (e != null) {
+			if (!namespaces.containsKey(e.getNamespacePrefix())) {
+				namespaces.put(e.getNamespacePrefix(), e.getNamespace());
+			}
+			for (Namespace ns : e.getAdditionalNamespaces()) {
+				if (!namespaces.containsKey(ns.getPrefix())) {
+					namespaces.put(ns.getPrefix(), ns);
+				}
+			}
+			for (Attribute a : e.getAttributes()) {
+				if (!namespaces.containsKey(a.getNamespacePrefix())) {
+					namespaces.put(a.getNamespacePrefix(), a.getNamespace());
+				}
+			}
+			e = e.getParentElement();
+		}
+		if (!namespaces.containsKey("")) {
+			namespaces.put("", Namespace.NO_NAMESPACE);
+		}
+		ArrayList<Namespace> al = new ArrayList<Namespace>();
+		al.add(emt.getNamespace());
+		namespaces.remove(emt.getNamespacePrefix());
+		al.addAll(namespaces.values());
+		return al;
+	}
+	
+	private static final void checkScope(Element... emts) {
+		for (Element emt : emts) {
+			assertEquals(expectedScope(emt), emt.getNamespacesInScope());
+		}
+	}
+	
+	@Test
+	public void testNamespacesInScopeCached() {
+		Namespace nsa = Namespace.getNamespace("a", "urn:a");
+		Namespace nsb = Namespace.getNamespace("b", "urn:b");
+		Namespace nsa2 = Namespace.getNamespace("a", "urn:a2");
+		Namespace def = Namespace.getNamespace("urn:def");
+		Element root = new Element("root", nsa);
+		Element mid = new Element("mid");
+		Element leaf = new Element("leaf", nsb);
+		Element other = new Element("other", def);
+		root.addContent(mid);
+		mid.addContent(leaf);
+		new Document(root);
+		checkScope(root, mid, leaf, other);
+		// cached and unchanged
+		assertTrue(leaf.getNamespacesInScope() == leaf.getNamespacesInScope());
+		
+		root.addNamespaceDeclaration(def);
+		checkScope(root, mid, leaf);
+		assertTrue(root.getNamespace("") == def);
+		// mid is in NO_NAMESPACE, which rebinds the default prefix.
+		assertTrue(leaf.getNamespace("") == Namespace.NO_NAMESPACE);
+		
+		mid.setAttribute("att", "val", nsa2);
+		checkScope(root, mid, leaf);
+		assertTrue(leaf.getNamespace("a") == nsa2);
+		assertTrue(root.getNamespace("a") == nsa);
+		
+		mid.getAttribute("att", nsa2).setNamespace(Namespace.getNamespace("c", "urn:c"));
+		checkScope(root, mid, leaf);
+		assertTrue(leaf.getNamespace("a") == nsa);
+		assertTrue(leaf.getNamespace("c") != null);
+		
+		mid.removeAttribute("att", Namespace.getNamespace("c", "urn:c"));
+		checkScope(root, mid, leaf);
+		assertTrue(leaf.getNamespace("c") == null);
+		
+		// move the branch to a different parent.
+		other.addContent(mid.detach());
+		checkScope(root, mid, leaf, other);
+		other.addNamespaceDeclaration(nsa2);
+		checkScope(mid, leaf, other);
+		assertTrue(leaf.getNamespace("a") == nsa2);
+		
+		root.removeNamespaceDeclaration(def);
+		root.setNamespace(Namespace.NO_NAMESPACE);
+		other.detach();
+		root.addContent(mid.detach());
+		checkScope(root, mid, leaf, other);
+		assertTrue(leaf.getNamespace("a") == null);
+		
+		Element copy = mid.clone();
+		checkScope(copy, copy.getChild("leaf", nsb));
+		assertTrue(copy.getChild("leaf", nsb).getNamespace("b") == nsb);
+		// an unbound default prefix is in scope, but not declared.
+		Element lone = new Element("lone", nsb);
+		checkScope(lone);
+		assertTrue(lone.getNamespace("") == null);
+	}
+
+	@Test
+	public void testNamespacesInScopeLocal() {
+		Namespace nsa = Namespace.getNamespace("a", "urn:a");
+		Namespace nsb = Namespace.getNamespace("b", "urn:b");
+		Element root = new Element("root");
+		Element left = new Element("left");
+		Element right = new Element("right");
+		Element deep = new Element("deep");
+		root.addContent(left);
+		root.addContent(right);
+		right.addContent(deep);
+		Element elsewhere = new Element("elsewhere");
+		new Document(root);
+		List<Namespace> scope = deep.getNamespacesInScope();
+		
+		// changes outside the ancestry keep the cached scope.
+		left.addNamespaceDeclaration(nsa);
+		elsewhere.addNamespaceDeclaration(nsb);
+		elsewhere.setNamespace(nsb);
+		assertTrue(scope == deep.getNamespacesInScope());
+		checkScope(root, left, right, deep, elsewhere);
+		
+		// a change to an ancestor discards the scopes below it.
+		root.addNamespaceDeclaration(nsb);
+		assertTrue(scope != deep.getNamespacesInScope());
+		assertTrue(deep.getNamespace("b") == nsb);
+		checkScope(root, left, right, deep);
+		
+		// the scopes of a detached branch do not include the old ancestors.
+		scope = deep.getNamespacesInScope();
+		right.detach();
+		assertTrue(deep.getNamespace("b") == null);
+		checkScope(right, deep);
+		elsewhere.addContent(right);
+		assertTrue(deep.getNamespace("b") == nsb);
+		checkScope(elsewhere, right, deep);
+	}
 	
 	@Test
 	public void testSetNamespaceAdditional() {
@@ -3320,4 +3464,354 @@ public final class TestElement {
 		}
 	}
 
+	private static final Element buildWide(final int count) {
+		final Namespace ns = Namespace.getNamespace("p", "urn:wide");
+		final Element root = new Element("root");
+		for (int i = 0; i < count; i++) {
+			root.addContent(new Element("a"));
+			root.addContent(new Element("b", ns).setText("b" + i));
+			root.addContent("text" + i);
+		}
+		return root;
+	}
+
+	@Test
+	public void testGetChildIndexed() {
+		final Namespace ns = Namespace.getNamespace("q", "urn:wide");
+		final Element root = buildWide(50);
+		// twice, the first lookup scans, the second builds the index.
+		for (int i = 0; i < 2; i++) {
+			assertTrue(root.getChild("a") == root.getContent(0));
+			assertTrue(root.getChild("b", ns) == root.getContent(1));
+			assertNull(root.getChild("b"));
+			assertNull(root.getChild("c", ns));
+			assertEquals("b0", root.getChildText("b", ns));
+			assertEquals(50, root.getChildren("a").size());
+			assertEquals(50, root.getChildren("b", ns).size());
+			assertEquals(0, root.getChildren("b").size());
+		}
+		final List<Element> bs = root.getChildren("b", ns);
+		assertEquals("b49", bs.get(49).getText());
+		assertTrue(bs.get(1) == root.getContent(4));
+	}
+
+	@Test
+	public void testGetChildIndexedRename() {
+		final Element root = buildWide(50);
+		final List<Element> as = root.getChildren("a");
+		assertEquals(50, as.size());
+		assertEquals(50, root.getChildren("a").size());
+		final Element a = root.getChild("a");
+		a.setName("c");
+		assertEquals(49, as.size());
+		assertEquals(49, root.getChildren("a").size());
+		assertTrue(a == root.getChild("c"));
+		a.setNamespace(Namespace.getNamespace("urn:other"));
+		assertNull(root.getChild("c"));
+		assertTrue(a == root.getChild("c", Namespace.getNamespace("urn:other")));
+	}
+
+	@Test
+	public void testGetChildIndexedModified() {
+		final Element root = buildWide(50);
+		assertNotNull(root.getChild("a"));
+		final List<Element> as = root.getChildren("a");
+		assertEquals(50, as.size());
+		final Element a = new Element("a");
+		root.addContent(0, a);
+		assertTrue(a == root.getChild("a"));
+		assertTrue(a == as.get(0));
+		assertEquals(51, as.size());
+		as.remove(0);
+		assertEquals(50, as.size());
+		assertTrue(as.get(0) == root.getContent(0));
+		root.sortChildren(new Comparator<Element>() {
+			@Override
+			public int compare(Element o1, Element o2) {
+				return o2.getName().compareTo(o1.getName());
+			}
+		});
+		// the b's now come first
+		assertEquals("b", ((Element)root.getContent(0)).getName());
+		assertTrue(as.get(0) == root.getContent(75));
+	}
+
+	@Test
+	public void testRemoveChildIndexed() {
+		final Namespace ns = Namespace.getNamespace("urn:wide");
+		final Element root = buildWide(50);
+		assertNotNull(root.getChild("a"));
+		assertNotNull(root.getChild("a"));
+		final Element a = root.getChild("a");
+		assertTrue(root.removeChild("a"));
+		assertNull(a.getParent());
+		assertEquals(49, root.getChildren("a").size());
+		assertFalse(root.removeChildren("x"));
+		final List<Element> bs = new ArrayList<Element>(root.getChildren("b", ns));
+		assertTrue(root.removeChildren("b", ns));
+		assertFalse(root.removeChildren("b", ns));
+		for (Element b : bs) {
+			assertNull(b.getParent());
+		}
+		assertEquals(99, root.getContentSize());
+		assertEquals(49, root.getChildren().size());
+		assertEquals("text0", root.getContent(0).getValue());
+		assertEquals("text1", root.getContent(2).getValue());
+	}
+
+	@Test
+	public void testCloneDeep() {
+		final int depth = 20000;
+		// build bottom-up so each add is cheap.
+		Element top = new Element("leaf").setText("bottom");
+		for (int i = 1; i < depth; i++) {
+			final Element e = new Element("e" + (i % 7));
+			e.setAttribute("depth", Integer.toString(i));
+			e.addContent(new Comment("c" + i));
+			e.addContent(top);
+			top = e;
+		}
+		final Element copy = top.clone();
+		assertNull(copy.getParent());
+		Element o = top;
+		Element c = copy;
+		int level = depth - 1;
+		while (level > 0) {
+			assertTrue(o != c);
+			assertEquals(o.getName(), c.getName());
+			assertEquals(Integer.toString(level), c.getAttributeValue("depth"));
+			assertTrue(c == c.getAttribute("depth").getParent());
+			assertEquals(2, c.getContentSize());
+			assertTrue(c == c.getContent(0).getParent());
+			o = (Element)o.getContent(1);
+			c = (Element)c.getContent(1);
+			level--;
+		}
+		assertEquals("leaf", c.getName());
+		assertEquals("bottom", c.getText());
+		assertTrue(c.getContent(0) != o.getContent(0));
+	}
+
+	@Test
+	public void testCloneSubclassOverride() {
+		final Element root = new Element("root");
+		final Element mid = new CloneCounter("mid");
+		root.addContent(mid);
+		mid.addContent(new Element("kid").setAttribute("a", "b"));
+		mid.addNamespaceDeclaration(Namespace.getNamespace("x", "urn:x"));
+		final int before = CloneCounter.count;
+		final Element copy = root.clone();
+		assertEquals(before + 1, CloneCounter.count);
+		final Element cmid = copy.getChild("mid");
+		assertTrue(cmid instanceof CloneCounter);
+		assertTrue(cmid != mid);
+		assertEquals("b", cmid.getChild("kid").getAttributeValue("a"));
+		assertEquals(1, cmid.getAdditionalNamespaces().size());
+		assertTrue(cmid.getParent() == copy);
+	}
+
+	private static final class CloneCounter extends Element {
+		private static final long serialVersionUID = 1L;
+		static int count = 0;
+
+		CloneCounter(String name) {
+			super(name);
+		}
+
+		@Override
+		public Element clone() {
+			count++;
+			return super.clone();
+		}
+	}
+
+	@Test
+	public void testCompactLeafText() {
+		final Element emt = new Element("leaf");
+		assertEquals(0, emt.getContentSize());
+		assertEquals("", emt.getText());
+		assertEquals("", emt.getValue());
+		assertNull(emt.getChild("kid"));
+		assertFalse(emt.removeChild("kid"));
+
+		emt.setText("value");
+		assertEquals(1, emt.getContentSize());
+		assertEquals("value", emt.getText());
+		assertEquals("value", emt.getValue());
+		assertEquals("value", emt.getTextTrim());
+
+		// the Text is created on demand, and is then stable.
+		final Content text = emt.getContent(0);
+		assertTrue(text instanceof Text);
+		assertTrue(text.getParent() == emt);
+		assertTrue(text == emt.getContent(0));
+		assertEquals(0, emt.indexOf(text));
+		assertEquals(-1, emt.indexOf(new Text("value")));
+
+		// replacing the text detaches the old Text.
+		emt.setText("other");
+		assertNull(text.getParent());
+		assertEquals("other", emt.getText());
+		assertEquals(-1, emt.indexOf(text));
+
+		// empty text is still a Text child.
+		emt.setText("");
+		assertEquals(1, emt.getContentSize());
+		emt.setText(null);
+		assertEquals(0, emt.getContentSize());
+
+		try {
+			emt.setText("bad \u0000 char");
+			failNoException(IllegalDataException.class);
+		} catch (Exception e) {
+			checkException(IllegalDataException.class, e);
+		}
+		assertEquals(0, emt.getContentSize());
+	}
+
+	@Test
+	public void testCompactLeafAddContent() {
+		final Element emt = new Element("leaf");
+		final Text text = new Text("text");
+		emt.addContent(text);
+		assertTrue(text.getParent() == emt);
+		assertTrue(emt.getContent(0) == text);
+		assertEquals("text", emt.getText());
+
+		// a second child inflates to a full content list.
+		final Comment comment = new Comment("comment");
+		emt.addContent(comment);
+		assertEquals(2, emt.getContentSize());
+		assertTrue(emt.getContent(0) == text);
+		assertTrue(emt.getContent(1) == comment);
+		assertEquals("text", emt.getText());
+
+		// a Text that is already attached can not be added
+		final Element other = new Element("other");
+		try {
+			other.addContent(text);
+			failNoException(IllegalAddException.class);
+		} catch (Exception e) {
+			checkException(IllegalAddException.class, e);
+		}
+		assertEquals(0, other.getContentSize());
+
+		// detaching the only child
+		final Element single = new Element("single");
+		single.setText("gone");
+		final Content gone = single.getContent(0);
+		assertTrue(gone.detach() == gone);
+		assertNull(gone.getParent());
+		assertEquals(0, single.getContentSize());
+		assertEquals("", single.getText());
+
+		// CDATA is not a plain Text, and is stored in a content list.
+		final Element cdata = new Element("cdata");
+		cdata.addContent(new CDATA("cd"));
+		assertEquals("cd", cdata.getText());
+		assertTrue(cdata.getContent(0) instanceof CDATA);
+	}
+
+	@Test
+	public void testCompactLeafClone() {
+		final Element root = new Element("root");
+		final Element leaf = new Element("leaf").setText("value");
+		final Element empty = new Element("empty");
+		root.addContent(leaf);
+		root.addContent(empty);
+		final Element copy = root.clone();
+		assertEquals("value", copy.getChild("leaf").getText());
+		assertEquals(0, copy.getChild("empty").getContentSize());
+		final Content ctext = copy.getChild("leaf").getContent(0);
+		assertTrue(ctext != leaf.getContent(0));
+		assertTrue(ctext.getParent() == copy.getChild("leaf"));
+
+		// the clone is independent of the original.
+		copy.getChild("leaf").setText("changed");
+		assertEquals("value", leaf.getText());
+
+		final Element lcopy = leaf.clone();
+		assertEquals("value", lcopy.getText());
+		assertNull(lcopy.getParent());
+	}
+
+	private static final boolean isCompact(final Element emt) throws Exception {
+		final Field field = Element.class.getDeclaredField("content");
+		field.setAccessible(true);
+		return field.get(emt) == null;
+	}
+
+	@Test
+	public void testCompactLeafReads() throws Exception {
+		final Document doc = new SAXBuilder().build(new StringReader(
+				"<root><a>text</a><b/><c>more</c></root>"));
+		final Element root = doc.getRootElement();
+		final List<Element> leaves = new ArrayList<Element>(root.getChildren());
+		for (Element leaf : leaves) {
+			assertTrue(isCompact(leaf));
+		}
+
+		// output, and walking the tree, only read the content.
+		assertEquals("<root><a>text</a><b /><c>more</c></root>",
+				new XMLOutputter(Format.getCompactFormat().setOmitDeclaration(true))
+				.outputString(root));
+		int count = 0;
+		for (Content c : doc.getDescendants()) {
+			assertNotNull(c);
+			count++;
+		}
+		assertEquals(6, count);
+		for (Element leaf : leaves) {
+			assertTrue(isCompact(leaf));
+		}
+
+		final List<Content> content = leaves.get(0).getContent();
+		assertEquals(1, content.size());
+		assertTrue(content.get(0) == leaves.get(0).getContent(0));
+		assertFalse(content.isEmpty());
+		assertTrue(leaves.get(1).getContent().isEmpty());
+		try {
+			content.get(1);
+			failNoException(IndexOutOfBoundsException.class);
+		} catch (Exception e) {
+			checkException(IndexOutOfBoundsException.class, e);
+		}
+		assertTrue(isCompact(leaves.get(0)));
+
+		// changing the content through the List inflates the Element.
+		final Comment comment = new Comment("c");
+		content.add(comment);
+		assertFalse(isCompact(leaves.get(0)));
+		assertEquals(2, content.size());
+		assertTrue(comment == leaves.get(0).getContent(1));
+		assertTrue(content.remove(comment));
+		assertEquals(1, leaves.get(0).getContentSize());
+
+		final List<Content> empty = leaves.get(1).getContent();
+		empty.add(new Text("x"));
+		assertEquals("x", leaves.get(1).getText());
+		final Iterator<Content> it = leaves.get(2).getContent().iterator();
+		it.next();
+		it.remove();
+		assertEquals(0, leaves.get(2).getContentSize());
+	}
+
+	@Test
+	public void testCompactLeafSubclass() {
+		final List<Content> added = new ArrayList<Content>();
+		final Element emt = new Element("leaf") {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public Element addContent(final Content child) {
+				added.add(child);
+				return super.addContent(child);
+			}
+		};
+		emt.setText("value");
+		assertEquals(1, added.size());
+		assertTrue(added.get(0) == emt.getContent(0));
+		assertEquals("value", emt.getText());
+	}
+
 }
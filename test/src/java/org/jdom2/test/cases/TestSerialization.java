@@ -62,15 +62,20 @@ package org.jdom2.test.cases;
  */
 import static org.jdom2.test.util.UnitTestUtil.compare;
 import static org.jdom2.test.util.UnitTestUtil.deSerialize;
+import static org.jdom2.test.util.UnitTestUtil.failException;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.InputStream;
+import java.io.ObjectInputStream;
 import java.util.Iterator;
 
 import org.junit.Test;
 import org.junit.runner.JUnitCore;
 
 import org.jdom2.Attribute;
+import org.jdom2.AttributeType;
 import org.jdom2.CDATA;
 import org.jdom2.Comment;
 import org.jdom2.Content;
@@ -82,6 +87,8 @@ import org.jdom2.Namespace;
 import org.jdom2.ProcessingInstruction;
 import org.jdom2.Text;
 import org.jdom2.filter.ElementFilter;
+import org.jdom2.output.XMLOutputter;
+import org.jdom2.test.util.FidoFetch;
 
 @SuppressWarnings("javadoc")
 public final class TestSerialization {
@@ -168,6 +175,100 @@ public final class TestSerialization {
 		compare(att, attc);
 	}
 	
+	@Test
+	public void testElementSerialization() {
+		Namespace ns = Namespace.getNamespace("ns", "urn:ns");
+		Namespace ans = Namespace.getNamespace("a", "urn:a");
+		Element root = new Element("root", ns);
+		root.addNamespaceDeclaration(Namespace.getNamespace("x", "urn:x"));
+		root.setAttribute("plain", "value");
+		root.setAttribute("nsatt", "nsvalue", ans);
+		Attribute id = new Attribute("id", "ID1", AttributeType.ID);
+		id.setSpecified(false);
+		root.setAttribute(id);
+		for (int i = 0; i < 10; i++) {
+			root.addContent(new Element("child", ns).setText("text " + i));
+			root.addContent(new Comment("comment " + i));
+		}
+		root.addContent(new CDATA("cdata"));
+		root.addContent(new EntityRef("ent"));
+		
+		Element ser = deSerialize(root);
+		assertTrue(ser.getParent() == null);
+		assertEquals(AttributeType.ID, ser.getAttribute("id").getAttributeType());
+		assertFalse(ser.getAttribute("id").isSpecified());
+		assertTrue(ns == ser.getChildren().get(9).getNamespace());
+		XMLOutputter out = new XMLOutputter();
+		assertEquals(out.outputString(root), out.outputString(ser));
+		
+		Iterator<Content> sit = ser.getDescendants();
+		Iterator<Content> dit = root.getDescendants();
+		while (sit.hasNext() && dit.hasNext()) {
+			Content s = sit.next();
+			compare(s, dit.next());
+			assertTrue(s.getParent() != null);
+		}
+		assertFalse(sit.hasNext());
+		assertFalse(dit.hasNext());
+	}
+	
+	@Test
+	public void testDeepSerialization() {
+		// deep enough to overflow the stack with a recursive serialization.
+		final int depth = 50000;
+		Element root = new Element("root");
+		Element emt = root;
+		for (int i = 0; i < depth; i++) {
+			Element kid = new Element("kid");
+			emt.addContent(kid);
+			emt = kid;
+		}
+		emt.setText("leaf");
+		Document doc = new Document(root);
+		
+		Document ser = deSerialize(doc);
+		emt = ser.getRootElement();
+		int cnt = 0;
+		while (emt.getChild("kid") != null) {
+			emt = emt.getChild("kid");
+			cnt++;
+		}
+		assertEquals(depth, cnt);
+		assertEquals("leaf", emt.getText());
+	}
+	
+	@Test
+	public void testLongTextSerialization() {
+		StringBuilder sb = new StringBuilder(100000);
+		while (sb.length() < 100000) {
+			sb.append("Long text with unicode \u00e9\u4e2d ");
+		}
+		Element root = new Element("root").setText(sb.toString());
+		assertEquals(sb.toString(), deSerialize(root).getText());
+	}
+	
+	@Test
+	public void testLegacyDocument() throws Exception {
+		// The stream was generated by the JDOM 2.0.x serialization format.
+		InputStream is = FidoFetch.getFido().getStream(
+				"/serialize/LegacyDocument200.ser");
+		ObjectInputStream ois = new ObjectInputStream(is);
+		Document doc = null;
+		try {
+			doc = (Document)ois.readObject();
+		} catch (Exception e) {
+			failException("Unable to read legacy stream", e);
+		} finally {
+			ois.close();
+		}
+		assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+				"<!DOCTYPE root PUBLIC \"pubid\" \"sysid\">" +
+				"<!--doccomment--><?target key=value?>" +
+				"<r:root xmlns:r=\"urn:root\" xmlns:a=\"urn:att\" " +
+				"xmlns:pfx=\"urn:pfx\" att=\"value\" a:natt=\"nvalue\">  " +
+				"<child xmlns=\"urn:child\"><grandchild>gc text</grandchild>" +
+				"</child>&name;<![CDATA[cdata]]><!--comment--></r:root>",
+				new XMLOutputter().outputString(doc).replaceAll("[\r\n]", ""));
+	}
 	
-    
 }
@@ -0,0 +1,172 @@
+package org.jdom2.test.cases;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jdom2.SharedStringBin;
+import org.jdom2.test.util.UnitTestUtil;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestSharedStringBin {
+
+	@Test
+	public void testBadCapacity() {
+		try {
+			new SharedStringBin(0, false);
+			fail("expect exception!");
+		} catch (Exception e) {
+			UnitTestUtil.checkException(IllegalArgumentException.class, e);
+		}
+	}
+
+	@Test
+	public void testNull() {
+		SharedStringBin bin = new SharedStringBin();
+		assertNull(bin.reuse(null));
+		assertEquals(0, bin.getHits());
+		assertEquals(0, bin.getMisses());
+	}
+
+	@Test
+	public void testReuse() {
+		SharedStringBin bin = new SharedStringBin();
+		assertEquals(SharedStringBin.DEFAULTCAPACITY, bin.getCapacity());
+		assertFalse(bin.isWeak());
+		String a = bin.reuse("value");
+		assertEquals("value", a);
+		// compacted, not the input instance.
+		assertTrue("value" != a);
+		assertTrue(a == bin.reuse(new String("value")));
+		assertTrue(a == bin.reuse("value"));
+		assertEquals(1, bin.size());
+		assertEquals(2, bin.getHits());
+		assertEquals(1, bin.getMisses());
+		assertEquals(2.0 / 3.0, bin.getHitRatio(), 0.0001);
+		assertTrue(bin.getBytesSaved() >= 20);
+		assertTrue(bin.toString().contains("hits=2"));
+
+		bin.clear();
+		assertEquals(0, bin.size());
+		assertTrue(a != bin.reuse("value"));
+		// statistics are not reset
+		assertEquals(2, bin.getMisses());
+	}
+
+	@Test
+	public void testSameHashCode() {
+		// all have the same hashcode
+		final String[] samehc = new String[] {
+				"\u03FA\u00DA", "\u0401\u0001", "\u0400\u0020", "\u03FF\u003F",
+				"   ", "\u03FE\u005E", "\u03FD\u007D", "\u03FC\u009C"};
+		SharedStringBin bin = new SharedStringBin();
+		String[] actuals = new String[samehc.length];
+		for (int i = 0; i < samehc.length; i++) {
+			actuals[i] = bin.reuse(samehc[i]);
+			assertEquals(samehc[i], actuals[i]);
+		}
+		assertEquals(samehc.length, bin.size());
+		for (int i = 0; i < samehc.length; i++) {
+			assertTrue(actuals[i] == bin.reuse(samehc[i]));
+		}
+	}
+
+	@Test
+	public void testBounded() {
+		SharedStringBin bin = new SharedStringBin(100, false);
+		for (int i = 0; i < 10000; i++) {
+			assertEquals("v" + i, bin.reuse("v" + i));
+			assertTrue(bin.size() <= 100);
+		}
+		assertEquals(100, bin.size());
+		assertEquals(9900, bin.getEvictions());
+	}
+
+	@Test
+	public void testLeastRecentlyUsed() {
+		// a single segment, so the eviction order is exact.
+		SharedStringBin bin = new SharedStringBin(4, false);
+		final String a = bin.reuse("a");
+		final String b = bin.reuse("b");
+		bin.reuse("c");
+		bin.reuse("d");
+		assertTrue(a == bin.reuse("a"));
+		// b is now the oldest.
+		bin.reuse("e");
+		assertEquals(4, bin.size());
+		assertTrue(a == bin.reuse("a"));
+		assertTrue(b != bin.reuse("b"));
+	}
+
+	@Test
+	public void testWeak() {
+		SharedStringBin bin = new SharedStringBin(1000, true);
+		assertTrue(bin.isWeak());
+		String keep = bin.reuse("keep");
+		for (int i = 0; i < 500; i++) {
+			bin.reuse("gone" + i);
+		}
+		assertTrue(keep == bin.reuse("keep"));
+		assertTrue(bin.size() <= 501);
+		// values held elsewhere survive garbage collection.
+		System.gc();
+		assertTrue(keep == bin.reuse("keep"));
+		assertTrue(bin.size() >= 1);
+	}
+
+	@Test
+	public void testStrong() {
+		SharedStringBin bin = new SharedStringBin(1000, false);
+		assertFalse(bin.isWeak());
+		for (int i = 0; i < 500; i++) {
+			bin.reuse("kept" + i);
+		}
+		// values only held by the cache survive garbage collection.
+		System.gc();
+		assertEquals(500, bin.size());
+		final String kept = bin.reuse("kept7");
+		assertTrue(kept == bin.reuse("kept7"));
+		assertEquals(500, bin.size());
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		final SharedStringBin bin = new SharedStringBin(500, false);
+		final int threads = 4;
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicReference<Throwable> failed = new AtomicReference<Throwable>();
+		final List<Thread> running = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++) {
+			final Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int i = 0; i < 20000; i++) {
+							final String v = "v" + (i % 1000);
+							if (!v.equals(bin.reuse(v))) {
+								throw new IllegalStateException("Bad value for " + v);
+							}
+						}
+					} catch (Throwable e) {
+						failed.set(e);
+					}
+				}
+			});
+			thread.start();
+			running.add(thread);
+		}
+		start.countDown();
+		for (Thread thread : running) {
+			thread.join();
+		}
+		assertNull(failed.get());
+		assertTrue(bin.size() <= 500);
+		assertEquals(threads * 20000, bin.getHits() + bin.getMisses());
+	}
+
+}
@@ -0,0 +1,72 @@
+package org.jdom2.test.cases;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import org.jdom2.Element;
+import org.jdom2.JDOMFactory;
+import org.jdom2.SharedStringBin;
+import org.jdom2.SlimJDOMFactory;
+import org.jdom2.Text;
+
+@SuppressWarnings("javadoc")
+public class TestSlimJDOMFactoryShared extends AbstractTestJDOMFactory {
+
+	public TestSlimJDOMFactoryShared() {
+		super(false);
+	}
+
+	@Override
+	protected JDOMFactory buildFactory() {
+		return new SlimJDOMFactory(new SharedStringBin());
+	}
+
+	@Test
+	public void testCaching() {
+		SharedStringBin bin = new SharedStringBin();
+		SlimJDOMFactory faca = new SlimJDOMFactory(bin);
+		SlimJDOMFactory facb = new SlimJDOMFactory(bin);
+		assertTrue(bin == faca.getSharedStringBin());
+		assertNull(new SlimJDOMFactory().getSharedStringBin());
+
+		Text ta = faca.text("hi");
+		String hi = ta.getText();
+		assertTrue("hi" != hi);
+		assertTrue("hi" == hi.intern());
+
+		// the other factory reuses the same instance.
+		Text tb = facb.text("hi");
+		assertTrue(hi == tb.getText());
+		Element ea = faca.element("emt");
+		Element eb = facb.element("emt");
+		assertTrue(ea.getName() == eb.getName());
+		assertEquals(2, bin.getHits());
+
+		facb.clearCache();
+		assertEquals(0, bin.size());
+
+		Text tc = faca.text("hi");
+		assertTrue(hi != tc.getText());
+		assertTrue(hi.equals(tc.getText()));
+	}
+
+	@Test
+	public void testNoText() {
+		SharedStringBin bin = new SharedStringBin();
+		SlimJDOMFactory fac = new SlimJDOMFactory(bin, false);
+		assertTrue("hi" == fac.text("hi").getText());
+		assertEquals(0, bin.size());
+		assertTrue(fac.element("emt").getName() == 
+				fac.element("emt").getName());
+	}
+
+	@Test
+	public void testNullBin() {
+		try {
+			new SlimJDOMFactory((SharedStringBin)null);
+			fail("expect exception");
+		} catch (NullPointerException npe) {
+			// good
+		}
+	}
+}
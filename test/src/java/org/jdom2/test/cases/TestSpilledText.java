@@ -0,0 +1,299 @@
+package org.jdom2.test.cases;
+
+import static org.jdom2.test.util.UnitTestUtil.checkException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import org.jdom2.CDATA;
+import org.jdom2.Content;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.IllegalDataException;
+import org.jdom2.JDOMException;
+import org.jdom2.SpilledText;
+import org.jdom2.Text;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.located.Located;
+import org.jdom2.located.LocatedJDOMFactory;
+import org.jdom2.located.LocatedSpilledText;
+import org.jdom2.located.LocatedText;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+import org.jdom2.test.util.UnitTestUtil;
+
+@SuppressWarnings("javadoc")
+public class TestSpilledText {
+
+	private static final String payload(final int size) {
+		final StringBuilder sb = new StringBuilder(size + 100);
+		int i = 0;
+		while (sb.length() < size) {
+			sb.append("QUJD+/ef").append(i++ % 10);
+			if (i % 97 == 0) {
+				sb.append(" & <\n\uD800\uDC00>\r\n");
+			}
+		}
+		return sb.toString();
+	}
+
+	private static final String xml(final String payload) {
+		return "<root><small>a &amp; b</small><big>" + payload.replace("&", "&amp;")
+				.replace("<", "&lt;").replace("\r", "&#xD;") + "</big>"
+				+ "<data><![CDATA[" + payload.replace("<", "[").replace("&", "+")
+				+ "]]></data><white>  \n\t  </white></root>";
+	}
+
+	private static final String read(final Reader reader) throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		final char[] buf = new char[1000];
+		int len;
+		while ((len = reader.read(buf)) >= 0) {
+			sb.append(buf, 0, len);
+		}
+		reader.close();
+		return sb.toString();
+	}
+
+	private static final Document build(final String xml, final int threshold)
+			throws JDOMException, IOException {
+		final SAXBuilder sb = new SAXBuilder();
+		sb.setSpillThreshold(threshold);
+		return sb.build(new StringReader(xml));
+	}
+
+	@Test
+	public void testBuild() throws JDOMException, IOException {
+		final String payload = payload(100000);
+		final String xml = xml(payload);
+		final Document expect = build(xml, 0);
+		final Document doc = build(xml, 1000);
+		final Element root = doc.getRootElement();
+
+		final Content small = root.getChild("small").getContent(0);
+		assertEquals(Text.class, small.getClass());
+		final Content big = root.getChild("big").getContent(0);
+		assertTrue(big instanceof SpilledText);
+		final SpilledText text = (SpilledText)big;
+		assertTrue(text.isSpilled());
+		assertEquals(payload.length(), text.length());
+		assertEquals(payload, text.getText());
+		assertEquals(payload, text.getValue());
+		assertEquals(payload, read(text.getReader()));
+		assertEquals(payload, root.getChildText("big"));
+
+		final CharSequence chars = text.getCharSequence();
+		assertEquals(payload.length(), chars.length());
+		for (int i = 0; i < payload.length(); i += 997) {
+			assertEquals(payload.charAt(i), chars.charAt(i));
+		}
+		assertEquals(payload.charAt(payload.length() - 1),
+				chars.charAt(payload.length() - 1));
+		assertEquals(payload.substring(8000, 8500),
+				chars.subSequence(8000, 8500).toString());
+		assertEquals(payload.charAt(8200), chars.subSequence(8000, 8500).charAt(200));
+		try {
+			chars.charAt(payload.length());
+			fail("Expect exception");
+		} catch (Exception e) {
+			checkException(IndexOutOfBoundsException.class, e);
+		}
+
+		assertTrue(root.getChild("data").getContent(1) instanceof CDATA);
+		assertEquals(expect.getRootElement().getChildText("data"),
+				root.getChildText("data"));
+		assertEquals(Text.class, root.getChild("white").getContent(0).getClass());
+
+		for (Format format : new Format[] {Format.getRawFormat(),
+				Format.getPrettyFormat(), Format.getRawFormat().setLineSeparator("\r\n")}) {
+			final XMLOutputter out = new XMLOutputter(format);
+			assertEquals(out.outputString(expect), out.outputString(doc));
+		}
+	}
+
+	@Test
+	public void testBoundaryWhitespace() throws JDOMException, IOException {
+		final StringBuilder white = new StringBuilder();
+		while (white.length() < 5000) {
+			white.append(" \n\t");
+		}
+		final SAXBuilder sb = new SAXBuilder();
+		sb.setSpillThreshold(100);
+		sb.setIgnoringBoundaryWhitespace(true);
+		final Document doc = sb.build(new StringReader(
+				"<root><a>" + white + "</a><b>" + white + "x</b></root>"));
+		assertEquals(0, doc.getRootElement().getChild("a").getContentSize());
+		final Content b = doc.getRootElement().getChild("b").getContent(0);
+		assertTrue(b instanceof SpilledText);
+		assertEquals(white + "x", ((Text)b).getText());
+	}
+
+	@Test
+	public void testChange() throws JDOMException, IOException {
+		final String payload = payload(20000);
+		final Element big = build(xml(payload), 1000).getRootElement().getChild("big");
+		final SpilledText text = (SpilledText)big.getContent(0);
+		final SpilledText clone = text.clone();
+		assertTrue(clone.isSpilled());
+		assertTrue(text.toString().startsWith("[Text: " + payload.length()));
+
+		text.append("tail");
+		assertFalse(text.isSpilled());
+		assertEquals(payload + "tail", text.getText());
+		assertEquals(payload + "tail", read(text.getReader()));
+		assertEquals(payload + "tail", text.getCharSequence().toString());
+		assertEquals(payload, clone.getText());
+
+		final Element copy = UnitTestUtil.deSerialize(
+				new Element("copy").addContent(clone));
+		assertEquals(Text.class, copy.getContent(0).getClass());
+		assertEquals(payload, copy.getText());
+		clone.detach();
+
+		clone.setText("short");
+		assertFalse(clone.isSpilled());
+		assertEquals("short", clone.getText());
+		assertEquals(5, clone.length());
+	}
+
+	@Test
+	public void testSpool() throws IOException {
+		final SpilledText.Spool spool = new SpilledText.Spool();
+		spool.write("abc\uD800");
+		spool.write("\uDC00def");
+		assertEquals(8, spool.length());
+		final SpilledText text = spool.toText();
+		assertEquals("abc\uD800\uDC00def", text.getText());
+		assertEquals(new XMLOutputter().outputString(new Text(text.getText())),
+				new XMLOutputter().outputString(text));
+		assertEquals("abc&#x10000;def", new XMLOutputter(
+				Format.getRawFormat().setEncoding("US-ASCII")).outputString(text));
+
+		final SpilledText.Spool bad = new SpilledText.Spool();
+		try {
+			bad.write("ab\u0001");
+			fail("Expect exception");
+		} catch (Exception e) {
+			checkException(IllegalDataException.class, e);
+		}
+		bad.discard();
+		final SpilledText.Spool half = new SpilledText.Spool();
+		half.write("ab\uD800");
+		try {
+			half.toText();
+			fail("Expect exception");
+		} catch (Exception e) {
+			checkException(IllegalDataException.class, e);
+		}
+		half.discard();
+	}
+
+	@Test
+	public void testDispose() throws IOException {
+		final File dir = File.createTempFile("jdom2-spill", "");
+		dir.delete();
+		dir.mkdir();
+		try {
+			final SpilledText.Spool spool = new SpilledText.Spool(dir);
+			spool.write("abc");
+			// reading the content does not close the Spool.
+			assertEquals("abc", spool.toString());
+			spool.write("def");
+			assertEquals("abcdef", spool.toString());
+			final SpilledText text = spool.toText();
+			final SpilledText clone = text.clone();
+			assertEquals(1, dir.list().length);
+			text.dispose();
+			assertEquals("", text.getText());
+			assertFalse(text.isSpilled());
+			assertEquals(1, dir.list().length);
+			assertEquals("abcdef", clone.getText());
+			clone.setText("other");
+			assertEquals(0, dir.list().length);
+
+			final SpilledText.Spool discard = new SpilledText.Spool(dir);
+			discard.write("xyz");
+			discard.discard();
+			assertEquals(0, dir.list().length);
+		} finally {
+			for (File f : dir.listFiles()) {
+				f.delete();
+			}
+			dir.delete();
+		}
+	}
+
+	private static final void spillAndDrop(final File dir) throws IOException {
+		final SpilledText.Spool spool = new SpilledText.Spool(dir);
+		spool.write("abc");
+		final SpilledText text = spool.toText();
+		assertEquals("abc", text.getText());
+		final SpilledText.Spool dropped = new SpilledText.Spool(dir);
+		dropped.write("def");
+	}
+
+	@Test
+	public void testCollected() throws IOException, InterruptedException {
+		final File dir = File.createTempFile("jdom2-spill", "");
+		dir.delete();
+		dir.mkdir();
+		try {
+			spillAndDrop(dir);
+			assertEquals(2, dir.list().length);
+			// the files are deleted when the next Spool is created.
+			for (int i = 0; i < 100 && dir.list().length > 0; i++) {
+				System.gc();
+				Thread.sleep(10);
+				new SpilledText.Spool(dir).discard();
+			}
+			assertEquals(0, dir.list().length);
+		} finally {
+			for (File f : dir.listFiles()) {
+				f.delete();
+			}
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testFactory() throws JDOMException, IOException {
+		final String payload = payload(20000);
+		final SAXBuilder sb = new SAXBuilder();
+		sb.setSpillThreshold(1000);
+		sb.setJDOMFactory(new LocatedJDOMFactory());
+		final Document doc = sb.build(new StringReader(xml(payload)));
+		final Content big = doc.getRootElement().getChild("big").getContent(0);
+		assertTrue(big instanceof LocatedSpilledText);
+		assertTrue(((SpilledText)big).isSpilled());
+		assertTrue(((Located)big).getLine() > 1);
+		assertEquals(payload, ((Text)big).getText());
+		final Content copy = UnitTestUtil.deSerialize(
+				new Element("copy").addContent(big.clone())).getContent(0);
+		assertEquals(LocatedText.class, copy.getClass());
+		assertEquals(((Located)big).getLine(), ((Located)copy).getLine());
+		assertEquals(payload, copy.getValue());
+	}
+
+	@Test
+	public void testThreshold() {
+		final SAXBuilder sb = new SAXBuilder();
+		assertEquals(0, sb.getSpillThreshold());
+		sb.setSpillThreshold(1000);
+		assertEquals(1000, sb.getSpillThreshold());
+		try {
+			new SAXBuilder().setSpillThreshold(-1);
+			fail("Expect exception");
+		} catch (Exception e) {
+			checkException(IllegalArgumentException.class, e);
+		}
+	}
+
+}
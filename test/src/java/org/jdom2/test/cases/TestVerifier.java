@@ -204,6 +204,62 @@ public final class TestVerifier {
 		assertNull("invalidated valid string with 0x4E01", Verifier.checkCharacterData("test" + (char)0x4E01));
 
 	}
+
+	/**
+	 * The character data check scans blocks of chars at a time. Make sure
+	 * special chars are found (or accepted) at every position in a block,
+	 * and in the remainder after the last full block.
+	 */
+	@Test
+	public void testCheckCharacterDataBlocks() {
+		final String base = "abcdefghijklmnopqrstuvwxyz0123456789ABCD";
+		final char[] legal = {'\t', '\n', '\r', ' ', (char)0x7F, (char)0xD7FF,
+				(char)0xE000, (char)0xFFFD};
+		final char[] illegal = {(char)0x00, (char)0x0B, (char)0x1F,
+				(char)0xD800, (char)0xDC00, (char)0xFFFE, (char)0xFFFF};
+		for (int len = 0; len <= base.length(); len++) {
+			final String text = base.substring(0, len);
+			assertNull(Verifier.checkCharacterData(text));
+			for (int p = 0; p < len; p++) {
+				final String pre = text.substring(0, p);
+				final String post = text.substring(p + 1);
+				for (char c : legal) {
+					assertNull("Position " + p + " of " + len, 
+							Verifier.checkCharacterData(pre + c + post));
+				}
+				for (char c : illegal) {
+					assertNotNull("Position " + p + " of " + len, 
+							Verifier.checkCharacterData(pre + c + post));
+				}
+				// a valid surrogate pair, and a reversed one.
+				assertNull(Verifier.checkCharacterData(
+						pre + "\uD800\uDC00" + post));
+				assertNotNull(Verifier.checkCharacterData(
+						pre + "\uDC00\uD800" + post));
+			}
+		}
+	}
+
+	/**
+	 * Verified names are cached, but invalid names must still fail, even if
+	 * they collide with (or equal the prefix of) a cached name.
+	 */
+	@Test
+	public void testCheckNameCached() {
+		for (int i = 0; i < 5000; i++) {
+			assertNull(Verifier.checkElementName("name" + i));
+			assertNull(Verifier.checkElementName("name" + i));
+			assertNotNull(Verifier.checkElementName(i + "name"));
+			assertNotNull(Verifier.checkElementName("na:me" + i));
+			assertNull(Verifier.checkAttributeName("name" + i));
+		}
+		// cached as an element name, but not a legal attribute name
+		assertNull(Verifier.checkElementName("xmlns"));
+		assertNull(Verifier.checkElementName("xmlns"));
+		assertNotNull(Verifier.checkAttributeName("xmlns"));
+		assertNotNull(Verifier.checkElementName(""));
+		assertNotNull(Verifier.checkElementName(null));
+	}
     
 	/**
 	 * Test that checkCDATASection verifies CDATA excluding
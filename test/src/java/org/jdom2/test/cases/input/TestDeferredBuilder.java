@@ -0,0 +1,384 @@
+package org.jdom2.test.cases.input;
+
+import static org.jdom2.test.util.UnitTestUtil.checkException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringReader;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.SAXParseException;
+
+import org.jdom2.Attribute;
+import org.jdom2.AttributeType;
+import org.jdom2.CDATA;
+import org.jdom2.Deferred;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.IllegalNameException;
+import org.jdom2.JDOMException;
+import org.jdom2.Namespace;
+import org.jdom2.SlimJDOMFactory;
+import org.jdom2.input.DeferredBuilder;
+import org.jdom2.input.DirectSAXEngine;
+import org.jdom2.input.JDOMParseException;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.XMLOutputter;
+import org.jdom2.test.util.FidoFetch;
+import org.jdom2.test.util.UnitTestUtil;
+
+@SuppressWarnings("javadoc")
+public class TestDeferredBuilder {
+
+	private static final Document deferred(final String xml)
+			throws JDOMException, IOException {
+		return new DeferredBuilder().build(xml.getBytes("UTF-8"));
+	}
+
+	private static final void checkSame(final String xml)
+			throws JDOMException, IOException {
+		// the deferred content is built the way the DirectSAXEngine builds it.
+		final Document expect = new DirectSAXEngine(new SAXBuilder()).build(
+				new StringReader(xml));
+		final Document doc = deferred(xml);
+		assertTrue(Deferred.isDeferred(doc.getRootElement()));
+		UnitTestUtil.compare(expect, doc);
+		assertFalse(Deferred.isDeferred(doc.getRootElement()));
+	}
+
+	private static final void checkFails(final String xml) throws IOException {
+		try {
+			new SAXBuilder().build(new StringReader(xml));
+			fail("SAX should reject " + xml);
+		} catch (JDOMException e) {
+			checkException(JDOMParseException.class, e);
+		}
+		try {
+			deferred(xml);
+			fail("DeferredBuilder should reject " + xml);
+		} catch (JDOMException e) {
+			checkException(JDOMParseException.class, e);
+			assertTrue(e.getCause() instanceof SAXParseException);
+		}
+	}
+
+	private static final void checkExpandFails(final String xml, final String path)
+			throws JDOMException, IOException {
+		Element emt = deferred(xml).getRootElement();
+		for (String name : path.split("/")) {
+			if (name.length() > 0) {
+				emt = emt.getChildren().get(Integer.parseInt(name));
+			}
+		}
+		try {
+			emt.getAttributes();
+			fail("Expansion should fail for " + xml);
+		} catch (Exception e) {
+			checkException(IllegalNameException.class, e);
+		}
+	}
+
+	@Test
+	public void testContent() throws JDOMException, IOException {
+		checkSame("<root/>");
+		checkSame("<?xml version='1.0' encoding='UTF-8' standalone='yes'?>\n" +
+				"<!-- lead --><?pi  some data ?><root a='1' b=\"x&amp;y&lt;&#65;&#x42;\">" +
+				"text<![CDATA[cdata <&>]]>more&gt;<!----><!-- c --><?target?>" +
+				"<kid>t</kid>tail<kid/></root><!-- trail --><?pi?>\n");
+		checkSame("<root>a\r\nb\rc\n<x att='a\tb\r\nc d&#10;'/>\u00e9\u20ac\ud800\udc00</root>");
+		checkSame("<root>\n  <kid>  </kid>\n  <![CDATA[  ]]>\n</root>");
+		checkSame("<root>&#x10000;&#65536;x]y]>z&quot;&apos;</root>");
+		checkSame("<root  ><a\n/><b x = \"1\"\t></b ><c>\u00e9<d><e/></d></c></root\n>");
+	}
+
+	@Test
+	public void testNamespaces() throws JDOMException, IOException {
+		checkSame("<root xmlns='rootns' xmlns:ans='attns' xmlns:cns='childns' att1='val1' ans:att2='val2' >" +
+				"<child xmlns='' att='child1' /><child att='child2' /><cns:child att='child3' />" +
+				"<child ans:att='child4' /><ans:child xmlns:ans='other'/><child xml:lang='en'/></root>");
+		final Document doc = deferred("<p:root xmlns:p='u' xmlns:q='v' p:a='1' q:a='2' b='3'/>");
+		final Element root = doc.getRootElement();
+		assertEquals(Namespace.getNamespace("p", "u"), root.getNamespace());
+		assertEquals(1, root.getAdditionalNamespaces().size());
+		assertEquals("1", root.getAttributeValue("a", Namespace.getNamespace("u")));
+		assertEquals("2", root.getAttributeValue("a", Namespace.getNamespace("v")));
+		for (Attribute a : root.getAttributes()) {
+			assertEquals(AttributeType.CDATA, a.getAttributeType());
+		}
+	}
+
+	@Test
+	public void testLazy() throws JDOMException, IOException {
+		final Document doc = deferred("<root><a x='1'><aa/></a><b>text</b><c/></root>");
+		final Element root = doc.getRootElement();
+		assertTrue(Deferred.isDeferred(root));
+		// names and namespaces do not need the content.
+		assertEquals("root", root.getName());
+		assertEquals(Namespace.NO_NAMESPACE, root.getNamespace());
+		assertTrue(Deferred.isDeferred(root));
+		final Element a = root.getChild("a");
+		assertFalse(Deferred.isDeferred(root));
+		assertTrue(Deferred.isDeferred(a));
+		final Element b = root.getChild("b");
+		assertTrue(Deferred.isDeferred(b));
+		assertEquals("1", a.getAttributeValue("x"));
+		assertFalse(Deferred.isDeferred(a));
+		assertTrue(Deferred.isDeferred(a.getChild("aa")));
+		assertTrue(Deferred.isDeferred(b));
+		assertEquals("text", b.getText());
+		assertFalse(Deferred.isDeferred(b));
+		assertTrue(Deferred.isDeferred(root.getChild("c")));
+		assertEquals(0, root.getChild("c").getContentSize());
+	}
+
+	@Test
+	public void testSkipIndex() throws JDOMException, IOException {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("<records xmlns:r='urn:records'>");
+		for (int i = 0; i < 2000; i++) {
+			sb.append("<r:record id='").append(i).append("' name='record\u00e9 ")
+				.append(i).append("'><value>").append(i * 7).append(" &amp; more</value>")
+				.append("<deep><deeper><deepest/></deeper></deep>")
+				.append("text<![CDATA[").append(i).append("]]><!--").append(i).append("--></r:record>\n");
+		}
+		sb.append("</records>");
+		final Document doc = deferred(sb.toString());
+		final List<Element> records = doc.getRootElement().getChildren();
+		assertEquals(2000, records.size());
+		final Element last = records.get(1999);
+		assertEquals("1999", last.getAttributeValue("id"));
+		assertEquals("13993 & more", last.getChildText("value"));
+		assertTrue(Deferred.isDeferred(records.get(1000)));
+		checkSame(sb.toString());
+	}
+
+	@Test
+	public void testMutateDeferred() throws JDOMException, IOException {
+		final Document doc = deferred("<root xmlns:p='u'><a p:x='1'>text<k/></a><b/></root>");
+		final Element a = doc.getRootElement().getChild("a");
+		assertTrue(Deferred.isDeferred(a));
+		// detach, and move it to where the prefix is bound differently.
+		a.detach();
+		final Element other = new Element("other");
+		other.addNamespaceDeclaration(Namespace.getNamespace("p", "elsewhere"));
+		other.addContent(a);
+		assertEquals("1", a.getAttributeValue("x", Namespace.getNamespace("u")));
+		assertEquals("text", a.getText());
+
+		final Element b = doc.getRootElement().getChild("b");
+		b.setAttribute("y", "2");
+		b.addContent(new Element("added"));
+		assertEquals(1, b.getAttributesSize());
+		assertEquals(1, b.getContentSize());
+
+		final Element root = deferred("<root><a>x</a></root>").getRootElement();
+		final Element ra = root.getChild("a");
+		ra.addContent("y");
+		assertEquals("xy", ra.getText());
+		try {
+			Deferred.defer(ra, new Deferred() {
+				@Override
+				protected void expand(final Element element) {
+					// nothing
+				}
+			});
+			fail("Expect exception");
+		} catch (Exception e) {
+			checkException(IllegalStateException.class, e);
+		}
+	}
+
+	@Test
+	public void testCopies() throws JDOMException, IOException, ClassNotFoundException {
+		final String xml = "<root xmlns:p='u'><a p:x='1'>text<k/></a><b>b</b></root>";
+		final Document expect = new SAXBuilder().build(new StringReader(xml));
+		UnitTestUtil.compare(expect, deferred(xml).clone());
+		UnitTestUtil.compare(expect.getRootElement(),
+				deferred(xml).getRootElement().clone());
+		assertEquals(new XMLOutputter().outputString(expect),
+				new XMLOutputter().outputString(deferred(xml)));
+
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		final ObjectOutputStream oos = new ObjectOutputStream(baos);
+		oos.writeObject(deferred(xml));
+		oos.close();
+		final ObjectInputStream ois = new ObjectInputStream(
+				new ByteArrayInputStream(baos.toByteArray()));
+		UnitTestUtil.compare(expect, (Document)ois.readObject());
+
+		final Document frozen = deferred(xml);
+		frozen.freeze();
+		assertFalse(Deferred.isDeferred(frozen.getRootElement()));
+		assertFalse(Deferred.isDeferred(frozen.getRootElement().getChild("a").getChild("k")));
+		UnitTestUtil.compare(expect, frozen);
+	}
+
+	@Test
+	public void testResources() throws JDOMException, IOException, URISyntaxException {
+		final String[] resources = {"/DOMBuilder/simple.xml",
+				"/DOMBuilder/attributes.xml", "/DOMBuilder/attributesandchildren.xml",
+				"/DOMBuilder/namespaces.xml", "/DOMBuilder/complex.xml",
+				"/complex.xml", "/xmlchars.xml", "/xsdcomplex/input.xml",
+				"/DOMBuilder/doctype.xml", "/SAXBuilderTestDecl.xml"};
+		final SAXBuilder sb = new SAXBuilder();
+		final DeferredBuilder db = new DeferredBuilder();
+		for (String res : resources) {
+			final File file = new File(FidoFetch.getFido().getURL(res).toURI());
+			UnitTestUtil.compare(sb.build(file), db.build(file));
+		}
+	}
+
+	@Test
+	public void testBuffersAndFiles() throws JDOMException, IOException {
+		final String xml = "<root><a>\u00e9</a></root>";
+		final byte[] data = ("junk" + xml).getBytes("UTF-8");
+		final ByteBuffer buffer = ByteBuffer.wrap(data);
+		buffer.position(4);
+		final Document doc = new DeferredBuilder().build(buffer);
+		assertEquals(4, buffer.position());
+		assertNull(doc.getBaseURI());
+		assertEquals("\u00e9", doc.getRootElement().getChildText("a"));
+
+		final File file = File.createTempFile("deferred", ".xml");
+		try {
+			final FileOutputStream fos = new FileOutputStream(file);
+			fos.write(xml.getBytes("UTF-8"));
+			fos.close();
+			final Document fdoc = new DeferredBuilder().build(file);
+			assertEquals(new SAXBuilder().build(file).getBaseURI(), fdoc.getBaseURI());
+			assertEquals("\u00e9", fdoc.getRootElement().getChildText("a"));
+		} finally {
+			file.delete();
+		}
+
+		final DeferredBuilder slim = new DeferredBuilder(new SlimJDOMFactory());
+		assertTrue(slim.getJDOMFactory() instanceof SlimJDOMFactory);
+		assertEquals("\u00e9", slim.build(xml.getBytes("UTF-8"))
+				.getRootElement().getChildText("a"));
+		slim.setJDOMFactory(null);
+		assertNotNull(slim.getJDOMFactory());
+	}
+
+	@Test
+	public void testEagerFallback() throws JDOMException, IOException {
+		final DeferredBuilder db = new DeferredBuilder();
+		final Document dtd = db.build(("<?xml version='1.0'?>\n<!-- before -->\n" +
+				"<!DOCTYPE root [<!ENTITY ent 'expanded'>]>\n<root>&ent;</root>").getBytes("UTF-8"));
+		assertNotNull(dtd.getDocType());
+		assertFalse(Deferred.isDeferred(dtd.getRootElement()));
+		assertEquals("expanded", dtd.getRootElement().getText());
+		assertEquals("a", db.build("<?xml version='1.1'?><root>a</root>".getBytes("UTF-8"))
+				.getRootElement().getText());
+		final Document latin = db.build("<?xml version='1.0' encoding='ISO-8859-1'?><root>\u00e9</root>"
+				.getBytes("ISO-8859-1"));
+		assertTrue(Deferred.isDeferred(latin.getRootElement()));
+		assertEquals("\u00e9", latin.getRootElement().getText());
+		assertEquals("\u20ac", db.build("<?xml version='1.0' encoding='windows-1252'?><root>\u20ac</root>"
+				.getBytes("windows-1252")).getRootElement().getText());
+		assertEquals("\u00e9", db.build("\ufeff<root>\u00e9</root>".getBytes("UTF-16BE"))
+				.getRootElement().getText());
+		final Document bom = db.build("\ufeff<root>\u00e9</root>".getBytes("UTF-8"));
+		assertTrue(Deferred.isDeferred(bom.getRootElement()));
+		assertEquals("\u00e9", bom.getRootElement().getText());
+	}
+
+	@Test
+	public void testErrors() throws JDOMException, IOException {
+		checkFails("");
+		checkFails("  ");
+		checkFails("<root>");
+		checkFails("<root></other>");
+		checkFails("<root></rootx>");
+		checkFails("<root><a></root></a>");
+		checkFails("<root a=1/>");
+		checkFails("<root a='1'b='2'/>");
+		checkFails("<root a='<'/>");
+		checkFails("<root a='1/>");
+		checkFails("<root>&unknown;</root>");
+		checkFails("<root>&amp</root>");
+		checkFails("<root>&#0;</root>");
+		checkFails("<root>&#xZ;</root>");
+		checkFails("<root>\u0001</root>");
+		checkFails("<root>]]></root>");
+		checkFails("<root/><root/>");
+		checkFails("text<root/>");
+		checkFails("<root/>text");
+		checkFails("<root><!-- a -- b --></root>");
+		checkFails("<root><?xml data?></root>");
+		checkFails("<root><![CDATA[ abc </root>");
+		checkFails("<![CDATA[x]]><root/>");
+		checkFails("<root></root");
+		try {
+			new DeferredBuilder().build(new byte[] {'<', 'r', '>', (byte)0xFF, '<', '/', 'r', '>'});
+			fail("Expect exception");
+		} catch (Exception e) {
+			checkException(JDOMParseException.class, e);
+		}
+		try {
+			new DeferredBuilder().build("<root>\n<kid>\n</root>".getBytes("UTF-8"));
+			fail("Expect exception");
+		} catch (JDOMParseException e) {
+			assertEquals(3, e.getLineNumber());
+		}
+	}
+
+	@Test
+	public void testDeclaration() throws JDOMException, IOException {
+		checkSame("<?xml version='1.0' standalone='no'?><root/>");
+		checkSame("<?xml version=\"1.0\" encoding=\"UTF-8\" ?><root/>");
+		checkSame("<?xml version = '1.0'\n\tstandalone = 'yes'?><root/>");
+		checkFails("<?xml version='1.0' standalone='maybe'?><root/>");
+		checkFails("<?xml version='1.0' standalone='YES'?><root/>");
+		checkFails("<?xml version='1.5'?><root/>");
+		checkFails("<?xml version='x'?><root/>");
+		checkFails("<?xml encoding='UTF-8'?><root/>");
+		checkFails("<?xml standalone='yes'?><root/>");
+		checkFails("<?xml version='1.0' standalone='yes' encoding='UTF-8'?><root/>");
+		checkFails("<?xml version='1.0' version='1.0'?><root/>");
+		checkFails("<?xml version='1.0' other='x'?><root/>");
+		checkFails("<?xml version='1.0'encoding='UTF-8'?><root/>");
+		checkFails("<?xml version='1.0\"?><root/>");
+		checkFails("<?xml version=1.0?><root/>");
+	}
+
+	@Test
+	public void testExpandErrors() throws JDOMException, IOException {
+		// names and namespaces are checked when the Element is expanded.
+		checkExpandFails("<root><p:kid/></root>", "");
+		checkExpandFails("<root><kid p:a='1'/></root>", "0");
+		checkExpandFails("<root><kid a='1' a='2'/></root>", "0");
+		checkExpandFails("<root><kid xmlns:p='u' xmlns:q='u' p:a='1' q:a='2'/></root>", "0");
+		checkExpandFails("<root><kid xmlns:p=''/></root>", "");
+		checkExpandFails("<root><1kid/></root>", "");
+		try {
+			deferred("<p:root/>");
+			fail("Expect exception");
+		} catch (Exception e) {
+			checkException(IllegalNameException.class, e);
+		}
+	}
+
+	@Test
+	public void testCDATA() throws JDOMException, IOException {
+		final Element exact = deferred(
+				"<root><kid/><![CDATA[a]]>b<![CDATA[]]></root>").getRootElement();
+		assertEquals(4, exact.getContentSize());
+		assertEquals("a", ((CDATA)exact.getContent(1)).getText());
+		assertEquals("", ((CDATA)exact.getContent(3)).getText());
+	}
+
+}
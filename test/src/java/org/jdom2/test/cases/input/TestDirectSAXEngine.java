@@ -0,0 +1,399 @@
+package org.jdom2.test.cases.input;
+
+import static org.jdom2.test.util.UnitTestUtil.checkException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import org.jdom2.Attribute;
+import org.jdom2.AttributeType;
+import org.jdom2.CDATA;
+import org.jdom2.Content;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.Namespace;
+import org.jdom2.Text;
+import org.jdom2.input.DirectSAXEngine;
+import org.jdom2.input.JDOMParseException;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.input.sax.XMLReaders;
+import org.jdom2.located.LocatedElement;
+import org.jdom2.located.LocatedJDOMFactory;
+import org.jdom2.test.util.FidoFetch;
+import org.jdom2.test.util.UnitTestUtil;
+
+@SuppressWarnings("javadoc")
+public class TestDirectSAXEngine {
+
+	private static final Document sax(final SAXBuilder sb, final String xml)
+			throws JDOMException, IOException {
+		return sb.build(new StringReader(xml));
+	}
+
+	private static final void checkSame(final SAXBuilder sb, final String xml)
+			throws JDOMException, IOException {
+		final DirectSAXEngine engine = new DirectSAXEngine(sb);
+		final Document expect = sax(sb, xml);
+		final Document direct = engine.build(new StringReader(xml));
+		UnitTestUtil.compare(expect, direct);
+		final Document bytes = engine.build(
+				new ByteArrayInputStream(xml.getBytes("UTF-8")));
+		UnitTestUtil.compare(expect, bytes);
+		assertEquals(2, engine.getDirectCount());
+		assertEquals(0, engine.getFallbackCount());
+	}
+
+	private static final void checkSame(final String xml)
+			throws JDOMException, IOException {
+		checkSame(new SAXBuilder(), xml);
+	}
+
+	private static final void checkFails(final String xml) throws IOException {
+		final DirectSAXEngine engine;
+		try {
+			engine = new DirectSAXEngine(new SAXBuilder());
+		} catch (JDOMException e) {
+			throw new IllegalStateException(e);
+		}
+		try {
+			sax(new SAXBuilder(), xml);
+			fail("SAX should reject " + xml);
+		} catch (JDOMException e) {
+			checkException(JDOMParseException.class, e);
+		}
+		try {
+			engine.build(new StringReader(xml));
+			fail("Direct parser should reject " + xml);
+		} catch (JDOMException e) {
+			checkException(JDOMParseException.class, e);
+			assertTrue(e.getCause() instanceof SAXParseException);
+		}
+	}
+
+	@Test
+	public void testConfiguration() throws JDOMException {
+		final SAXBuilder sb = new SAXBuilder();
+		sb.setIgnoringBoundaryWhitespace(true);
+		final DirectSAXEngine engine = new DirectSAXEngine(sb);
+		assertTrue(engine.isDirect());
+		assertTrue(engine.getIgnoringBoundaryWhitespace());
+		assertFalse(engine.isValidating());
+		assertTrue(sb.getJDOMFactory() == engine.getJDOMFactory());
+		assertNotNull(engine.getErrorHandler());
+		assertEquals(0, engine.getDirectCount());
+		assertEquals(0, engine.getFallbackCount());
+		try {
+			new DirectSAXEngine(null);
+			fail("Expect exception");
+		} catch (Exception e) {
+			checkException(NullPointerException.class, e);
+		}
+	}
+
+	@Test
+	public void testContent() throws JDOMException, IOException {
+		checkSame("<root/>");
+		checkSame("<?xml version='1.0' encoding='UTF-8' standalone='yes'?>\n" +
+				"<!-- lead --><?pi  some data ?><root a='1' b=\"x&amp;y&lt;&#65;&#x42;\">" +
+				"text<![CDATA[cdata <&>]]>more&gt;<!----><!-- c --><?target?>" +
+				"<kid>t</kid>tail<kid/></root><!-- trail --><?pi?>\n");
+		checkSame("<root>a\r\nb\rc\n<x att='a\tb\r\nc d'/>\u00e9\ud800\udc00</root>");
+		checkSame("<root>\n  <kid>  </kid>\n  <![CDATA[  ]]>\n</root>");
+		checkSame("<root>&#x10000;&#65536;x]y]>z</root>");
+	}
+
+	@Test
+	public void testBoundaryWhitespace() throws JDOMException, IOException {
+		final SAXBuilder sb = new SAXBuilder();
+		sb.setIgnoringBoundaryWhitespace(true);
+		checkSame(sb, "<root>\n  <kid>  </kid>\n  <![CDATA[  ]]><![CDATA[]]>\n<kid> x </kid></root>");
+	}
+
+	@Test
+	public void testNamespaces() throws JDOMException, IOException {
+		checkSame("<root xmlns='rootns' xmlns:ans='attns' xmlns:cns='childns' att1='val1' ans:att2='val2' >" +
+				"<child xmlns='' att='child1' /><child att='child2' /><cns:child att='child3' />" +
+				"<child ans:att='child4' /><ans:child xmlns:ans='other'/><child xml:lang='en'/></root>");
+		final Document doc = new DirectSAXEngine(new SAXBuilder()).build(
+				new StringReader("<p:root xmlns:p='u' xmlns:q='v' p:a='1' q:a='2' b='3'/>"));
+		final Element root = doc.getRootElement();
+		assertEquals(Namespace.getNamespace("p", "u"), root.getNamespace());
+		assertEquals(1, root.getAdditionalNamespaces().size());
+		assertEquals("1", root.getAttributeValue("a", Namespace.getNamespace("u")));
+		assertEquals("2", root.getAttributeValue("a", Namespace.getNamespace("v")));
+		for (Attribute a : root.getAttributes()) {
+			assertEquals(AttributeType.CDATA, a.getAttributeType());
+		}
+	}
+
+	@Test
+	public void testLargeContent() throws JDOMException, IOException {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("<records xmlns:r='urn:records'>");
+		for (int i = 0; i < 5000; i++) {
+			sb.append("<r:record id='").append(i).append("' name='record\u00e9 ")
+				.append(i).append("'><value>").append(i * 7).append(" &amp; more</value>")
+				.append("text<![CDATA[").append(i).append("]]><!--").append(i).append("--></r:record>\n");
+		}
+		sb.append("</records>");
+		checkSame(sb.toString());
+		final StringBuilder big = new StringBuilder("<root>");
+		for (int i = 0; i < 100000; i++) {
+			big.append("abcdefghij");
+		}
+		big.append("</root>");
+		checkSame(big.toString());
+	}
+
+	@Test
+	public void testResources() throws JDOMException, IOException {
+		final String[] resources = {"/DOMBuilder/simple.xml",
+				"/DOMBuilder/attributes.xml", "/DOMBuilder/attributesandchildren.xml",
+				"/DOMBuilder/namespaces.xml", "/DOMBuilder/complex.xml",
+				"/complex.xml", "/xmlchars.xml", "/xsdcomplex/input.xml",
+				"/DOMBuilder/doctype.xml", "/SAXBuilderTestDecl.xml"};
+		final SAXBuilder sb = new SAXBuilder();
+		final DirectSAXEngine engine = new DirectSAXEngine(sb);
+		for (String res : resources) {
+			UnitTestUtil.compare(sb.build(FidoFetch.getFido().getURL(res)),
+					engine.build(FidoFetch.getFido().getURL(res)));
+		}
+		// the documents with a DOCTYPE are built by SAX.
+		assertEquals(7, engine.getDirectCount());
+		assertEquals(3, engine.getFallbackCount());
+	}
+
+	@Test
+	public void testFallbackDocType() throws JDOMException, IOException {
+		final String xml = "<?xml version='1.0'?>\n<!-- before -->\n" +
+				"<!DOCTYPE root [<!ENTITY ent 'expanded'>]>\n<root>&ent;</root>";
+		final DirectSAXEngine engine = new DirectSAXEngine(new SAXBuilder());
+		final Document doc = engine.build(new StringReader(xml));
+		assertEquals("expanded", doc.getRootElement().getText());
+		assertNotNull(doc.getDocType());
+		assertEquals(0, engine.getDirectCount());
+		assertEquals(1, engine.getFallbackCount());
+		// a large prolog is replayed completely.
+		final StringBuilder sb = new StringBuilder("<?xml version='1.0'?>");
+		for (int i = 0; i < 2000; i++) {
+			sb.append("<!-- comment ").append(i).append(" -->\n");
+		}
+		sb.append("<!DOCTYPE root [<!ENTITY ent 'big'>]><root>&ent;</root>");
+		final Document big = engine.build(
+				new ByteArrayInputStream(sb.toString().getBytes("UTF-8")));
+		assertEquals("big", big.getRootElement().getText());
+		assertEquals(2002, big.getContentSize());
+		assertEquals(2, engine.getFallbackCount());
+	}
+
+	@Test
+	public void testFallbackVersionAndEncoding() throws JDOMException, IOException {
+		final DirectSAXEngine engine = new DirectSAXEngine(new SAXBuilder());
+		assertEquals("a", engine.build(new StringReader(
+				"<?xml version='1.1'?><root>a</root>")).getRootElement().getText());
+		assertEquals(1, engine.getFallbackCount());
+		final byte[] latin = "<?xml version='1.0' encoding='ISO-8859-1'?><root>\u00e9</root>".getBytes("ISO-8859-1");
+		assertEquals("\u00e9", engine.build(new ByteArrayInputStream(latin))
+				.getRootElement().getText());
+		assertEquals(1, engine.getDirectCount());
+		final byte[] cp = "<?xml version='1.0' encoding='windows-1252'?><root>\u20ac</root>".getBytes("windows-1252");
+		assertEquals("\u20ac", engine.build(new ByteArrayInputStream(cp))
+				.getRootElement().getText());
+		assertEquals(2, engine.getFallbackCount());
+		final byte[] utf16 = "\ufeff<root>\u00e9</root>".getBytes("UTF-16BE");
+		assertEquals("\u00e9", engine.build(new ByteArrayInputStream(utf16))
+				.getRootElement().getText());
+		final byte[] utf16le = "<?xml version='1.0' encoding='UTF-16'?><root>\u00e9</root>".getBytes("UTF-16LE");
+		assertEquals("\u00e9", engine.build(new ByteArrayInputStream(utf16le))
+				.getRootElement().getText());
+		final byte[] bom = "\ufeff<root>\u00e9</root>".getBytes("UTF-8");
+		assertEquals("\u00e9", engine.build(new ByteArrayInputStream(bom))
+				.getRootElement().getText());
+		assertEquals(4, engine.getDirectCount());
+		assertEquals(2, engine.getFallbackCount());
+	}
+
+	@Test
+	public void testFallbackConfiguration() throws JDOMException, IOException {
+		final SAXBuilder filtered = new SAXBuilder();
+		filtered.setXMLFilter(new XMLFilterImpl());
+		assertFalse(new DirectSAXEngine(filtered).isDirect());
+		assertFalse(new DirectSAXEngine(new SAXBuilder(XMLReaders.DTDVALIDATING)).isDirect());
+		final SAXBuilder featured = new SAXBuilder();
+		featured.setFeature("http://xml.org/sax/features/namespaces", true);
+		final DirectSAXEngine engine = new DirectSAXEngine(featured);
+		assertFalse(engine.isDirect());
+		assertEquals("root", engine.build(new StringReader("<root/>")).getRootElement().getName());
+		assertEquals(0, engine.getDirectCount());
+		assertEquals(1, engine.getFallbackCount());
+	}
+
+	@Test
+	public void testSystemId() throws JDOMException, IOException {
+		final SAXBuilder sb = new SAXBuilder();
+		final DirectSAXEngine engine = new DirectSAXEngine(sb);
+		final String url = FidoFetch.getFido().getURL("/DOMBuilder/simple.xml").toExternalForm();
+		assertEquals(sb.build(url).getBaseURI(), engine.build(url).getBaseURI());
+		assertEquals("http://www.jdom.org/x.xml", engine.build(
+				new StringReader("<root/>"), "http://www.jdom.org/x.xml").getBaseURI());
+		assertNull(engine.build(new StringReader("<root/>")).getBaseURI());
+		// relative system ids are resolved by SAX
+		assertEquals(sb.build(new StringReader("<root/>"), "rel.xml").getBaseURI(),
+				engine.build(new StringReader("<root/>"), "rel.xml").getBaseURI());
+		assertEquals(3, engine.getDirectCount());
+		assertEquals(1, engine.getFallbackCount());
+		final InputSource src = new InputSource(new StringReader("<root>"));
+		src.setSystemId("http://www.jdom.org/bad.xml");
+		try {
+			engine.build(src);
+			fail("Expect exception");
+		} catch (JDOMParseException e) {
+			assertEquals("http://www.jdom.org/bad.xml", e.getSystemId());
+			assertTrue(e.getMessage().contains("http://www.jdom.org/bad.xml"));
+		}
+	}
+
+	@Test
+	public void testLocated() throws JDOMException, IOException {
+		final String xml = "<root>\n  <kid a='1'/>\r\n\t<kid>\n</kid>\r\n<kid/></root>";
+		final SAXBuilder sb = new SAXBuilder();
+		sb.setJDOMFactory(new LocatedJDOMFactory());
+		final Document expect = sax(sb, xml);
+		final Document direct = new DirectSAXEngine(sb).build(new StringReader(xml));
+		final List<LocatedElement> ex = new ArrayList<LocatedElement>();
+		final List<LocatedElement> got = new ArrayList<LocatedElement>();
+		for (Content c : expect.getDescendants()) {
+			if (c instanceof LocatedElement) {
+				ex.add((LocatedElement)c);
+			}
+		}
+		for (Content c : direct.getDescendants()) {
+			if (c instanceof LocatedElement) {
+				got.add((LocatedElement)c);
+			}
+		}
+		assertEquals(ex.size(), got.size());
+		for (int i = 0; i < ex.size(); i++) {
+			assertEquals(ex.get(i).getLine(), got.get(i).getLine());
+			assertEquals(ex.get(i).getColumn(), got.get(i).getColumn());
+		}
+	}
+
+	@Test
+	public void testErrors() throws IOException {
+		checkFails("");
+		checkFails("  ");
+		checkFails("<root>");
+		checkFails("<root></other>");
+		checkFails("<root a='1' a='2'/>");
+		checkFails("<root xmlns:p='u' xmlns:q='u' p:a='1' q:a='2'/>");
+		checkFails("<root a=1/>");
+		checkFails("<root a='<'/>");
+		checkFails("<root>&unknown;</root>");
+		checkFails("<root>&#0;</root>");
+		checkFails("<root>\u0001</root>");
+		checkFails("<root>]]></root>");
+		checkFails("<p:root/>");
+		checkFails("<root p:a='1'/>");
+		checkFails("<root xmlns:p=''/>");
+		checkFails("<root/><root/>");
+		checkFails("text<root/>");
+		checkFails("<root/>text");
+		checkFails("<root><!-- a -- b --></root>");
+		checkFails("<root><?xml data?></root>");
+		checkFails("<1root/>");
+		checkFails("<a:b:c/>");
+		checkFails("<root><![CDATA[ abc </root>");
+		checkFails("<root>\ud800</root>");
+		checkFails("<?xml version='2.0'?><root/>");
+		checkFails("<?xml version=\"1.0\"encoding='utf-8'?><root/>");
+		checkFails("<?xml encoding='UTF-8' version='1.0'?><root/>");
+		checkFails("<?xml version='1.0' bogus='x'?><root/>");
+		checkFails("<?xml version='1.0' standalone='yes' encoding='UTF-8'?><root/>");
+		checkFails("<?xml version='1.0' version='1.0'?><root/>");
+		checkFails("<?xml version='1.0' standalone='maybe'?><root/>");
+		checkFails("<?xml version='1.0' encoding?><root/>");
+		checkFails("<?xml version=1.0?><root/>");
+		checkFails("<?xml version='1.0\"?><root/>");
+		checkFails("<?xml standalone='yes'?><root/>");
+		checkFails("<![CDATA[x]]><root/>");
+	}
+
+	@Test
+	public void testErrorHandler() throws JDOMException, IOException {
+		final List<SAXParseException> fatals = new ArrayList<SAXParseException>();
+		final SAXBuilder sb = new SAXBuilder();
+		sb.setErrorHandler(new ErrorHandler() {
+			@Override
+			public void warning(SAXParseException exception) {
+				// ignore
+			}
+			@Override
+			public void error(SAXParseException exception) {
+				// ignore
+			}
+			@Override
+			public void fatalError(SAXParseException exception) {
+				fatals.add(exception);
+			}
+		});
+		final DirectSAXEngine engine = new DirectSAXEngine(sb);
+		try {
+			engine.build(new StringReader("<root>\n<kid>\n</root>"));
+			fail("Expect exception");
+		} catch (JDOMParseException e) {
+			assertEquals(1, fatals.size());
+			assertEquals(3, e.getLineNumber());
+			assertNotNull(e.getPartialDocument());
+			assertEquals("root", e.getPartialDocument().getRootElement().getName());
+		}
+		// the engine is reusable after an error.
+		assertEquals("ok", engine.build(new StringReader("<root>ok</root>"))
+				.getRootElement().getText());
+	}
+
+	@Test
+	public void testBadEncoding() throws JDOMException {
+		final DirectSAXEngine engine = new DirectSAXEngine(new SAXBuilder());
+		try {
+			engine.build(new ByteArrayInputStream(new byte[] {'<', 'r', '>', (byte)0xFF, '<', '/', 'r', '>'}));
+			fail("Expect exception");
+		} catch (Exception e) {
+			checkException(JDOMParseException.class, e);
+		}
+	}
+
+	@Test
+	public void testCDATA() throws JDOMException, IOException {
+		final DirectSAXEngine engine = new DirectSAXEngine(new SAXBuilder());
+		final Element root = engine.build(
+				new StringReader("<root>a<![CDATA[b]]>c</root>")).getRootElement();
+		assertEquals(3, root.getContentSize());
+		assertTrue(root.getContent(1) instanceof CDATA);
+		assertEquals("abc", root.getText());
+		// CDATA sections are built exactly as they appear.
+		final Element exact = engine.build(new StringReader(
+				"<root><kid/><![CDATA[a]]>b<![CDATA[]]></root>")).getRootElement();
+		assertEquals(4, exact.getContentSize());
+		assertEquals("a", ((CDATA)exact.getContent(1)).getText());
+		assertEquals(Text.class, exact.getContent(2).getClass());
+		assertEquals("", ((CDATA)exact.getContent(3)).getText());
+	}
+
+}
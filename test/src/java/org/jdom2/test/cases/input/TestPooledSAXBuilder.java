@@ -0,0 +1,214 @@
+package org.jdom2.test.cases.input;
+
+import static org.jdom2.test.util.UnitTestUtil.checkException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.SlimJDOMFactory;
+import org.jdom2.SharedStringBin;
+import org.jdom2.input.JDOMParseException;
+import org.jdom2.input.PooledSAXBuilder;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.located.LocatedJDOMFactory;
+
+@SuppressWarnings("javadoc")
+public class TestPooledSAXBuilder {
+
+	@Test
+	public void testConfiguration() throws JDOMException {
+		final SAXBuilder template = new SAXBuilder();
+		final SlimJDOMFactory factory = new SlimJDOMFactory(new SharedStringBin());
+		template.setJDOMFactory(factory);
+		template.setIgnoringElementContentWhitespace(true);
+		template.setExpandEntities(false);
+		final PooledSAXBuilder pool = new PooledSAXBuilder(template, 3);
+		assertTrue(factory == pool.getJDOMFactory());
+		assertTrue(pool.getIgnoringElementContentWhitespace());
+		assertFalse(pool.getIgnoringBoundaryWhitespace());
+		assertFalse(pool.getExpandEntities());
+		assertFalse(pool.isValidating());
+		assertNull(pool.getEntityResolver());
+		assertEquals(3, pool.getMaxIdle());
+		assertEquals(1, pool.getIdleCount());
+	}
+
+	@Test
+	public void testTemplateCopied() throws JDOMException, IOException {
+		final SAXBuilder template = new SAXBuilder();
+		final PooledSAXBuilder pool = new PooledSAXBuilder(template, 1);
+		template.setIgnoringBoundaryWhitespace(true);
+		template.setJDOMFactory(new LocatedJDOMFactory());
+		assertFalse(pool.getIgnoringBoundaryWhitespace());
+		// discard the first engine, so the next build creates a new one.
+		try {
+			pool.build(new Reader() {
+				@Override
+				public int read(char[] cbuf, int off, int len) throws IOException {
+					throw new IOException("broken");
+				}
+				@Override
+				public void close() {
+					// nothing
+				}
+			});
+			fail("Expect IOException");
+		} catch (IOException e) {
+			// good
+		}
+		final Document doc = pool.build(new StringReader("<root> <a/> </root>"));
+		assertEquals(1, pool.getMissCount());
+		// the new engine is configured like the first one.
+		assertEquals(3, doc.getRootElement().getContentSize());
+		assertEquals(Element.class, doc.getRootElement().getClass());
+	}
+
+	@Test
+	public void testBadArguments() throws JDOMException {
+		try {
+			new PooledSAXBuilder(null);
+			fail("Expect exception");
+		} catch (Exception e) {
+			checkException(NullPointerException.class, e);
+		}
+		try {
+			new PooledSAXBuilder(new SAXBuilder(), 0);
+			fail("Expect exception");
+		} catch (Exception e) {
+			checkException(IllegalArgumentException.class, e);
+		}
+		final SAXBuilder filtered = new SAXBuilder();
+		filtered.setXMLFilter(new XMLFilterImpl());
+		try {
+			new PooledSAXBuilder(filtered);
+			fail("Expect exception");
+		} catch (Exception e) {
+			checkException(IllegalArgumentException.class, e);
+		}
+	}
+
+	@Test
+	public void testReuse() throws JDOMException, IOException {
+		final PooledSAXBuilder pool = new PooledSAXBuilder(new SAXBuilder(), 2);
+		for (int i = 0; i < 10; i++) {
+			final Document doc = pool.build(new StringReader("<root>" + i + "</root>"));
+			assertEquals(String.valueOf(i), doc.getRootElement().getText());
+		}
+		assertEquals(10, pool.getBuildCount());
+		assertEquals(0, pool.getMissCount());
+		assertEquals(1, pool.getIdleCount());
+	}
+
+	@Test
+	public void testParseErrorReturnsEngine() throws JDOMException, IOException {
+		final PooledSAXBuilder pool = new PooledSAXBuilder(new SAXBuilder(), 1);
+		try {
+			pool.build(new StringReader("<root><kid></root>"));
+			fail("Expect parse exception");
+		} catch (JDOMParseException e) {
+			// good
+		}
+		assertEquals(1, pool.getIdleCount());
+		assertEquals(0, pool.getFailureCount());
+		// the engine must not carry over any state from the failed parse.
+		final Document doc = pool.build(new StringReader("<other><kid/></other>"));
+		assertEquals("other", doc.getRootElement().getName());
+		assertEquals(1, doc.getRootElement().getChildren().size());
+		assertEquals(0, pool.getMissCount());
+	}
+
+	@Test
+	public void testIOFailureDiscardsEngine() throws JDOMException, IOException {
+		final PooledSAXBuilder pool = new PooledSAXBuilder(new SAXBuilder(), 1);
+		final Reader broken = new Reader() {
+			private boolean first = true;
+			@Override
+			public int read(char[] cbuf, int off, int len) throws IOException {
+				if (first) {
+					first = false;
+					final String data = "<root><kid>";
+					data.getChars(0, data.length(), cbuf, off);
+					return data.length();
+				}
+				throw new IOException("broken");
+			}
+			@Override
+			public void close() {
+				// nothing
+			}
+		};
+		try {
+			pool.build(broken);
+			fail("Expect IOException");
+		} catch (IOException e) {
+			// good
+		}
+		assertEquals(1, pool.getFailureCount());
+		assertEquals(0, pool.getIdleCount());
+		// a new engine is created.
+		assertEquals("root", pool.build(new StringReader("<root/>"))
+				.getRootElement().getName());
+		assertEquals(1, pool.getMissCount());
+		assertEquals(1, pool.getIdleCount());
+	}
+
+	@Test
+	public void testConcurrent() throws Exception {
+		final PooledSAXBuilder pool = new PooledSAXBuilder(new SAXBuilder(), 2);
+		final int threads = 6;
+		final int loops = 50;
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicReference<Throwable> failed = new AtomicReference<Throwable>();
+		final List<Thread> running = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++) {
+			final String name = "t" + t;
+			final Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int i = 0; i < loops; i++) {
+							final Document doc = pool.build(new StringReader(
+									"<" + name + "><n>" + i + "</n></" + name + ">"));
+							if (!name.equals(doc.getRootElement().getName()) ||
+									!String.valueOf(i).equals(
+										doc.getRootElement().getChildText("n"))) {
+								throw new IllegalStateException("Mixed up documents");
+							}
+						}
+					} catch (Throwable e) {
+						failed.set(e);
+					}
+				}
+			});
+			thread.start();
+			running.add(thread);
+		}
+		start.countDown();
+		for (Thread thread : running) {
+			thread.join();
+		}
+		assertNull(failed.get());
+		assertEquals(threads * loops, pool.getBuildCount());
+		assertTrue(pool.getIdleCount() <= 2);
+		assertEquals(pool.getMissCount() - pool.getDiscardCount(), 
+				pool.getIdleCount() - 1);
+	}
+
+}
@@ -0,0 +1,179 @@
+package org.jdom2.test.cases.input;
+
+import static org.jdom2.test.util.UnitTestUtil.checkException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import org.jdom2.Document;
+import org.jdom2.JDOMException;
+import org.jdom2.input.DirectSAXEngine;
+import org.jdom2.input.JDOMParseException;
+import org.jdom2.input.PushBuilder;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.located.LocatedJDOMFactory;
+import org.jdom2.test.util.UnitTestUtil;
+
+@SuppressWarnings("javadoc")
+public class TestPushBuilder {
+
+	private static final String DOC =
+			"\uFEFF<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n" +
+			"<!-- head -->\n<?pi  data ?>\n" +
+			"<root xmlns=\"urn:a\" xmlns:b='urn:b' b:att=\"x &gt; y\" cmp='a>b'>\r\n" +
+			"  <b:kid id=\"1\">text &amp; &#x41;&#66; more\r\n\u00E9\u4E2D\uD834\uDD1E</b:kid>\n" +
+			"  <![CDATA[raw <data> ]] here]]><empty/>\n" +
+			"  <!-- comment - -->" +
+			"</root>\n<?tail?>\n";
+
+	private static final Document push(final PushBuilder pb, final byte[] data,
+			final int chunk) throws JDOMException, IOException, InterruptedException,
+			ExecutionException {
+		for (int i = 0; i < data.length; i += chunk) {
+			pb.push(ByteBuffer.wrap(data, i, Math.min(chunk, data.length - i)));
+		}
+		return pb.end().get();
+	}
+
+	@Test
+	public void testChunkSizes() throws Exception {
+		for (String enc : new String[] {"UTF-8", "UTF-16"}) {
+			final byte[] data = (enc.equals("UTF-8") ? DOC
+					: DOC.replace("UTF-8", enc)).getBytes(enc);
+			final SAXBuilder sb = new SAXBuilder();
+			sb.setJDOMFactory(new LocatedJDOMFactory());
+			final Document expect = new DirectSAXEngine(sb).build(
+					new ByteArrayInputStream(data));
+			for (int chunk : new int[] {1, 2, 3, 7, 64, data.length}) {
+				final PushBuilder pb = new PushBuilder(sb, null);
+				final Document doc = push(pb, data, chunk);
+				assertTrue(pb.isIncremental());
+				assertTrue(pb.isDone());
+				assertEquals(data.length, pb.getBytesConsumed());
+				UnitTestUtil.compare(expect, doc);
+			}
+		}
+	}
+
+	@Test
+	public void testProgress() throws Exception {
+		final PushBuilder pb = new PushBuilder();
+		final Future<Document> result = pb.getResult();
+		final ByteBuffer chunk = ByteBuffer.wrap(
+				"<root><a>one</a><a><b>part".getBytes("UTF-8"));
+		pb.push(chunk);
+		assertFalse(chunk.hasRemaining());
+		assertEquals(26, pb.getBytesConsumed());
+		assertEquals(3, pb.getDepth());
+		assertEquals("b", pb.getCurrentElement().getName());
+		assertEquals("one", pb.getDocument().getRootElement().getChildText("a"));
+		assertFalse(result.isDone());
+		pb.push(ByteBuffer.wrap("ial</b></a".getBytes("UTF-8")));
+		assertEquals(2, pb.getDepth());
+		assertEquals("partial", pb.getCurrentElement().getChildText("b"));
+		pb.push(ByteBuffer.wrap("></root>".getBytes("UTF-8")));
+		assertEquals(0, pb.getDepth());
+		assertNull(pb.getCurrentElement());
+		assertFalse(result.isDone());
+		assertSame(result, pb.end());
+		assertTrue(result.isDone());
+		assertSame(pb.getDocument(), result.get());
+		assertEquals(2, result.get().getRootElement().getChildren().size());
+		try {
+			pb.push(ByteBuffer.wrap(new byte[1]));
+			fail("Expect exception");
+		} catch (Exception e) {
+			checkException(IllegalStateException.class, e);
+		}
+	}
+
+	@Test
+	public void testErrors() throws Exception {
+		final PushBuilder pb = new PushBuilder();
+		pb.push(ByteBuffer.wrap("<root>\n<a>".getBytes("UTF-8")));
+		try {
+			pb.push(ByteBuffer.wrap("</b>".getBytes("UTF-8")));
+			fail("Expect exception");
+		} catch (JDOMException e) {
+			checkException(JDOMParseException.class, e);
+			assertEquals(2, ((JDOMParseException)e).getLineNumber());
+			assertEquals("root", ((JDOMParseException)e).getPartialDocument()
+					.getRootElement().getName());
+		}
+		assertTrue(pb.isDone());
+		try {
+			pb.getResult().get();
+			fail("Expect exception");
+		} catch (ExecutionException e) {
+			checkException(JDOMParseException.class, e.getCause());
+		}
+
+		final PushBuilder unclosed = new PushBuilder();
+		unclosed.push(ByteBuffer.wrap("<root><a/>".getBytes("UTF-8")));
+		try {
+			unclosed.end();
+			fail("Expect exception");
+		} catch (JDOMException e) {
+			checkException(JDOMParseException.class, e);
+		}
+
+		final PushBuilder invalid = new PushBuilder();
+		try {
+			invalid.push(ByteBuffer.wrap(new byte[] {'<', 'a', '>', (byte)0xC3, '<'}));
+			fail("Expect exception");
+		} catch (JDOMException e) {
+			checkException(JDOMParseException.class, e);
+		}
+	}
+
+	@Test
+	public void testBuffered() throws Exception {
+		final byte[] dtd = ("<!DOCTYPE root [<!ENTITY ent 'expanded'>]>" +
+				"<root>&ent;</root>").getBytes("UTF-8");
+		final PushBuilder pb = new PushBuilder();
+		assertTrue(pb.isIncremental());
+		final Document doc = push(pb, dtd, 5);
+		assertFalse(pb.isIncremental());
+		assertEquals("expanded", doc.getRootElement().getText());
+
+		final byte[] latin = "<?xml version='1.0' encoding='windows-1252'?><root>\u00E9</root>"
+				.getBytes("windows-1252");
+		final PushBuilder wb = new PushBuilder();
+		assertEquals("\u00E9", push(wb, latin, 3).getRootElement().getText());
+		assertFalse(wb.isIncremental());
+
+		final SAXBuilder validating = new SAXBuilder();
+		validating.setFeature("http://xml.org/sax/features/namespaces", true);
+		final PushBuilder vb = new PushBuilder(validating, null);
+		assertFalse(vb.isIncremental());
+		assertNull(vb.getDocument());
+		assertEquals("root", push(vb, "<root/>".getBytes("UTF-8"), 2)
+				.getRootElement().getName());
+	}
+
+	@Test
+	public void testShortDocument() throws Exception {
+		final PushBuilder pb = new PushBuilder();
+		assertEquals("a", push(pb, "<a/>".getBytes("UTF-8"), 1)
+				.getRootElement().getName());
+		final PushBuilder empty = new PushBuilder();
+		try {
+			empty.end();
+			fail("Expect exception");
+		} catch (JDOMException e) {
+			checkException(JDOMParseException.class, e);
+		}
+	}
+
+}
@@ -75,12 +75,17 @@ import java.io.ByteArrayInputStream;
 import java.io.CharArrayReader;
 import java.io.CharArrayWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Arrays;
 import java.util.List;
 
@@ -104,6 +109,7 @@ import org.jdom2.EntityRef;
 import org.jdom2.JDOMException;
 import org.jdom2.JDOMFactory;
 import org.jdom2.UncheckedJDOMFactory;
+import org.jdom2.input.ByteBufferInputStream;
 import org.jdom2.input.SAXBuilder;
 import org.jdom2.input.sax.BuilderErrorHandler;
 import org.jdom2.input.sax.SAXEngine;
@@ -1299,4 +1305,104 @@ public final class TestSAXBuilder {
 		
 	}
 
+	@Test
+	public void testBuildByteBuffer() throws JDOMException, IOException {
+		final byte[] data = "junk<root att='\u00e9'><kid/></root>".getBytes("UTF-8");
+		final ByteBuffer buffer = ByteBuffer.wrap(data);
+		buffer.position(4);
+		final Document doc = new SAXBuilder().build(buffer);
+		assertEquals("root", doc.getRootElement().getName());
+		assertEquals("\u00e9", doc.getRootElement().getAttributeValue("att"));
+		// the buffer is not consumed.
+		assertEquals(4, buffer.position());
+		final ByteBuffer direct = ByteBuffer.allocateDirect(data.length - 4);
+		direct.put(data, 4, data.length - 4);
+		direct.flip();
+		assertEquals("kid", new SAXBuilder().build(direct, "http://localhost/x.xml")
+				.getRootElement().getChildren().get(0).getName());
+	}
+
+	@Test
+	public void testByteBufferInputStream() throws IOException {
+		final ByteBufferInputStream in = new ByteBufferInputStream(
+				ByteBuffer.wrap(new byte[] {1, 2, (byte)0xFF, 4, 5}));
+		assertEquals(5, in.available());
+		assertEquals(1, in.read());
+		assertTrue(in.markSupported());
+		in.mark(10);
+		final byte[] buf = new byte[10];
+		assertEquals(0, in.read(buf, 0, 0));
+		assertEquals(4, in.read(buf, 1, 9));
+		assertEquals(0xFF, buf[2] & 0xFF);
+		assertEquals(-1, in.read(buf, 0, 10));
+		assertEquals(-1, in.read());
+		in.reset();
+		assertEquals(2, in.read());
+		assertEquals(2, in.skip(2));
+		assertEquals(5, in.read());
+		assertEquals(0, in.skip(5));
+	}
+
+	@Test
+	public void testBuildChannel() throws JDOMException, IOException {
+		final byte[] data = "<root><kid/></root>".getBytes("UTF-8");
+		final ReadableByteChannel channel = Channels.newChannel(
+				new ByteArrayInputStream(data));
+		final Document doc = new SAXBuilder().build(channel);
+		assertEquals("root", doc.getRootElement().getName());
+		// the channel is not closed by the build.
+		assertTrue(channel.isOpen());
+	}
+
+	private static final File largeFile() throws IOException {
+		final File file = File.createTempFile("jdom2-mapped", ".xml");
+		file.deleteOnExit();
+		final FileWriter fw = new FileWriter(file);
+		try {
+			fw.write("<records>");
+			int i = 0;
+			while (file.length() <= SAXBuilder.MAPTHRESHOLD) {
+				for (int j = 0; j < 1000; j++) {
+					fw.write("<record id='" + (i++) + "'>some text</record>\n");
+				}
+				fw.flush();
+			}
+			fw.write("</records>");
+		} finally {
+			fw.close();
+		}
+		return file;
+	}
+
+	@Test
+	public void testBuildMapped() throws JDOMException, IOException {
+		final File file = largeFile();
+		assertTrue(file.length() > SAXBuilder.MAPTHRESHOLD);
+		final SAXBuilder sb = new SAXBuilder();
+		final Document mapped = sb.buildMapped(file);
+		final Document plain = sb.build(file);
+		assertEquals(plain.getRootElement().getChildren().size(),
+				mapped.getRootElement().getChildren().size());
+		assertEquals(plain.getBaseURI(), mapped.getBaseURI());
+
+		final FileInputStream fis = new FileInputStream(file);
+		try {
+			final FileChannel fc = fis.getChannel();
+			final Document chan = sb.build(fc);
+			assertEquals(plain.getRootElement().getChildren().size(),
+					chan.getRootElement().getChildren().size());
+			assertEquals(fc.size(), fc.position());
+		} finally {
+			fis.close();
+		}
+
+		// small files are not mapped, but still work.
+		final File small = File.createTempFile("jdom2-small", ".xml");
+		small.deleteOnExit();
+		final FileWriter fw = new FileWriter(small);
+		fw.write("<small/>");
+		fw.close();
+		assertEquals("small", sb.buildMapped(small).getRootElement().getName());
+	}
+
 }
@@ -0,0 +1,168 @@
+package org.jdom2.test.cases.input;
+
+import static org.jdom2.test.util.UnitTestUtil.checkException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import org.jdom2.Document;
+import org.jdom2.JDOMException;
+import org.jdom2.input.BatchResult;
+import org.jdom2.input.BuildListener;
+import org.jdom2.input.JDOMParseException;
+import org.jdom2.input.SAXBuilder;
+
+@SuppressWarnings("javadoc")
+public class TestSAXBuilderBatch {
+
+	/** Every 7th input is broken */
+	private static final List<InputSource> inputs(final int count) {
+		final List<InputSource> sources = new ArrayList<InputSource>(count);
+		for (int i = 0; i < count; i++) {
+			final String xml = i % 7 == 3 
+					? "<root><broken></root>"
+					: "<root id=\"" + i + "\"><kid>" + i + "</kid></root>";
+			sources.add(new InputSource(new StringReader(xml)));
+		}
+		return sources;
+	}
+
+	private static final class Recorder implements BuildListener {
+		private final Thread caller = Thread.currentThread();
+		private final List<Integer> order = new ArrayList<Integer>();
+		private final List<Integer> failed = new ArrayList<Integer>();
+
+		@Override
+		public void documentBuilt(int index, InputSource source, Document document) {
+			assertTrue(caller == Thread.currentThread());
+			assertEquals(String.valueOf(index), 
+					document.getRootElement().getAttributeValue("id"));
+			order.add(index);
+		}
+
+		@Override
+		public void buildFailed(int index, InputSource source, Exception error) {
+			assertTrue(caller == Thread.currentThread());
+			assertTrue(error instanceof JDOMParseException);
+			order.add(index);
+			failed.add(index);
+		}
+	}
+
+	@Test
+	public void testCollect() throws JDOMException, InterruptedException {
+		final BatchResult result = new SAXBuilder().buildAll(inputs(50), 4);
+		assertEquals(50, result.getInputCount());
+		assertEquals(7, result.getFailedCount());
+		assertEquals(43, result.getBuiltCount());
+		assertEquals(4, result.getParallelism());
+		final List<Document> docs = result.getDocuments();
+		assertEquals(50, docs.size());
+		for (int i = 0; i < 50; i++) {
+			if (i % 7 == 3) {
+				assertNull(docs.get(i));
+				assertTrue(result.getErrors().get(i) instanceof JDOMParseException);
+			} else {
+				assertEquals(String.valueOf(i), 
+						docs.get(i).getRootElement().getChildText("kid"));
+			}
+		}
+		assertTrue(result.getElapsedNanos() > 0);
+		assertTrue(result.getBuildNanos() > 0);
+		assertTrue(result.getInputsPerSecond() > 0);
+		assertNotNull(result.toString());
+	}
+
+	@Test
+	public void testOrdered() throws JDOMException, InterruptedException {
+		final Recorder rec = new Recorder();
+		final BatchResult result = new SAXBuilder().buildAll(inputs(200), 3, true, rec);
+		assertNull(result.getDocuments());
+		assertEquals(200, rec.order.size());
+		for (int i = 0; i < 200; i++) {
+			assertEquals(i, rec.order.get(i).intValue());
+		}
+		assertEquals(rec.failed, new ArrayList<Integer>(result.getErrors().keySet()));
+	}
+
+	@Test
+	public void testCompletionOrder() throws JDOMException, InterruptedException {
+		final Recorder rec = new Recorder();
+		final BatchResult result = new SAXBuilder().buildAll(inputs(200), 3, false, rec);
+		assertEquals(200, rec.order.size());
+		assertEquals(200, new HashSet<Integer>(rec.order).size());
+		assertEquals(rec.failed.size(), result.getFailedCount());
+	}
+
+	@Test
+	public void testSingleThread() throws JDOMException, InterruptedException {
+		final Recorder rec = new Recorder();
+		final BatchResult result = new SAXBuilder().buildAll(inputs(20), 1, false, rec);
+		assertEquals(1, result.getParallelism());
+		for (int i = 0; i < 20; i++) {
+			assertEquals(i, rec.order.get(i).intValue());
+		}
+	}
+
+	@Test
+	public void testEmpty() throws JDOMException, InterruptedException {
+		final BatchResult result = new SAXBuilder().buildAll(
+				Collections.<InputSource>emptyList(), 4);
+		assertEquals(0, result.getInputCount());
+		assertEquals(0, result.getDocuments().size());
+	}
+
+	@Test
+	public void testListenerFailure() throws JDOMException, InterruptedException {
+		final BuildListener bad = new BuildListener() {
+			@Override
+			public void documentBuilt(int index, InputSource source, Document document) {
+				throw new IllegalStateException("stop");
+			}
+			@Override
+			public void buildFailed(int index, InputSource source, Exception error) {
+				// ignore
+			}
+		};
+		try {
+			new SAXBuilder().buildAll(inputs(100), 2, true, bad);
+			fail("Expect listener exception");
+		} catch (IllegalStateException e) {
+			assertEquals("stop", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testBadArguments() throws JDOMException, InterruptedException {
+		try {
+			new SAXBuilder().buildAll(inputs(1), 0);
+			fail("Expect exception");
+		} catch (Exception e) {
+			checkException(IllegalArgumentException.class, e);
+		}
+		try {
+			new SAXBuilder().buildAll(null, 1);
+			fail("Expect exception");
+		} catch (Exception e) {
+			checkException(NullPointerException.class, e);
+		}
+		try {
+			new SAXBuilder().buildAll(inputs(1), 1, true, null);
+			fail("Expect exception");
+		} catch (Exception e) {
+			checkException(NullPointerException.class, e);
+		}
+	}
+
+}
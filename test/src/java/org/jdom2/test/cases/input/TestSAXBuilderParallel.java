@@ -0,0 +1,160 @@
+package org.jdom2.test.cases.input;
+
+import static org.jdom2.test.util.UnitTestUtil.checkException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.jdom2.Content;
+import org.jdom2.Document;
+import org.jdom2.JDOMException;
+import org.jdom2.input.JDOMParseException;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.located.Located;
+import org.jdom2.located.LocatedJDOMFactory;
+import org.jdom2.test.util.UnitTestUtil;
+
+@SuppressWarnings("javadoc")
+public class TestSAXBuilderParallel {
+
+	private static final byte[] records(final int count, final String broken)
+			throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("<?xml version='1.0' encoding='UTF-8'?>\n<!-- feed -->\n<?pi data?>\n");
+		sb.append("<feed xmlns='urn:feed' xmlns:x='urn:x'\n      x:version='2' xml:space='preserve'>\n");
+		for (int i = 0; i < count; i++) {
+			if (i % 500 == 7) {
+				sb.append("  <!-- marker ").append(i).append(" -->\n");
+			}
+			if (i == count / 2 && broken != null) {
+				sb.append(broken);
+			}
+			sb.append("  <record id='").append(i).append("' x:flag='y'>");
+			sb.append("<name>Record \u00e9 ").append(i).append("</name>");
+			sb.append("text &amp; <![CDATA[cdata]]> more<x:empty/>");
+			sb.append("<?rec ").append(i).append("?></record>");
+			if (i % 3 == 0) {
+				sb.append("\n");
+			} else {
+				sb.append(" <item/>\n");
+			}
+		}
+		sb.append("</feed>\n<!-- end -->\n");
+		return sb.toString().getBytes("UTF-8");
+	}
+
+	private static final List<Located> located(final Document doc) {
+		final List<Located> list = new ArrayList<Located>();
+		for (Content c : doc.getDescendants()) {
+			if (c instanceof Located) {
+				list.add((Located)c);
+			}
+		}
+		return list;
+	}
+
+	@Test
+	public void testSameAsSequential() throws JDOMException, IOException, InterruptedException {
+		final byte[] data = records(20000, null);
+		final SAXBuilder sb = new SAXBuilder();
+		final Document expect = sb.build(ByteBuffer.wrap(data));
+		for (int p = 1; p <= 5; p += 2) {
+			final ByteBuffer buffer = ByteBuffer.wrap(data);
+			UnitTestUtil.compare(expect, sb.buildParallel(buffer, p));
+			assertEquals(0, buffer.position());
+		}
+		assertEquals(20000, expect.getRootElement().getChildren("record",
+				expect.getRootElement().getNamespace()).size());
+	}
+
+	@Test
+	public void testLocations() throws JDOMException, IOException, InterruptedException {
+		final byte[] data = records(10000, null);
+		final SAXBuilder sb = new SAXBuilder();
+		sb.setJDOMFactory(new LocatedJDOMFactory());
+		final List<Located> expect = located(sb.build(ByteBuffer.wrap(data)));
+		final List<Located> got = located(sb.buildParallel(ByteBuffer.wrap(data), 4));
+		assertEquals(expect.size(), got.size());
+		for (int i = 0; i < expect.size(); i++) {
+			assertEquals(expect.get(i).getLine(), got.get(i).getLine());
+			// Xerces reports columns relative to its read buffer, which
+			// lands differently in each chunk; allow a little jitter.
+			assertTrue(Math.abs(expect.get(i).getColumn() - got.get(i).getColumn()) <= 2);
+		}
+	}
+
+	@Test
+	public void testErrors() throws IOException, InterruptedException {
+		final byte[] data = records(10000, "<broken>");
+		int line = -1;
+		try {
+			new SAXBuilder().build(ByteBuffer.wrap(data));
+			fail("Expect exception");
+		} catch (JDOMException e) {
+			checkException(JDOMParseException.class, e);
+			line = ((JDOMParseException)e).getLineNumber();
+		}
+		try {
+			new SAXBuilder().buildParallel(ByteBuffer.wrap(data), 4);
+			fail("Expect exception");
+		} catch (JDOMException e) {
+			checkException(JDOMParseException.class, e);
+			assertEquals(line, ((JDOMParseException)e).getLineNumber());
+		}
+		try {
+			new SAXBuilder().buildParallel(ByteBuffer.wrap(data), 0);
+			fail("Expect exception");
+		} catch (Exception e) {
+			checkException(IllegalArgumentException.class, e);
+		}
+	}
+
+	@Test
+	public void testSequentialFallback() throws JDOMException, IOException, InterruptedException {
+		final SAXBuilder sb = new SAXBuilder();
+		assertEquals("a", sb.buildParallel(ByteBuffer.wrap(
+				"<root>a</root>".getBytes("UTF-8")), 4).getRootElement().getText());
+		final StringBuilder dtd = new StringBuilder(
+				"<!DOCTYPE root [<!ENTITY ent 'expanded'>]><root>");
+		for (int i = 0; i < 20000; i++) {
+			dtd.append("<kid>&ent;</kid>\n");
+		}
+		dtd.append("</root>");
+		final Document doc = sb.buildParallel(ByteBuffer.wrap(
+				dtd.toString().getBytes("UTF-8")), 4);
+		assertEquals(20000, doc.getRootElement().getChildren().size());
+		assertEquals("expanded", doc.getRootElement().getChildText("kid"));
+		final byte[] utf16 = new String(records(5000, null), "UTF-8")
+				.replace("UTF-8", "UTF-16").getBytes("UTF-16");
+		UnitTestUtil.compare(sb.build(ByteBuffer.wrap(utf16)),
+				sb.buildParallel(ByteBuffer.wrap(utf16), 4));
+	}
+
+	@Test
+	public void testFile() throws JDOMException, IOException, InterruptedException {
+		final File file = File.createTempFile("jdom2-parallel", ".xml");
+		try {
+			final FileOutputStream fos = new FileOutputStream(file);
+			fos.write(records(10000, null));
+			fos.close();
+			final SAXBuilder sb = new SAXBuilder();
+			final Document expect = sb.build(file);
+			final Document doc = sb.buildParallel(file, 3);
+			assertEquals(expect.getBaseURI(), doc.getBaseURI());
+			UnitTestUtil.compare(expect, doc);
+			assertTrue(doc.getContentSize() > 1);
+		} finally {
+			file.delete();
+		}
+	}
+
+}
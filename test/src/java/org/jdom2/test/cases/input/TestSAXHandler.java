@@ -1563,4 +1563,39 @@ public class TestSAXHandler {
 		assertTrue(root.getAttributes().isEmpty());
 	}
 
+	@Test
+	public void testNamespaceScopes() throws SAXException {
+		// the same qName maps to different namespaces in sibling scopes,
+		// and declarations end with their element.
+		final SAXHandler handler = new SAXHandler();
+		handler.startDocument();
+		handler.startPrefixMapping("pfx", "uri1");
+		handler.startElement("uri1", "root", "pfx:root", EMPTYATTRIBUTES);
+		handler.startPrefixMapping("pfx", "uri2");
+		handler.startElement("uri2", "kid", "pfx:kid", EMPTYATTRIBUTES);
+		handler.endElement("uri2", "kid", "pfx:kid");
+		handler.endPrefixMapping("pfx");
+		handler.startElement("uri1", "kid", "pfx:kid", EMPTYATTRIBUTES);
+		// defaulted qualified attribute picks up the ancestor prefix
+		handler.startElement("", "leaf", "leaf",
+				new AttributesSingleOnly("uri1", "att", "att", "CDATA", "val"));
+		handler.endElement("", "leaf", "leaf");
+		handler.endElement("uri1", "kid", "pfx:kid");
+		handler.endElement("uri1", "root", "pfx:root");
+		handler.endPrefixMapping("pfx");
+		handler.endDocument();
+		final Element root = handler.getDocument().getRootElement();
+		assertEquals("uri1", root.getNamespaceURI());
+		assertTrue(root.getAdditionalNamespaces().isEmpty());
+		final Element kid1 = (Element)root.getContent(0);
+		final Element kid2 = (Element)root.getContent(1);
+		assertEquals("uri2", kid1.getNamespaceURI());
+		assertEquals("uri1", kid2.getNamespaceURI());
+		assertTrue(kid2.getAdditionalNamespaces().isEmpty());
+		final Attribute att = kid2.getChild("leaf").getAttribute("att",
+				Namespace.getNamespace("uri1"));
+		assertEquals("pfx", att.getNamespacePrefix());
+		assertEquals("val", att.getValue());
+	}
+
 }
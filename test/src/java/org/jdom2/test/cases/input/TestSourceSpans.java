@@ -0,0 +1,258 @@
+package org.jdom2.test.cases.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.Namespace;
+import org.jdom2.SourceSpan;
+import org.jdom2.filter.Filters;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.EscapeStrategy;
+import org.jdom2.output.Format;
+import org.jdom2.output.LineSeparator;
+import org.jdom2.output.XMLOutputter;
+
+@SuppressWarnings("javadoc")
+public class TestSourceSpans {
+
+	private static final String ROOT = "<m:msg xmlns:m=\"urn:m\" xmlns='urn:d' id = '1'>\r\n"
+			+ "  <head  a=\"x &amp; y\"  b='&#x41;'><to>Ann</to><from/></head>\n"
+			+ "  <body><p>one &lt; two \uD800\uDC00</p><p><![CDATA[<raw>]]></p>"
+			+ "<!-- note --><?pi data?><m:e\n/></body>\r\n"
+			+ "</m:msg>";
+
+	private static final String XML = "<?xml version='1.0'?>\n<!-- head -->\n"
+			+ ROOT + "\n<!-- tail -->\n";
+
+	private static final Namespace M = Namespace.getNamespace("m", "urn:m");
+	private static final Namespace D = Namespace.getNamespace("urn:d");
+
+	private static final SAXBuilder builder() {
+		final SAXBuilder sb = new SAXBuilder();
+		sb.setSourceSpans(true);
+		return sb;
+	}
+
+	private static final String text(final Element e) {
+		final SourceSpan span = e.getSourceSpan();
+		assertNotNull(e.getName(), span);
+		return span.getText();
+	}
+
+	private static final String output(final Format format, final Element e) {
+		return new XMLOutputter(format).outputString(e);
+	}
+
+	/** The raw Format with '\n' line ends, which copies the source. */
+	private static final Format unix() {
+		return Format.getRawFormat().setLineSeparator(LineSeparator.UNIX);
+	}
+
+	@Test
+	public void testSpans() throws JDOMException, IOException {
+		final Document doc = builder().build(new StringReader(XML));
+		final Element root = doc.getRootElement();
+		assertEquals(ROOT, text(root));
+		assertEquals(XML.indexOf(ROOT), root.getSourceSpan().getStart());
+		assertEquals(ROOT.length(), root.getSourceSpan().length());
+		final Element head = root.getChild("head", D);
+		assertEquals("<head  a=\"x &amp; y\"  b='&#x41;'><to>Ann</to><from/></head>",
+				text(head));
+		assertEquals("<to>Ann</to>", text(head.getChild("to", D)));
+		assertEquals("<from/>", text(head.getChild("from", D)));
+		final Element body = root.getChild("body", D);
+		assertEquals("<p>one &lt; two \uD800\uDC00</p>",
+				text(body.getChildren().get(0)));
+		assertEquals("<p><![CDATA[<raw>]]></p>", text(body.getChildren().get(1)));
+		assertEquals("<m:e\n/>", text(body.getChild("e", M)));
+		assertTrue(text(body).startsWith("<body><p>"));
+		assertTrue(text(body).endsWith("/></body>"));
+	}
+
+	@Test
+	public void testNotRecorded() throws JDOMException, IOException {
+		final Document doc = new SAXBuilder().build(new StringReader(XML));
+		assertFalse(new SAXBuilder().getSourceSpans());
+		for (Element e : doc.getDescendants(Filters.element())) {
+			assertNull(e.getSourceSpan());
+		}
+		final SAXBuilder sb = builder();
+		sb.setIgnoringBoundaryWhitespace(true);
+		assertNull(sb.build(new StringReader(XML)).getRootElement().getSourceSpan());
+	}
+
+	@Test
+	public void testBytes() throws JDOMException, IOException {
+		final byte[] utf8 = ("\uFEFF" + XML).getBytes("UTF-8");
+		Element root = builder().build(ByteBuffer.wrap(utf8)).getRootElement();
+		assertEquals(ROOT, text(root));
+		root = builder().build(new ByteArrayInputStream(
+				XML.getBytes("UTF-16"))).getRootElement();
+		assertEquals(ROOT, text(root));
+		final String latin = "<?xml version='1.0' encoding='ISO-8859-1'?><r>\u00e9<e/></r>";
+		root = builder().build(new ByteArrayInputStream(
+				latin.getBytes("ISO-8859-1"))).getRootElement();
+		assertEquals("<r>\u00e9<e/></r>", text(root));
+		assertEquals("\u00e9", root.getText());
+	}
+
+	@Test
+	public void testEntities() throws JDOMException, IOException {
+		final String xml = "<!DOCTYPE r [<!ENTITY ent '<q>x</q>'>]>"
+				+ "<r><a>&ent;</a><b v='&ent2;'/><c>&amp;</c></r>";
+		final Document doc = builder().build(new StringReader(
+				xml.replace("&ent2;", "&#x26;amp;")));
+		final Element root = doc.getRootElement();
+		// the text of r and a needs the entity declaration.
+		assertNull(root.getSourceSpan());
+		assertNull(root.getChild("a").getSourceSpan());
+		assertNull(root.getChild("a").getChild("q").getSourceSpan());
+		assertEquals("<b v='&#x26;amp;'/>", text(root.getChild("b")));
+		assertEquals("<c>&amp;</c>", text(root.getChild("c")));
+		final Document att = builder().build(new StringReader(
+				"<!DOCTYPE r [<!ENTITY e 'v'>]><r><b v='&e;'/><c/></r>"));
+		assertNull(att.getRootElement().getChild("b").getSourceSpan());
+		assertEquals("<c/>", text(att.getRootElement().getChild("c")));
+	}
+
+	@Test
+	public void testModified() throws JDOMException, IOException {
+		final Document doc = builder().build(new StringReader(XML));
+		final Element root = doc.getRootElement();
+		final Element head = root.getChild("head", D);
+		final Element body = root.getChild("body", D);
+		final Element to = head.getChild("to", D);
+
+		to.setText("Bob");
+		assertNull(to.getSourceSpan());
+		assertNull(head.getSourceSpan());
+		assertNull(root.getSourceSpan());
+		assertNotNull(head.getChild("from", D).getSourceSpan());
+		assertNotNull(body.getSourceSpan());
+
+		final Element p = body.getChildren().get(0);
+		p.getChildren();
+		assertNotNull(p.getSourceSpan());
+		p.setAttribute("k", "v");
+		assertNull(p.getSourceSpan());
+		assertNull(body.getSourceSpan());
+
+		Element e = builder().build(new StringReader(XML)).getRootElement()
+				.getChild("head", D);
+		e.getAttribute("a").setValue("z");
+		assertNull(e.getSourceSpan());
+		e = builder().build(new StringReader(XML)).getRootElement()
+				.getChild("head", D).getChild("from", D);
+		e.addContent("text");
+		assertNull(e.getSourceSpan());
+		e = builder().build(new StringReader(XML)).getRootElement()
+				.getChild("head", D).getChild("to", D);
+		e.getContent(0).detach();
+		assertNull(e.getSourceSpan());
+		e = builder().build(new StringReader(XML)).getRootElement()
+				.getChild("head", D);
+		e.addNamespaceDeclaration(Namespace.getNamespace("z", "urn:z"));
+		assertNull(e.getSourceSpan());
+		assertNull(e.getParentElement().getSourceSpan());
+
+		final Element clone = builder().build(new StringReader(XML))
+				.getRootElement().clone();
+		assertNull(clone.getSourceSpan());
+	}
+
+	@Test
+	public void testOutput() throws JDOMException, IOException {
+		final Document doc = builder().build(new StringReader(XML));
+		final Document plain = new SAXBuilder().build(new StringReader(XML));
+		final Element root = doc.getRootElement();
+		final Format raw = unix();
+		// unchanged, the source is copied.
+		assertEquals(ROOT, output(raw, root));
+		assertTrue(new XMLOutputter(raw).outputString(doc).contains(ROOT));
+		assertEquals(ROOT, output(unix().setLineSeparator(LineSeparator.NONE), root));
+		// formatted output is not the source.
+		assertEquals(output(Format.getPrettyFormat(), plain.getRootElement()),
+				output(Format.getPrettyFormat(), root));
+		final Format ascii = Format.getRawFormat().setEncoding("US-ASCII");
+		assertEquals(output(ascii, plain.getRootElement()), output(ascii, root));
+
+		// change one element, the rest is copied.
+		final Element to = root.getChild("head", D).getChild("to", D);
+		to.setText("Bob");
+		plain.getRootElement().getChild("head", D).getChild("to", D).setText("Bob");
+		final String out = output(raw, root);
+		assertTrue(out.contains("<to>Bob</to><from/>"));
+		assertTrue(out.contains("  <body><p>one &lt; two \uD800\uDC00</p><p><![CDATA[<raw>]]></p>"
+				+ "<!-- note --><?pi data?><m:e\n/></body>"));
+		final StringWriter sw = new StringWriter();
+		new XMLOutputter(raw).output(doc, sw);
+		assertEquals(new XMLOutputter(raw).outputString(builder().build(
+				new StringReader(sw.toString()))), sw.toString());
+		assertEquals(new XMLOutputter(Format.getPrettyFormat()).outputString(plain),
+				new XMLOutputter(Format.getPrettyFormat()).outputString(
+						builder().build(new StringReader(sw.toString()))));
+	}
+
+	@Test
+	public void testOutputNamespaces() throws JDOMException, IOException {
+		final Document doc = builder().build(new StringReader(XML));
+		final Element body = doc.getRootElement().getChild("body", D);
+		final Element e = body.getChild("e", M);
+		// m: is declared on the root, not in the text of e.
+		assertEquals("<m:e\n/>", text(e));
+		assertEquals("<m:e xmlns:m=\"urn:m\" />", output(unix(), e));
+		body.removeContent(e);
+		assertNotNull(e.getSourceSpan());
+		final Element other = new Element("other", Namespace.getNamespace("m", "urn:other"));
+		other.addContent(e);
+		assertEquals("<m:other xmlns:m=\"urn:other\"><m:e xmlns:m=\"urn:m\" /></m:other>",
+				output(unix(), other));
+		final Element same = new Element("same", M);
+		same.addContent(e.detach());
+		assertEquals("<m:same xmlns:m=\"urn:m\"><m:e\n/></m:same>",
+				output(unix(), same));
+	}
+
+	@Test
+	public void testOutputLineSeparator() throws JDOMException, IOException {
+		final String xml = "<r a='1'>\n<e>x\ny</e>\n</r>";
+		final Element root = builder().build(new StringReader(xml)).getRootElement();
+		final Element plain = new SAXBuilder().build(new StringReader(xml)).getRootElement();
+		assertEquals(xml, output(unix(), root));
+		final Format crlf = Format.getRawFormat().setLineSeparator(LineSeparator.DOS);
+		assertEquals("<r a=\"1\">\r\n<e>x\r\ny</e>\r\n</r>", output(crlf, root));
+		assertEquals(output(crlf, plain), output(crlf, root));
+		final Format dos = Format.getRawFormat().setLineSeparator("\r\n");
+		assertEquals(output(dos, plain), output(dos, root));
+	}
+
+	@Test
+	public void testOutputEscapeStrategy() throws JDOMException, IOException {
+		final String xml = "<r a='\u00e9'><e>caf\u00e9</e></r>";
+		final Element root = builder().build(new StringReader(xml)).getRootElement();
+		final Element plain = new SAXBuilder().build(new StringReader(xml)).getRootElement();
+		assertEquals(xml, output(unix(), root));
+		final Format escape = unix().setEscapeStrategy(new EscapeStrategy() {
+			public boolean shouldEscape(final char ch) {
+				return ch > 127;
+			}
+		});
+		assertEquals("<r a=\"&#xe9;\"><e>caf&#xe9;</e></r>", output(escape, root));
+		assertEquals(output(escape, plain), output(escape, root));
+	}
+
+}
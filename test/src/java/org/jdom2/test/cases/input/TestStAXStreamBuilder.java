@@ -3,13 +3,19 @@ package org.jdom2.test.cases.input;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.CharArrayWriter;
 import java.io.IOException;
+import java.io.StringReader;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamReader;
 
 import org.junit.Ignore;
@@ -20,6 +26,8 @@ import org.jdom2.DefaultJDOMFactory;
 import org.jdom2.DocType;
 import org.jdom2.Document;
 import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.Namespace;
 import org.jdom2.input.SAXBuilder;
 import org.jdom2.input.StAXStreamBuilder;
 import org.jdom2.input.stax.DefaultStAXFilter;
@@ -119,6 +127,106 @@ public class TestStAXStreamBuilder {
 		checkStAX("/xsdcomplex/input.xml", false);
 	}
 	
+	private static final String RECORDS = 
+			"<export><header>h</header>" +
+			"<records><record id='1'><name>one</name><note>skip</note></record>" +
+			"<!-- c --><record id='2'><name>two</name></record></records>" +
+			"<record id='3'/></export>";
+
+	/** Select 'record' Elements, prune 'note' Elements. */
+	private static final class RecordFilter extends DefaultStAXFilter {
+		@Override
+		public boolean includeElement(int depth, String name, Namespace ns) {
+			return "record".equals(name);
+		}
+		@Override
+		public boolean pruneElement(int depth, String name, Namespace ns) {
+			return "note".equals(name);
+		}
+	}
+
+	@Test
+	public void testIterateFragments() throws Exception {
+		final XMLInputFactory inputfac = XMLInputFactory.newInstance();
+		final XMLStreamReader reader = inputfac.createXMLStreamReader(
+				new StringReader(RECORDS));
+		final Iterator<Element> it = new StAXStreamBuilder().iterateFragments(
+				reader, new RecordFilter());
+		assertTrue(it.hasNext());
+		// hasNext() does not build, and leaves the reader at the fragment.
+		assertTrue(it.hasNext());
+		assertEquals(XMLStreamConstants.START_ELEMENT, reader.getEventType());
+		assertEquals("record", reader.getLocalName());
+		final Element one = it.next();
+		assertEquals(XMLStreamConstants.END_ELEMENT, reader.getEventType());
+		assertEquals("1", one.getAttributeValue("id"));
+		assertEquals("one", one.getChildText("name"));
+		assertNull(one.getChild("note"));
+		assertNull(one.getParent());
+		assertEquals("2", it.next().getAttributeValue("id"));
+		assertEquals("3", it.next().getAttributeValue("id"));
+		assertFalse(it.hasNext());
+		try {
+			it.next();
+			fail("Expect NoSuchElementException");
+		} catch (NoSuchElementException e) {
+			// good
+		}
+		try {
+			it.remove();
+			fail("Expect UnsupportedOperationException");
+		} catch (UnsupportedOperationException e) {
+			// good
+		}
+	}
+
+	@Test
+	public void testIterateFragmentsDefaultFilter() throws Exception {
+		final XMLInputFactory inputfac = XMLInputFactory.newInstance();
+		final XMLStreamReader reader = inputfac.createXMLStreamReader(
+				new StringReader(RECORDS));
+		final Iterator<Element> it = new StAXStreamBuilder().iterateFragments(
+				reader, new DefaultStAXFilter());
+		// the root Element is the only fragment.
+		final Element root = it.next();
+		assertEquals("export", root.getName());
+		assertEquals(3, root.getChildren().size());
+		assertFalse(it.hasNext());
+	}
+
+	@Test
+	public void testIterateFragmentsBroken() throws Exception {
+		final XMLInputFactory inputfac = XMLInputFactory.newInstance();
+		final XMLStreamReader reader = inputfac.createXMLStreamReader(
+				new StringReader("<export><record id='1'/><record></export>"));
+		final Iterator<Element> it = new StAXStreamBuilder().iterateFragments(
+				reader, new RecordFilter());
+		assertEquals("1", it.next().getAttributeValue("id"));
+		try {
+			while (it.hasNext()) {
+				it.next();
+			}
+			fail("Expect a parse failure");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getCause() instanceof JDOMException);
+		}
+		assertFalse(it.hasNext());
+	}
+
+	@Test
+	public void testIterateFragmentsNotAtStart() throws Exception {
+		final XMLInputFactory inputfac = XMLInputFactory.newInstance();
+		final XMLStreamReader reader = inputfac.createXMLStreamReader(
+				new StringReader(RECORDS));
+		reader.next();
+		try {
+			new StAXStreamBuilder().iterateFragments(reader, new RecordFilter());
+			fail("Expect JDOMException");
+		} catch (JDOMException e) {
+			// good
+		}
+	}
+
 	private void checkStAX(String resname, boolean expand) {
 		try {
 			StAXStreamBuilder stxb = new StAXStreamBuilder();
@@ -0,0 +1,252 @@
+package org.jdom2.test.cases.input.sax;
+
+import static org.jdom2.test.util.UnitTestUtil.checkException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URL;
+
+import org.junit.Test;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.JDOMParseException;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.input.sax.GrammarCache;
+import org.jdom2.input.sax.XMLReaderJAXPFactory;
+import org.jdom2.input.sax.XMLReaderXSDFactory;
+import org.jdom2.input.sax.XMLReaders;
+import org.jdom2.test.util.FidoFetch;
+
+@SuppressWarnings("javadoc")
+public class TestGrammarCache {
+
+	private static final class CountingResolver implements EntityResolver {
+		private int count = 0;
+
+		@Override
+		public InputSource resolveEntity(final String publicId, final String systemId) {
+			count++;
+			return null;
+		}
+	}
+
+	private static final File write(final File dir, final String name,
+			final String content) throws IOException {
+		final File file = new File(dir, name);
+		final FileOutputStream fos = new FileOutputStream(file);
+		try {
+			fos.write(content.getBytes("UTF-8"));
+		} finally {
+			fos.close();
+		}
+		file.deleteOnExit();
+		return file;
+	}
+
+	private static final File tempDir() throws IOException {
+		final File dir = File.createTempFile("jdom2-grammar", "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+		return dir;
+	}
+
+	@Test
+	public void testDTDGrammars() throws JDOMException, IOException {
+		final File dir = tempDir();
+		write(dir, "root.dtd", "<!ELEMENT root (kid*)>\n<!ELEMENT kid (#PCDATA)>\n" +
+				"<!ATTLIST kid type CDATA 'default'>\n");
+		final File valid = write(dir, "valid.xml",
+				"<!DOCTYPE root SYSTEM 'root.dtd'><root><kid>a</kid></root>");
+		final File invalid = write(dir, "invalid.xml",
+				"<!DOCTYPE root SYSTEM 'root.dtd'><root><bad/></root>");
+
+		final CountingResolver plain = new CountingResolver();
+		final SAXBuilder uncached = new SAXBuilder(XMLReaders.DTDVALIDATING);
+		uncached.setEntityResolver(plain);
+		for (int i = 0; i < 3; i++) {
+			uncached.build(valid);
+		}
+		assertEquals(3, plain.count);
+
+		final GrammarCache cache = new GrammarCache(4);
+		final CountingResolver resolver = new CountingResolver();
+		final SAXBuilder sb = new SAXBuilder(XMLReaders.DTDVALIDATING);
+		assertNull(sb.getGrammarCache());
+		sb.setGrammarCache(cache);
+		assertSame(cache, sb.getGrammarCache());
+		sb.setEntityResolver(resolver);
+		for (int i = 0; i < 3; i++) {
+			final Document doc = sb.build(valid);
+			assertEquals("default", doc.getRootElement().getChild("kid")
+					.getAttributeValue("type"));
+		}
+		assertEquals(1, resolver.count);
+		assertEquals(1, cache.getGrammarCount());
+		assertTrue(cache.getHitCount() >= 2);
+
+		// a new builder with the same cache does not read the DTD either.
+		final SAXBuilder other = new SAXBuilder(XMLReaders.DTDVALIDATING);
+		other.setGrammarCache(cache);
+		other.setEntityResolver(resolver);
+		other.build(valid);
+		assertEquals(1, resolver.count);
+
+		// and the cached grammar still validates.
+		try {
+			sb.build(invalid);
+			fail("Expect exception");
+		} catch (JDOMException e) {
+			checkException(JDOMParseException.class, e);
+		}
+
+		cache.clear();
+		assertEquals(0, cache.getGrammarCount());
+		sb.build(valid);
+		assertEquals(2, resolver.count);
+	}
+
+	@Test
+	public void testInternalSubset() throws JDOMException, IOException {
+		final File dir = tempDir();
+		write(dir, "ext.dtd", "<!ELEMENT r (c)>\n<!ELEMENT c EMPTY>\n" +
+				"<!ATTLIST c a CDATA 'ext'>\n");
+		final File plain = write(dir, "plain.xml",
+				"<!DOCTYPE r SYSTEM 'ext.dtd'><r><c/></r>");
+		final File subset = write(dir, "subset.xml",
+				"<?xml version='1.0'?>\n<!-- before -->\n" +
+				"<!DOCTYPE r SYSTEM 'ext.dtd' [<!ATTLIST c b CDATA 'internal'>]><r><c/></r>");
+		final GrammarCache cache = new GrammarCache(4);
+		final SAXBuilder sb = new SAXBuilder(XMLReaders.DTDVALIDATING);
+		sb.setGrammarCache(cache);
+
+		// the grammar of the document without a subset is not used for
+		// the document with one...
+		sb.build(plain);
+		assertEquals(1, cache.getGrammarCount());
+		Element c = sb.build(subset).getRootElement().getChild("c");
+		assertEquals("internal", c.getAttributeValue("b"));
+		assertEquals("ext", c.getAttributeValue("a"));
+		// ... from a stream or a Reader either.
+		c = sb.build(new FileInputStream(subset), dir.toURI().toString())
+				.getRootElement().getChild("c");
+		assertEquals("internal", c.getAttributeValue("b"));
+		c = sb.build(new StringReader("<!DOCTYPE r SYSTEM 'ext.dtd' [" +
+				"<!ATTLIST c b CDATA 'internal'>]><r><c/></r>"),
+				dir.toURI().toString()).getRootElement().getChild("c");
+		assertEquals("internal", c.getAttributeValue("b"));
+
+		// and the grammar of a document with a subset is not cached.
+		cache.clear();
+		sb.build(subset);
+		assertEquals(0, cache.getGrammarCount());
+		c = sb.build(plain).getRootElement().getChild("c");
+		assertNull(c.getAttribute("b"));
+		assertEquals(1, cache.getGrammarCount());
+	}
+
+	@Test
+	public void testJDKParser() throws JDOMException, IOException {
+		// the parser built in to the JDK, whose grammar classes may not be
+		// accessible: the cache is not used, but builds still work.
+		final File dir = tempDir();
+		write(dir, "root.dtd", "<!ELEMENT root (kid*)>\n<!ELEMENT kid (#PCDATA)>\n" +
+				"<!ATTLIST kid type CDATA 'default'>\n");
+		final File valid = write(dir, "valid.xml",
+				"<!DOCTYPE root SYSTEM 'root.dtd'><root><kid>a</kid></root>");
+		final XMLReaderJAXPFactory jdk = new XMLReaderJAXPFactory(
+				"com.sun.org.apache.xerces.internal.jaxp.SAXParserFactoryImpl",
+				null, true);
+		final GrammarCache cache = new GrammarCache(4);
+		final boolean installed = cache.install(jdk.createXMLReader());
+		final SAXBuilder sb = new SAXBuilder(jdk);
+		sb.setGrammarCache(cache);
+		for (int i = 0; i < 5; i++) {
+			assertEquals("default", sb.build(valid).getRootElement()
+					.getChild("kid").getAttributeValue("type"));
+		}
+		assertEquals(installed ? 1 : 0, cache.getGrammarCount());
+	}
+
+	@Test
+	public void testBounded() throws JDOMException, IOException {
+		final File dir = tempDir();
+		final GrammarCache cache = new GrammarCache(1);
+		assertEquals(1, cache.getMaximumSize());
+		final SAXBuilder sb = new SAXBuilder(XMLReaders.DTDVALIDATING);
+		sb.setGrammarCache(cache);
+		for (int i = 0; i < 3; i++) {
+			write(dir, "g" + i + ".dtd", "<!ELEMENT root EMPTY>");
+			sb.build(write(dir, "d" + i + ".xml",
+					"<!DOCTYPE root SYSTEM 'g" + i + ".dtd'><root/>"));
+			assertEquals(1, cache.getGrammarCount());
+		}
+		try {
+			new GrammarCache(0);
+			fail("Expect exception");
+		} catch (Exception e) {
+			checkException(IllegalArgumentException.class, e);
+		}
+	}
+
+	@Test
+	public void testSchemas() throws JDOMException, IOException {
+		final FidoFetch fido = FidoFetch.getFido();
+		final URL main = fido.getURL("/xsdcomplex/multi_main.xsd");
+		final URL one = fido.getURL("/xsdcomplex/multi_one.xsd");
+		final URL two = fido.getURL("/xsdcomplex/multi_two.xsd");
+		assertSame(GrammarCache.getDefault(), GrammarCache.getDefault());
+		final GrammarCache cache = new GrammarCache(8);
+
+		// factories without a cache always compile the sources.
+		final long defhits = GrammarCache.getDefault().getHitCount();
+		final long defmisses = GrammarCache.getDefault().getMissCount();
+		new XMLReaderXSDFactory(main, one, two);
+		new XMLReaderXSDFactory(main, one, two);
+		assertEquals(defhits, GrammarCache.getDefault().getHitCount());
+		assertEquals(defmisses, GrammarCache.getDefault().getMissCount());
+
+		new XMLReaderXSDFactory(cache, main, one, two);
+		final long hits = cache.getHitCount();
+		final int count = cache.getSchemaCount();
+		assertEquals(1, count);
+		for (int i = 0; i < 3; i++) {
+			final SAXBuilder sb = new SAXBuilder(new XMLReaderXSDFactory(cache, main, one, two));
+			assertEquals("http://www.jdom.org/schema_main",
+					sb.build(fido.getURL("/xsdcomplex/multi.xml"))
+					.getRootElement().getNamespaceURI());
+		}
+		assertEquals(hits + 3, cache.getHitCount());
+		assertEquals(count, cache.getSchemaCount());
+
+		// a File is keyed by its size and time, and compiled when it changes.
+		final File dir = tempDir();
+		final File xsd = write(dir, "s.xsd",
+				"<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>" +
+				"<xs:element name='a' type='xs:string'/></xs:schema>");
+		final File doc = write(dir, "b.xml", "<b/>");
+		new XMLReaderXSDFactory(cache, xsd);
+		final long before = cache.getHitCount();
+		new XMLReaderXSDFactory(cache, xsd);
+		assertEquals(before + 1, cache.getHitCount());
+		write(dir, "s.xsd",
+				"<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>" +
+				"<xs:element name='b' type='xs:string'/></xs:schema>");
+		xsd.setLastModified(xsd.lastModified() + 2000L);
+		new SAXBuilder(new XMLReaderXSDFactory(cache, xsd)).build(doc);
+		assertEquals(before + 1, cache.getHitCount());
+	}
+
+}
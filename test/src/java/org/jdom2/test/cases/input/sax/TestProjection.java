@@ -0,0 +1,142 @@
+package org.jdom2.test.cases.input.sax;
+
+import static org.jdom2.test.util.UnitTestUtil.checkException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+
+import org.jdom2.Document;
+import org.jdom2.JDOMException;
+import org.jdom2.Namespace;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.input.StAXStreamBuilder;
+import org.jdom2.input.sax.Projection;
+import org.jdom2.output.XMLOutputter;
+
+@SuppressWarnings("javadoc")
+public class TestProjection {
+
+	private static final String XML = "<?xml version='1.0'?>\n"
+			+ "<!-- head -->\n"
+			+ "<o:order xmlns:o='urn:order' xmlns:x='urn:x' id='7' rev='2' xml:lang='en'>"
+			+ "text<!-- c --><?pi data?>"
+			+ "<o:customer kind='a'><o:name>Ann &amp; Co</o:name><o:phone>1</o:phone></o:customer>"
+			+ "<notes xmlns:n='urn:n'><n:note>skip <b>me</b></n:note></notes>"
+			+ "<items count='2'><item id='1' x:flag='y'><sku>A1</sku><qty>3</qty></item>"
+			+ "<x:item id='2'><sku>B2</sku>cd<qty>4</qty></x:item></items>"
+			+ "</o:order><?tail?>";
+
+	private static final Namespace O = Namespace.getNamespace("o", "urn:order");
+
+	private static final String sax(final Projection projection)
+			throws JDOMException, IOException {
+		final SAXBuilder sb = new SAXBuilder();
+		sb.setProjection(projection);
+		final Document doc = sb.build(new StringReader(XML));
+		final String out = new XMLOutputter().outputString(doc);
+		assertEquals(out, stax(projection));
+		// and again, reusing the engine.
+		assertEquals(out, new XMLOutputter().outputString(sb.build(new StringReader(XML))));
+		return out;
+	}
+
+	private static final String stax(final Projection projection)
+			throws JDOMException {
+		try {
+			final StAXStreamBuilder sb = new StAXStreamBuilder();
+			sb.setProjection(projection);
+			assertTrue(projection == sb.getProjection());
+			return new XMLOutputter().outputString(sb.build(
+					XMLInputFactory.newInstance().createXMLStreamReader(
+							new StringReader(XML))));
+		} catch (XMLStreamException e) {
+			throw new JDOMException("StAX", e);
+		}
+	}
+
+	private static final String body(final String out) {
+		return out.substring(out.indexOf("-->") + 3);
+	}
+
+	@Test
+	public void testPaths() throws JDOMException, IOException {
+		final Projection projection = new Projection(O)
+				.addPath("/o:order/o:customer/o:name")
+				.addPath("/order/items/*/sku")
+				.addAttribute("id");
+		assertEquals("Projection[/o:order/o:customer/o:name, /order/items/*/sku, @id]",
+				projection.toString());
+		assertEquals("<o:order xmlns:o=\"urn:order\" xmlns:x=\"urn:x\" id=\"7\">"
+				+ "<o:customer><o:name>Ann &amp; Co</o:name></o:customer>"
+				+ "<items><item id=\"1\"><sku>A1</sku></item>"
+				+ "<x:item id=\"2\"><sku>B2</sku></x:item></items>"
+				+ "</o:order><?tail?>\r\n", body(sax(projection)));
+	}
+
+	@Test
+	public void testSubtree() throws JDOMException, IOException {
+		final Projection projection = new Projection(
+				Namespace.getNamespace("x", "urn:x"))
+				.addPath("/order/customer")
+				.addPath("/order/items/x:item")
+				.addAttribute("xml:lang");
+		assertEquals("<o:order xmlns:o=\"urn:order\" xmlns:x=\"urn:x\" xml:lang=\"en\">"
+				+ "<o:customer kind=\"a\"><o:name>Ann &amp; Co</o:name><o:phone>1</o:phone></o:customer>"
+				+ "<items><x:item id=\"2\"><sku>B2</sku>cd<qty>4</qty></x:item></items>"
+				+ "</o:order><?tail?>\r\n", body(sax(projection)));
+	}
+
+	@Test
+	public void testRoot() throws JDOMException, IOException {
+		assertEquals(new XMLOutputter().outputString(new SAXBuilder().build(
+				new StringReader(XML))), sax(new Projection().addPath("/*")));
+		// the root Element is always built
+		final String none = sax(new Projection().addPath("/other/items").addAttribute("rev"));
+		assertEquals("<o:order xmlns:o=\"urn:order\" xmlns:x=\"urn:x\" rev=\"2\" />"
+				+ "<?tail?>\r\n", body(none));
+		assertTrue(none.indexOf("<!-- head -->") > 0);
+	}
+
+	@Test
+	public void testNamespaceScope() throws JDOMException, IOException {
+		// the declarations of skipped Elements do not leak.
+		final SAXBuilder sb = new SAXBuilder();
+		sb.setProjection(new Projection().addPath("/r/b"));
+		final Document doc = sb.build(new StringReader(
+				"<r><a xmlns:p='urn:p' p:x='1'><p:c/></a><b><p:d xmlns:p='urn:q'/></b></r>"));
+		assertTrue(doc.getRootElement().getChild("a") == null);
+		assertTrue(doc.getRootElement().getAdditionalNamespaces().isEmpty());
+		assertTrue(doc.getRootElement().getChild("b").getAdditionalNamespaces().isEmpty());
+		assertEquals("urn:q", doc.getRootElement().getChild("b")
+				.getChildren().get(0).getNamespaceURI());
+	}
+
+	@Test
+	public void testIllegal() {
+		for (String path : new String[] {null, "", "/", "a/b", "/a//b", "/a/", "/p:a", "/:a", "/a:b:c"}) {
+			try {
+				new Projection().addPath(path);
+				fail("Expect exception for " + path);
+			} catch (Exception e) {
+				checkException(IllegalArgumentException.class, e);
+			}
+		}
+		for (String name : new String[] {null, "", "p:a", "a:"}) {
+			try {
+				new Projection().addAttribute(name);
+				fail("Expect exception for " + name);
+			} catch (Exception e) {
+				checkException(IllegalArgumentException.class, e);
+			}
+		}
+	}
+
+}
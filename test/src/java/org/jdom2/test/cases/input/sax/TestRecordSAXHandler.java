@@ -0,0 +1,214 @@
+package org.jdom2.test.cases.input.sax;
+
+import static org.jdom2.test.util.UnitTestUtil.checkException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.Namespace;
+import org.jdom2.input.JDOMParseException;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.input.sax.RecordListener;
+import org.jdom2.input.sax.RecordSAXHandler;
+import org.jdom2.input.sax.RecordSAXHandlerFactory;
+
+@SuppressWarnings("javadoc")
+public class TestRecordSAXHandler {
+
+	private static final class Collector implements RecordListener {
+		private final List<Element> records = new ArrayList<Element>();
+		@Override
+		public void processRecord(Element record) {
+			assertNull(record.getParent());
+			records.add(record);
+		}
+	}
+
+	private static final String XML = 
+			"<export xmlns:x='urn:x'>\n" +
+			"  <header><title>Export</title></header>\n" +
+			"  <records>\n" +
+			"    <record id='1'><name>one</name><record id='inner'/></record>\n" +
+			"    <!-- comment -->\n" +
+			"    <record id='2'><name>two</name><x:extra>e</x:extra></record>\n" +
+			"  </records>\n" +
+			"  <other><record id='3'/></other>\n" +
+			"</export>";
+
+	private static final List<Element> stream(final String xml, 
+			final String... paths) throws JDOMException, IOException {
+		final Collector collector = new Collector();
+		final SAXBuilder builder = new SAXBuilder(null, 
+				new RecordSAXHandlerFactory(collector, paths), null);
+		final Document doc = builder.build(new StringReader(xml));
+		if (doc.hasRootElement()) {
+			// nothing is retained outside the records.
+			assertEquals(0, doc.getRootElement().getContentSize());
+		}
+		return collector.records;
+	}
+
+	private static final List<String> ids(final List<Element> records) {
+		final List<String> ids = new ArrayList<String>();
+		for (Element r : records) {
+			ids.add(r.getAttributeValue("id"));
+		}
+		return ids;
+	}
+
+	@Test
+	public void testRelativePath() throws JDOMException, IOException {
+		final List<Element> records = stream(XML, "record");
+		assertEquals("[1, 2, 3]", ids(records).toString());
+		// nested matches are part of the outer record.
+		assertEquals("inner", records.get(0).getChild("record").getAttributeValue("id"));
+		assertEquals("two", records.get(1).getChildText("name"));
+		assertEquals("e", records.get(1).getChildText("extra", 
+				Namespace.getNamespace("urn:x")));
+	}
+
+	@Test
+	public void testAbsolutePath() throws JDOMException, IOException {
+		assertEquals("[1, 2]", ids(stream(XML, "/export/records/record")).toString());
+		assertEquals("[3]", ids(stream(XML, "/export/other/record")).toString());
+		assertEquals("[1, 2, 3]", ids(stream(XML, "/export/*/record")).toString());
+		assertEquals("[]", ids(stream(XML, "/records/record")).toString());
+	}
+
+	@Test
+	public void testMultiplePaths() throws JDOMException, IOException {
+		final List<Element> records = stream(XML, "header", "other/record");
+		assertEquals(2, records.size());
+		assertEquals("Export", records.get(0).getChildText("title"));
+		assertEquals("3", records.get(1).getAttributeValue("id"));
+	}
+
+	@Test
+	public void testRootRecord() throws JDOMException, IOException {
+		final List<Element> records = stream(XML, "/export");
+		assertEquals(1, records.size());
+		assertEquals(2, records.get(0).getChild("records").getChildren("record").size());
+	}
+
+	@Test
+	public void testListenerStops() throws IOException {
+		final SAXBuilder builder = new SAXBuilder(null, 
+				new RecordSAXHandlerFactory(new RecordListener() {
+					@Override
+					public void processRecord(Element record) throws JDOMException {
+						throw new JDOMException("stop at " + record.getAttributeValue("id"));
+					}
+				}, "record"), null);
+		try {
+			builder.build(new StringReader(XML));
+			fail("Expect the listener exception");
+		} catch (JDOMParseException e) {
+			assertTrue(e.getMessage().contains("stop at 1"));
+		} catch (JDOMException e) {
+			assertTrue(e.getMessage().contains("stop at 1"));
+		}
+	}
+
+	@Test
+	public void testReuse() throws JDOMException, IOException {
+		final Collector collector = new Collector();
+		final SAXBuilder builder = new SAXBuilder(null, 
+				new RecordSAXHandlerFactory(collector, "record"), null);
+		builder.build(new StringReader(XML));
+		builder.build(new StringReader(XML));
+		assertEquals(6, collector.records.size());
+	}
+
+	@Test
+	public void testHandlerSettings() {
+		final Collector collector = new Collector();
+		final RecordSAXHandler handler = new RecordSAXHandler(null, collector, "a", "/b/c");
+		assertEquals("[a, /b/c]", handler.getRecordPaths().toString());
+		assertTrue(collector == handler.getRecordListener());
+		assertEquals(0, handler.getRecordCount());
+		assertFalse(handler.getExpandEntities() == false);
+	}
+
+	@Test
+	public void testBadPaths() {
+		final Collector collector = new Collector();
+		try {
+			new RecordSAXHandlerFactory(collector);
+			fail("Expect exception");
+		} catch (Exception e) {
+			checkException(IllegalArgumentException.class, e);
+		}
+		try {
+			new RecordSAXHandlerFactory(collector, "a//b");
+			fail("Expect exception");
+		} catch (Exception e) {
+			checkException(IllegalArgumentException.class, e);
+		}
+		try {
+			new RecordSAXHandlerFactory(null, "a");
+			fail("Expect exception");
+		} catch (Exception e) {
+			checkException(NullPointerException.class, e);
+		}
+	}
+
+	@Test
+	public void testLargeStreamBounded() throws JDOMException, IOException {
+		// a stream of 200000 records, never held in memory all at once.
+		final int count = 200000;
+		final Reader reader = new Reader() {
+			private int next = -1;
+			private String pending = "<feed>";
+			private int pos = 0;
+			@Override
+			public int read(char[] cbuf, int off, int len) {
+				if (pos == pending.length()) {
+					next++;
+					if (next < count) {
+						pending = "<r n='" + next + "'>value " + next + "</r>\n";
+					} else if (next == count) {
+						pending = "</feed>";
+					} else {
+						return -1;
+					}
+					pos = 0;
+				}
+				final int cnt = Math.min(len, pending.length() - pos);
+				pending.getChars(pos, pos + cnt, cbuf, off);
+				pos += cnt;
+				return cnt;
+			}
+			@Override
+			public void close() {
+				// nothing
+			}
+		};
+		final long[] seen = new long[1];
+		final SAXBuilder builder = new SAXBuilder(null, 
+				new RecordSAXHandlerFactory(new RecordListener() {
+					@Override
+					public void processRecord(Element record) {
+						assertEquals(String.valueOf(seen[0]), record.getAttributeValue("n"));
+						assertNull(record.getParent());
+						seen[0]++;
+					}
+				}, "/feed/r"), null);
+		final Document doc = builder.build(reader);
+		assertEquals(count, seen[0]);
+		assertEquals(0, doc.getRootElement().getContentSize());
+	}
+
+}
@@ -0,0 +1,242 @@
+package org.jdom2.test.cases.located;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.jdom2.Comment;
+import org.jdom2.Content;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.Text;
+import org.jdom2.filter.Filters;
+import org.jdom2.input.DirectSAXEngine;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.located.Located;
+import org.jdom2.located.LocatedJDOMFactory;
+import org.jdom2.located.LocationTable;
+import org.jdom2.test.util.FidoFetch;
+import org.jdom2.xpath.XPathFactory;
+
+@SuppressWarnings("javadoc")
+public class TestLocationTable {
+
+	private static final String XML = "<?xml version='1.0'?>\n<!-- head -->\n"
+			+ "<root a='1'>\n  <kid>text</kid> <![CDATA[data]]>\n"
+			+ "  <?pi data?><!-- c --><empty/>\n</root>\n";
+
+	private static final SAXBuilder builder() {
+		final SAXBuilder sb = new SAXBuilder();
+		sb.setRecordLocations(true);
+		return sb;
+	}
+
+	private static final void checkLocation(Content c, int line, int col) {
+		assertFalse(c instanceof Located);
+		final Located l = LocationTable.locate(c);
+		assertNotNull(l);
+		assertEquals(line, l.getLine());
+		assertEquals(col, l.getColumn());
+	}
+
+	private static final List<Content> content(final Document doc) {
+		final List<Content> list = new ArrayList<Content>();
+		for (Content c : doc.getDescendants()) {
+			list.add(c);
+		}
+		return list;
+	}
+
+	private static final void compare(final Document expect, final Document doc,
+			final int jitter) {
+		final List<Content> located = content(expect);
+		final List<Content> got = content(doc);
+		assertEquals(located.size(), got.size());
+		for (int i = 0; i < located.size(); i++) {
+			final Located e = (Located)located.get(i);
+			final Located g = LocationTable.locate(got.get(i));
+			assertNotNull(got.get(i).toString(), g);
+			assertEquals(e.getLine(), g.getLine());
+			assertTrue(Math.abs(e.getColumn() - g.getColumn()) <= jitter);
+		}
+	}
+
+	@Test
+	public void testLocation() throws JDOMException, IOException {
+		final SAXBuilder sb = builder();
+		sb.setExpandEntities(false);
+		final Document doc = sb.build(FidoFetch.getFido().getURL("/complex.xml"));
+		checkLocation(doc.getDocType(), 2, 16);
+		final Element root = doc.getRootElement();
+		assertSame(Element.class, root.getClass());
+		checkLocation(root, 3, 32);
+		checkLocation(root.getContent(0), 5, 2);
+		final Comment comment = root.getContent(Filters.comment()).get(0);
+		checkLocation(comment, 12, 19);
+		final Element leaf = XPathFactory.instance().compile("//leaf",
+				Filters.element()).evaluateFirst(doc);
+		checkLocation(leaf, 21, 24);
+
+		final SAXBuilder lb = new SAXBuilder();
+		lb.setJDOMFactory(new LocatedJDOMFactory());
+		lb.setExpandEntities(false);
+		compare(lb.build(FidoFetch.getFido().getURL("/complex.xml")), doc, 0);
+	}
+
+	@Test
+	public void testTable() throws JDOMException, IOException {
+		final Document doc = builder().build(new StringReader(XML));
+		final LocationTable table = LocationTable.get(doc);
+		assertNotNull(table);
+		assertSame(table, LocationTable.install(doc));
+		assertEquals(content(doc).size(), table.size());
+		final Element root = doc.getRootElement();
+		// the ordinals are in document order.
+		assertSame(doc.getContent(0), table.getContent(0));
+		assertSame(root, table.getContent(1));
+		assertEquals(1, table.indexOf(root));
+		assertEquals(3, table.getLine(root));
+		assertEquals(13, table.getColumn(root));
+		assertEquals(-1, table.getOffset(1));
+		for (int i = 0; i < table.size(); i++) {
+			assertEquals(i, table.indexOf(table.getContent(i)));
+		}
+
+		final Text detached = new Text("new");
+		assertEquals(-1, table.indexOf(detached));
+		assertEquals(0, table.getLine(detached));
+		assertNull(table.getLocated(detached));
+		root.addContent(detached);
+		assertNull(LocationTable.locate(detached));
+		assertNull(LocationTable.locate(new Element("x")));
+		final int ord = table.add(detached, 7, 8);
+		assertEquals(7, LocationTable.locate(detached).getLine());
+		assertEquals(ord, table.indexOf(detached));
+
+		final Located kid = LocationTable.locate(root.getChild("kid"));
+		kid.setLine(42);
+		kid.setColumn(24);
+		assertEquals(42, table.getLine(root.getChild("kid")));
+		assertEquals(24, table.getColumn(root.getChild("kid")));
+
+		try {
+			table.getLine(table.size());
+			fail("Expect exception");
+		} catch (IndexOutOfBoundsException e) {
+			// pass
+		}
+
+		assertNull(LocationTable.get(new SAXBuilder().build(new StringReader(XML))));
+		assertFalse(new SAXBuilder().getRecordLocations());
+	}
+
+	@Test
+	public void testDetached() throws JDOMException, IOException {
+		final Document doc = builder().build(new StringReader(XML));
+		final LocationTable table = LocationTable.get(doc);
+		final Element kid = doc.getRootElement().getChild("kid");
+		final Content text = kid.getContent(0);
+		assertNotNull(LocationTable.locate(text));
+		kid.detach();
+		// no Document to find the table through...
+		assertNull(LocationTable.locate(kid));
+		assertNull(LocationTable.locate(text));
+		// ... but the table still has the locations.
+		assertEquals(4, table.getLocated(kid).getLine());
+		assertEquals(4, table.getLocated(text).getLine());
+		assertSame(kid, table.getContent(table.indexOf(kid)));
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		final LocationTable table = new LocationTable();
+		final Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int line = t + 1;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 1000; i++) {
+						final Text text = new Text("t");
+						final int ord = table.add(text, line, i);
+						assertEquals(ord, table.indexOf(text));
+						table.getLocated(text).setColumn(i + 1);
+					}
+				}
+			};
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(4000, table.size());
+		for (int i = 0; i < table.size(); i++) {
+			assertEquals(i, table.indexOf(table.getContent(i)));
+			assertTrue(table.getColumn(i) > 0);
+		}
+	}
+
+	@Test
+	public void testOffsets() throws JDOMException, IOException {
+		final SAXBuilder sb = builder();
+		sb.setSourceSpans(true);
+		final Document doc = sb.build(new StringReader(XML));
+		final LocationTable table = LocationTable.get(doc);
+		final Element root = doc.getRootElement();
+		final Element kid = root.getChild("kid");
+		// locations are the end of the start tag.
+		final int rord = table.indexOf(root);
+		assertEquals(XML.indexOf("<root a='1'>") + "<root a='1'>".length(),
+				table.getOffset(rord));
+		assertEquals(XML.indexOf("<kid>") + "<kid>".length(),
+				table.getOffset(table.indexOf(kid)));
+		assertEquals(XML.indexOf("</kid>"),
+				table.getOffset(table.indexOf(kid.getContent(0))));
+	}
+
+	@Test
+	public void testDirect() throws JDOMException, IOException {
+		final SAXBuilder sb = builder();
+		final DirectSAXEngine engine = new DirectSAXEngine(sb);
+		assertTrue(engine.isDirect());
+		final Document doc = engine.build(new StringReader(XML));
+		final SAXBuilder lb = new SAXBuilder();
+		lb.setJDOMFactory(new LocatedJDOMFactory());
+		compare(new DirectSAXEngine(lb).build(new StringReader(XML)), doc, 0);
+		final Document again = engine.build(new StringReader(XML));
+		assertEquals(content(again).size(), LocationTable.get(again).size());
+	}
+
+	@Test
+	public void testParallel() throws JDOMException, IOException, InterruptedException {
+		final StringBuilder sb = new StringBuilder("<?xml version='1.0'?>\n<feed>\n");
+		for (int i = 0; i < 20000; i++) {
+			sb.append("  <record id='").append(i).append("'>text ").append(i)
+					.append("<!-- c --></record>\n");
+		}
+		sb.append("</feed>\n<!-- end -->\n");
+		final byte[] data = sb.toString().getBytes("UTF-8");
+		final SAXBuilder lb = new SAXBuilder();
+		lb.setJDOMFactory(new LocatedJDOMFactory());
+		final Document doc = builder().buildParallel(ByteBuffer.wrap(data), 4);
+		// Xerces columns depend on where its read buffer lands in each chunk.
+		compare(lb.build(ByteBuffer.wrap(data)), doc, 2);
+		assertEquals(content(doc).size(), LocationTable.get(doc).size());
+	}
+
+}